@@ -93,6 +93,9 @@ public class MatosCampaign implements Serializable {
 
     private final MatosEngine engine;
 
+    /** The user owning the campaign. */
+    private final String owner;
+
     /** message for the end-user */
     private String message;
 
@@ -106,6 +109,7 @@ public class MatosCampaign implements Serializable {
     public MatosCampaign(String name, File folderBase, MatosEngine engine) throws IOException {
         this.name = name;
         this.engine = engine;
+        this.owner = folderBase.getName();
         File folder;
         folder = new File(folderBase, name);
         if (!folder.exists()) {
@@ -227,7 +231,7 @@ public class MatosCampaign implements Serializable {
      */
     public String analyzeAll() {
         for (MatosStep step : steps) {
-            engine.addWork(step);
+            engine.addWork(step, owner);
         }
         return null;
     }
@@ -240,7 +244,7 @@ public class MatosCampaign implements Serializable {
     public String analyzeSelected() {
         for (MatosStep step : steps) {
         	if (step.isSelected()) {
-        		engine.addWork(step);
+        		engine.addWork(step, owner);
         	}
         }
         return null;
@@ -252,7 +256,7 @@ public class MatosCampaign implements Serializable {
      * @return null : no change to page
      */
     public String analyze(MatosStep step) {
-        engine.addWork(step);
+        engine.addWork(step, owner);
         return null;
     }
 
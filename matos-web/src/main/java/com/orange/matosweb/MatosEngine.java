@@ -24,10 +24,19 @@ package com.orange.matosweb;
  */
 
 import java.io.File;
+import java.io.IOException;
 import java.io.Serializable;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
 import java.util.Queue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 
 import javax.faces.bean.ApplicationScoped;
 import javax.faces.bean.ManagedBean;
@@ -35,103 +44,293 @@ import javax.faces.bean.ManagedBean;
 import com.orange.matos.CoreCLI;
 import com.orange.matos.android.AndroidStep;
 import com.orange.matos.core.Alert;
-import com.orange.matos.core.Out;
 import com.orange.matos.core.Step;
 import com.orange.matos.java.JavaStep;
 
 /**
  * @author Pierre Cregut This is the engine servlet. It is where analysis are
- *         launched. One at a time. It must be synchronized with others and
- *         should probably use some kind of message queue to avoid
- *         synchronization issues.
+ *         launched. Analyses are run by a pool of worker processes (see
+ *         {@link MatosWorker}). Each user has its own queue and the queues are
+ *         served in turn so that a user submitting a large campaign does not
+ *         block the others. The pool is configured by system properties:
+ *         <code>matos.web.workers</code> (number of processes, 2 by default),
+ *         <code>matos.web.timeout</code> (time limit of an analysis in
+ *         seconds, 900 by default) and <code>matos.web.workerHeap</code>
+ *         (heap of a process in megabytes, 1024 by default).
  */
 @ManagedBean(name = "matos_engine",eager = true)
 @ApplicationScoped
-public class MatosEngine implements Runnable, Serializable {
+public class MatosEngine implements Serializable {
 
     private static final long serialVersionUID = 1L;
 
-    final private Queue<MatosStep> queue;
+    private static final Logger logger = Logger.getLogger(MatosEngine.class.getName());
+
+    /** Initial estimate of the duration of an analysis (ms) before any measure. */
+    private static final long DEFAULT_DURATION = 60000;
+
+    /** Queues of the steps to analyse by user. The first user is the next served. */
+    final private Map<String, Queue<MatosStep>> queues;
 
     private transient CoreCLI matos;
     
     File privateFolder;
 
-    final transient Thread thread;
+    final transient Thread[] threads;
+
+    final private int poolSize;
+
+    final private long timeout;
+
+    /** Moving average of the duration of analyses in milliseconds. */
+    private long averageDuration = DEFAULT_DURATION;
 
     /**
      * Launch a new and usually unique Matos engine.
      */
     public MatosEngine() {
-        queue = new LinkedList<MatosStep>();
-        thread = new Thread(this);
-        thread.start();
+        queues = new LinkedHashMap<String, Queue<MatosStep>>();
+        poolSize = Math.max(1, Integer.getInteger("matos.web.workers", 2));
+        timeout = 1000L * Integer.getInteger("matos.web.timeout", 900);
+        int heap = Integer.getInteger("matos.web.workerHeap", 1024);
+        File tmpDir = new File(System.getProperty("matos.temp"));
+        ScheduledExecutorService watchdog = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread t = new Thread(r, "matos-web-watchdog");
+                t.setDaemon(true);
+                return t;
+            }
+        });
+        threads = new Thread[poolSize];
+        for (int i = 0; i < poolSize; i++) {
+            threads[i] = new Thread(new Worker(new MatosWorker(i, tmpDir, heap, watchdog)), "matos-web-worker-" + i);
+            threads[i].setDaemon(true);
+            threads[i].start();
+        }
     }
 
     /**
-     * Adds a new item to the engine work queue.
+     * Adds a new item to the engine work queue of a user.
      * 
      * @param step
+     * @param user the owner of the step
      */
-    public void addWork(MatosStep step) {
-        synchronized (queue) {
+    public void addWork(MatosStep step, String user) {
+        synchronized (queues) {
+            Queue<MatosStep> queue = queues.get(user);
+            if (queue == null) {
+                queue = new LinkedList<MatosStep>();
+                queues.put(user, queue);
+            }
+            if (queue.contains(step)) return;
+            int round = queue.size();
             queue.add(step);
             step.setStatus(MatosStatus.SCHEDULED);
-            queue.notify();
+            insertEstimate(user, round, step);
+            queues.notify();
         }
     }
 
-    /*
-     * (non-Javadoc)
-     * @see java.lang.Runnable#run()
+    /**
+     * Takes the next step to analyse. Users are served in turn: a user whose
+     * step is taken goes to the end of the rotation.
+     * 
+     * @return the step
+     * @throws InterruptedException
      */
-    @Override
-    public void run() {
-        String tmpDir = System.getProperty("matos.temp");
-        try {
-            while (true) {
-                MatosStep step;
-                synchronized (queue) {
-                    while (queue.isEmpty()) {
-                        queue.wait();
-                    }
-                    step = queue.poll();
+    private MatosStep nextStep() throws InterruptedException {
+        synchronized (queues) {
+            while (queues.isEmpty()) {
+                queues.wait();
+            }
+            Iterator<Map.Entry<String, Queue<MatosStep>>> it = queues.entrySet().iterator();
+            Map.Entry<String, Queue<MatosStep>> first = it.next();
+            it.remove();
+            MatosStep step = first.getValue().poll();
+            if (!first.getValue().isEmpty()) queues.put(first.getKey(), first.getValue());
+            advanceEstimates();
+            return step;
+        }
+    }
+
+    /**
+     * Gives its position to a step added at the end of the queue of a user and
+     * moves back the steps that will be served after it. Steps are served by
+     * rounds: the round of a step is its index in the queue of its user and,
+     * in a round, users are served in the order of the map. Must be called with
+     * the lock on the queues.
+     * 
+     * @param user the owner of the step
+     * @param round the index of the step in the queue of its owner
+     * @param step the new step
+     */
+    private void insertEstimate(String user, int round, MatosStep step) {
+        long now = System.currentTimeMillis();
+        int position = 1;
+        boolean afterOwner = false;
+        for (Map.Entry<String, Queue<MatosStep>> entry : queues.entrySet()) {
+            int index = 0;
+            for (MatosStep other : entry.getValue()) {
+                if (other == step) break;
+                if (index < round || (index == round && !afterOwner)) position++;
+                else setEstimate(other, other.getQueuePosition() + 1, now);
+                index++;
+            }
+            if (entry.getKey().equals(user)) afterOwner = true;
+        }
+        setEstimate(step, position, now);
+    }
+
+    /**
+     * Moves every waiting step one position forward after the first one has
+     * been taken. Taking the first step and moving its owner at the end of the
+     * rotation does not change the order of the others. Must be called with
+     * the lock on the queues.
+     */
+    private void advanceEstimates() {
+        long now = System.currentTimeMillis();
+        for (Queue<MatosStep> queue : queues.values()) {
+            for (MatosStep other : queue) setEstimate(other, other.getQueuePosition() - 1, now);
+        }
+    }
+
+    /**
+     * Sets the position of a waiting step and the expected end of its analysis.
+     */
+    private void setEstimate(MatosStep step, int position, long now) {
+        step.setEstimate(position, now + ((position - 1) / poolSize + 1) * averageDuration);
+    }
+
+    /**
+     * Updates the average duration of analyses.
+     * @param duration the duration of the last analysis in milliseconds
+     */
+    private void recordDuration(long duration) {
+        synchronized (queues) {
+            averageDuration = (3 * averageDuration + duration) / 4;
+        }
+    }
+
+    private long averageDuration() {
+        synchronized (queues) {
+            return averageDuration;
+        }
+    }
+
+    /**
+     * Takes steps from the queues and runs them on a worker process.
+     */
+    private class Worker implements Runnable {
+        private final MatosWorker process;
+
+        Worker(MatosWorker process) {
+            this.process = process;
+        }
+
+        /*
+         * (non-Javadoc)
+         * @see java.lang.Runnable#run()
+         */
+        @Override
+        public void run() {
+            try {
+                while (true) {
+                    MatosStep step = nextStep();
+                    if (step.getStatus() == MatosStatus.DELETED) continue;
+                    analyse(step, process);
                 }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } finally {
+                process.stop();
+            }
+        }
+    }
 
-                try {
-                    step.setStatus(MatosStatus.COMPUTING);
-                    Step matosStep = toInternalFormat(step);
-                    MatosStatus status = MatosStatus.TODO;
-                    if (matosStep == null) {
-                        status = MatosStatus.SKIPPED;
-                    } else {
-                        Out.setLog(CoreCLI.getPrintStream(new File(tmpDir, "log.txt").getAbsolutePath()));
-                        step.setAnalysisDate(System.currentTimeMillis());
-                        getMatos().executeStep(matosStep);
-                        step.setScore(matosStep.getScore());
-
-                        switch (matosStep.getVerdict()) {
-                            case Step.FAILED:
-                                status = MatosStatus.FAILED;
-                                break;
-                            case Step.PASSED:
-                                status = MatosStatus.PASSED;
-                                break;
-                            default:
-                                
-                                status = MatosStatus.SKIPPED;
-                        }
-                    }
-                    step.setStatus(status);
-                } catch (Alert e) {
-                    step.setStatus(MatosStatus.SKIPPED);
-                    e.printStackTrace();
+    /**
+     * Analyses a step on a worker. Steps that exceed the time limit or whose
+     * process dies are skipped.
+     * @param step the step
+     * @param worker the worker process
+     */
+    private void analyse(MatosStep step, MatosWorker worker) {
+        step.setStatus(MatosStatus.COMPUTING);
+        Step matosStep = toInternalFormat(step);
+        MatosStatus status = MatosStatus.SKIPPED;
+        if (matosStep != null) {
+            long start = System.currentTimeMillis();
+            step.setAnalysisDate(start);
+            step.setEstimate(0, start + averageDuration());
+            try {
+                String answer = worker.analyse(toRequest(matosStep), timeout);
+                if (answer == null) {
+                    logger.warning((worker.hasTimedOut() ? "Time limit exceeded" : "Analysis process stopped")
+                            + " on " + matosStep.getCode());
+                } else {
+                    recordDuration(System.currentTimeMillis() - start);
+                    status = parseAnswer(answer, step);
                 }
-                                
+            } catch (IOException e) {
+                logger.log(Level.SEVERE, "Cannot run an analysis process", e);
             }
-        } catch (InterruptedException e) {
+        }
+        step.setEstimate(-1, -1);
+        step.setStatus(status);
+    }
+
+    /**
+     * Decodes the answer of the daemon:
+     * <code>@@matos done &lt;verdict&gt; &lt;score&gt; &lt;time&gt; &lt;report&gt;</code>.
+     */
+    private MatosStatus parseAnswer(String answer, MatosStep step) {
+        if (!answer.startsWith(MatosWorker.DONE)) {
+            logger.warning(answer);
+            return MatosStatus.SKIPPED;
+        }
+        String[] fields = answer.substring(MatosWorker.DONE.length()).split(" ", 4);
+        if (fields.length < 2) return MatosStatus.SKIPPED;
+        try {
+            step.setScore(Integer.parseInt(fields[1]));
+        } catch (NumberFormatException e) {
+            logger.warning("Bad score in " + answer);
+        }
+        if (Step.PASSED_String.equals(fields[0])) return MatosStatus.PASSED;
+        if (Step.FAILED_String.equals(fields[0])) return MatosStatus.FAILED;
+        return MatosStatus.SKIPPED;
+    }
+
+    /**
+     * The command line of a step for the daemon. Arguments are quoted (see
+     * {@link #quote(String)}).
+     */
+    private static String toRequest(Step step) {
+        StringBuilder request = new StringBuilder();
+        if (step instanceof JavaStep) {
+            request.append("-jar ").append(quote(step.getCode()));
+            String jad = ((JavaStep) step).getJad();
+            if (jad != null) request.append(" -jad ").append(quote(jad));
+        } else {
+            request.append("-apk ").append(quote(step.getCode()));
+        }
+        request.append(" -o ").append(quote(step.getOutFileName()));
+        request.append(" -d ").append(quote(step.getProfileName()));
+        return request.toString();
+    }
 
+    /**
+     * Quotes an argument for the daemon: double quotes and backslashes are
+     * escaped with a backslash as expected by <code>MatosDaemon.tokenize</code>.
+     */
+    static String quote(String arg) {
+        StringBuilder result = new StringBuilder(arg.length() + 2);
+        result.append('"');
+        for (int i = 0; i < arg.length(); i++) {
+            char c = arg.charAt(i);
+            if (c == '"' || c == '\\') result.append('\\');
+            result.append(c);
         }
+        return result.append('"').toString();
     }
 
     private Step toInternalFormat(MatosStep step) {
@@ -67,6 +67,12 @@ public class MatosStep implements Serializable {
 	
 	/** The status. */
 	private MatosStatus status = MatosStatus.TODO;
+
+	/** Position in the work queue (0 when computing, -1 when not known). */
+	private transient int queuePosition = -1;
+
+	/** Expected end of the analysis (-1 when not known). */
+	private transient long expectedEnd = -1;
 	
 	/**
 	 * Creates a step to analyse
@@ -248,6 +254,46 @@ public class MatosStep implements Serializable {
 	    else this.status = status;
 	}
 
+	/**
+	 * Sets the estimates given by the engine while the step is waiting or computed.
+	 *
+	 * @param position the position in the work queue, 0 if the step is computed.
+	 * @param expectedEnd the expected end of the analysis or -1 if unknown.
+	 */
+	synchronized void setEstimate(int position, long expectedEnd) {
+	    this.queuePosition = position;
+	    this.expectedEnd = expectedEnd;
+	}
+
+	/**
+	 * Gets the position in the work queue.
+	 *
+	 * @return the position (1 for the next step analysed) or 0 if it is computed.
+	 */
+	public synchronized int getQueuePosition() {
+	    return queuePosition;
+	}
+
+	/**
+	 * Check if there is an estimate to display.
+	 *
+	 * @return
+	 */
+	public synchronized boolean getHasEstimate() {
+	    return expectedEnd > 0 && (status == MatosStatus.SCHEDULED || status == MatosStatus.COMPUTING);
+	}
+
+	/**
+	 * Gets a printable estimate of the remaining time before the result.
+	 *
+	 * @return the printable estimate
+	 */
+	public synchronized String getEta() {
+	    if (expectedEnd <= 0) return "-";
+	    long minutes = (expectedEnd - System.currentTimeMillis() + 59999) / 60000;
+	    return minutes <= 1 ? "< 1 min" : "~" + minutes + " min";
+	}
+
 	/**
 	 * Checks if is selected.
 	 *
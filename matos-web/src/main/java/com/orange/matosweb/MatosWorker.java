@@ -0,0 +1,199 @@
+
+package com.orange.matosweb;
+
+/*
+ * #%L
+ * Matos
+ * $Id:$
+ * $HeadURL:$
+ * %%
+ * Copyright (C) 2004 - 2014 Orange SA
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileFilter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintStream;
+import java.net.URISyntaxException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import com.orange.matos.CoreCLI;
+
+/**
+ * @author Pierre Cregut
+ * An analysis process driven by the engine. Soot keeps its state in
+ * singletons, so each analysis runs in a separate JVM started as a Matos
+ * daemon (<code>CoreCLI -daemon</code>) reading requests on its standard
+ * input. The process is kept between analyses and restarted when it dies or
+ * when an analysis exceeds its time limit.
+ */
+class MatosWorker {
+
+    private static final Logger logger = Logger.getLogger(MatosWorker.class.getName());
+
+    /** Prefix of the lines of the daemon output that belong to the protocol. */
+    static final String PROTOCOL_MARKER = "@@matos ";
+
+    /** Prefix of the answer for a completed analysis. */
+    static final String DONE = PROTOCOL_MARKER + "done ";
+
+    private final int id;
+
+    private final File dir;
+
+    private final File log;
+
+    private final int heap;
+
+    private final ScheduledExecutorService watchdog;
+
+    private Process process;
+
+    private BufferedReader fromDaemon;
+
+    private PrintStream toDaemon;
+
+    private boolean timedOut;
+
+    /**
+     * Creates a worker. The process is started on the first analysis.
+     * @param id the number of the worker
+     * @param tmpDir the folder where the worker keeps its temporary files and its log
+     * @param heap the maximum heap of the process in megabytes
+     * @param watchdog the service used to stop analyses exceeding their time limit
+     */
+    MatosWorker(int id, File tmpDir, int heap, ScheduledExecutorService watchdog) {
+        this.id = id;
+        this.dir = new File(tmpDir, "worker" + id);
+        this.log = new File(tmpDir, "worker" + id + ".log");
+        this.heap = heap;
+        this.watchdog = watchdog;
+    }
+
+    /**
+     * Sends a request to the daemon and waits for its answer.
+     * @param request the arguments of the step on a single line
+     * @param timeout the time limit of the analysis in milliseconds
+     * @return the answer of the daemon or null if the process stopped before
+     *         answering (see {@link #hasTimedOut()}).
+     * @throws IOException if the process cannot be started or read
+     */
+    String analyse(String request, long timeout) throws IOException {
+        if (process == null) start();
+        final Process current = process;
+        ScheduledFuture<?> alarm = watchdog.schedule(new Runnable() {
+            @Override
+            public void run() {
+                current.destroy();
+            }
+        }, timeout, TimeUnit.MILLISECONDS);
+        String answer = null;
+        try {
+            toDaemon.println(request);
+            toDaemon.flush();
+            String line;
+            while (answer == null && (line = fromDaemon.readLine()) != null) {
+                if (line.startsWith(PROTOCOL_MARKER)) answer = line;
+            }
+        } finally {
+            // The cancellation fails if the alarm has run or is running: the
+            // process is killed even if the answer arrived just in time.
+            timedOut = !alarm.cancel(false);
+            if (timedOut || answer == null) stop();
+        }
+        return answer;
+    }
+
+    /**
+     * Tells if the last analysis was stopped because it exceeded its time limit.
+     * @return
+     */
+    boolean hasTimedOut() {
+        return timedOut;
+    }
+
+    private void start() throws IOException {
+        if (!dir.isDirectory() && !dir.mkdirs()) {
+            throw new IOException("Cannot create directory " + dir);
+        }
+        List<String> command = new ArrayList<String>();
+        command.add(new File(new File(System.getProperty("java.home"), "bin"), "java").getAbsolutePath());
+        command.add("-Xmx" + heap + "m");
+        command.add("-cp");
+        command.add(classPath());
+        command.add("-Dmatos.lib=" + System.getProperty("matos.lib"));
+        command.add("-Dmatos.temp=" + dir.getAbsolutePath());
+        command.add(CoreCLI.class.getName());
+        command.add("-daemon");
+        command.add("-log");
+        command.add(log.getAbsolutePath());
+        ProcessBuilder builder = new ProcessBuilder(command);
+        builder.redirectErrorStream(true);
+        process = builder.start();
+        fromDaemon = new BufferedReader(new InputStreamReader(process.getInputStream(), "UTF-8"));
+        toDaemon = new PrintStream(process.getOutputStream(), true, "UTF-8");
+        logger.info("Started analysis worker " + id);
+    }
+
+    /**
+     * Stops the process. A new one is started for the next analysis.
+     */
+    void stop() {
+        if (process != null) {
+            process.destroy();
+            process = null;
+        }
+    }
+
+    /**
+     * The class path of the daemon: the value of <code>matos.web.classpath</code>
+     * if defined, otherwise the libraries of the web application.
+     */
+    private static String classPath() {
+        String path = System.getProperty("matos.web.classpath");
+        if (path != null) return path;
+        StringBuilder result = new StringBuilder();
+        try {
+            File matos = new File(CoreCLI.class.getProtectionDomain().getCodeSource().getLocation().toURI());
+            File classes = new File(MatosWorker.class.getProtectionDomain().getCodeSource().getLocation().toURI());
+            result.append(classes.getAbsolutePath());
+            if (!matos.isFile() && !matos.equals(classes)) {
+                result.append(File.pathSeparator).append(matos.getAbsolutePath());
+            }
+            File libDir = matos.isFile() ? matos.getParentFile() : matos;
+            File[] jars = libDir.listFiles(new FileFilter() {
+                @Override
+                public boolean accept(File file) {
+                    return file.getName().endsWith(".jar");
+                }
+            });
+            if (jars != null) {
+                for (File jar : jars) result.append(File.pathSeparator).append(jar.getAbsolutePath());
+            }
+        } catch (URISyntaxException e) {
+            logger.log(Level.SEVERE, "Cannot find the Matos libraries", e);
+        }
+        return result.toString();
+    }
+}
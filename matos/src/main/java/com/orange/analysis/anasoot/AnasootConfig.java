@@ -26,6 +26,7 @@ import java.io.FilenameFilter;
 import com.orange.analysis.anasoot.spy.CustomSemanticRule;
 import com.orange.matos.core.Alert;
 import com.orange.matos.core.Configuration;
+import com.orange.matos.utils.PhaseProfiler;
 
 /**
  * Configuration parameters specific to Anasoot.
@@ -106,6 +107,21 @@ public class AnasootConfig {
 	 */
 	private boolean doApiUse = false;
 
+	/**
+	 * Maximum number of units of the bodies whose local analysis is cached.
+	 */
+	private int localCacheSize = 0;
+
+	/**
+	 * Flag : do we limit the scan of bodies to application classes and reachable methods.
+	 */
+	private boolean scanReachableOnly = false;
+
+	/**
+	 * Number of threads running the custom rules (1 runs them one after the other).
+	 */
+	private int customRuleThreads = 1;
+
 	/**
 	 * Path to the version database.
 	 */
@@ -163,6 +179,9 @@ public class AnasootConfig {
 		usedJSR = config.bool("anasoot.usedJSR");
 		loopAnalysis = config.bool("anasoot.loopAnalysis", false);
 		doApiUse = config.bool("anasoot.androidApiUse");
+		localCacheSize = config.integer("anasoot.localCacheSize", 500000);
+		scanReachableOnly = config.string("anasoot.scanScope", "all").equals("reachable");
+		customRuleThreads = config.integer("anasoot.customRuleThreads", 1);
 		databasePath = new File(config.getLibDir(), config.string("anasoot.androidDatabase")).getAbsolutePath();
 	}
 
@@ -252,6 +271,42 @@ public class AnasootConfig {
         return loopAnalysis;
     }
 
+    /**
+     * Bound on the local analyses cached (in units of the bodies).
+     *
+     * @return a number of units
+     */
+    public int localCacheSize() {
+        return localCacheSize;
+    }
+
+    /**
+     * Scan only application classes and methods reachable in the call graph.
+     *
+     * @return true, if the scan is restricted
+     */
+    public boolean scanReachableOnly() {
+        return scanReachableOnly;
+    }
+
+    /**
+     * Number of threads running the custom rules.
+     *
+     * @return a number of threads (1 or less for a sequential run)
+     */
+    public int customRuleThreads() {
+        return customRuleThreads;
+    }
+
+    /**
+     * Profiler of the phases of the step analysed.
+     *
+     * @return the profiler of the configuration
+     */
+    public PhaseProfiler profiler() {
+        return config.getProfiler();
+    }
+
     /**
      * Do print nodes.
      *
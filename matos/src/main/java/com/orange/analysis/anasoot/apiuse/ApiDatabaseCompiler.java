@@ -0,0 +1,153 @@
+package com.orange.analysis.anasoot.apiuse;
+
+/*
+ * #%L
+ * Matos
+ * %%
+ * Copyright (C) 2004 - 2014 Orange SA
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+import com.orange.matos.core.Alert;
+
+/**
+ * Offline compiler of the version database. It turns the SQLite database into
+ * the binary file read by {@link MappedApiIndex}. The compiled file can be
+ * used in place of the database (<code>anasoot.androidDatabase</code>).
+ * <p>
+ * Usage: <code>ApiDatabaseCompiler database.db database.bin</code>
+ * @author Pierre Cregut
+ *
+ */
+public class ApiDatabaseCompiler {
+
+	/**
+	 * An entry of a table: its key in UTF-8 and its identifier in the index.
+	 */
+	private static class Entry {
+		final byte[] key;
+		final int id;
+
+		Entry(String key, int id) throws UnsupportedEncodingException {
+			this.key = key.getBytes("UTF-8");
+			this.id = id;
+		}
+	}
+
+	private static final Comparator<Entry> KEY_ORDER = new Comparator<Entry>() {
+		@Override
+		public int compare(Entry e1, Entry e2) {
+			int n = Math.min(e1.key.length, e2.key.length);
+			for (int i = 0; i < n; i++) {
+				int c = (e1.key[i] & 0xff) - (e2.key[i] & 0xff);
+				if (c != 0) return c;
+			}
+			return e1.key.length - e2.key.length;
+		}
+	};
+
+	/**
+	 * Compiles a database.
+	 * @param database path of the SQLite database
+	 * @param output the compiled file
+	 * @throws Alert
+	 */
+	public static void compile(String database, File output) throws Alert {
+		DatabaseApiIndex index = DatabaseApiIndex.load(database);
+		Entry[] classes = entries(index.classKeys());
+		Entry[] elements = entries(index.elementKeys());
+		try {
+			DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(output)));
+			try {
+				out.writeInt(MappedApiIndex.MAGIC);
+				out.writeInt(MappedApiIndex.FORMAT);
+				List<String> versions = index.getVersions();
+				out.writeInt(versions.size());
+				for (String version : versions) {
+					byte[] name = version.getBytes("UTF-8");
+					out.writeShort(name.length);
+					out.write(name);
+				}
+				out.writeInt(index.words);
+				out.writeInt(classes.length);
+				out.writeInt(elements.length);
+				int offset = writeRecords(out, index, classes, ApiVersionIndex.CLASS_VISIBLE,
+						ApiVersionIndex.CLASS_HIDDEN, 0);
+				writeRecords(out, index, elements, ApiVersionIndex.ELEMENT_VISIBLE,
+						ApiVersionIndex.ELEMENT_HIDDEN, offset);
+				for (Entry e : classes) out.write(e.key);
+				for (Entry e : elements) out.write(e.key);
+			} finally {
+				out.close();
+			}
+		} catch (IOException e) {
+			throw Alert.raised(e, "Cannot write compiled version database " + output);
+		}
+	}
+
+	private static Entry[] entries(List<String> keys) throws Alert {
+		Entry[] result = new Entry[keys.size()];
+		try {
+			for (int i = 0; i < result.length; i++) result[i] = new Entry(keys.get(i), i);
+		} catch (UnsupportedEncodingException e) {
+			throw Alert.raised(e, "No UTF-8 support");
+		}
+		Arrays.sort(result, KEY_ORDER);
+		return result;
+	}
+
+	/**
+	 * Writes the records of a table.
+	 * @return the offset in the pool after the keys of this table.
+	 */
+	private static int writeRecords(DataOutputStream out, DatabaseApiIndex index, Entry[] entries,
+			int visible, int hidden, int offset) throws IOException {
+		for (Entry e : entries) {
+			out.writeInt(offset);
+			out.writeInt(e.key.length);
+			offset += e.key.length;
+			for (int w = 0; w < index.words; w++) out.writeLong(index.word(visible, e.id, w));
+			for (int w = 0; w < index.words; w++) out.writeLong(index.word(hidden, e.id, w));
+		}
+		return offset;
+	}
+
+	/**
+	 * Entry point of the compiler.
+	 * @param args the SQLite database and the compiled file.
+	 */
+	public static void main(String[] args) {
+		if (args.length != 2) {
+			System.err.println("Usage: ApiDatabaseCompiler <database.db> <output>");
+			System.exit(1);
+		}
+		try {
+			compile(args[0], new File(args[1]));
+		} catch (Alert e) {
+			System.err.println("Error during compilation: " + e.getMessage());
+			System.exit(1);
+		}
+	}
+}
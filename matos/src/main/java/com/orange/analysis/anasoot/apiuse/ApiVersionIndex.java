@@ -0,0 +1,255 @@
+package com.orange.analysis.anasoot.apiuse;
+
+/*
+ * #%L
+ * Matos
+ * %%
+ * Copyright (C) 2004 - 2014 Orange SA
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import soot.SootClass;
+import soot.SootField;
+import soot.SootMethod;
+
+import com.orange.matos.core.Alert;
+
+/**
+ * Index of the version database shared by all the analyses of the JVM. It is
+ * either read from the SQLite database (see {@link DatabaseApiIndex}) or from
+ * the binary file produced by {@link ApiDatabaseCompiler} (see
+ * {@link MappedApiIndex}). Classes and elements are identified by integers and
+ * the versions in which they are visible or hidden are bit sets, so that the
+ * queries of {@link VersionDatabase} become lookups.
+ * @author Pierre Cregut
+ *
+ */
+public abstract class ApiVersionIndex {
+
+	/** Bit sets of the versions where classes are visible. */
+	static final int CLASS_VISIBLE = 0;
+	/** Bit sets of the versions where classes are hidden. */
+	static final int CLASS_HIDDEN = 1;
+	/** Bit sets of the versions where elements are visible. */
+	static final int ELEMENT_VISIBLE = 2;
+	/** Bit sets of the versions where elements are hidden. */
+	static final int ELEMENT_HIDDEN = 3;
+
+	private static final Map<String, ApiVersionIndex> indexes = new HashMap<String, ApiVersionIndex>();
+
+	/** Versions without their visible/hidden prefix, in increasing order. */
+	protected String[] versions;
+	/** Number of longs used by the bit set of an entry. */
+	protected int words;
+
+	private long timestamp;
+
+	/**
+	 * Gives back the index of a database. It is built on first use and rebuilt
+	 * only if the database file changes. The file is either a SQLite version
+	 * database or its compiled form.
+	 * @param path path of the database file
+	 * @return the shared index
+	 * @throws Alert
+	 */
+	public static ApiVersionIndex get(String path) throws Alert {
+		synchronized (indexes) {
+			ApiVersionIndex index = indexes.get(path);
+			File file = new File(path);
+			long timestamp = file.lastModified();
+			if (index == null || index.timestamp != timestamp) {
+				index = MappedApiIndex.isCompiled(file) ? MappedApiIndex.open(file) : DatabaseApiIndex.load(path);
+				index.timestamp = timestamp;
+				indexes.put(path, index);
+			}
+			return index;
+		}
+	}
+
+	/**
+	 * Identifier of a class.
+	 * @param classKey see {@link #classKey(String, String)}
+	 * @return -1 if the class is not in the database.
+	 */
+	abstract int findClass(String classKey);
+
+	/**
+	 * Identifier of a field or a method.
+	 * @param classKey the key of the declaring class
+	 * @param type the type of the field or the signature of the method
+	 * @param name the name of the element
+	 * @return -1 if the element is not in the database.
+	 */
+	abstract int findElement(String classKey, String type, String name);
+
+	/**
+	 * A word of the bit set of an entry.
+	 * @param table one of {@link #CLASS_VISIBLE}, {@link #CLASS_HIDDEN},
+	 * {@link #ELEMENT_VISIBLE} or {@link #ELEMENT_HIDDEN}
+	 * @param id the identifier of the class or of the element
+	 * @param word the index of the word (less than {@link #words}).
+	 * @return
+	 */
+	abstract long word(int table, int id, int word);
+
+	/**
+	 * Key of a class in the index.
+	 * @param packageName
+	 * @param className name of the class in the package (java style)
+	 * @return
+	 */
+	static String classKey(String packageName, String className) {
+		return packageName + " " + className;
+	}
+
+	/**
+	 * Key of an element in the index.
+	 * @param classKey key of the declaring class
+	 * @param type the type of the field or the signature of the method
+	 * @param name the name of the element
+	 * @return
+	 */
+	static String elementKey(String classKey, String type, String name) {
+		return classKey + " " + type + " " + name;
+	}
+
+	private static String classKey(SootClass c) {
+		return classKey(c.getPackageName(), c.getJavaStyleName());
+	}
+
+	/**
+	 * Versions known in the database (without the visible and hidden prefix).
+	 * @return
+	 */
+	public List<String> getVersions() {
+		List<String> result = new ArrayList<String>(versions.length);
+		for (String v : versions) result.add(v);
+		return result;
+	}
+
+	/**
+	 * Identifier of a class in the index.
+	 * @param c
+	 * @return -1 if the class is not in the database.
+	 */
+	public int findClass(SootClass c) {
+		return findClass(classKey(c));
+	}
+
+	private boolean isEmpty(int table, int id) {
+		for (int w = 0; w < words; w++) {
+			if (word(table, id, w) != 0) return false;
+		}
+		return true;
+	}
+
+	private boolean contains(int table, int id, int bit) {
+		return (word(table, id, bit / 64) & (1L << (bit % 64))) != 0;
+	}
+
+	/**
+	 * Same contract as the corresponding queries of {@link VersionDatabase}.
+	 */
+	private String lastUnsupported(int visible, int hidden, int id) {
+		if (id < 0) return null;
+		if (isEmpty(visible, id) && !isEmpty(hidden, id)) return "";
+		for (int bit = versions.length - 1; bit >= 0; bit--) {
+			if (!contains(visible, id, bit)) return versions[bit];
+		}
+		return "";
+	}
+
+	private List<String> hiddenOnly(int visible, int hidden, int id) {
+		if (id < 0) return null;
+		ArrayList<String> result = new ArrayList<String>();
+		if (!isEmpty(visible, id)) return result;
+		for (int bit = 0; bit < versions.length; bit++) {
+			if (contains(hidden, id, bit)) result.add(versions[bit]);
+		}
+		return result;
+	}
+
+	private int findElement(SootMethod m) {
+		return findElement(classKey(m.getDeclaringClass()), VersionDatabase.signature(m), m.getName());
+	}
+
+	private int findElement(SootField f) {
+		return findElement(classKey(f.getDeclaringClass()), f.getType().toString(), f.getName());
+	}
+
+	/**
+	 * Gives the last version in which a class is not supported (eg. Class c 
+	 * exists in 2.3 and more, gives back 2.2)
+	 * @return Returns a null object if the class can't be found in the DB, 
+	 * an empty String if it is present and visible in every version, or 
+	 * is hidden in one version or more and absent in others,
+	 * else the last version for which it is not supported
+	 */
+	public String getLastUnsupportedVersionForClass(SootClass c) {
+		return lastUnsupported(CLASS_VISIBLE, CLASS_HIDDEN, findClass(c));
+	}
+
+	/**
+	 * Name of last version where this method is NOT supported.
+	 * @param m
+	 * @return
+	 */
+	public String getLastUnsupportedVersionForElement(SootMethod m) {
+		return lastUnsupported(ELEMENT_VISIBLE, ELEMENT_HIDDEN, findElement(m));
+	}
+
+	/**
+	 * Name of last version where this field is NOT supported.
+	 * @param f
+	 * @return
+	 */
+	public String getLastUnsupportedVersionForElement(SootField f) {
+		return lastUnsupported(ELEMENT_VISIBLE, ELEMENT_HIDDEN, findElement(f));
+	}
+
+	/**
+	 * Gives the list of version in which a class is hidden only
+	 * @return null object if the class cannot be found in the DB, 
+	 * an empty List if it is present in one or more versions, else the name
+	 * of each version in which it's hidden only
+	 */
+	public List<String> getHiddenApisForClass(SootClass c) {
+		return hiddenOnly(CLASS_VISIBLE, CLASS_HIDDEN, findClass(c));
+	}
+
+	/**
+	 * List of hidden APIs of a method
+	 * @param m
+	 * @return
+	 */
+	public List<String> getHiddenApisForElement(SootMethod m) {
+		return hiddenOnly(ELEMENT_VISIBLE, ELEMENT_HIDDEN, findElement(m));
+	}
+
+	/**
+	 * List of hidden APIs of a field.
+	 * @param f
+	 * @return
+	 */
+	public List<String> getHiddenApisForElement(SootField f) {
+		return hiddenOnly(ELEMENT_VISIBLE, ELEMENT_HIDDEN, findElement(f));
+	}
+}
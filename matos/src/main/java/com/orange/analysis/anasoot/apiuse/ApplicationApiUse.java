@@ -20,9 +20,9 @@ package com.orange.analysis.anasoot.apiuse;
  * #L%
  */
 
-import java.sql.SQLException;
 import java.util.Comparator;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.TreeMap;
@@ -46,8 +46,10 @@ public class ApplicationApiUse {
 
   private HashMap<String, TreeSet<AbstractHost>> unsupported;
   private TreeMap<AbstractHost, List<String>> hiddens;
-  private VersionDatabase database;
+  private ApiVersionIndex database;
   private List<String> versions;
+  /** Elements already checked: they are met again at each round of the analysis. */
+  private HashSet<AbstractHost> registered;
   
   /**
    * Comparator to sort elements that either SootClass, SootMethod or SootField
@@ -93,12 +95,9 @@ public class ApplicationApiUse {
     unsupported = new HashMap<String, TreeSet<AbstractHost>>();
     hiddens = new TreeMap<AbstractHost, List<String>>(ElementsComparator);
 
-    try {
-      database = new VersionDatabase(versionDatabasePath);
-      versions = database.getVersions();
-    } catch (SQLException e) {
-      throw new Alert("Cannot open version database - " + e.getMessage());
-    }
+    registered = new HashSet<AbstractHost>();
+    database = ApiVersionIndex.get(versionDatabasePath);
+    versions = database.getVersions();
   }
   
   /**
@@ -123,7 +122,7 @@ public class ApplicationApiUse {
    * @throws Alert
    */
   public void register(SootClass c, SootClass orig ) throws Alert {
-    
+    if (!registered.add(c)) return;
     String lastUnsupported = database.getLastUnsupportedVersionForClass(c);
     if(lastUnsupported!=null && !lastUnsupported.isEmpty())
       addUnsupported(lastUnsupported, c);
@@ -143,7 +142,7 @@ public class ApplicationApiUse {
    * @throws Alert
    */
   public void register(SootField f, SootClass orig) throws Alert {
-
+    if (!registered.add(f)) return;
     String lastUnsupported = database.getLastUnsupportedVersionForElement(f);
     if(lastUnsupported!=null && !lastUnsupported.isEmpty())
       addUnsupported(lastUnsupported, f);
@@ -194,6 +193,7 @@ public class ApplicationApiUse {
 			// ignore static class initializers
 			return;
 		}
+		if (!registered.add(m)) return;
 
 		String lastUnsupported = database.getLastUnsupportedVersionForElement(m);
 		if(lastUnsupported!=null && !lastUnsupported.isEmpty())
@@ -208,16 +208,12 @@ public class ApplicationApiUse {
 
 
 	/**
-	 * Close definitively the database.
+	 * Close definitively the database. The index is shared by all the
+	 * analyses and stays in memory.
 	 * @throws Alert
 	 */
 	public void closeDB() throws Alert {
-		if(database!=null)
-			try {
-				database.close();
-			} catch (SQLException e) {
-				throw new Alert("Error while closing version database - " + e.getMessage());
-			}
+		database = null;
 	}
 
 
@@ -0,0 +1,233 @@
+package com.orange.analysis.anasoot.apiuse;
+
+/*
+ * #%L
+ * Matos
+ * %%
+ * Copyright (C) 2004 - 2014 Orange SA
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+
+import com.orange.matos.core.Alert;
+
+/**
+ * Index of the version database read from the SQLite file. The database is
+ * read once with a few bulk queries and kept in hash maps.
+ * @author Pierre Cregut
+ *
+ */
+class DatabaseApiIndex extends ApiVersionIndex {
+
+	private static final String ALL_VERSIONS = "SELECT version_id, version_name FROM version;";
+	private static final String ALL_PACKAGES = "SELECT package_id, package_name FROM package;";
+	private static final String ALL_CLASSES = "SELECT class_id, class_name, package_id FROM class;";
+	private static final String ALL_TYPES = "SELECT type_id, type FROM type;";
+	private static final String ALL_ELEMENTS = "SELECT element_id, element_name, class_id, type_id FROM element;";
+	private static final String ALL_CLASS_VERSIONS = "SELECT class_id, version_id FROM class_version;";
+	private static final String ALL_ELEMENT_VERSIONS = "SELECT element_id, version_id FROM element_version;";
+
+	private final Map<String, Integer> classIds = new HashMap<String, Integer>();
+	private final Map<String, Integer> typeIds = new HashMap<String, Integer>();
+	private final Map<String, Integer> elementIds = new HashMap<String, Integer>();
+
+	/** Keys of the classes and elements, by identifier, as used in the compiled form. */
+	private final List<String> classKeys = new ArrayList<String>();
+	private final List<String> typeNames = new ArrayList<String>();
+	private final List<String> elementKeys = new ArrayList<String>();
+
+	private final long[] classVisible;
+	private final long[] classHidden;
+	private final long[] elementVisible;
+	private final long[] elementHidden;
+
+	/**
+	 * Reads a SQLite version database.
+	 * @param path path of the database
+	 * @return the index
+	 * @throws Alert
+	 */
+	static DatabaseApiIndex load(String path) throws Alert {
+		try {
+			VersionDatabase database = new VersionDatabase(path);
+			try {
+				return new DatabaseApiIndex(database);
+			} finally {
+				database.close();
+			}
+		} catch (SQLException e) {
+			throw new Alert("Cannot read version database - " + e.getMessage());
+		} catch (IndexOutOfBoundsException e) {
+			throw new Alert("Malformed version entries in version database - " + e.getMessage());
+		}
+	}
+
+	private DatabaseApiIndex(VersionDatabase database) throws SQLException {
+		Statement statement = database.con.createStatement();
+		try {
+			// Versions: the first letter tells if the API is visible or hidden.
+			Map<Integer, String> versionNames = new HashMap<Integer, String>();
+			TreeSet<String> names = new TreeSet<String>();
+			ResultSet rs = statement.executeQuery(ALL_VERSIONS);
+			try {
+				while (rs.next()) {
+					String name = rs.getString(2);
+					versionNames.put(rs.getInt(1), name);
+					names.add(name.substring(1));
+				}
+			} finally { rs.close(); }
+			versions = names.toArray(new String[names.size()]);
+			words = (versions.length + 63) / 64;
+			Map<Integer, Integer> versionBit = new HashMap<Integer, Integer>();
+			Map<Integer, Boolean> versionVisible = new HashMap<Integer, Boolean>();
+			for (Map.Entry<Integer, String> e : versionNames.entrySet()) {
+				String name = e.getValue();
+				versionBit.put(e.getKey(), Arrays.binarySearch(versions, name.substring(1)));
+				versionVisible.put(e.getKey(),
+						name.regionMatches(true, 0, VersionDatabase.VISIBLE_PREFIX, 0, 1));
+			}
+
+			Map<Integer, String> packages = new HashMap<Integer, String>();
+			rs = statement.executeQuery(ALL_PACKAGES);
+			try {
+				while (rs.next()) packages.put(rs.getInt(1), rs.getString(2));
+			} finally { rs.close(); }
+
+			Map<Integer, Integer> classIndex = new HashMap<Integer, Integer>();
+			rs = statement.executeQuery(ALL_CLASSES);
+			try {
+				while (rs.next()) {
+					String packageName = packages.get(rs.getInt(3));
+					if (packageName == null) continue;
+					String key = classKey(packageName, rs.getString(2));
+					Integer id = classIds.get(key);
+					if (id == null) {
+						id = classIds.size();
+						classIds.put(key, id);
+						classKeys.add(key);
+					}
+					classIndex.put(rs.getInt(1), id);
+				}
+			} finally { rs.close(); }
+
+			Map<Integer, Integer> typeIndex = new HashMap<Integer, Integer>();
+			rs = statement.executeQuery(ALL_TYPES);
+			try {
+				while (rs.next()) {
+					String type = rs.getString(2);
+					Integer id = typeIds.get(type);
+					if (id == null) {
+						id = typeIds.size();
+						typeIds.put(type, id);
+						typeNames.add(type);
+					}
+					typeIndex.put(rs.getInt(1), id);
+				}
+			} finally { rs.close(); }
+
+			Map<Integer, Integer> elementIndex = new HashMap<Integer, Integer>();
+			rs = statement.executeQuery(ALL_ELEMENTS);
+			try {
+				while (rs.next()) {
+					Integer clazz = classIndex.get(rs.getInt(3));
+					Integer type = typeIndex.get(rs.getInt(4));
+					if (clazz == null || type == null) continue;
+					String key = elementKey(clazz, type, rs.getString(2));
+					Integer id = elementIds.get(key);
+					if (id == null) {
+						id = elementIds.size();
+						elementIds.put(key, id);
+						elementKeys.add(elementKey(classKeys.get(clazz), typeNames.get(type), rs.getString(2)));
+					}
+					elementIndex.put(rs.getInt(1), id);
+				}
+			} finally { rs.close(); }
+
+			classVisible = new long[classIds.size() * words];
+			classHidden = new long[classIds.size() * words];
+			fill(statement, ALL_CLASS_VERSIONS, classIndex, versionBit, versionVisible, classVisible, classHidden);
+			elementVisible = new long[elementIds.size() * words];
+			elementHidden = new long[elementIds.size() * words];
+			fill(statement, ALL_ELEMENT_VERSIONS, elementIndex, versionBit, versionVisible, elementVisible, elementHidden);
+		} finally {
+			statement.close();
+		}
+	}
+
+	private void fill(Statement statement, String query, Map<Integer, Integer> index,
+			Map<Integer, Integer> versionBit, Map<Integer, Boolean> versionVisible,
+			long[] visible, long[] hidden) throws SQLException {
+		ResultSet rs = statement.executeQuery(query);
+		try {
+			while (rs.next()) {
+				Integer id = index.get(rs.getInt(1));
+				Integer bit = versionBit.get(rs.getInt(2));
+				if (id == null || bit == null) continue;
+				long[] set = versionVisible.get(rs.getInt(2)) ? visible : hidden;
+				set[id * words + bit / 64] |= 1L << (bit % 64);
+			}
+		} finally { rs.close(); }
+	}
+
+	private static String elementKey(int clazz, int type, String name) {
+		return clazz + " " + type + " " + name;
+	}
+
+	@Override
+	int findClass(String classKey) {
+		Integer id = classIds.get(classKey);
+		return id == null ? -1 : id;
+	}
+
+	@Override
+	int findElement(String classKey, String type, String name) {
+		Integer clazz = classIds.get(classKey);
+		Integer typeId = typeIds.get(type);
+		if (clazz == null || typeId == null) return -1;
+		Integer id = elementIds.get(elementKey(clazz, typeId, name));
+		return id == null ? -1 : id;
+	}
+
+	@Override
+	long word(int table, int id, int word) {
+		switch (table) {
+		case CLASS_VISIBLE: return classVisible[id * words + word];
+		case CLASS_HIDDEN: return classHidden[id * words + word];
+		case ELEMENT_VISIBLE: return elementVisible[id * words + word];
+		default: return elementHidden[id * words + word];
+		}
+	}
+
+	/**
+	 * Keys of the classes by identifier.
+	 * @return
+	 */
+	List<String> classKeys() { return classKeys; }
+
+	/**
+	 * Keys of the elements by identifier.
+	 * @return
+	 */
+	List<String> elementKeys() { return elementKeys; }
+}
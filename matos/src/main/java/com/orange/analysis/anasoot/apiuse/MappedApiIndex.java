@@ -0,0 +1,181 @@
+package com.orange.analysis.anasoot.apiuse;
+
+/*
+ * #%L
+ * Matos
+ * %%
+ * Copyright (C) 2004 - 2014 Orange SA
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.UnsupportedEncodingException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+import com.orange.matos.core.Alert;
+
+/**
+ * Index of the version database read from its compiled form (see
+ * {@link ApiDatabaseCompiler}). The file is mapped in memory and queried in
+ * place: keys are sorted so that a lookup is a binary search on the mapped
+ * records. Worker processes share the file through the page cache.
+ * <p>
+ * Layout (big endian):
+ * <ul>
+ * <li>header: magic, format version, number of versions, versions (length
+ * and UTF-8 bytes), number of words of a bit set, number of classes, number
+ * of elements;</li>
+ * <li>the class records then the element records, each made of the offset
+ * and length of its key in the pool, the visible bit set and the hidden bit
+ * set;</li>
+ * <li>the pool of keys (UTF-8).</li>
+ * </ul>
+ * @author Pierre Cregut
+ *
+ */
+class MappedApiIndex extends ApiVersionIndex {
+
+	/** First bytes of a compiled database. */
+	static final int MAGIC = 0x4d415049;
+	/** Version of the layout. */
+	static final int FORMAT = 1;
+
+	private final ByteBuffer buffer;
+	private final int classCount;
+	private final int elementCount;
+	private final int recordSize;
+	private final int classTable;
+	private final int elementTable;
+	private final int pool;
+
+	/**
+	 * Checks if a file is a compiled database.
+	 * @param file
+	 * @return
+	 */
+	static boolean isCompiled(File file) {
+		try {
+			DataInputStream is = new DataInputStream(new FileInputStream(file));
+			try {
+				return is.readInt() == MAGIC;
+			} finally {
+				is.close();
+			}
+		} catch (IOException e) {
+			return false;
+		}
+	}
+
+	/**
+	 * Maps a compiled database.
+	 * @param file
+	 * @return the index
+	 * @throws Alert
+	 */
+	static MappedApiIndex open(File file) throws Alert {
+		try {
+			RandomAccessFile raf = new RandomAccessFile(file, "r");
+			try {
+				FileChannel channel = raf.getChannel();
+				return new MappedApiIndex(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+			} finally {
+				raf.close();
+			}
+		} catch (IOException e) {
+			throw Alert.raised(e, "Cannot read compiled version database " + file);
+		} catch (RuntimeException e) {
+			throw Alert.raised(e, "Malformed compiled version database " + file);
+		}
+	}
+
+	private MappedApiIndex(ByteBuffer buffer) throws IOException {
+		this.buffer = buffer;
+		if (buffer.getInt() != MAGIC || buffer.getInt() != FORMAT) {
+			throw new IOException("Unknown format");
+		}
+		versions = new String[buffer.getInt()];
+		for (int i = 0; i < versions.length; i++) {
+			byte[] name = new byte[buffer.getShort() & 0xffff];
+			buffer.get(name);
+			versions[i] = new String(name, "UTF-8");
+		}
+		words = buffer.getInt();
+		classCount = buffer.getInt();
+		elementCount = buffer.getInt();
+		recordSize = 8 + 16 * words;
+		classTable = buffer.position();
+		elementTable = classTable + classCount * recordSize;
+		pool = elementTable + elementCount * recordSize;
+	}
+
+	/**
+	 * Binary search of a key in a table.
+	 * @return the position of the record or -1.
+	 */
+	private int search(int table, int count, String key) {
+		byte[] k;
+		try {
+			k = key.getBytes("UTF-8");
+		} catch (UnsupportedEncodingException e) {
+			throw new RuntimeException(e);
+		}
+		int low = 0;
+		int high = count - 1;
+		while (low <= high) {
+			int mid = (low + high) >>> 1;
+			int c = compare(table + mid * recordSize, k);
+			if (c < 0) low = mid + 1;
+			else if (c > 0) high = mid - 1;
+			else return mid;
+		}
+		return -1;
+	}
+
+	/**
+	 * Compares the key of a record with a key (unsigned lexicographic order).
+	 */
+	private int compare(int record, byte[] key) {
+		int offset = pool + buffer.getInt(record);
+		int length = buffer.getInt(record + 4);
+		int n = Math.min(length, key.length);
+		for (int i = 0; i < n; i++) {
+			int c = (buffer.get(offset + i) & 0xff) - (key[i] & 0xff);
+			if (c != 0) return c;
+		}
+		return length - key.length;
+	}
+
+	@Override
+	int findClass(String classKey) {
+		return search(classTable, classCount, classKey);
+	}
+
+	@Override
+	int findElement(String classKey, String type, String name) {
+		return search(elementTable, elementCount, elementKey(classKey, type, name));
+	}
+
+	@Override
+	long word(int table, int id, int word) {
+		int start = (table == CLASS_VISIBLE || table == CLASS_HIDDEN) ? classTable : elementTable;
+		int set = (table == CLASS_VISIBLE || table == ELEMENT_VISIBLE) ? 0 : words;
+		return buffer.getLong(start + id * recordSize + 8 + 8 * (set + word));
+	}
+}
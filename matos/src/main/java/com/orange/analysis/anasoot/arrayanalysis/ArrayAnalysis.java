@@ -23,12 +23,9 @@ package com.orange.analysis.anasoot.arrayanalysis;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.BitSet;
-import java.util.HashMap;
-import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Set;
-import java.util.TreeMap;
 
 import soot.Local;
 import soot.PointsToAnalysis;
@@ -70,7 +67,20 @@ public class ArrayAnalysis {
 
 	private final static int UNKNOWN_CONTENTS = - 256;
 	
-	private static class BAAbstraction {
+	/**
+	 * Largest array whose known contents are stored densely.
+	 */
+	private final static int DENSE_LIMIT = 1 << 16;
+
+	/**
+	 * Marks an index without known contents.
+	 */
+	private final static int ABSENT = Integer.MIN_VALUE;
+
+	/**
+	 * Abstraction of the contents of a byte array.
+	 */
+	static class BAAbstraction {
 		/**
 		 * Set if somebody writes to it. 
 		 */
@@ -78,9 +88,20 @@ public class ArrayAnalysis {
 
 		private BitSet spoiled = new BitSet();
 		/**
-		 * Contents if not spoiled.
+		 * Contents if not spoiled for indices in the array when its size is
+		 * known (allocated on the first write): values and indices defined.
 		 */
-		TreeMap <Integer,Integer> contents = new TreeMap <Integer,Integer>();
+		private byte [] dense;
+		private BitSet defined;
+		/**
+		 * Other contents if not spoiled.
+		 */
+		private IntByteMap sparse = new IntByteMap();
+		/**
+		 * Number of indices with contents and the largest one.
+		 */
+		private int count = 0;
+		private int lastKey = 0;
 
 		private int size = -1;
 		/**
@@ -88,22 +109,78 @@ public class ArrayAnalysis {
 		 * @param v
 		 */
 		public void set(int key, byte v) {
-			if(contents.containsKey(key)) spoil(key);
-			else contents.put(key, (int) v);
+			if (isSpoiled) return;
+			if (dense == null && key >= 0 && key < size && size <= DENSE_LIMIT) toDense();
+			if (dense != null && key >= 0 && key < dense.length) {
+				if (defined.get(key)) { spoil(key); return; }
+				defined.set(key);
+				dense[key] = v;
+			} else {
+				if (sparse.containsKey(key)) { spoil(key); return; }
+				sparse.put(key, v);
+			}
+			if (count == 0 || key > lastKey) lastKey = key;
+			count++;
+		}
+
+		/**
+		 * Moves the contents of the indices in the array to dense storage.
+		 */
+		private void toDense() {
+			dense = new byte [size];
+			defined = new BitSet(size);
+			IntByteMap others = new IntByteMap();
+			for (int i = 0; i < sparse.capacity(); i++) {
+				if (!sparse.isUsed(i)) continue;
+				int key = sparse.keyAt(i);
+				if (key >= 0 && key < size) {
+					defined.set(key);
+					dense[key] = sparse.valueAt(i);
+				} else others.put(key, sparse.valueAt(i));
+			}
+			sparse = others;
+		}
+
+		/**
+		 * Moves back the dense contents to the sparse storage.
+		 */
+		private void toSparse() {
+			for (int key = defined.nextSetBit(0); key >= 0; key = defined.nextSetBit(key + 1)) {
+				sparse.put(key, dense[key]);
+			}
+			dense = null;
+			defined = null;
+		}
+
+		/**
+		 * Contents at a given index 
+		 * @param index
+		 * @return the byte value or ABSENT
+		 */
+		private int get(int index) {
+			if (dense != null && index >= 0 && index < dense.length) {
+				return defined.get(index) ? dense[index] : ABSENT;
+			}
+			return sparse.get(index, ABSENT);
 		}
 
 		/**
 		 * Set the size of the array.
 		 * @param size
 		 */
-		public void setSize(int size) { this.size = size; }
+		public void setSize(int size) { 
+			this.size = size;
+			if (dense != null && dense.length != size) toSparse();
+		}
 		
 		/**
 		 * Declare the full abstraction as spoiled (ie. Top)
 		 */
 		public void spoil() {
 			isSpoiled = true;
-			contents = null;
+			dense = null;
+			defined = null;
+			sparse = null;
 			spoiled = null;
 		}
 
@@ -124,13 +201,13 @@ public class ArrayAnalysis {
 			if (isSpoiled) return "*";
 			StringBuilder result = new StringBuilder();
 			result.append("[");
-			int last = size == -1 ? (contents.size() > 0 ? contents.lastKey() : 0) : size;
+			int last = size == -1 ? (count > 0 ? lastKey : 0) : size;
 			for(int i=0; i < last; i++) {
 				if (i>0) result.append(",");
 				if (spoiled.get(i)) result.append("*");
 				else {
-					Integer v = contents.get(i);
-					if(v==null) result.append("_");
+					int v = get(i);
+					if(v==ABSENT) result.append("_");
 					else result.append(Integer.toHexString( v & 0xFF ));
 				}
 			}
@@ -140,10 +217,10 @@ public class ArrayAnalysis {
 		}
 	}
 
-	private HashMap <Integer,BAAbstraction>repositoryByteArrays = new HashMap <Integer,BAAbstraction>();
-	private HashMap <Integer,AbsValue []> repositoryStringArrays = new HashMap <Integer,AbsValue []>();
-	private HashMap <Integer,AbsValue> repositoryOtherArrays = new HashMap <Integer,AbsValue>();
-	private HashSet <Integer> seen = new HashSet<Integer>();
+	private IntObjectMap <BAAbstraction>repositoryByteArrays = new IntObjectMap <BAAbstraction>();
+	private IntObjectMap <AbsValue []> repositoryStringArrays = new IntObjectMap <AbsValue []>();
+	private IntObjectMap <AbsValue> repositoryOtherArrays = new IntObjectMap <AbsValue>();
+	private BitSet seen = new BitSet();
 	
 	private BAAbstraction get(int id) {
 		BAAbstraction result = repositoryByteArrays.get(id);
@@ -285,7 +362,7 @@ public class ArrayAnalysis {
 			BAAbstraction abs = get(id);
 			if (index == UNKNOWN_CONTENTS) abs.spoil();
 			else {
-				if (abs.contents == null || contents == UNKNOWN_CONTENTS) abs.spoil(index);
+				if (abs.isSpoiled || contents == UNKNOWN_CONTENTS) abs.spoil(index);
 				else abs.set(index, (byte) contents);
 			}
 		}
@@ -330,8 +407,8 @@ public class ArrayAnalysis {
 		if (pag == null) return;
 		int id = node.getNumber();
 		// Even if type stratification was defeated, we will not loop on an array containing itself.
-		if (seen.contains(id)) return;
-		seen.add(id);
+		if (seen.get(id)) return;
+		seen.set(id);
 		P2SetFactory ptsf = pag.getSetFactory();
 		PointsToSetInternal pts = ptsf.newSet(node.getType(), pag);
 		pts.add(node);
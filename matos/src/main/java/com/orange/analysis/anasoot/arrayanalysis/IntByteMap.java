@@ -0,0 +1,140 @@
+package com.orange.analysis.anasoot.arrayanalysis;
+
+
+/*
+ * #%L
+ * Matos
+ * %%
+ * Copyright (C) 2004 - 2014 Orange SA
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+/**
+ * Map from int keys to bytes with open addressing (linear probing). Used for
+ * the sparse contents of byte arrays.
+ * @author Pierre Cregut
+ */
+final class IntByteMap {
+
+	private int [] keys;
+	private byte [] values;
+	private boolean [] used;
+	private int count = 0;
+
+	/**
+	 * Creates an empty map
+	 */
+	IntByteMap() {
+		keys = new int [8];
+		values = new byte [8];
+		used = new boolean [8];
+	}
+
+	private int slot(int key) {
+		int mask = keys.length - 1;
+		int i = IntObjectMap.hash(key) & mask;
+		while (used[i] && keys[i] != key) i = (i + 1) & mask;
+		return i;
+	}
+
+	/**
+	 * Checks if a key is defined.
+	 * @param key the key
+	 * @return true if a value is associated to the key
+	 */
+	boolean containsKey(int key) {
+		return used[slot(key)];
+	}
+
+	/**
+	 * Value associated to a key
+	 * @param key the key
+	 * @param absent value given back if the key is not defined
+	 * @return the value or absent
+	 */
+	int get(int key, int absent) {
+		int i = slot(key);
+		return used[i] ? values[i] : absent;
+	}
+
+	/**
+	 * Associates a value to a key
+	 * @param key the key
+	 * @param value the value
+	 */
+	void put(int key, byte value) {
+		int i = slot(key);
+		if (!used[i]) {
+			if (2 * (count + 1) > keys.length) {
+				grow();
+				i = slot(key);
+			}
+			used[i] = true;
+			keys[i] = key;
+			count++;
+		}
+		values[i] = value;
+	}
+
+	/**
+	 * Number of keys
+	 * @return the number of keys
+	 */
+	int size() { return count; }
+
+	/**
+	 * Number of slots. Slots are used to enumerate the contents.
+	 * @return the capacity of the table
+	 */
+	int capacity() { return keys.length; }
+
+	/**
+	 * Checks if a slot contains a key.
+	 * @param slot the slot
+	 * @return true if used
+	 */
+	boolean isUsed(int slot) { return used[slot]; }
+
+	/**
+	 * Key in a used slot
+	 * @param slot the slot
+	 * @return the key
+	 */
+	int keyAt(int slot) { return keys[slot]; }
+
+	/**
+	 * Value in a used slot
+	 * @param slot the slot
+	 * @return the value
+	 */
+	byte valueAt(int slot) { return values[slot]; }
+
+	private void grow() {
+		int [] oldKeys = keys;
+		byte [] oldValues = values;
+		boolean [] oldUsed = used;
+		int capacity = 2 * oldKeys.length;
+		keys = new int [capacity];
+		values = new byte [capacity];
+		used = new boolean [capacity];
+		for (int j = 0; j < oldKeys.length; j++) {
+			if (!oldUsed[j]) continue;
+			int i = slot(oldKeys[j]);
+			used[i] = true;
+			keys[i] = oldKeys[j];
+			values[i] = oldValues[j];
+		}
+	}
+}
@@ -0,0 +1,110 @@
+package com.orange.analysis.anasoot.arrayanalysis;
+
+
+/*
+ * #%L
+ * Matos
+ * %%
+ * Copyright (C) 2004 - 2014 Orange SA
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+/**
+ * Map from int keys to objects with open addressing (linear probing).
+ * Keys are not boxed. Null values cannot be distinguished from missing keys.
+ * @param <V> type of the values
+ * @author Pierre Cregut
+ */
+final class IntObjectMap <V> {
+
+	private int [] keys;
+	private Object [] values;
+	private boolean [] used;
+	private int count = 0;
+
+	/**
+	 * Creates an empty map
+	 */
+	IntObjectMap() {
+		keys = new int [16];
+		values = new Object [16];
+		used = new boolean [16];
+	}
+
+	static int hash(int key) {
+		int h = key * 0x9E3779B9;
+		return h ^ (h >>> 16);
+	}
+
+	private int slot(int key) {
+		int mask = keys.length - 1;
+		int i = hash(key) & mask;
+		while (used[i] && keys[i] != key) i = (i + 1) & mask;
+		return i;
+	}
+
+	/**
+	 * Value associated to a key
+	 * @param key the key
+	 * @return the value or null
+	 */
+	@SuppressWarnings("unchecked")
+	V get(int key) {
+		int i = slot(key);
+		return used[i] ? (V) values[i] : null;
+	}
+
+	/**
+	 * Associates a value to a key
+	 * @param key the key
+	 * @param value the value
+	 */
+	void put(int key, V value) {
+		int i = slot(key);
+		if (!used[i]) {
+			if (2 * (count + 1) > keys.length) {
+				grow();
+				i = slot(key);
+			}
+			used[i] = true;
+			keys[i] = key;
+			count++;
+		}
+		values[i] = value;
+	}
+
+	/**
+	 * Number of keys
+	 * @return the number of keys
+	 */
+	int size() { return count; }
+
+	private void grow() {
+		int [] oldKeys = keys;
+		Object [] oldValues = values;
+		boolean [] oldUsed = used;
+		int capacity = 2 * oldKeys.length;
+		keys = new int [capacity];
+		values = new Object [capacity];
+		used = new boolean [capacity];
+		for (int j = 0; j < oldKeys.length; j++) {
+			if (!oldUsed[j]) continue;
+			int i = slot(oldKeys[j]);
+			used[i] = true;
+			keys[i] = oldKeys[j];
+			values[i] = oldValues[j];
+		}
+	}
+}
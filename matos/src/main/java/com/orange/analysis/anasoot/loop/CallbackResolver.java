@@ -43,6 +43,8 @@ import soot.jimple.toolkits.callgraph.Edge;
 import soot.jimple.toolkits.pointer.MemoryEfficientRasUnion;
 import soot.jimple.toolkits.pointer.Union;
 
+import com.orange.analysis.anasoot.spy.CallGraphIndex;
+
 /**
  * @author Pierre Cregut
  * Gives back what is considered as a callback in the given technology
@@ -52,6 +54,7 @@ public class CallbackResolver {
 	private HashMap <SootMethod,Translation> table = new HashMap <SootMethod,Translation> ();
 	private PointsToAnalysis ptAnalysis;
 	private CallGraph callgraph;
+	private final CallGraphIndex callGraphIndex;
 
 	/**
 	 * A LinkMethod class represents the fact that a given java method establishes a link between two objects,
@@ -101,13 +104,23 @@ public class CallbackResolver {
 
 	/**
 	 * Simple constructor
+	 * @param callGraphIndex the callgraph of the analysis and its scope.
 	 */
-	public CallbackResolver() {
+	public CallbackResolver(CallGraphIndex callGraphIndex) {
+		this.callGraphIndex = callGraphIndex;
 		Scene scene = Scene.v();
 		callgraph =  scene.getCallGraph();
 		ptAnalysis = scene.getPointsToAnalysis();
 	}
 
+	/**
+	 * The callgraph of the analysis.
+	 * @return the callgraph index shared with the other loop analyses.
+	 */
+	public CallGraphIndex getCallGraph() {
+		return callGraphIndex;
+	}
+
 	/** Register a new translation in the global table that is
 	 * searched each time a new method call is analysed */
 
@@ -183,7 +196,7 @@ public class CallbackResolver {
 				} catch (Exception exc) {
 					System.out.println("Cannot find [" +  trans.target + "]");
 				}
-				if (devirtualized != null) 
+				if (devirtualized != null && callGraphIndex.inScope(devirtualized)) 
 					result.put(devirtualized, trans.message);
 			}
 
@@ -210,6 +223,7 @@ public class CallbackResolver {
 		Union result = new MemoryEfficientRasUnion();
 		while(ite.hasNext()) {
 			Edge inedge =  ite.next();
+			if (!callGraphIndex.inScope(inedge.src())) continue;
 			InvokeExpr ie = inedge.srcStmt().getInvokeExpr();
 			if (ie != null) {
 				PointsToSet ptFrom = getPointsTo(ie,lm.fromIndex);
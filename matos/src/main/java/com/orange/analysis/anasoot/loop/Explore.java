@@ -21,9 +21,12 @@ package com.orange.analysis.anasoot.loop;
  */
 
 import java.io.PrintStream;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -33,10 +36,10 @@ import soot.Hierarchy;
 import soot.Scene;
 import soot.SootClass;
 import soot.SootMethod;
-import soot.jimple.toolkits.callgraph.CallGraph;
 import soot.jimple.toolkits.callgraph.Edge;
-import soot.toolkits.graph.CompleteUnitGraph;
 
+import com.orange.analysis.anasoot.spy.CallGraphSnapshot;
+import com.orange.analysis.anasoot.spy.LocalAnalysisCache;
 import com.orange.matos.utils.HtmlOutput;
 
 /**
@@ -113,9 +116,9 @@ public class Explore
 	}
 
 	/**
-	 * The callgraph of the midlet extracted by soot
+	 * Snapshot of the callgraph of the midlet extracted by soot
 	 */
-	final CallGraph cg;
+	final CallGraphSnapshot cg;
 	
 	/**
 	 * The callback resolver that finds callbacks of interest (entry points from the AMS)
@@ -140,7 +143,7 @@ public class Explore
 	 */
 	public Explore(CallbackResolver cba) { 
 		Scene sc = Scene.v();
-		this.cg = sc.getCallGraph();
+		this.cg = cba.getCallGraph().snapshot();
 		hierarchy = sc.getActiveHierarchy();
 		this.cba = cba; 
 		recAnalysis = new RecAnalysis(cba,cg);
@@ -164,18 +167,84 @@ public class Explore
 	}
 
 	/**
-	 * Do the analysis on a given callback. First we must tag the method in a recursion loop.
+	 * Do the analysis on a given callback. Recursion is computed once on the
+	 * whole callgraph.
 	 * @param method the callback method
  	 * @return gives back the set of steps.
 	 */
 	public Set <LoopStep> explore(SootMethod method) {
-		Set <LoopStep> set = new HashSet <LoopStep> ();
-		// Launch the recursive analysis on that callback
-		recAnalysis.doAnalysis(method);
-		explore(method, false, set, null, null, null);
+		recAnalysis.doCompleteAnalysis();
+		Set <LoopStep> set = new LinkedHashSet <LoopStep> ();
+		explore(method, set, null);
 		return set;
 	}
 
+	/**
+	 * A method being explored with the edges still to follow.
+	 */
+	private static class Frame {
+		/** The step of the method */
+		final LoopStep step;
+		/** Is there a loop above or is the method recursive */
+		final boolean loop;
+		/** Position of the next edge out of the method to follow */
+		int next;
+		/** Position following the last edge out of the method */
+		final int end;
+		/** Edge currently followed */
+		Edge edge;
+		/** Loop status for the methods called through edge */
+		boolean nextLoop;
+		/** Callbacks still to follow when edge is resolved by the callback resolver */
+		Iterator <Entry <SootMethod,String>> potential;
+
+		Frame(LoopStep step, boolean loop, int next, int end) {
+			this.step = step; this.loop = loop; this.next = next; this.end = end;
+		}
+	}
+
+	/**
+	 * Depth first exploration of the callgraph from a method. The order of visit
+	 * is the one of a recursive traversal but uses an explicit stack.
+	 * @param root the method we start from
+	 * @param worklist the steps already found.
+	 * @param relevant if not null, only methods in this set are explored.
+	 */
+	private void explore(SootMethod root, Set <LoopStep> worklist, Set <SootMethod> relevant) {
+		ArrayDeque <Frame> stack = new ArrayDeque <Frame> ();
+		Frame first = enter(root, false, worklist, null, null, null);
+		if (first != null) stack.push(first);
+		while (!stack.isEmpty()) {
+			Frame top = stack.peek();
+			SootMethod called;
+			String transMsg;
+			if (top.potential != null && top.potential.hasNext()) {
+				Entry <SootMethod,String> entry = top.potential.next();
+				called = entry.getKey();
+				transMsg = entry.getValue();
+			} else if (top.next < top.end) {
+				int pos = top.next++;
+				Edge edge = cg.outEdge(pos);
+				top.edge = edge;
+				top.nextLoop = top.loop || isLoop(edge);
+				top.potential = null;
+				if (isTranslated(edge)) {
+					Map <SootMethod,String> potential = cba.resolve(edge);
+					if (potential != null) top.potential = potential.entrySet().iterator();
+					continue;
+				}
+				called = cg.method(cg.target(pos));
+				transMsg = null;
+			} else {
+				stack.pop();
+				continue;
+			}
+			if (relevant != null && !relevant.contains(called)) continue;
+			Frame next = enter(called, top.nextLoop, worklist, top.step, top.edge, transMsg);
+			if (next != null) stack.push(next);
+		}
+	}
+
 	/**
 	 * @param method the method under scrutiny
 	 * @param globLoop is there a loop above (then we are in a loop).
@@ -183,12 +252,13 @@ public class Explore
 	 * @param prevStep previous step above in the callgraph
 	 * @param prevEdge the call to this place
 	 * @param prevMsg the corresponding message
+	 * @return the frame to explore the method or null if there is nothing to explore.
 	 */
-	private void explore(SootMethod method, boolean globLoop, Set <LoopStep> worklist,
+	private Frame enter(SootMethod method, boolean globLoop, Set <LoopStep> worklist,
 			LoopStep prevStep, Edge prevEdge, String prevMsg) {
 
 		if(!method.hasTag(LoopTag.name) && method.hasActiveBody()) {
-			new LoopAnalysis(new CompleteUnitGraph(method.getActiveBody()));
+			new LoopAnalysis(LocalAnalysisCache.v().get(method).getUnitGraph());
 			// la.doAnalysis();
 			method.addTag(new LoopTag());
 		}
@@ -196,27 +266,93 @@ public class Explore
 		boolean recLoop = recAnalysis.isRec(method);
 		boolean currentLoop = globLoop || recLoop;
 		LoopStep step = new LoopStep(method, currentLoop, prevStep, prevEdge, prevMsg);
-		if (worklist.contains(step)) return;
+		if (worklist.contains(step)) return null;
 		worklist.add(step);
-		if (!method.getDeclaringClass().isApplicationClass()) return;
-		for (Iterator <Edge> it = cg.edgesOutOf(method); it.hasNext(); ) {
-			Edge edge = it.next();
-			boolean localLoop = isLoop(edge);
-			boolean nextLoop = globLoop || recLoop || localLoop;
-			if ((edge.isClinit()) && cba.isActive(edge)) {
+		if (!method.getDeclaringClass().isApplicationClass()) return null;
+		int id = cg.id(method);
+		if (id < 0) return new Frame(step, currentLoop, 0, 0);
+		return new Frame(step, currentLoop, cg.firstOut(id), cg.endOut(id));
+	}
+
+	/**
+	 * Methods that may call each method through a callback resolved by the
+	 * callback resolver. Computed once.
+	 */
+	private Map <SootMethod, List<SootMethod>> callers;
+
+	/**
+	 * Last map of critical methods for which reaching was computed.
+	 */
+	private Map <SootMethod,SootMethod> reachingCriticals;
+
+	/**
+	 * Methods from which a critical method can be reached.
+	 */
+	private Set <SootMethod> reaching;
+
+	/**
+	 * Edges replaced by the callbacks given by the callback resolver.
+	 * @param edge the edge
+	 * @return true if explore follows the callbacks instead of the edge.
+	 */
+	private boolean isTranslated(Edge edge) {
+		return (edge.isClinit()) && cba.isActive(edge);
+	}
+
+	private void addCaller(SootMethod caller, SootMethod called) {
+		List <SootMethod> cell = callers.get(called);
+		if (cell == null) {
+			cell = new ArrayList <SootMethod> ();
+			callers.put(called, cell);
+		}
+		cell.add(caller);
+	}
+
+	/**
+	 * Computes the set of methods that can reach one of the critical methods. 
+	 * Only those methods can appear in a call trace, so the exploration of
+	 * the other ones is useless. The result is kept as long as the same map of
+	 * critical methods is used.
+	 * @param criticals the critical methods (keys of the map)
+	 * @return the set of methods reaching a critical one (criticals included).
+	 */
+	private Set <SootMethod> reaching(Map <SootMethod,SootMethod> criticals) {
+		if (reaching != null && reachingCriticals == criticals) return reaching;
+		if (callers == null) {
+			callers = new HashMap <SootMethod, List<SootMethod>> ();
+			for (int pos = 0; pos < cg.edgeCount(); pos++) {
+				Edge edge = cg.outEdge(pos);
+				if (!isTranslated(edge)) continue;
+				SootMethod caller = edge.src();
+				if (!caller.getDeclaringClass().isApplicationClass()) continue;
 				Map <SootMethod,String> potential = cba.resolve(edge);
 				if (potential != null) {
-				for (Entry <SootMethod,String> entry : potential.entrySet()) {
-					SootMethod called = entry.getKey();
-					String transMsg = entry.getValue();
-					explore(called, nextLoop, worklist, step, edge,transMsg);
+					for (SootMethod called : potential.keySet()) addCaller(caller, called);
 				}
+			}
+		}
+		Set <SootMethod> result = new HashSet <SootMethod> (criticals.keySet());
+		ArrayDeque <SootMethod> todo = new ArrayDeque <SootMethod> (result);
+		while (!todo.isEmpty()) {
+			SootMethod called = todo.pop();
+			int id = cg.id(called);
+			if (id >= 0) {
+				for (int pos = cg.firstIn(id); pos < cg.endIn(id); pos++) {
+					if (isTranslated(cg.inEdge(pos))) continue;
+					SootMethod caller = cg.method(cg.source(pos));
+					if (!caller.getDeclaringClass().isApplicationClass()) continue;
+					if (result.add(caller)) todo.push(caller);
 				}
-			} else {
-				SootMethod called = edge.getTgt().method();
-				explore(called,nextLoop, worklist, step,edge, null);
+			}
+			List <SootMethod> cell = callers.get(called);
+			if (cell == null) continue;
+			for (SootMethod caller : cell) {
+				if (result.add(caller)) todo.push(caller);
 			}
 		}
+		reachingCriticals = criticals;
+		reaching = result;
+		return result;
 	}
 
 	/**
@@ -234,9 +370,14 @@ public class Explore
 		List <SootClass> potClasses = hierarchy.getImplementersOf(itf);
 
 		List <SootMethod> potMethods = hierarchy.resolveAbstractDispatch(potClasses,spec);
+		Set <SootMethod> relevant = reaching(criticals);
+		recAnalysis.doCompleteAnalysis();
 		// Iterates through all methods of all classes in the scene
 		for (SootMethod m : potMethods) {
-			Set <LoopStep> calledSet = explore(m);
+			// No critical method can be reached: nothing to report.
+			if (!relevant.contains(m) || !cba.getCallGraph().inScope(m)) continue;
+			Set <LoopStep> calledSet = new LinkedHashSet <LoopStep> ();
+			explore(m, calledSet, relevant);
 			for (LoopStep called : calledSet) {
 				if (criticals.containsKey(called.method)) {
 					SootMethod critical = 
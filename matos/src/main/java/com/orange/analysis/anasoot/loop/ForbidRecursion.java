@@ -26,10 +26,9 @@ import java.util.HashSet;
 import java.util.Map;
 import java.util.Set;
 
-import soot.Scene;
 import soot.SootMethod;
-import soot.jimple.toolkits.callgraph.CallGraph;
 
+import com.orange.analysis.anasoot.spy.CallGraphSnapshot;
 import com.orange.matos.core.XMLStream;
 import com.orange.matos.utils.HtmlOutput;
 
@@ -40,9 +39,9 @@ import com.orange.matos.utils.HtmlOutput;
 public class ForbidRecursion {
 
 	/**
-	 * The callgraph of the midlet extracted by soot
+	 * Snapshot of the callgraph of the midlet extracted by soot
 	 */
-	final CallGraph cg;
+	final CallGraphSnapshot cg;
 	
 	/**
 	 * The callback resolver that finds callbacks of interest (entry points from the AMS)
@@ -62,8 +61,7 @@ public class ForbidRecursion {
 	 * invoked when a callback invocation method is called (eg. Thread.start)
 	 */
 	public ForbidRecursion(CallbackResolver cba) { 
-		Scene sc = Scene.v();
-		this.cg = sc.getCallGraph();
+		this.cg = cba.getCallGraph().snapshot();
 		this.cba = cba; 
 		recAnalysis = new RecAnalysis(cba,cg);
 	}
@@ -28,7 +28,9 @@ import soot.SceneTransformer;
 import soot.SootMethod;
 
 import com.orange.analysis.anasoot.loop.CallbackResolver.Translation;
+import com.orange.analysis.anasoot.spy.CallGraphIndex;
 import com.orange.matos.core.RuleFile;
+import com.orange.matos.utils.PhaseProfiler;
 
 /**
  * Soot Transformation that performs an analysis of the presence of loops.
@@ -39,32 +41,43 @@ public class LoopTransform extends SceneTransformer {
 
 	private PrintStream outStream;
 	private RuleFile rulefile;
+	private final CallGraphIndex callGraph;
+	private final PhaseProfiler profiler;
 
 	/**
 	 * The constructor.
 	 * @param outStream where to print result
 	 * @param rulefile rules to check.
+	 * @param callGraph the callgraph of the analysis
+	 * @param profiler the profiler of the step
 	 */
-	public LoopTransform(PrintStream outStream, RuleFile rulefile) {
+	public LoopTransform(PrintStream outStream, RuleFile rulefile, CallGraphIndex callGraph, PhaseProfiler profiler) {
 		this.outStream = outStream;
 		this.rulefile = rulefile;
+		this.callGraph = callGraph;
+		this.profiler = profiler;
 	}
 
 	@Override
 	protected void internalTransform(String phaseName,@SuppressWarnings("rawtypes") Map options) {
 		LoopParser loopparser = new LoopParser(rulefile);
 		if (!loopparser.configured()) return;
-		Set<Translation> translations = loopparser.translations();
-		Map<SootMethod, String> criticals = loopparser.criticals();
-		Map<SootMethod, String> callbacks = loopparser.callbacks();
-		CallbackResolver cba = new CallbackResolver();
-		for(Translation tr : translations)
-			cba.register(tr);
-		// RecAnalysis.doAnalysis(cba,cg);
-		Explore explore = new Explore(cba);
-		Map<SootMethod, SootMethod> completed_criticals = LoopUtil.complete(criticals);
-		for(SootMethod crit : callbacks.keySet())
-			explore.doAnalysis(outStream, crit, completed_criticals, callbacks, criticals);
+		PhaseProfiler.Phase phase = profiler.begin("loop.callbacks");
+		try {
+			Set<Translation> translations = loopparser.translations();
+			Map<SootMethod, String> criticals = loopparser.criticals();
+			Map<SootMethod, String> callbacks = loopparser.callbacks();
+			CallbackResolver cba = new CallbackResolver(callGraph);
+			for(Translation tr : translations)
+				cba.register(tr);
+			// RecAnalysis.doAnalysis(cba,cg);
+			Explore explore = new Explore(cba);
+			Map<SootMethod, SootMethod> completed_criticals = LoopUtil.complete(criticals);
+			for(SootMethod crit : callbacks.keySet())
+				explore.doAnalysis(outStream, crit, completed_criticals, callbacks, criticals);
+		} finally {
+			phase.end();
+		}
 	}
 
 }
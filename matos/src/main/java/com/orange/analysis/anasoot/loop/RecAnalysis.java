@@ -22,16 +22,16 @@ package com.orange.analysis.anasoot.loop;
 
 import java.util.Collection;
 import java.util.HashSet;
-import java.util.Iterator;
 import java.util.Map;
 import java.util.Set;
 
 import soot.Scene;
 import soot.SootClass;
 import soot.SootMethod;
-import soot.jimple.toolkits.callgraph.CallGraph;
 import soot.jimple.toolkits.callgraph.Edge;
 
+import com.orange.analysis.anasoot.spy.CallGraphSnapshot;
+
 /**
  * @author Pierre Cregut
  * Recursion analysis (part of the loop analysis on recursion)
@@ -51,19 +51,19 @@ public class RecAnalysis {
 		 */
 		int size;
 		/**
-		 * Callgraph computed by Soot
+		 * Snapshot of the callgraph computed by Soot
 		 */
-		CallGraph cg;
+		CallGraphSnapshot cg;
 		/**
 		 * Callback resolver that extends method calls through for example threads.
 		 */
 		CallbackResolver cba;
 		/**
 		 * @param size the number of methods.
-		 * @param cg the regular callgraph computed by Soot
+		 * @param cg the snapshot of the regular callgraph computed by Soot
 		 * @param cba The callback resolver to use to cross thread calls for example
 		 */
-		CGraph(int size, CallGraph cg, CallbackResolver cba) { 
+		CGraph(int size, CallGraphSnapshot cg, CallbackResolver cba) { 
 			this.size = size; this.cg = cg; this.cba = cba; 
 		}
 
@@ -71,17 +71,20 @@ public class RecAnalysis {
 		public Collection <SootMethod> neighbours(SootMethod obj) {
 			SootMethod m = (SootMethod) obj;
 			Set <SootMethod> result = new HashSet <SootMethod>();
-			for (Iterator <Edge> it = cg.edgesOutOf(m); it.hasNext(); ) {
-				Edge e = it.next();
+			int id = cg.id(m);
+			if (id < 0) return result;
+			for (int pos = cg.firstOut(id); pos < cg.endOut(id); pos++) {
+				Edge e = cg.outEdge(pos);
 				// Do not consider spurious loops enabled by clinit.
 				if (e.isClinit()) continue;
-				if ((e.tgt().getName().equals("<init>")) && cba.isActive(e)) {
+				SootMethod tgt = cg.method(cg.target(pos));
+				if ((tgt.getName().equals("<init>")) && cba.isActive(e)) {
 					Map<SootMethod, String> ir = cba.resolve(e);
 					if (ir != null) {
 						result.addAll(ir.keySet());
 					}
 				}
-				else result.add(e.getTgt().method());
+				else result.add(tgt);
 			}
 
 			return result;
@@ -93,12 +96,13 @@ public class RecAnalysis {
 
 	private final Set <SootMethod> allMethods;
 	private final Tarjan.Graph <SootMethod> graph;
+	private boolean complete = false;
 	/**
 	 * Do a recursion analysis. We even look at recursive thread generations.
 	 * @param cba The callback resolver for thread calls.
-	 * @param cg The callgraph. 
+	 * @param cg The snapshot of the callgraph. 
 	 */
-	RecAnalysis(CallbackResolver cba, CallGraph cg) {
+	RecAnalysis(CallbackResolver cba, CallGraphSnapshot cg) {
 		int size = 0;
 		Scene scene = Scene.v();
 		allMethods = new HashSet <SootMethod>();
@@ -118,7 +122,17 @@ public class RecAnalysis {
 	 * Analysis restricted to a method.
 	 * @param m
 	 */
-	public void doAnalysis(SootMethod m) { tarjAnalysis.doAnalysis(m); }
+	public void doAnalysis(SootMethod m) { if (!complete) tarjAnalysis.doAnalysis(m); }
+
+	/**
+	 * Computes the strongly connected components of the whole callgraph. 
+	 * Only the first call does the work.
+	 */
+	public void doCompleteAnalysis() {
+		if (complete) return;
+		tarjAnalysis.doAnalysis(allMethods.iterator());
+		complete = true;
+	}
 	
 	/**
 	 * Check if a method is in a recursive loop
@@ -146,7 +160,7 @@ public class RecAnalysis {
 	 * @return recursive methods found.
 	 */
 	public Set<SootMethod> doAnalysis() {
-		tarjAnalysis.doAnalysis(allMethods.iterator());
+		doCompleteAnalysis();
 		Set <SootMethod>result = new HashSet<SootMethod>();
 		for(SootMethod m : allMethods) {
 			if (isRec(m)) result.add(m);
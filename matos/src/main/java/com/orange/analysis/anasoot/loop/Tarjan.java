@@ -19,25 +19,29 @@ package com.orange.analysis.anasoot.loop;
  * limitations under the License.
  * #L%
  */
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
+import java.util.IdentityHashMap;
 import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
 
 import soot.tagkit.Host;
-import soot.tagkit.Tag;
 
 /**
  * @author Pierre Cregut
  * Implementation of tarjan algorithm for computing strongly connected
- * components of a graph. We use taggable elements for the graph so that
- * we can annotate them with the result.
+ * components of a graph. The identifiers given to the elements are kept by
+ * the analysis itself and not as tags: the same elements may be visited
+ * again by another analysis on the same scene (single run mode).
  * @param <E> the class of elements of the graph.
  */
 public class Tarjan <E extends Host>{
 
 	/** The Graph interface describes a directed graph. We only implement need
         to know the forward neighbours of the node. Each node is implemented
-	as an object but it should also implement the Host interface so that
-        it can be tagged. Finally the size element should give back the number
+	as an object implementing the Host interface (Soot elements). Finally the size element should give back the number
         of nodes of the graph. */
 	public static interface Graph <E extends Host> {
 		/** Gives an iterator over the neigbours of an object of the graph */
@@ -46,26 +50,8 @@ public class Tarjan <E extends Host>{
 		public int size();
 	}
 
-	static class IdTag implements Tag {
-		public static final String name = "IdTag";
-		private byte [] key;
-		private int v;
-
-		IdTag(int v) {
-			this.v = v;
-			key = new byte [4];
-			key[0] = (byte) (v >> 24 & 0xff);
-			key[1] = (byte) (v >> 16 & 0xff);
-			key[2] = (byte) (v >> 8 & 0xff);
-			key[3] = (byte) (v & 0xff);
-		}
-
-		@Override
-		public String getName() { return name; }
-		@Override
-		public byte [] getValue() { return key; }
-		public static int getValue(IdTag t) { return t.v; }
-	}
+	/** Identifiers of the visited elements. */
+	private final Map <E, Integer> ids = new IdentityHashMap <E, Integer> ();
 
 	int low[];
 	int stack[];
@@ -100,36 +86,69 @@ public class Tarjan <E extends Host>{
 	public void doAnalysis (Iterator <E> itp) {
 		while(itp.hasNext()) {
 			E pnode = itp.next();
-			if (!pnode.hasTag(IdTag.name)) visit(pnode);
+			if (!ids.containsKey(pnode)) visit(pnode);
 		}
 	}
 
 	/** On demand analysis */
 	public void doAnalysis (E pnode) {
-		if (!pnode.hasTag(IdTag.name)) visit(pnode);
+		if (!ids.containsKey(pnode)) visit(pnode);
 	}
 
-	private int visit(E pnode) {
-		int p = n++;
-		pnode.addTag(new IdTag(p));
-		stack[c_stack++] = p;
-		low[p] = p;
-		for(E qnode : g.neighbours(pnode)) {
-			// Algorithm not adapted for loops on oneself
-			if (qnode.hasTag(IdTag.name)) {
-				int q = IdTag.getValue ((IdTag)(qnode.getTag(IdTag.name)));
-				if (p==q) {
-					marked[p] = true;
+	/**
+	 * Visits the graph from a node not yet visited. The traversal uses an explicit
+	 * stack of frames (node identifier and remaining neighbours) so that deep
+	 * callgraphs do not exhaust the Java stack.
+	 * @param root the node to start from.
+	 */
+	private void visit(E root) {
+		int [] frames = new int [16];
+		List <Iterator <E>> iterators = new ArrayList <Iterator <E>> ();
+		int depth = 0;
+		frames[depth++] = enter(root);
+		iterators.add(g.neighbours(root).iterator());
+		while (depth > 0) {
+			int p = frames[depth - 1];
+			Iterator <E> it = iterators.get(depth - 1);
+			if (it.hasNext()) {
+				E qnode = it.next();
+				// Algorithm not adapted for loops on oneself
+				Integer id = ids.get(qnode);
+				if (id != null) {
+					int q = id;
+					if (p==q) {
+						marked[p] = true;
+					}
+					if (finished[q]) continue;
+					// This mean we are in a loop and not the head
+					if (q<low[p]) low[p]=q;
+				} else {
+					if (depth == frames.length) frames = Arrays.copyOf(frames, 2 * depth);
+					frames[depth] = enter(qnode);
+					if (iterators.size() == depth) iterators.add(null);
+					iterators.set(depth++, g.neighbours(qnode).iterator());
 				}
-				if (finished[q]) continue;
-				// This mean we are in a loop and not the head
-				if (q<low[p]) low[p]=q;
-			} else {
-				int q = visit(qnode);
+				continue;
+			}
+			iterators.set(--depth, null);
+			leave(p);
+			if (depth > 0) {
+				int caller = frames[depth - 1];
 				// This mean we are in a loop and not the head
-				if (low[q]<low[p]) low[p]=low[q];
+				if (low[p]<low[caller]) low[caller]=low[p];
 			}
 		}
+	}
+
+	private int enter(E pnode) {
+		int p = n++;
+		ids.put(pnode, p);
+		stack[c_stack++] = p;
+		low[p] = p;
+		return p;
+	}
+
+	private void leave(int p) {
 		if (low[p] == p) {
 			// Then we are the head. Pop out the stack
 			if (p == stack[c_stack - 1]) { 
@@ -146,7 +165,6 @@ public class Tarjan <E extends Host>{
 				} while (v != p);
 			}
 		} // else we are not and we are left on the stack.
-		return p;
 	}
 
 	/**
@@ -155,7 +173,7 @@ public class Tarjan <E extends Host>{
 	 * @return
 	 */
 	public boolean inLoop(E h) {
-		int n = IdTag.getValue ((IdTag)(h.getTag(IdTag.name)));
+		int n = ids.get(h);
 		return marked[n];
 	}
 	
@@ -165,7 +183,7 @@ public class Tarjan <E extends Host>{
 	 * @return
 	 */
 	public int component(E h) {
-		int n = IdTag.getValue ((IdTag)(h.getTag(IdTag.name)));
+		int n = ids.get(h);
 		return low[n];
 	}
 	/**
@@ -174,7 +192,7 @@ public class Tarjan <E extends Host>{
 	 * @return
 	 */
 	public int identifier(E h) {
-		return IdTag.getValue ((IdTag)(h.getTag(IdTag.name)));
+		return ids.get(h);
 	}
 	
 	
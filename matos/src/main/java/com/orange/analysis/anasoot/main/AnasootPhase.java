@@ -39,6 +39,7 @@ import com.orange.analysis.anasoot.loop.LoopTransform;
 import com.orange.analysis.anasoot.printing.JavaReport;
 import com.orange.analysis.anasoot.printing.ScoreReport;
 import com.orange.analysis.anasoot.profile.rules.AnajavaRule;
+import com.orange.analysis.anasoot.spy.LocalAnalysisCache;
 import com.orange.matos.core.Alert;
 import com.orange.matos.core.AppDescription;
 import com.orange.matos.core.Configuration;
@@ -48,6 +49,7 @@ import com.orange.matos.core.RuleFile;
 import com.orange.matos.java.MidletSuite;
 import com.orange.matos.utils.FileUtilities;
 import com.orange.matos.utils.HtmlOutput;
+import com.orange.matos.utils.PhaseProfiler;
 
 /**
  * Definition of the anasoot phase.
@@ -246,12 +248,13 @@ public class AnasootPhase implements MatosPhase {
 		// Global Soot reset
 		G.reset();
 		G.v().out = Out.getLog();
+		LocalAnalysisCache.reset(anasootconfig.localCacheSize());
 		// Install the new transform.
+		DevirtShow analysisPhase = new DevirtShow(outStream,anasootconfig, anaFile,midletSuite);
 		Transform t1 = 
-			new Transform(ANALYSIS_PHASE + "." + ANALYSIS_TRANSFORM,
-					new DevirtShow(outStream,anasootconfig, anaFile,midletSuite));
+			new Transform(ANALYSIS_PHASE + "." + ANALYSIS_TRANSFORM, analysisPhase);
 		Transform t2 = 
-			new Transform(ANALYSIS_PHASE + "." + LOOP_TRANSFORM, new LoopTransform(outStream,ruleFile));
+			new Transform(ANALYSIS_PHASE + "." + LOOP_TRANSFORM, new LoopTransform(outStream,ruleFile,analysisPhase.getCallGraph(),config.getProfiler()));
 		PackManager pm = PackManager.v();
 		pm.getPack(ANALYSIS_PHASE).add(t1);
 		pm.getPack(ANALYSIS_PHASE).add(t2);
@@ -260,14 +263,31 @@ public class AnasootPhase implements MatosPhase {
 		Options.v().parse(sootArgs);
 		Scene.v().addBasicClass("java.lang.Cloneable",SootClass.HIERARCHY);
 		Scene.v().addBasicClass("java.io.Serializable",SootClass.HIERARCHY);
-		Scene.v().loadNecessaryClasses();
+		PhaseProfiler.Phase loading = config.getProfiler().begin("classes");
+		try {
+			Scene.v().loadNecessaryClasses();
+		} finally {
+			loading.end();
+		}
 		Scene.v().setPhantomRefs(true);
 		try {
-			pm.getPack(POINTSTO_PHASE).apply();
-			pm.getPack(ANALYSIS_PHASE).apply();
+			applyPack(pm, POINTSTO_PHASE);
+			applyPack(pm, ANALYSIS_PHASE);
 		} catch (AlertRuntimeException e) {
 			AlertRuntimeException.unwrap(e);
 		}
+		if (config.timingEnabled()) {
+			Out.getMain().println("Local analysis cache : " + LocalAnalysisCache.v());
+		}
+	}
+
+	private void applyPack(PackManager pm, String pack) {
+		PhaseProfiler.Phase phase = config.getProfiler().begin("soot." + pack);
+		try {
+			pm.getPack(pack).apply();
+		} finally {
+			phase.end();
+		}
 	}
 
 	/**
@@ -340,7 +360,12 @@ public class AnasootPhase implements MatosPhase {
 			new AnajavaRule(ruleFile,packageSolver.getConfiguration(), packageSolver.getProfile(), anasootconfig);
 		scoreReport = anarule.getGlobal().getScore();
 		jwrapper = new File(config.getTempDir(), WRAPPER_CLASS + ".jimple");
-		writeJasminWrapper(midletName);
+		PhaseProfiler.Phase wrapper = config.getProfiler().begin("wrapper");
+		try {
+			writeJasminWrapper(midletName);
+		} finally {
+			wrapper.end();
+		}
 		runSoot(midletName, jarFile, ms, ruleFile ,anarule, outStream);
 
 
@@ -33,6 +33,8 @@ import java.util.Set;
 import soot.G;
 import soot.PackManager;
 import soot.Scene;
+import soot.SootClass;
+import soot.SootMethod;
 import soot.Transform;
 import soot.options.Options;
 
@@ -42,6 +44,8 @@ import com.orange.analysis.anasoot.printing.JavaReport;
 import com.orange.analysis.anasoot.printing.ScoreReport;
 import com.orange.analysis.anasoot.printing.ScoreReport.PermissionScore;
 import com.orange.analysis.anasoot.profile.rules.AnaDroidRule;
+import com.orange.analysis.anasoot.spy.CallGraphUtil;
+import com.orange.analysis.anasoot.spy.LocalAnalysisCache;
 import com.orange.matos.android.APKDescr;
 import com.orange.matos.core.Alert;
 import com.orange.matos.core.AppDescription;
@@ -52,6 +56,7 @@ import com.orange.matos.core.RuleFile;
 import com.orange.matos.core.XMLStream;
 import com.orange.matos.utils.FileUtilities;
 import com.orange.matos.utils.HtmlOutput;
+import com.orange.matos.utils.PhaseProfiler;
 
 /** 
  * Definition of the Android phase 
@@ -92,6 +97,14 @@ public class AndroidPhase implements MatosPhase {
 	private AnasootConfig anasootconfig;
 	private ScoreReport scoreReport;
 	private int scoreValue = -1;
+
+	/** Application whose scene is shared between components (single run mode). */
+	private APKDescr sharedApk;
+	/** Analysis transformation installed in the shared scene. */
+	private DevirtShow sharedAnalysis;
+	/** Components registered in the wrapper of the shared scene. */
+	private Set<String> sharedComponents;
+	private AndroidWrapper lastWrapper;
 	
 	/**
 	 * Empty constructor. No specialisation needed.
@@ -114,6 +127,15 @@ public class AndroidPhase implements MatosPhase {
 		return config.bool("anasoot.android.global");
 	}
 
+	/**
+	 * Whether a local analysis computes the call graph and the points-to
+	 * analysis once for all the components of the application.
+	 * @return true if Soot is run once per application.
+	 */
+	public boolean isSingleRun() {
+		return config.bool("anasoot.android.singleRun", false);
+	}
+
 	@Override
 	public String getName() { 
 		return "android"; 
@@ -133,6 +155,100 @@ public class AndroidPhase implements MatosPhase {
 	throws Alert
 	{
 		anasootconfig.readProperties();
+		sharedApk = null;
+		DevirtShow analysisPhase = loadScene(apk, ruleFile, restriction, outStream);
+		AnaDroidRule androidRules = createRules(apk, ruleFile, analysisPhase);
+		// Initialize the scene with right classes + support for undefined ones.
+		applyPack(AnasootPhase.POINTSTO_PHASE);
+		applyPack(AnasootPhase.ANALYSIS_PHASE);
+		return androidRules.getGlobal().getReports();
+	}
+
+	/**
+	 * Run the analysis of a single component, sharing the Soot scene, the
+	 * call graph and the points-to analysis between all the components of
+	 * an APK. The first call for a given APK builds a wrapper registering
+	 * every component and computes the points-to analysis. Each call then
+	 * performs the spy analysis on the code reachable from the component:
+	 * the entry points of the call graph are explored without entering the
+	 * classes of the other components. The loop and recursion analyses and
+	 * the custom rules see the call graph restricted to the same code.
+	 * @param apk the application analyzed
+	 * @param ruleFile the rules to check
+	 * @param component the class of the component
+	 * @param outStream the stream to print the result to.
+	 * @return the reports of the component
+	 * @throws Alert if a problem is encountered during the analysis.
+	 */
+	public Map <String, JavaReport> runSharedSoot(APKDescr apk, RuleFile ruleFile, String component, PrintStream outStream)
+	throws Alert
+	{
+		if (sharedApk != apk) {
+			anasootconfig.readProperties();
+			sharedApk = null;
+			sharedAnalysis = loadScene(apk, ruleFile, null, outStream);
+			sharedComponents = lastWrapper.components();
+			applyPack(AnasootPhase.POINTSTO_PHASE);
+			sharedApk = apk;
+		}
+		AnaDroidRule androidRules = createRules(apk, ruleFile, sharedAnalysis);
+		Set<SootMethod> methods = componentMethods(component);
+		sharedAnalysis.restrictTo(methods);
+		try {
+			applyPack(AnasootPhase.ANALYSIS_PHASE);
+		} finally {
+			sharedAnalysis.restrictTo(null);
+		}
+		return androidRules.getGlobal().getReports();
+	}
+
+	/**
+	 * Forgets the application whose scene is shared between components so
+	 * that the scene is not kept alive by the phase once the step is over.
+	 */
+	public void endApplication() {
+		sharedApk = null;
+		sharedAnalysis = null;
+		sharedComponents = null;
+		lastWrapper = null;
+	}
+
+	/**
+	 * Methods reachable from the entry points of the scene without entering
+	 * the classes of the other components. Superclasses of the component are
+	 * never excluded as their code is executed by the component.
+	 * @param component the class of the component
+	 * @return the set of methods of the component
+	 */
+	private Set<SootMethod> componentMethods(String component) {
+		Scene scene = Scene.v();
+		Set<SootClass> barrier = new HashSet<SootClass>();
+		for(String name : sharedComponents) {
+			if (scene.containsClass(name)) barrier.add(scene.getSootClass(name));
+		}
+		if (scene.containsClass(component)) {
+			SootClass c = scene.getSootClass(component);
+			while (c != null) {
+				barrier.remove(c);
+				c = c.hasSuperclass() ? c.getSuperclass() : null;
+			}
+		}
+		return CallGraphUtil.reachableFrom(sharedAnalysis.getCallGraph().snapshot(), scene.getEntryPoints(), barrier);
+	}
+
+	/**
+	 * Resets Soot and loads the classes of the application with a wrapper
+	 * calling the components.
+	 * @param apk the application analyzed
+	 * @param ruleFile the rules to check
+	 * @param restriction the components registered in the wrapper or null for all
+	 * @param outStream the stream to print the result to.
+	 * @return the analysis transformation installed in the scene.
+	 * @throws Alert
+	 */
+	private DevirtShow loadScene(APKDescr apk, RuleFile ruleFile, HashSet <String> restriction, PrintStream outStream)
+	throws Alert
+	{
 		String classpath = config.androidClasspath() + File.pathSeparator + config.getTempDir();
 		// Out.getMain().println(classpath);
 		
@@ -160,6 +276,7 @@ public class AndroidPhase implements MatosPhase {
 		// Global Soot reset
 		G.reset();
 		G.v().out = Out.getLog();
+		LocalAnalysisCache.reset(anasootconfig.localCacheSize());
 		// Lancement des phases
 		// Install the new transform.
 		DevirtShow analysisPhase = new DevirtShow(outStream,anasootconfig, null, apk);
@@ -167,7 +284,7 @@ public class AndroidPhase implements MatosPhase {
 			new Transform(AnasootPhase.ANALYSIS_PHASE + "." + AnasootPhase.ANALYSIS_TRANSFORM,
 					analysisPhase);
 		Transform t2 = 
-			new Transform(AnasootPhase.ANALYSIS_PHASE + "." + AnasootPhase.LOOP_TRANSFORM, new LoopTransform(outStream,ruleFile));
+			new Transform(AnasootPhase.ANALYSIS_PHASE + "." + AnasootPhase.LOOP_TRANSFORM, new LoopTransform(outStream,ruleFile,analysisPhase.getCallGraph(),config.getProfiler()));
 		PackManager pm = PackManager.v();
 		pm.getPack(AnasootPhase.ANALYSIS_PHASE).add(t1);
 		pm.getPack(AnasootPhase.ANALYSIS_PHASE).add(t2);
@@ -177,11 +294,17 @@ public class AndroidPhase implements MatosPhase {
 
 		Scene scene = Scene.v();
 		scene.setPhantomRefs(true);
+		PhaseProfiler.Phase loading = config.getProfiler().begin("classes");
 		try {
 			scene.loadBasicClasses();
 			apk.getCode();
-			AndroidWrapper wrapper = new AndroidWrapper(config, apk, restriction);
-			wrapper.createWrapper();
+			PhaseProfiler.Phase wrapper = config.getProfiler().begin("wrapper");
+			try {
+				lastWrapper = new AndroidWrapper(config, apk, restriction);
+				lastWrapper.createWrapper();
+			} finally {
+				wrapper.end();
+			}
 			scene.loadBasicClasses();
 			scene.loadClassAndSupport(WRAPPER_PATH);
 			scene.loadDynamicClasses();
@@ -190,8 +313,21 @@ public class AndroidPhase implements MatosPhase {
 		} catch (Exception e) {
 			e.printStackTrace(Out.getLog());
 			throw Alert.raised(e, "Cannot load the required classes. ");
+		} finally {
+			loading.end();
 		}
-		
+		return analysisPhase;
+	}
+
+	/**
+	 * Parses the rules for a run of the analysis transformation.
+	 * @param apk the application analyzed
+	 * @param ruleFile the rules to check
+	 * @param analysisPhase the transformation using the rules
+	 * @return the parsed rules
+	 * @throws Alert
+	 */
+	private AnaDroidRule createRules(APKDescr apk, RuleFile ruleFile, DevirtShow analysisPhase) throws Alert {
 		AnaDroidRule androidRules = null;
 		try {
 			androidRules = new AnaDroidRule(ruleFile,"android2.1", anasootconfig);
@@ -202,16 +338,21 @@ public class AndroidPhase implements MatosPhase {
 		}
 		scoreReport = androidRules.getGlobal().getScore();
 		updatePermissionScore(apk);
-		// Initialize the scene with right classes + support for undefined ones.
+		return androidRules;
+	}
 
+	private void applyPack(String pack) throws Alert {
+		PhaseProfiler.Phase phase = config.getProfiler().begin("soot." + pack);
 		try {
-			pm.getPack(AnasootPhase.POINTSTO_PHASE).apply();
-			pm.getPack(AnasootPhase.ANALYSIS_PHASE).apply();
+			PackManager.v().getPack(pack).apply();
 		} catch (AlertRuntimeException e) {
 			AlertRuntimeException.unwrap(e);
+		} finally {
+			phase.end();
+		}
+		if (pack.equals(AnasootPhase.ANALYSIS_PHASE) && config.timingEnabled()) {
+			Out.getMain().println("Local analysis cache : " + LocalAnalysisCache.v());
 		}
-		
-		return androidRules.getGlobal().getReports();
 	}
 
 	private void updatePermissionScore(APKDescr apk) {
@@ -246,7 +387,9 @@ public class AndroidPhase implements MatosPhase {
 		}
 		
 		Map <String, JavaReport> reports = 
-			runSoot(apk, ruleFile , restriction, notImplemented, outStream);
+			(entryName != null && isSingleRun())
+			? runSharedSoot(apk, ruleFile, entryName, outStream)
+			: runSoot(apk, ruleFile , restriction, notImplemented, outStream);
 
 		boolean verdict = true;
 		// Output unresolved classes.
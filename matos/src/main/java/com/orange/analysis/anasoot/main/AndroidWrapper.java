@@ -98,6 +98,7 @@ public class AndroidWrapper {
 	private int count = 0;
 	private HashSet<String> notImplemented;
 	private HashSet<String> restriction;
+	private Set<String> components = new HashSet<String>();
 	private SootClass exceptionClass;
 	
 	/**
@@ -356,6 +357,7 @@ public class AndroidWrapper {
 	
 	private void makeComponentInit(PatchingChain <Unit> units, Chain<Local> locals, 
 			SootClass clazz, SootMethodRef optRegister) {
+		if (optRegister != null) components.add(clazz.getName());
 		if (! clazz.declaresMethod(SIMPLE_INIT)) return;
 		RefType type = clazz.getType();
 		Local v = jimple.newLocal("v" + count++, type);
@@ -379,5 +381,13 @@ public class AndroidWrapper {
 	public Set<String> notImplemented () {
 		return notImplemented;
 	}
-}
 
+	/**
+	 * Gives back the components (activities, services, providers and receivers)
+	 * registered in the wrapper.
+	 * @return a set of class names
+	 */
+	public Set<String> components() {
+		return components;
+	}
+}
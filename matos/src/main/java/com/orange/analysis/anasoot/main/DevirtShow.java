@@ -24,8 +24,14 @@ package com.orange.analysis.anasoot.main;
  */
 
 import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.SortedSet;
+import java.util.TreeSet;
 
 import soot.ByteType;
 import soot.PointsToAnalysis;
@@ -46,6 +52,9 @@ import soot.jimple.NewArrayExpr;
 import soot.jimple.NewExpr;
 import soot.jimple.ReturnStmt;
 import soot.jimple.Stmt;
+import soot.jimple.toolkits.callgraph.CallGraph;
+import soot.jimple.toolkits.callgraph.Edge;
+import soot.jimple.toolkits.callgraph.ReachableMethods;
 
 import com.orange.analysis.anasoot.AnasootConfig;
 import com.orange.analysis.anasoot.apiuse.ApiUseReport;
@@ -57,8 +66,11 @@ import com.orange.analysis.anasoot.printing.GlobalReport;
 import com.orange.analysis.anasoot.printing.UnresolvedReport;
 import com.orange.analysis.anasoot.printing.UsedJSRReport;
 import com.orange.analysis.anasoot.profile.rules.AnajavaRule;
+import com.orange.analysis.anasoot.spy.AnalysisSession;
 import com.orange.analysis.anasoot.spy.CallContext;
+import com.orange.analysis.anasoot.spy.CallGraphIndex;
 import com.orange.analysis.anasoot.spy.LocalAnalysis;
+import com.orange.analysis.anasoot.spy.LocalAnalysisCache;
 import com.orange.analysis.anasoot.spy.MethodSpyAnalysis;
 import com.orange.analysis.anasoot.spy.P2SAux;
 import com.orange.analysis.anasoot.spy.ProgramSpy;
@@ -66,6 +78,8 @@ import com.orange.analysis.anasoot.spy.SpyReturn;
 import com.orange.matos.android.APKDescr;
 import com.orange.matos.core.Alert;
 import com.orange.matos.core.AppDescription;
+import com.orange.matos.core.Out;
+import com.orange.matos.utils.PhaseProfiler;
 
 
 /** 
@@ -96,6 +110,10 @@ public class DevirtShow extends SceneTransformer {
 	private ApplicationApiUse applicationApiUse;
 	private AppDescription app;
     private GlobalReport global;
+    private Set<SootMethod> restriction;
+    private final CallGraphIndex callGraph = new CallGraphIndex();
+    private ReachableMethods reachable;
+    private int skippedBodies;
 
 	/**
 	 * Constructor for the analysis.
@@ -127,12 +145,77 @@ public class DevirtShow extends SceneTransformer {
 		report.addJSR(ruleFile.getProfile());
 	}
 	/**
-	 * Analyse a class once (in a given iteration).
+	 * Restricts the analysis of application classes to a set of methods.
+	 * Used when the scene is shared between the components of an Android
+	 * application.
+	 * @param methods the methods analysed or null to analyse everything.
+	 */
+	public void restrictTo(Set<SootMethod> methods) {
+		restriction = methods;
+		callGraph.restrictTo(methods);
+	}
+
+	/**
+	 * The callgraph of the Soot run of this analysis. It is shared with the
+	 * loop analysis installed in the same run.
+	 * @return the callgraph index
+	 */
+	public CallGraphIndex getCallGraph() {
+		return callGraph;
+	}
+
+	/**
+	 * A statement that may need to be analysed again when new rules are
+	 * registered. The rank gives the order of the statement in the first
+	 * pass so that later passes visit statements in the same order. The
+	 * analysis of the method built by the first pass is kept with the
+	 * statement and used again.
+	 */
+	private static class Site implements Comparable<Site> {
+		final int rank;
+		final SootMethod method;
+		final MethodSpyAnalysis analysis;
+		final Stmt stmt;
+		final boolean isCall;
+
+		Site(int rank, SootMethod method, MethodSpyAnalysis analysis, Stmt stmt, boolean isCall) {
+			this.rank = rank;
+			this.method = method;
+			this.analysis = analysis;
+			this.stmt = stmt;
+			this.isCall = isCall;
+		}
+
+		@Override
+		public int compareTo(Site o) {
+			return rank < o.rank ? -1 : (rank == o.rank ? 0 : 1);
+		}
+	}
+
+	/** Field assignments indexed by the field assigned. */
+	private Map<SootField, List<Site>> fieldSites;
+	/** Return statements indexed by their method. */
+	private Map<SootMethod, List<Site>> returnSites;
+	/** Calls indexed by the number of the methods they may call. */
+	private Map<Integer, List<Site>> callSites;
+	private int siteCount;
+
+	private static <K> void index(Map<K, List<Site>> map, K key, Site site) {
+		List<Site> l = map.get(key);
+		if (l == null) {
+			l = new ArrayList<Site>();
+			map.put(key, l);
+		}
+		l.add(site);
+	}
+
+	/**
+	 * Analyse a class during the first pass and index the statements that
+	 * may be affected by rules registered later.
 	 * @param c the class analysed
 	 * @param callcontext a context of analysis with main soot analysis.
 	 * @param relspy The core of the analysis class.
 	 * @param pag The points-to analysis.
-	 * @param first_iteration is it the first iteration ?
 	 */	
 
 	void treatClass(SootClass c, CallContext callcontext, ProgramSpy relspy, ArrayAnalysis baa, PointsToAnalysis pag) 
@@ -143,21 +226,30 @@ public class DevirtShow extends SceneTransformer {
 		if (isAndroid && applicationApiUse != null) {
 			isAndroidApp = ! applicationApiUse.isProfileDefined(c);
 		}
+		CallGraph cg = Scene.v().getCallGraph();
 		@SuppressWarnings("rawtypes")
 		Iterator i_method = c.methodIterator ();
 		while(i_method.hasNext ()) {
 			SootMethod m = (SootMethod) i_method.next();
+			if (isApp && restriction != null && !restriction.contains(m)) continue;
+			if (!isApp && reachable != null && !reachable.contains(m)) {
+				if (m.isConcrete()) skippedBodies++;
+				continue;
+			}
 			SpyReturn spyReturn = relspy.spyReturn(m);
 
 			if (!m.hasActiveBody()) continue;
 			if (isApp) exhaust.checkMethod(m);
 			JimpleBody jb = (JimpleBody) m.retrieveActiveBody ();
 			// Static analysis giving the defs of a variable
-			LocalAnalysis locanalysis = new LocalAnalysis(jb);
+			LocalAnalysis locanalysis = LocalAnalysisCache.v().get(m);
 			MethodSpyAnalysis analysis = new MethodSpyAnalysis(acf, pag, callcontext,locanalysis,m);
+			boolean simpleReturn = P2SAux.is_simple(m.getReturnType());
 			Iterator<Unit> i_units = (jb.getUnits()).iterator();
 			while(i_units.hasNext()) {
 				Stmt st = (Stmt)i_units.next();
+				boolean isCall = st.containsInvokeExpr() && isApp;
+				Site site = new Site(siteCount++, m, analysis, st, isCall);
 				if (st instanceof AssignStmt) {
 					AssignStmt ast = (AssignStmt) st;
 					Value left = ast.getLeftOp();
@@ -179,14 +271,18 @@ public class DevirtShow extends SceneTransformer {
 					if (left instanceof FieldRef) {
 						SootField fieldUse = ((FieldRef) left).getField();
 						if (isAndroidApp) applicationApiUse.register(fieldUse, c);
+						index(fieldSites, fieldUse, site);
 					} else if (left instanceof ArrayRef && left.getType().equals(byteType)) {
 						baa.treatByteArrayAssign(ast, locanalysis, callcontext);
 					}
 					relspy.spyField(analysis,ast);
-				} else if ((st instanceof ReturnStmt) && (spyReturn != null)) {
-					spyReturn.spy(analysis, (ReturnStmt) st); 
+				} else if (st instanceof ReturnStmt) {
+					if (spyReturn != null) spyReturn.spy(analysis, (ReturnStmt) st);
+					if (simpleReturn) {
+						index(returnSites, m, site);
+					}
 				} 
-				if (st.containsInvokeExpr() && isApp) { // ignore.callInstruction(st)
+				if (isCall) { // ignore.callInstruction(st)
 					InvokeExpr ie =  st.getInvokeExpr();
 					exhaust.checkCall(m, st);
 					SootMethod calledMethod = ie.getMethod();
@@ -203,54 +299,144 @@ public class DevirtShow extends SceneTransformer {
 						report.addJSR((String)ruleFile.listOfJSR.get(className));
 					}
 					relspy.spy(analysis,ie,st);
+					index(callSites, calledMethod.getNumber(), site);
+					for(Iterator<Edge> it = cg.edgesOutOf(st); it.hasNext(); ) {
+						int tgt = it.next().tgt().getNumber();
+						if (tgt != calledMethod.getNumber()) index(callSites, tgt, site);
+					}
 				}
 			}
 		}
 	}
 
+	/**
+	 * Analyse again the statements concerned by the rules registered during
+	 * the previous pass. Statements are visited in the order of the first pass
+	 * with the analyses of their methods built by the first pass.
+	 * @param relspy The core of the analysis class.
+	 */
+	void revisit(ProgramSpy relspy) throws Alert {
+		SortedSet<Site> todo = new TreeSet<Site>();
+		for(SootField f : relspy.field_tables.keySet()) {
+			List<Site> l = fieldSites.get(f);
+			if (l != null) todo.addAll(l);
+		}
+		for(SootMethod m : relspy.return_tables.keySet()) {
+			List<Site> l = returnSites.get(m);
+			if (l != null) todo.addAll(l);
+		}
+		for(Integer n : relspy.spiedMethods()) {
+			List<Site> l = callSites.get(n);
+			if (l != null) todo.addAll(l);
+		}
+		for(Site site : todo) {
+			MethodSpyAnalysis analysis = site.analysis;
+			Stmt st = site.stmt;
+			if (st instanceof AssignStmt) {
+				relspy.spyField(analysis, (AssignStmt) st);
+			} else if (st instanceof ReturnStmt) {
+				SpyReturn spyReturn = relspy.spyReturn(site.method);
+				if (spyReturn != null) spyReturn.spy(analysis, (ReturnStmt) st);
+			}
+			if (site.isCall) relspy.spy(analysis, st.getInvokeExpr(), st);
+		}
+	}
+
 	@Override
 	protected void internalTransform(String phaseName,@SuppressWarnings("rawtypes") Map options) {
 		Scene scene = Scene.v();
 		// IgnoreEdge ignore = new IgnoreEdge(scene);
 		PointsToAnalysis pag = scene.getPointsToAnalysis();
-		ProgramSpy relspy = new ProgramSpy(scene,ruleFile,acf);
+		AnalysisSession session = new AnalysisSession(callGraph);
+		ProgramSpy relspy = new ProgramSpy(scene,ruleFile,acf,session);
 		ArrayAnalysis baa = new ArrayAnalysis(pag);
+		exhaust = new ExhaustivityChecker();
 		try {
 			if (isAndroid && acf.doApiUse()) {
 				applicationApiUse = new ApplicationApiUse(acf.databasePath); 
 			}
 
-			CallContext callcontext = new CallContext();
+			CallContext callcontext = new CallContext(session);
 			P2SAux.init(callcontext, baa);
-			while (!relspy.is_empty()) {
-				@SuppressWarnings("rawtypes")
-				Iterator i_classes = scene.getClasses().iterator();
-				while(i_classes.hasNext()) {
-					SootClass c = (SootClass) i_classes.next();
-					treatClass(c,callcontext,relspy, baa, pag);
+			fieldSites = new HashMap<SootField, List<Site>>();
+			returnSites = new HashMap<SootMethod, List<Site>>();
+			callSites = new HashMap<Integer, List<Site>>();
+			siteCount = 0;
+			reachable = acf.scanReachableOnly() ? scene.getReachableMethods() : null;
+			skippedBodies = 0;
+			if (!relspy.is_empty()) {
+				PhaseProfiler.Phase scan = acf.profiler().begin("spy.scan");
+				try {
+					@SuppressWarnings("rawtypes")
+					Iterator i_classes = scene.getClasses().iterator();
+					while(i_classes.hasNext()) {
+						SootClass c = (SootClass) i_classes.next();
+						if (reachable != null && c.isPhantom()) continue;
+						treatClass(c,callcontext,relspy, baa, pag);
+					}
+					if (reachable != null) {
+						Out.getLog().println("Skipped " + skippedBodies 
+								+ " method bodies of library classes not reachable from the entry points.");
+					}
+					relspy.activate_registered(callcontext);
+				} finally {
+					scan.end();
+				}
+				int round = 0;
+				while (!relspy.is_empty()) {
+					PhaseProfiler.Phase revisit = acf.profiler().begin("spy.round." + (++round));
+					try {
+						revisit(relspy);
+						relspy.activate_registered(callcontext);
+					} finally {
+						revisit.end();
+					}
 				}
-				relspy.activate_registered(callcontext);
 			}
+			fieldSites = null;
+			returnSites = null;
+			callSites = null;
+			reachable = null;
 			relspy.buildResult(callcontext, baa);
-			relspy.customRules(ruleFile, app);
+			PhaseProfiler.Phase custom = acf.profiler().begin("custom");
+			try {
+				relspy.customRules(ruleFile, app);
+			} finally {
+				custom.end();
+			}
 			if( applicationApiUse!=null ) {
-				applicationApiUse.closeDB();
-				ApiUseReport report = new ApiUseReport(applicationApiUse);
-				report.displayAnalysisReport(acf, outStream);
-				applicationApiUse = null;
-				report = null;
+				PhaseProfiler.Phase apiUse = acf.profiler().begin("apiuse");
+				try {
+					applicationApiUse.closeDB();
+					ApiUseReport report = new ApiUseReport(applicationApiUse);
+					report.displayAnalysisReport(acf, outStream);
+					applicationApiUse = null;
+					report = null;
+				} finally {
+					apiUse.end();
+				}
 			}
 
-			exhaust.dump();
+			PhaseProfiler.Phase reporting = acf.profiler().begin("report");
+			try {
+				exhaust.dump();
 
-			UsedJSRReport report = (UsedJSRReport)global.get("usedJSR");
-			UnresolvedReport report2 = (UnresolvedReport)global.get("unresolved");
-			report.tell(outStream, acf.xmlFormat());
-			report2.tell(outStream, acf.xmlFormat());
-			relspy.dump(acf, outStream);
+				UsedJSRReport report = (UsedJSRReport)global.get("usedJSR");
+				UnresolvedReport report2 = (UnresolvedReport)global.get("unresolved");
+				report.tell(outStream, acf.xmlFormat());
+				report2.tell(outStream, acf.xmlFormat());
+				relspy.dump(acf, outStream);
+			} finally {
+				reporting.end();
+			}
 			if (acf.doLoopAnalysis()) {
-				ForbidRecursion fra = new ForbidRecursion(new CallbackResolver());
-				fra.doAnalysis(outStream, acf.xmlFormat());
+				PhaseProfiler.Phase loop = acf.profiler().begin("loop.recursion");
+				try {
+					ForbidRecursion fra = new ForbidRecursion(new CallbackResolver(callGraph));
+					fra.doAnalysis(outStream, acf.xmlFormat());
+				} finally {
+					loop.end();
+				}
 			}
 		} catch(Alert a) {
 			AlertRuntimeException.wrap(a);
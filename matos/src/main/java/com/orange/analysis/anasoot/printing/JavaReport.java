@@ -26,13 +26,13 @@ package com.orange.analysis.anasoot.printing;
 import java.io.IOException;
 import java.io.PrintStream;
 import java.util.ArrayList;
-import java.util.HashMap;
 import java.util.regex.Matcher;
 
 import org.w3c.dom.Element;
 
 import com.orange.analysis.anasoot.printing.JavaRuleReport.Filter;
 import com.orange.analysis.anasoot.result.JavaResult;
+import com.orange.analysis.anasoot.spy.AnalysisSession;
 import com.orange.matos.core.Alert;
 import com.orange.matos.core.XMLParser;
 import com.orange.matos.utils.HtmlOutput;
@@ -45,22 +45,17 @@ import com.orange.matos.utils.HtmlOutput;
 
 public abstract class JavaReport extends Report{
 
-    static class IntegerCell {
-        int value;
-        public IntegerCell(int c) { value = c; }
-        public void incr() { value++; }
-        @Override
-        public String toString() { return String.valueOf(value); }
-    }
-
-    final protected static HashMap<Character,IntegerCell> globalCounterTable = 
-            new HashMap<Character, IntegerCell>();
+    /**
+     * The analysis whose results are printed. It holds the counters.
+     */
+    protected AnalysisSession session;
 
     /**
-     * Reset the counters to reuse it.
+     * Attach the report to the analysis it will print.
+     * @param session the state of the analysis
      */
-    public static void resetAll() {
-        globalCounterTable.clear();
+    public void setSession(AnalysisSession session) {
+        this.session = session;
     }
 
     /**
@@ -76,7 +71,7 @@ public abstract class JavaReport extends Report{
      * @param re result of a match against a regular expression
      * @throws Alert
      */
-    static void print (PrintStream out, String msg, String r, JavaResult jresult, Matcher re) throws Alert {
+    void print (PrintStream out, String msg, String r, JavaResult jresult, Matcher re) throws Alert {
         if (msg.equals("-") || msg.equals("")) return;
         int i = 0,j;
         while((j = msg.indexOf('%',i)) >= 0) {
@@ -100,13 +95,7 @@ public abstract class JavaReport extends Report{
                 case 'n':
                     char code = msg.charAt(j+2);
                     j++;
-                    IntegerCell count = globalCounterTable.get(code);
-                    if (count == null) {
-                        count = new IntegerCell(1);
-                        globalCounterTable.put(code, count);
-                    }
-                    out.print(count);
-                    count.incr();
+                    out.print(session.nextCount(code));
                     break;
                 case 's':
                     out.print(HtmlOutput.escape(jresult.method_orig.getSignature()));
@@ -149,7 +149,7 @@ public class JavaRuleReport extends JavaReport {
                 if (ma.matches()) {
                     caught = true;
                     if (xmlFormat) {
-                        String idref = javaResult.getRef();
+                        String idref = javaResult.getRef(session);
                         XMLStream xmlout = new XMLStream(outStream);
                         xmlout.element("report");
                         xmlout.attribute("name", name);
@@ -195,7 +195,7 @@ public class JavaRuleReport extends JavaReport {
                     if (ma.matches()) {
                         caught = true;
                         if (xmlFormat) {
-                            String idref = javaResult.getRef();
+                            String idref = javaResult.getRef(session);
                             XMLStream xmlout = new XMLStream(outStream);
                             xmlout.element("report");
                             xmlout.attribute("name", name);
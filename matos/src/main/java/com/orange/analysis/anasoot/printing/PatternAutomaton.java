@@ -0,0 +1,222 @@
+package com.orange.analysis.anasoot.printing;
+
+
+/*
+ * #%L
+ * Matos
+ * %%
+ * Copyright (C) 2004 - 2014 Orange SA
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * A multi-pattern matcher (Aho-Corasick automaton) recognizing a set of literal
+ * strings in a single pass over a text, whatever the number of strings. Each string
+ * is associated to the identifier of the pattern it comes from.
+ * 
+ * @author Pierre Cregut
+ */
+public class PatternAutomaton {
+
+    /**
+     * Maximal number of literal strings a single regular expression is expanded to.
+     */
+    private static final int MAX_EXPANSION = 256;
+
+    private static final String META_CHARS = "\\[](){}.*+?^$|";
+
+    private final ArrayList<TreeMap<Character, Integer>> building = new ArrayList<TreeMap<Character, Integer>>();
+
+    private final ArrayList<int[]> buildingOutputs = new ArrayList<int[]>();
+
+    private char[][] labels;
+
+    private int[][] targets;
+
+    private int[] fail;
+
+    private int[][] outputs;
+
+    /**
+     * Empty automaton. Strings are added then the automaton is compiled.
+     */
+    public PatternAutomaton() {
+        newState();
+    }
+
+    private int newState() {
+        building.add(new TreeMap<Character, Integer>());
+        buildingOutputs.add(new int[0]);
+        return building.size() - 1;
+    }
+
+    private static int[] addId(int[] ids, int id) {
+        for (int i : ids) if (i == id) return ids;
+        int[] result = Arrays.copyOf(ids, ids.length + 1);
+        result[ids.length] = id;
+        return result;
+    }
+
+    /**
+     * Adds a literal string to recognize.
+     * 
+     * @param word the string (not empty)
+     * @param id the identifier reported when the string is found.
+     */
+    public void add(String word, int id) {
+        int state = 0;
+        for (int i = 0; i < word.length(); i++) {
+            Character c = word.charAt(i);
+            Integer next = building.get(state).get(c);
+            if (next == null) {
+                next = newState();
+                building.get(state).put(c, next);
+            }
+            state = next;
+        }
+        buildingOutputs.set(state, addId(buildingOutputs.get(state), id));
+    }
+
+    /**
+     * Computes the failure links and freezes the automaton.
+     */
+    public void compile() {
+        int n = building.size();
+        labels = new char[n][];
+        targets = new int[n][];
+        fail = new int[n];
+        outputs = new int[n][];
+        for (int s = 0; s < n; s++) {
+            TreeMap<Character, Integer> trans = building.get(s);
+            labels[s] = new char[trans.size()];
+            targets[s] = new int[trans.size()];
+            int i = 0;
+            for (Map.Entry<Character, Integer> e : trans.entrySet()) {
+                labels[s][i] = e.getKey();
+                targets[s][i] = e.getValue();
+                i++;
+            }
+            outputs[s] = buildingOutputs.get(s);
+        }
+        // Breadth first: the failure link of a state is computed from its parent's.
+        LinkedList<Integer> todo = new LinkedList<Integer>();
+        for (int t : targets[0]) {
+            fail[t] = 0;
+            todo.add(t);
+        }
+        while (!todo.isEmpty()) {
+            int s = todo.removeFirst();
+            for (int i = 0; i < labels[s].length; i++) {
+                char c = labels[s][i];
+                int t = targets[s][i];
+                int f = fail[s];
+                int g;
+                while ((g = step(f, c)) < 0 && f != 0) f = fail[f];
+                fail[t] = (g < 0 || g == t) ? 0 : g;
+                for (int id : outputs[fail[t]]) outputs[t] = addId(outputs[t], id);
+                todo.add(t);
+            }
+        }
+        building.clear();
+        buildingOutputs.clear();
+    }
+
+    private int step(int state, char c) {
+        int i = Arrays.binarySearch(labels[state], c);
+        return (i < 0) ? -1 : targets[state][i];
+    }
+
+    /**
+     * Finds all the strings occurring in a text.
+     * 
+     * @param text the text scanned
+     * @param found set of the identifiers of the strings found (updated).
+     */
+    public void scan(CharSequence text, BitSet found) {
+        int state = 0;
+        int l = text.length();
+        for (int i = 0; i < l; i++) {
+            char c = text.charAt(i);
+            int next;
+            while ((next = step(state, c)) < 0 && state != 0) state = fail[state];
+            state = (next < 0) ? 0 : next;
+            for (int id : outputs[state]) found.set(id);
+        }
+    }
+
+    /**
+     * Gives back the literal strings equivalent to a regular expression when
+     * it is only made of alternatives of plain strings, possibly with escaped
+     * characters and simple character sets (like [bB]).
+     * 
+     * @param regexp the regular expression
+     * @return the list of strings or null if the expression is not that simple.
+     */
+    public static List<String> literals(String regexp) {
+        List<String> result = new ArrayList<String>();
+        for (String alternative : regexp.split("\\|", -1)) {
+            List<String> words = new ArrayList<String>();
+            words.add("");
+            int l = alternative.length();
+            int i = 0;
+            while (i < l) {
+                char c = alternative.charAt(i);
+                String choices;
+                if (c == '\\' && i + 1 < l && !Character.isLetterOrDigit(alternative.charAt(i + 1))) {
+                    choices = String.valueOf(alternative.charAt(i + 1));
+                    i += 2;
+                } else if (c == '[') {
+                    int end = alternative.indexOf(']', i + 1);
+                    if (end < 0) return null;
+                    choices = alternative.substring(i + 1, end);
+                    if (choices.length() == 0) return null;
+                    for (int j = 0; j < choices.length(); j++) {
+                        if (META_CHARS.indexOf(choices.charAt(j)) >= 0 || choices.charAt(j) == '-') return null;
+                    }
+                    i = end + 1;
+                } else if (META_CHARS.indexOf(c) >= 0) {
+                    return null;
+                } else {
+                    choices = String.valueOf(c);
+                    i++;
+                }
+                boolean optional = i < l && alternative.charAt(i) == '?';
+                if (optional) i++;
+                if (i < l && "*+{".indexOf(alternative.charAt(i)) >= 0) return null;
+                List<String> next = new ArrayList<String>();
+                for (String w : words) {
+                    if (optional) next.add(w);
+                    for (int j = 0; j < choices.length(); j++) next.add(w + choices.charAt(j));
+                }
+                if (next.size() > MAX_EXPANSION) return null;
+                words = next;
+            }
+            for (String w : words) {
+                if (w.length() == 0) return null;
+                result.add(w);
+            }
+            if (result.size() > MAX_EXPANSION) return null;
+        }
+        return result;
+    }
+}
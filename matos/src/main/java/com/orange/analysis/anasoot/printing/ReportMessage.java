@@ -21,7 +21,6 @@ package com.orange.analysis.anasoot.printing;
  */
 
 import java.io.PrintStream;
-import java.util.HashMap;
 
 import com.orange.analysis.anasoot.result.AbsValue;
 import com.orange.analysis.anasoot.result.AndValue;
@@ -33,7 +32,6 @@ import com.orange.matos.core.Alert;
  * Simple messages.
  */
 public class ReportMessage extends JavaReport {
-	static HashMap <String, String> lastOfKind = new HashMap<String,String>();
 	private final String message;
 	private final String last;
 	
@@ -48,26 +46,13 @@ public class ReportMessage extends JavaReport {
 		this.last = last;
 	}
 	
-	/**
-	 * Reset the mechanism that ensures that we only print it once for
-	 * a given category. Used for tables.
-	 */
-	public static void resetLast() {
-		lastOfKind.clear();
-	}
-	
 	@Override
 	public void tell(PrintStream outStream, boolean xmlFormat, JavaResult result, int position) throws Alert {
 		if (last != null) {
 			if (last.length() > 1 && last.charAt(0) == '-') {
-				if (! this.name.equals(lastOfKind.get(last))) {
-					lastOfKind.put(last, this.name);
-					return;
-				}
+				if (session.changeLast(last, this.name)) return;
 			} else {
-				if (! this.name.equals(lastOfKind.get(last))) {
-					lastOfKind.put(last, this.name);
-				} else return;
+				if (! session.changeLast(last, this.name)) return;
 			}
 		}
 
@@ -83,7 +83,7 @@ public class ReportPseudo extends JavaReport {
 					if (xmlFormat) {
 						XMLStream xmlout = new XMLStream(outStream);
 						xmlout.element("pseudostring");
-						xmlout.attribute("ref", javaResult.getRef());
+						xmlout.attribute("ref", javaResult.getRef(session));
 						xmlout.print("");
 						v.xmlOutput(outStream);
 						xmlout.close();
@@ -99,7 +99,7 @@ public class ReportPseudo extends JavaReport {
 			if (xmlFormat) {
 				XMLStream xmlout = new XMLStream(outStream);
 				xmlout.element("pseudostring");
-				xmlout.attribute("ref", javaResult.getRef());
+				xmlout.attribute("ref", javaResult.getRef(session));
 				xmlout.print("");
 				argument.xmlOutput(outStream);
 				xmlout.endElement();
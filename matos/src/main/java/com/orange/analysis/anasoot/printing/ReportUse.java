@@ -84,13 +84,7 @@ public class ReportUse extends JavaReport {
     		case 'n':
 				char code = message.charAt(j+2);
 				j++;
-				IntegerCell count = globalCounterTable.get(code);
-				if (count == null) {
-					count = new IntegerCell(1);
-					globalCounterTable.put(code, count);
-				}
-				out.print(count);
-				count.incr();
+				out.print(session.nextCount(code));
 				break;
     		case 'm':
     			out.print(HtmlOutput.escape(method.getName())); break;
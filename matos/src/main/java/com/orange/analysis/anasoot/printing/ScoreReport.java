@@ -25,9 +25,11 @@ import java.io.IOException;
 import java.io.PrintStream;
 import java.io.UnsupportedEncodingException;
 import java.util.ArrayList;
+import java.util.BitSet;
 import java.util.Collection;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.List;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -41,6 +43,7 @@ import com.orange.analysis.anasoot.result.ValueVisitor;
 import com.orange.matos.core.XMLParser;
 import com.orange.matos.core.XMLStream;
 import com.orange.matos.utils.HtmlOutput;
+import com.orange.matos.utils.ReportSink;
 
 /**
  * This class implements a "WAC style" score mechanism that tries to evaluate
@@ -48,7 +51,7 @@ import com.orange.matos.utils.HtmlOutput;
  * 
  * @author Pierre Cregut
  */
-public class ScoreReport {
+public class ScoreReport implements ReportSink.Listener {
 
     private static final String RULE_SCORE_ELT = "rulematch";
 
@@ -86,6 +89,89 @@ public class ScoreReport {
      */
     ArrayList<StringPattern> patterns = new ArrayList<StringPattern>();
 
+    /**
+     * The patterns that are plain strings, compiled in a single automaton. The
+     * identifiers are the positions in patterns.
+     */
+    PatternAutomaton literalPatterns;
+
+    /**
+     * Number of patterns in the automaton that have not been found yet.
+     */
+    int literalLeft;
+
+    /**
+     * The compiled regular expressions of a score definition. They do not
+     * change once built and are shared by the scores of all the analyses
+     * using the same profile. Each score creates its own matchers.
+     * 
+     * @author Pierre Cregut
+     */
+    public static class Patterns {
+        /** The string patterns in the order of their definition. */
+        final Pattern[] patterns;
+
+        /** For each string pattern, whether it is recognized by the automaton. */
+        final boolean[] literal;
+
+        /** The patterns that are plain strings (null if there is none). */
+        final PatternAutomaton literals;
+
+        /** Number of patterns in the automaton. */
+        final int literalCount;
+
+        /** The catcher patterns in the order of their definition. */
+        final Pattern[] catchers;
+
+        /**
+         * Compiles the patterns of a score definition.
+         * 
+         * @param elt the score element of the rule file
+         */
+        public Patterns(Element elt) {
+            List<String> stringPatterns = new ArrayList<String>();
+            List<Pattern> catcherPatterns = new ArrayList<Pattern>();
+            for (Element subelt : children(elt)) {
+                String kind = subelt.getLocalName();
+                if (kind.equals(PATTERN_SCORE_ELT)) {
+                    stringPatterns.add(subelt.getAttribute(PATTERN_ATTR));
+                } else if (kind.equals(CATCHER_ELT)) {
+                    catcherPatterns.add(Pattern.compile(subelt.getAttribute(PATTERN_ATTR)));
+                }
+            }
+            int n = stringPatterns.size();
+            patterns = new Pattern[n];
+            literal = new boolean[n];
+            PatternAutomaton automaton = new PatternAutomaton();
+            int count = 0;
+            for (int i = 0; i < n; i++) {
+                String pattern = stringPatterns.get(i);
+                patterns[i] = Pattern.compile(pattern);
+                List<String> words = PatternAutomaton.literals(pattern);
+                if (words != null) {
+                    for (String word : words) automaton.add(word, i);
+                    literal[i] = true;
+                    count++;
+                }
+            }
+            if (count > 0) {
+                automaton.compile();
+                literals = automaton;
+            } else {
+                literals = null;
+            }
+            literalCount = count;
+            catchers = catcherPatterns.toArray(new Pattern[catcherPatterns.size()]);
+        }
+    }
+
+    /**
+     * The patterns that are real regular expressions.
+     */
+    ArrayList<StringPattern> regexpPatterns = new ArrayList<StringPattern>();
+
+    private final BitSet found = new BitSet();
+
     /**
      * The catcher patterns
      */
@@ -296,9 +382,20 @@ public class ScoreReport {
          * @param score the effect on the score
          */
         public StringPattern(String pattern, String name, String message, int score) {
+            this(Pattern.compile(pattern), name, message, score);
+        }
+
+        /**
+         * Constructor from a compiled pattern.
+         * 
+         * @param pattern the pattern to recognize in the strings
+         * @param message what is printed when the pattern is encountered
+         * @param score the effect on the score
+         */
+        public StringPattern(Pattern pattern, String name, String message, int score) {
             super(name, message, score);
-            this.pattern = pattern;
-            this.matcher = Pattern.compile(pattern).matcher("");
+            this.pattern = pattern.pattern();
+            this.matcher = pattern.matcher("");
         }
 
         /**
@@ -353,9 +450,19 @@ public class ScoreReport {
          * @param message what is printed when the pattern is encountered
          */
         public StringCatcher(String pattern, String name) {
-            this.pattern = pattern;
+            this(Pattern.compile(pattern), name);
+        }
+
+        /**
+         * Constructor from a compiled pattern.
+         * 
+         * @param pattern the pattern to recognize in the strings
+         * @param name the title of the table
+         */
+        public StringCatcher(Pattern pattern, String name) {
+            this.pattern = pattern.pattern();
             this.name = name;
-            this.matcher = Pattern.compile(pattern).matcher("");
+            this.matcher = pattern.matcher("");
         }
 
         /**
@@ -543,14 +650,21 @@ public class ScoreReport {
      * @param elt
      */
     public ScoreReport(Element elt) {
+        this(elt, new Patterns(elt));
+    }
+
+    /**
+     * Constructor of the score from the XML element in the rule file and its
+     * patterns already compiled.
+     * 
+     * @param elt the score element
+     * @param compiled the patterns compiled from the same element
+     */
+    public ScoreReport(Element elt, Patterns compiled) {
         threshold = parseIntAttribute(elt, "threshold");
-        NodeList childNodes = elt.getChildNodes();
-        int l = childNodes.getLength();
-        for (int i = 0; i < l; i++) {
-            Node node = childNodes.item(i);
-            if (!(node instanceof Element))
-                continue;
-            Element subelt = (Element) node;
+        int patternIndex = 0;
+        int catcherIndex = 0;
+        for (Element subelt : children(elt)) {
             String kind = subelt.getLocalName();
             String name = subelt.getAttribute(NAME_ATTR);
             String msg = subelt.getAttribute(MESG_ATTR);
@@ -574,8 +688,7 @@ public class ScoreReport {
                     cell.add(useRule);
                 }
             } else if (kind.equals(PATTERN_SCORE_ELT)) {
-                String pattern = subelt.getAttribute(PATTERN_ATTR);
-                StringPattern pat = new StringPattern(pattern, name, msg, score);
+                StringPattern pat = new StringPattern(compiled.patterns[patternIndex++], name, msg, score);
                 elements.add(pat);
                 elementDictionary.put(pat.name, pat);
                 patterns.add(pat);
@@ -600,8 +713,7 @@ public class ScoreReport {
                 elements.add(conjRule);
                 elementDictionary.put(conjRule.name, conjRule);
             } else if (kind.equals(CATCHER_ELT)) {
-                String pattern = subelt.getAttribute(PATTERN_ATTR);
-                StringCatcher catcher = new StringCatcher(pattern, msg);
+                StringCatcher catcher = new StringCatcher(compiled.catchers[catcherIndex++], msg);
                 catchers.add(catcher);
             } else if (kind.equals(PERMISSION_ELT)) {
                 String permission = subelt.getAttribute(PERMISSION_ATTR);
@@ -611,6 +723,29 @@ public class ScoreReport {
                 elementDictionary.put(name, perm);
             }
         }
+        // Split the patterns between the automaton and the regular expressions.
+        for (int i = 0; i < patterns.size(); i++) {
+            if (!compiled.literal[i]) regexpPatterns.add(patterns.get(i));
+        }
+        literalPatterns = compiled.literals;
+        literalLeft = compiled.literalCount;
+    }
+
+    /**
+     * The child elements of an element.
+     * 
+     * @param elt the parent element
+     * @return the children in document order
+     */
+    private static List<Element> children(Element elt) {
+        List<Element> result = new ArrayList<Element>();
+        NodeList childNodes = elt.getChildNodes();
+        int l = childNodes.getLength();
+        for (int i = 0; i < l; i++) {
+            Node node = childNodes.item(i);
+            if (node instanceof Element) result.add((Element) node);
+        }
+        return result;
     }
 
     /**
@@ -635,9 +770,13 @@ public class ScoreReport {
      * @param v
      */
     public void matchValue(AbsValue v) {
-        for (StringPattern p : patterns) {
-            p.match(v);
-        }
+        v.explore(new ValueVisitor() {
+            @Override
+            public void visit(AbsValue v) {
+                if (v instanceof StringValue)
+                    matchPatterns(((StringValue) v).value);
+            }
+        });
     }
 
     /**
@@ -660,14 +799,35 @@ public class ScoreReport {
      * @param s
      */
     public void matchString(String s) {
-        for (StringPattern p : patterns) {
-            p.match(s);
-        }
+        matchPatterns(s);
         for (StringCatcher c : catchers) {
             c.match(s);
         }
     }
 
+    /**
+     * Match the score patterns against a string. Plain strings are searched in a
+     * single pass. A pattern already found is not searched again.
+     * 
+     * @param s
+     */
+    private void matchPatterns(String s) {
+        if (literalLeft > 0) {
+            found.clear();
+            literalPatterns.scan(s, found);
+            for (int i = found.nextSetBit(0); i >= 0; i = found.nextSetBit(i + 1)) {
+                StringPattern p = patterns.get(i);
+                if (!p.isUsed()) {
+                    p.use();
+                    literalLeft--;
+                }
+            }
+        }
+        for (StringPattern p : regexpPatterns) {
+            if (!p.isUsed()) p.match(s);
+        }
+    }
+
     /**
      * Print out the result of the report. If in XML format, just give back the
      * global score. Otherwise, tries to give a pretty rendering. If the score
@@ -736,6 +896,39 @@ public class ScoreReport {
         return v;
     }
 
+    @Override
+    public void text(String s) {
+        matchString(s);
+    }
+
+    /**
+     * Starts matching the score against the text printed on a report. A
+     * report sink gives the strings printed directly, other streams are
+     * wrapped. Both match the same calls: print(String), println(String),
+     * append and write.
+     * 
+     * @param out the report
+     * @return the stream to print on
+     */
+    public PrintStream listen(PrintStream out) {
+        if (out instanceof ReportSink) {
+            ((ReportSink) out).addListener(this);
+            return out;
+        }
+        return wrap(out);
+    }
+
+    /**
+     * Stops matching the text printed on a report.
+     * 
+     * @param out the report given to listen.
+     */
+    public void stopListening(PrintStream out) {
+        if (out instanceof ReportSink) {
+            ((ReportSink) out).removeListener(this);
+        }
+    }
+
     /**
      * Wraps a printstream to catch errors.
      * 
@@ -39,6 +39,7 @@ import soot.SootMethod;
 
 import com.orange.analysis.anasoot.AnasootConfig;
 import com.orange.analysis.anasoot.result.NodeTable;
+import com.orange.analysis.anasoot.spy.AnalysisSession;
 import com.orange.analysis.anasoot.spy.SpyField;
 import com.orange.analysis.anasoot.spy.SpyMethod;
 import com.orange.analysis.anasoot.spy.SpyResult;
@@ -138,17 +139,18 @@ public class StructureReport {
 	 * @param cc
 	 * @param structure
 	 * @param result
+	 * @param session the state of the analysis printed
 	 * @param out
 	 * @throws Alert
 	 */
 	public static void dump (AnasootConfig acf, GlobalReport global, 
-						     SpyResult result, PrintStream out) throws Alert {
+						     SpyResult result, AnalysisSession session, PrintStream out) throws Alert {
 	    StructureReport structure = global.getStructure();
 	    ScoreReport score = global.getScore();
 	    Map<String,JavaReport> reports = global.getReports();
 		boolean xmlFormat = acf.xmlFormat();
 		// Reset the tables for last seen.
-		ReportMessage.resetLast();
+		session.resetLast();
 		// HACK TO GO AROUND WRONG REPORTS BECAUSE OF PHANTOM REFS
 		dump_phantoms(out, xmlFormat);
 		if (structure == null || xmlFormat) {
@@ -180,14 +182,17 @@ public class StructureReport {
 			for(String ruleName: result.returns.keySet()) score.matchRule(ruleName);
 			for(String ruleName: result.fields.keySet()) score.matchRule(ruleName);
 		}
-		this.out = (score != null) ? score.wrap(rawOut) : rawOut;
+		this.out = (score != null) ? score.listen(rawOut) : rawOut;
 		this.nodeTable = result.nodeTable;
 		dumpNodeList(contents.getChildNodes());
 		for (SpyMethod call_rule : result.callUses.values()) { if (call_rule.useful() && !done.contains(call_rule.getName())) { call_rule.dump(out, false);} }
 		for (SpyReturn sr : result.returns.values()) {if (sr.useful() && !done.contains(sr.getName())) sr.dump(out, false); }
 		for (SpyField sf : result.fields.values()) { if (sf.useful() && !done.contains(sf.getName())) sf.dump (out, false);	}
 		for (JavaReport jr : reports.values()) { if (!done.contains(jr.getName())) jr.tellAll (out); }
-		if (score != null) score.tell(out, false);
+		if (score != null) {
+			score.stopListening(rawOut);
+			score.tell(out, false);
+		}
 	}
 
 
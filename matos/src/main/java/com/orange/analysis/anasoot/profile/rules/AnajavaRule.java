@@ -23,21 +23,15 @@ package com.orange.analysis.anasoot.profile.rules;
  * #L%
  */
 
-import java.io.File;
-import java.io.FilenameFilter;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
-import javax.xml.parsers.DocumentBuilder;
-import javax.xml.parsers.DocumentBuilderFactory;
-
-import org.w3c.dom.Document;
 import org.w3c.dom.Element;
-import org.w3c.dom.NodeList;
 
 import com.orange.analysis.anasoot.AnasootConfig;
 import com.orange.analysis.anasoot.printing.GlobalReport;
@@ -49,7 +43,6 @@ import com.orange.analysis.anasoot.printing.UnresolvedReport;
 import com.orange.analysis.anasoot.printing.UsedJSRReport;
 import com.orange.matos.core.Alert;
 import com.orange.matos.core.Configuration;
-import com.orange.matos.core.Out;
 import com.orange.matos.core.RuleFile;
 import com.orange.matos.core.XMLParser;
 
@@ -66,11 +59,11 @@ public class AnajavaRule {
 	 */
 	public Map <String,JavaRule> rules;
 	/**
-	 * Mapping between classes and unresolved JSR. To be modified.
+	 * Mapping between classes and unresolved JSR (read-only).
 	 */
 	public Map <String, String> unresolvedJSR;
 	/**
-	 * Mapping between classes and JSR.
+	 * Mapping between classes and JSR (read-only).
 	 */
 	public Map <String,String> listOfJSR;
 	
@@ -97,6 +90,86 @@ public class AnajavaRule {
 	static final String UNRESOLVED_JSR_REPORT = "unresolved";
 	static final String USED_JSR_REPORT = "usedJSR";
 
+	/** Key of the template in the compiled forms of a rule file. */
+	private static final String TEMPLATE_KEY = "anasoot.rules";
+
+	/**
+	 * Definition of a rule as read from the profile. The rule itself is
+	 * created for each analysis as it points to the reports of the analysis.
+	 */
+	static class RuleDefinition {
+		final String kind;
+		final String name;
+		final String className;
+		/** Signature of the method or type of the field. */
+		final String signature;
+		final String reportName;
+		final ArrayList<Integer> positions;
+
+		RuleDefinition(String kind, String name, Element impl, ArrayList<Integer> positions) {
+			this.kind = kind;
+			this.name = name;
+			this.className = impl.getAttribute("class");
+			this.signature = impl.getAttribute(kind.equals("field") ? "type" : "signature");
+			this.reportName = impl.getAttribute("report");
+			this.positions = positions;
+		}
+	}
+
+	/**
+	 * The parts of a profile that do not depend on an analysis: the
+	 * definitions of the rules, the custom checkers and the compiled score
+	 * patterns. A template is built once per rule file and never modified,
+	 * so that analyses can share it. The reports, the score and the rules
+	 * are created for each analysis.
+	 */
+	static class Template {
+		final List<RuleDefinition> rules = new ArrayList<RuleDefinition>();
+		final List<String> customCheckers = new ArrayList<String>();
+		final ScoreReport.Patterns scorePatterns;
+
+		Template(XMLParser parser) {
+			for(Element rule : parser.getKind(RULE_KIND)) {
+				String ruleName = rule.getAttribute("name");
+				Element impl;
+				if ((impl=parser.getElement(rule,"args")) != null) {
+					Element args[] = XMLParser.getElements(impl,"argument");
+					ArrayList<Integer> positionArgs = new ArrayList<Integer> ();
+					for(int j=0; j < args.length; j++) {
+						Integer v = new Integer(args[j].getAttribute("position"));
+						positionArgs.add(v);
+					}
+					rules.add(new RuleDefinition("args", ruleName, impl, positionArgs));
+				} else if ((impl=parser.getElement(rule,"return")) != null) {
+					rules.add(new RuleDefinition("return", ruleName, impl, null));
+				} else if ((impl=parser.getElement(rule,"field")) != null) {
+					rules.add(new RuleDefinition("field", ruleName, impl, null));
+				} else if ((impl=parser.getElement(rule,"use")) != null) {
+					rules.add(new RuleDefinition("use", ruleName, impl, null));
+				}
+			}
+			for(Element custom: parser.getKind(CUSTOM_RULE_KIND)) {
+				customCheckers.add(custom.getAttribute("name"));
+			}
+			Element scoreDef [] = parser.getKind(SCORE_KIND);
+			scorePatterns = (scoreDef.length == 1) ? new ScoreReport.Patterns(scoreDef[0]) : null;
+		}
+	}
+
+	/**
+	 * Gives back the template of a rule file, building it on first use.
+	 * @param rulefile the rule file
+	 * @return the template shared by the analyses
+	 */
+	private static Template template(RuleFile rulefile) {
+		Template template = (Template) rulefile.getCompiled(TEMPLATE_KEY);
+		if (template == null) {
+			template = new Template(rulefile.getParser());
+			rulefile.putCompiled(TEMPLATE_KEY, template);
+		}
+		return template;
+	}
+
 	private void initJSRResolution(boolean doIt) throws Alert {
 		//Add unresolved report
 		JavaReport report1 = new UnresolvedReport(UNRESOLVED_JSR_REPORT);
@@ -106,41 +179,14 @@ public class AnajavaRule {
 		JavaReport report2 = new UsedJSRReport(USED_JSR_REPORT, doIt);
 		global.put(USED_JSR_REPORT, report2);
 
-		//Add unresolved and used jsr in hashTables
-		unresolvedJSR = new HashMap<String, String>();
-		listOfJSR = new HashMap<String, String>();
+		//Add unresolved and used jsr (shared read-only catalogue)
 		if (doIt) {
-			File apiDirectory = new File(System.getProperty("matos.lib")+File.separator+"api");
-			FilenameFilter xmlFilter = new FilenameFilter(){
-				@Override
-				public boolean accept(File dir, String name){
-					return name.endsWith(".xml");
-				}
-			};
-			String [] xmlFiles = apiDirectory.list(xmlFilter);
-			if (xmlFiles == null) return;
-			for (int i=0; i<xmlFiles.length; i++){
-				String xmlPath = System.getProperty("matos.lib")+File.separator+"api"+File.separator+xmlFiles[i];
-				DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
-				Document doc_xml = null;
-				try{
-					DocumentBuilder builder = factory.newDocumentBuilder();
-					doc_xml = builder.parse(new File(xmlPath));
-				}catch (Exception e){
-					e.printStackTrace(Out.getMain());
-					throw new Alert("Unable to load unresolved JSRs: "+e.getMessage());
-				}
-				Element jsrElement = doc_xml.getDocumentElement();
-				String jsrName = jsrElement.getAttribute("name");
-				boolean resolved = Boolean.parseBoolean(jsrElement.getAttribute("resolved"));
-				NodeList classes = jsrElement.getElementsByTagName("class");
-				for (int j=0; j<classes.getLength(); j++){
-					Element classElem = (Element)classes.item(j);
-					String classname = classElem.getAttribute("name");
-					if (!resolved) unresolvedJSR.put(classname, jsrName);
-					listOfJSR.put(classname, jsrName);
-				}
-			}		
+			JSRCatalogue catalogue = JSRCatalogue.get();
+			unresolvedJSR = catalogue.unresolved;
+			listOfJSR = catalogue.all;
+		} else {
+			unresolvedJSR = Collections.emptyMap();
+			listOfJSR = Collections.emptyMap();
 		}
 	}
 	
@@ -157,38 +203,30 @@ public class AnajavaRule {
 		this.rulefile = rulefile;
 		rules = new HashMap<String,JavaRule>();
 		parser = rulefile.getParser();
+		Template template = template(rulefile);
 
-		Element ruleDefs [] = parser.getKind(RULE_KIND);
 		Element reportDefs [] = parser.getKind(REPORT_KIND);
 		Element structureDef [] = parser.getKind(STRUCTURE_KIND);
 		Element scoreDef [] = parser.getKind(SCORE_KIND);
-		Element customRules [] = parser.getKind(CUSTOM_RULE_KIND);
 		global = new GlobalReport();
 		if (structureDef.length == 1) { global.setStructureReport(new StructureReport(structureDef[0])); }
 		
-		if (scoreDef.length == 1) {	global.setScore(new ScoreReport(scoreDef[0])); }
+		if (scoreDef.length == 1) {	global.setScore(new ScoreReport(scoreDef[0], template.scorePatterns)); }
 		
 		for(Element rep : reportDefs) {
 			JavaReport.parse(rep,global, parser, profile);
 		}	
 
-		for(Element custom: customRules) {
-			String classname = custom.getAttribute("name");
-			customCheckers.add(classname);
-		}
+		customCheckers.addAll(template.customCheckers);
 		initJSRResolution(config.doUsedJSR());
-		parseRules(ruleDefs);
+		createRules(template.rules);
 	}
 
-	private void parseRules(Element [] ruleDefs) throws IOException {
-		for(int i=0; i < ruleDefs.length; i++) {
-			Element rule=ruleDefs[i];
-			Element impl;
-			String ruleName = rule.getAttribute("name");	    
-			if ((impl=parser.getElement(rule,"args")) != null) {
-				String className = impl.getAttribute("class");
-				String signature = impl.getAttribute("signature");
-				String reportName = impl.getAttribute("report");
+	private void createRules(List<RuleDefinition> ruleDefs) throws IOException {
+		for(RuleDefinition def : ruleDefs) {
+			String ruleName = def.name;
+			String reportName = def.reportName;
+			if (def.kind.equals("args")) {
 				JavaReport report =  global.get(reportName);
 				if (report==null && !reportName.equals("terse")) {
 					String msg = 
@@ -196,37 +234,22 @@ public class AnajavaRule {
 						" in definition of rule " + ruleName;
 					throw new IOException(msg);
 				}
-				Element args[] = XMLParser.getElements(impl,"argument");
-				ArrayList<Integer> positionArgs = new ArrayList<Integer> ();
-				for(int j=0; j < args.length; j++) {
-					Integer v = new Integer(args[j].getAttribute("position"));
-					positionArgs.add(v);
-				}
-				JavaRule r = new CallRule(ruleName,className,signature,
-						report,positionArgs);
+				JavaRule r = new CallRule(ruleName,def.className,def.signature,
+						report,new ArrayList<Integer>(def.positions));
 				rules.put(ruleName,r);
-			} else if ((impl=parser.getElement(rule,"return")) != null) {
-				String className = impl.getAttribute("class");
-				String signature = impl.getAttribute("signature");
-				String reportName = impl.getAttribute("report");
+			} else if (def.kind.equals("return")) {
 				JavaReport jr = (reportName == null) ? null : global.get(reportName);
-				JavaRule r = new ReturnRule(ruleName,className,signature, jr);
+				JavaRule r = new ReturnRule(ruleName,def.className,def.signature, jr);
 				rules.put(ruleName,r);
-			} else if ((impl=parser.getElement(rule,"field")) != null) {
-				String className = impl.getAttribute("class");
-				String fieldType = impl.getAttribute("type");
-				String reportName = impl.getAttribute("report");
+			} else if (def.kind.equals("field")) {
 				JavaReport jr = (reportName == null) ? null : global.get(reportName);
-				JavaRule r = new FieldRule(ruleName,className,fieldType, jr);
+				JavaRule r = new FieldRule(ruleName,def.className,def.signature, jr);
 				rules.put(ruleName,r);
-			} else if ((impl=parser.getElement(rule,"use")) != null) {
-				String className = impl.getAttribute("class");
-				String signature = impl.getAttribute("signature");
-				String reportName = impl.getAttribute("report");
+			} else if (def.kind.equals("use")) {
 				JavaReport jr =  global.get(reportName);
 				if (jr instanceof ReportUse) {
 					ReportUse reportUse = (ReportUse) jr;
-					JavaRule r = new UseRule(ruleName,className,signature, reportUse);
+					JavaRule r = new UseRule(ruleName,def.className,def.signature, reportUse);
 					rules.put(ruleName,r);
 				}
 			}
@@ -0,0 +1,129 @@
+package com.orange.analysis.anasoot.profile.rules;
+
+/*
+ * #%L
+ * Matos
+ * %%
+ * Copyright (C) 2004 - 2014 Orange SA
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import java.io.File;
+import java.io.FilenameFilter;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import javax.xml.parsers.DocumentBuilder;
+import javax.xml.parsers.DocumentBuilderFactory;
+
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.NodeList;
+
+import com.orange.matos.core.Alert;
+import com.orange.matos.core.Out;
+
+/**
+ * Catalogue of the classes defined by the JSR APIs described in the
+ * directory <code>${matos.lib}/api</code>. It is parsed once and shared
+ * read-only by all the rule files of the process. It is parsed again only 
+ * if the set of descriptors or one of their modification dates changes.
+ * 
+ * @author Pierre Cregut
+ */
+final class JSRCatalogue {
+
+	private static final FilenameFilter XML_FILTER = new FilenameFilter(){
+		@Override
+		public boolean accept(File dir, String name){
+			return name.endsWith(".xml");
+		}
+	};
+
+	private static JSRCatalogue current;
+
+	/**
+	 * Signature of the descriptors parsed: modification date of each file.
+	 */
+	private final Map<String, Long> stamps;
+	/**
+	 * Mapping between classes and unresolved JSR.
+	 */
+	final Map<String, String> unresolved;
+	/**
+	 * Mapping between classes and JSR.
+	 */
+	final Map<String, String> all;
+
+	private JSRCatalogue(Map<String, Long> stamps, Map<String, String> unresolved, Map<String, String> all) {
+		this.stamps = stamps;
+		this.unresolved = Collections.unmodifiableMap(unresolved);
+		this.all = Collections.unmodifiableMap(all);
+	}
+
+	/**
+	 * Gives back the catalogue of the JSR APIs of the current installation.
+	 * @return the shared catalogue.
+	 * @throws Alert if a descriptor cannot be parsed.
+	 */
+	static synchronized JSRCatalogue get() throws Alert {
+		File apiDirectory = new File(System.getProperty("matos.lib")+File.separator+"api");
+		String [] xmlFiles = apiDirectory.list(XML_FILTER);
+		Map<String, Long> stamps = new HashMap<String, Long>();
+		if (xmlFiles != null) {
+			for (String xmlFile : xmlFiles) {
+				stamps.put(xmlFile, new File(apiDirectory, xmlFile).lastModified());
+			}
+		}
+		if (current == null || !current.stamps.equals(stamps)) {
+			current = parse(apiDirectory, xmlFiles, stamps);
+		}
+		return current;
+	}
+
+	private static JSRCatalogue parse(File apiDirectory, String [] xmlFiles, Map<String, Long> stamps) throws Alert {
+		Map<String, String> unresolved = new HashMap<String, String>();
+		Map<String, String> all = new HashMap<String, String>();
+		if (xmlFiles == null) return new JSRCatalogue(stamps, unresolved, all);
+		DocumentBuilder builder;
+		try {
+			builder = DocumentBuilderFactory.newInstance().newDocumentBuilder();
+		} catch (Exception e) {
+			e.printStackTrace(Out.getMain());
+			throw new Alert("Unable to load unresolved JSRs: "+e.getMessage());
+		}
+		for (String xmlFile : xmlFiles) {
+			Document doc_xml = null;
+			try{
+				doc_xml = builder.parse(new File(apiDirectory, xmlFile));
+			}catch (Exception e){
+				e.printStackTrace(Out.getMain());
+				throw new Alert("Unable to load unresolved JSRs: "+e.getMessage());
+			}
+			Element jsrElement = doc_xml.getDocumentElement();
+			String jsrName = jsrElement.getAttribute("name");
+			boolean resolved = Boolean.parseBoolean(jsrElement.getAttribute("resolved"));
+			NodeList classes = jsrElement.getElementsByTagName("class");
+			for (int j=0; j<classes.getLength(); j++){
+				Element classElem = (Element)classes.item(j);
+				String classname = classElem.getAttribute("name");
+				if (!resolved) unresolved.put(classname, jsrName);
+				all.put(classname, jsrName);
+			}
+		}
+		return new JSRCatalogue(stamps, unresolved, all);
+	}
+}
@@ -26,6 +26,7 @@ package com.orange.analysis.anasoot.result;
 import java.io.InputStream;
 import java.io.PrintStream;
 import java.util.ArrayList;
+import java.util.BitSet;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
@@ -50,19 +51,6 @@ import com.orange.matos.core.XMLStream;
 @XmlRootElement
 public abstract class AbsValue  {
 	
-	private static final int MAX_COUNT = 100;
-	static int count;
-	
-	static boolean countDown() {
-		if (count <= 0) { return true;
-			
-		} 
-		count --;
-		return false;
-	}
-	
-	static void countInit() { count = MAX_COUNT; }
-	
 	/**
 	 * Empty constructor for reflection.
 	 */
@@ -70,12 +58,12 @@ public abstract class AbsValue  {
 	
 	/**
 	 * Normalization method more internal that handles recursion. This is the one that must
-	 * be implemented by each subclass.
-	 * @param b
-	 * @param seen
+	 * be implemented by each subclass. Sub-terms are normalized through the normalizer
+	 * and results are built with its factory.
+	 * @param norm the state of the normalization
 	 * @return
 	 */
-	public abstract AbsValue normalize(boolean b, Set <Integer> seen);
+	public abstract AbsValue normalize(Normalizer norm);
 
 	/**
 	 * Normalize the result computed by the analysis phase. Normalization implies 
@@ -90,23 +78,20 @@ public abstract class AbsValue  {
 	 * @return the normalized value
 	 */
 	public AbsValue normalize(boolean b) { 
-		try {
-			countInit();
-			return normalize (b, new HashSet <Integer> ());
-		} catch (OutOfMemoryError e) { return new UnknownValue("*[TOO BIG]*"); }
+		return new Normalizer(b).start(this);
 	}
 	
 	/**
 	 * Apply a visitor on one-self. It is a more internal version that handles recursion.
 	 * @param visitor A class containing a callback method.
 	 */
-	public abstract void explore(ValueVisitor visitor, Set <Integer> seen);
+	public abstract void explore(ValueVisitor visitor, BitSet seen);
 
 	/**
 	 * Apply a visitor pattern on the abstract value.
 	 * @param visitor
 	 */
-	public void explore(ValueVisitor visitor) { explore(visitor, new HashSet <Integer>()) ; }
+	public void explore(ValueVisitor visitor) { explore(visitor, new BitSet()) ; }
 	/**
 	 * A Java to XML marshaller for AbsValue
 	 */
@@ -235,7 +220,7 @@ public abstract class AbsValue  {
 		}
 	}
 	
-	private static AbsValue expandConcat(ArrayList<AbsValue> contents, int position, LoopBreaker lb) throws LoopException {
+	private static AbsValue expandConcat(ArrayList<AbsValue> contents, int position, Normalizer norm, LoopBreaker lb) throws LoopException {
 		lb.check();
 		OrValue allResults = new OrValue ();
 		AbsValue focus = contents.get(position);
@@ -244,10 +229,9 @@ public abstract class AbsValue  {
 		int current = lb.current();
 		try {
 		for (AbsValue h: alternatives) {
-			ArrayList <AbsValue> copy = new ArrayList <AbsValue> ();
-			copy.addAll(contents);
+			ArrayList <AbsValue> copy = new ArrayList <AbsValue> (contents);
 			copy.set(position, h);
-			AbsValue result = prefixNormalize(new ConcatValue(copy).normalize(true), lb);
+			AbsValue result = prefixNormalize(norm.start(new ConcatValue(copy)), norm, lb);
 			allResults.add(result);
 		}
 		} catch (LoopException e) {
@@ -263,16 +247,16 @@ public abstract class AbsValue  {
 		return allResults.simplify();		
 	}
 	
-	private static AbsValue prefixNormalize(AbsValue v, LoopBreaker lb) throws LoopException {
+	private static AbsValue prefixNormalize(AbsValue v, Normalizer norm, LoopBreaker lb) throws LoopException {
 		lb.check();
 		if (v instanceof ConcatValue) {
 			ArrayList <AbsValue> contents = ((ConcatValue) v).contents;
 			if ((contents.size() > 1) && (contents.get(0) instanceof OrValue)) {
-				return expandConcat(contents,0, lb);
+				return expandConcat(contents,0, norm, lb);
 			} else if ((contents.size() > 2)
 						&& (contents.get(0) instanceof StringValue) 
 						&& (contents.get(1) instanceof OrValue)) {
-				return expandConcat(contents,1, lb);
+				return expandConcat(contents,1, norm, lb);
 			} else return v;
 		} else if (v instanceof OrValue) {
 			int current = lb.current();
@@ -280,7 +264,7 @@ public abstract class AbsValue  {
 			OrValue result = new OrValue ();
 			try {
 				for(AbsValue a: vals) {
-					AbsValue r = prefixNormalize(a,lb);
+					AbsValue r = prefixNormalize(a,norm,lb);
 					result.add(r);
 				}
 				return result; // No need to simplify.
@@ -293,13 +277,14 @@ public abstract class AbsValue  {
 	
 	/**
 	 * Taking a normalized value, normalize it further as a disjunction of potential values with
-	 * the longest computable prefix
+	 * the longest computable prefix. The alternatives share a single normalizer so that
+	 * the common parts of the expansion are normalized and allocated once.
 	 * @param v the normalized AbsValue
 	 * @return a further normalized result.
 	 */
 	public static AbsValue prefixNormalize(AbsValue v) {
 		try {
-			return prefixNormalize(v, new LoopBreaker());
+			return prefixNormalize(v, new Normalizer(true), new LoopBreaker());
 		} catch (LoopException e) { return new UnknownValue(); }
 	}
 
@@ -24,6 +24,7 @@ package com.orange.analysis.anasoot.result;
  */
 import java.io.PrintStream;
 import java.util.ArrayList;
+import java.util.BitSet;
 import java.util.Set;
 
 import javax.xml.bind.annotation.XmlElementRef;
@@ -64,13 +65,13 @@ public class AndValue extends AbsValue {
 	public void add(AbsValue v) { vals.add(v); }
 
 	@Override
-	public AbsValue normalize(boolean b, Set <Integer> seen) {
-		if (vals.size() == 1) return vals.get(0).normalize(b, seen);
-		ArrayList<AbsValue> l = new ArrayList<AbsValue>();
+	public AbsValue normalize(Normalizer norm) {
+		if (vals.size() == 1) return norm.normalize(vals.get(0));
+		ArrayList<AbsValue> l = new ArrayList<AbsValue>(vals.size());
 		for(AbsValue e: vals) {
-			l.add(e.normalize(b, seen));
+			l.add(norm.normalize(e));
 		}
-		return new AndValue(l);
+		return norm.factory.and(l);
 	}
 	
 	@Override
@@ -94,7 +95,7 @@ public class AndValue extends AbsValue {
 	}
 
 	@Override
-	public void explore(ValueVisitor visitor, Set <Integer> seen) {
+	public void explore(ValueVisitor visitor, BitSet seen) {
 		visitor.visit(this);
 		for(AbsValue e: vals) e.explore(visitor, seen);
 	}
@@ -24,6 +24,7 @@ package com.orange.analysis.anasoot.result;
  */
 
 import java.io.PrintStream;
+import java.util.BitSet;
 import java.util.Set;
 
 import javax.xml.bind.annotation.XmlAttribute;
@@ -82,9 +83,9 @@ public class BinopValue extends AbsValue{
 	}
 	
 	@Override
-	public AbsValue normalize(boolean b, Set <Integer> seen) {
+	public AbsValue normalize(Normalizer norm) {
 		Out.getLog().println("bv");
-		return new BinopValue(opname, val1.normalize(b, seen), val2.normalize(b, seen));
+		return norm.factory.binop(opname, norm.normalize(val1), norm.normalize(val2));
 	}
 	
 	@Override
@@ -100,7 +101,7 @@ public class BinopValue extends AbsValue{
 	}
 	
 	@Override
-	public void explore(ValueVisitor visitor, Set <Integer> seen) {
+	public void explore(ValueVisitor visitor, BitSet seen) {
 		visitor.visit(this);
 		if (val1 != null) val1.explore(visitor,seen);
 		if (val2 != null) val2.explore(visitor,seen);
@@ -22,6 +22,7 @@ package com.orange.analysis.anasoot.result;
 
 import java.io.PrintStream;
 import java.util.ArrayList;
+import java.util.BitSet;
 import java.util.Set;
 
 import javax.xml.bind.annotation.XmlElementRef;
@@ -80,11 +81,11 @@ public class ConcatValue extends AbsValue {
 	}
 	
 	@Override
-	public AbsValue normalize(boolean b, Set <Integer> seen) {
-		ArrayList<AbsValue> buffer = new ArrayList<AbsValue>();
-		StringBuffer prefixBuffer = new StringBuffer();
+	public AbsValue normalize(Normalizer norm) {
+		ArrayList<AbsValue> buffer = new ArrayList<AbsValue>(contents.size());
+		StringBuilder prefixBuffer = new StringBuilder();
 		for(AbsValue e: contents) {
-			AbsValue n = e.normalize(b, seen);
+			AbsValue n = norm.normalize(e);
 			if (n instanceof ConcatValue) 
 				buffer.addAll(((ConcatValue) n).contents);
 			else buffer.add(n);
@@ -96,16 +97,15 @@ public class ConcatValue extends AbsValue {
 				pos ++;
 			} else break;
 		}
-		String prefix = prefixBuffer.toString();
-		ArrayList<AbsValue> result = new ArrayList<AbsValue>();
-		if (prefix.length() > 0) result.add(new StringValue(prefix));
+		ArrayList<AbsValue> result = new ArrayList<AbsValue>(buffer.size() - pos + 1);
+		if (prefixBuffer.length() > 0) result.add(norm.factory.string(prefixBuffer.toString()));
 		for (int j = pos; j < buffer.size(); j++ ) result.add(buffer.get(j));
 		if (result.size() == 1) return result.get(0);
-		else return new ConcatValue(result);
+		else return norm.factory.concat(result);
 	}
 
 	@Override
-	public void explore(ValueVisitor visitor, Set <Integer> seen) {
+	public void explore(ValueVisitor visitor, BitSet seen) {
 		visitor.visit(this);
 		for(AbsValue e: contents) e.explore(visitor,seen);
 	}
@@ -21,6 +21,7 @@ package com.orange.analysis.anasoot.result;
  */
 
 import java.io.PrintStream;
+import java.util.BitSet;
 import java.util.Set;
 
 import javax.xml.bind.annotation.XmlAttribute;
@@ -141,13 +142,13 @@ public class ConstantValue extends AbsValue {
 		out.endElement();
 	}
 	@Override
-	public void explore(ValueVisitor visitor, Set <Integer> seen) {
+	public void explore(ValueVisitor visitor, BitSet seen) {
 		visitor.visit(this);
 	}
 
 	@Override
-	public AbsValue normalize(boolean b, Set <Integer> seen) {
-		if (b) return new StringValue(rep_v);
+	public AbsValue normalize(Normalizer norm) {
+		if (norm.full) return norm.factory.string(rep_v);
 		return this;
 	}
 
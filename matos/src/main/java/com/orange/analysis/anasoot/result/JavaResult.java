@@ -27,6 +27,8 @@ import java.util.HashMap;
 
 import soot.SootMethod;
 
+import com.orange.analysis.anasoot.spy.AnalysisSession;
+
 /**
  * Represents the results of the midlet analysis.
  *
@@ -59,11 +61,6 @@ public class JavaResult  implements Cloneable {
 	 */
 	public static final String REF_TAG = "id";
 	
-	/**
-	 * Hidden counter for generating unique labels.
-	 */
-	private static int counter = 0;
-	
 	/**
 	 * Create a new java result
 	 * @param approx the approximated value
@@ -98,12 +95,13 @@ public class JavaResult  implements Cloneable {
 	
 	/**
 	 * Gets the unique name of the result. Adds a tag if necessary.
+	 * @param session the analysis that generates the labels
 	 * @return the unique ref
 	 */
-	public String getRef() {
+	public String getRef(AnalysisSession session) {
 		String tag = tags.get(REF_TAG);
 		if (tag == null) {
-			tag = "" + counter++;
+			tag = session.nextRef();
 			tags.put(REF_TAG, tag);
 		}
 		return tag;
@@ -21,7 +21,10 @@ package com.orange.analysis.anasoot.result;
  */
 
 import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.BitSet;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Set;
 
 import javax.xml.bind.annotation.XmlAttribute;
@@ -38,8 +41,17 @@ import com.orange.matos.core.XMLStream;
 @XmlRootElement(name="Mark")
 public class MarkValue extends AbsValue {
 	static boolean blockRecursive = true;
-	private static int counter = 0;
-	private static Set <Integer> seen = new HashSet <Integer>();
+	/**
+	 * Identifiers of marks read back from XML, outside of any analysis.
+	 */
+	private static int detached = 0;
+	/**
+	 * Marks being printed by toString on the current thread (recursion guard).
+	 */
+	private static final ThreadLocal <Set <Integer>> seen = new ThreadLocal <Set <Integer>>() {
+		@Override
+		protected Set <Integer> initialValue() { return new HashSet <Integer>(); }
+	};
 	private int ref;
 	@XmlElementRef 
 	AbsValue value;
@@ -55,10 +67,10 @@ public class MarkValue extends AbsValue {
 	final static int STATUS_USELESS = 1;
 	
 	/**
-	 * Empty constructor.
+	 * Empty constructor (used when values are read back from XML).
 	 */
 	public MarkValue() {
-		ref = counter++;
+		synchronized (MarkValue.class) { ref = detached++; }
 		multipleOccurrence = true;
 		status = STATUS_UNKNOWN;
 	}
@@ -67,9 +79,10 @@ public class MarkValue extends AbsValue {
 	 * Construct a new mark with a name and a content
 	 * @param name
 	 * @param v
+	 * @param ref identifier of the mark given by the analysis (AnalysisSession.nextMark)
 	 */
-	public MarkValue(String name, AbsValue v) {
-		ref = counter++;
+	public MarkValue(String name, AbsValue v, int ref) {
+		this.ref = ref;
 		this.name = name;
 		this.value = v;
 	}
@@ -87,11 +100,12 @@ public class MarkValue extends AbsValue {
 	
 	@Override
 	public String toString() {
-		if (seen.contains(ref)) return "Mark[" + ref + "]";
+		Set <Integer> marks = seen.get();
+		if (marks.contains(ref)) return "Mark[" + ref + "]";
 		else {
-			seen.add(ref);
+			marks.add(ref);
 			String v = value.toString();
-			seen.remove(ref);
+			marks.remove(ref);
 			return "M[" + ref + "," + v + "]";
 		}
 	}
@@ -100,10 +114,10 @@ public class MarkValue extends AbsValue {
 	 * @see com.francetelecom.rd.analysis.anasoot.result.AbsValue#explore(com.francetelecom.rd.analysis.anasoot.result.ValueVisitor)
 	 */
 	@Override
-	public void explore(ValueVisitor visitor, Set <Integer> seen) {
+	public void explore(ValueVisitor visitor, BitSet seen) {
 		visitor.visit(this);
-		if (!seen.contains(ref)) {
-			seen.add(ref);
+		if (!seen.get(ref)) {
+			seen.set(ref);
 			value.explore(visitor, seen);
 		}
 	}
@@ -115,17 +129,25 @@ public class MarkValue extends AbsValue {
 	 * @see com.francetelecom.rd.analysis.anasoot.result.AbsValue#normalize(boolean)
 	 */
 	@Override
-	public AbsValue normalize(boolean b, Set <Integer> seen) {
-		if (countDown()) return new UnknownValue("*");		
+	public AbsValue normalize(Normalizer norm) {
+		if (norm.countDown()) return new UnknownValue("*");		
 		if (status == STATUS_UNKNOWN) {
-			final Set <MarkValue> seen2 = new HashSet <MarkValue> ();
+			final BitSet visited = new BitSet();
+			final List <MarkValue> seen2 = new ArrayList <MarkValue> ();
+			final boolean [] changed = new boolean [1];
 			ValueVisitor visitor = new ValueVisitor() {
 				@Override
 				public void visit(AbsValue v) {
 					if (v instanceof MarkValue) {
 						MarkValue mv = (MarkValue) v;
-						if (seen2.contains(mv)) mv.status = STATUS_RECURSIVE;
-						else seen2.add(mv);
+						if (visited.get(mv.ref)) {
+							// a mark already normalized as useless changes the results memoized.
+							if (mv.status == STATUS_USELESS) changed[0] = true;
+							mv.status = STATUS_RECURSIVE;
+						} else {
+							visited.set(mv.ref);
+							seen2.add(mv);
+						}
 					} 
 				}
 			};
@@ -133,17 +155,15 @@ public class MarkValue extends AbsValue {
 			for(MarkValue v : seen2) {
 				if (v.status == STATUS_UNKNOWN) v.status = STATUS_USELESS;
 			}
+			if (changed[0]) norm.invalidate();
 		}
 		if (status == STATUS_RECURSIVE) {
-			if (seen.contains(ref) || blockRecursive) {
+			if (norm.isUnfolding(ref) || blockRecursive) {
 				return UnknownValue.normalized; 
 			} else {
-				Set <Integer> newseen = new HashSet <Integer>();
-				newseen.addAll(seen);
-				newseen.add(ref);
-				return value.normalize(b,newseen); 
+				return norm.unfold(ref, value); 
 			}
-		} else return value.normalize(b,seen);
+		} else return norm.normalize(value);
 	}
 
 	@Override
@@ -151,10 +171,11 @@ public class MarkValue extends AbsValue {
 		out.element("Mark");
 		out.attribute("name",name);
 		out.attribute("ref", ref);
-		if (!seen.contains(ref)) {
-			seen.add(ref);
+		Set <Integer> marks = seen.get();
+		if (!marks.contains(ref)) {
+			marks.add(ref);
 			value.xml(out);
-			seen.remove(ref);
+			marks.remove(ref);
 		}
 		out.endElement();
 	}
@@ -162,12 +183,13 @@ public class MarkValue extends AbsValue {
 	@Override
 	public void text(PrintStream out) {
 		out.print ("#" + name);
-		if (!seen.contains(ref)) {
-			seen.add(ref);
+		Set <Integer> marks = seen.get();
+		if (!marks.contains(ref)) {
+			marks.add(ref);
 			out.print("[");
 			value.text(out);
 			out.print("]");
-			seen.remove(ref);
+			marks.remove(ref);
 		}
 		
 	}
@@ -22,6 +22,7 @@ package com.orange.analysis.anasoot.result;
 
 import java.io.PrintStream;
 import java.util.ArrayList;
+import java.util.BitSet;
 import java.util.Set;
 
 import javax.xml.bind.annotation.XmlAttribute;
@@ -84,21 +85,21 @@ public class MethValue extends AbsValue {
 	}
 	
 	@Override
-	public AbsValue normalize(boolean b, Set <Integer> seen) {
-		if (b) return new StringValue("\\[" + name + "\\]");
-		ArrayList <AbsValue> normArgs = new ArrayList<AbsValue>();
+	public AbsValue normalize(Normalizer norm) {
+		if (norm.full) return norm.factory.string("\\[" + name + "\\]");
+		ArrayList <AbsValue> normArgs = new ArrayList<AbsValue>(args.size());
 		for(AbsValue arg: args) {
-			AbsValue normArg =   arg.normalize(b,seen);
+			AbsValue normArg =   norm.normalize(arg);
 			normArgs.add(normArg);
 		}
-		return new MethValue(name, normArgs);
+		return norm.factory.meth(name, normArgs);
 	}
 
 	@Override
 	public String toString() { return "M " + HtmlOutput.escape(name) + " " + args; }
 
 	@Override
-	public void explore(ValueVisitor visitor, Set <Integer> seen) {
+	public void explore(ValueVisitor visitor, BitSet seen) {
 		visitor.visit(this);
 		for(AbsValue e: args) e.explore(visitor, seen);
 	}
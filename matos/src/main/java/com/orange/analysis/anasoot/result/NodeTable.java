@@ -44,9 +44,9 @@ import com.orange.matos.core.Out;
  */
 public class NodeTable {
 	
-	static private Map <AllocAndContext, Integer> allocAndContextNaming = new HashMap <AllocAndContext, Integer>();
+	private final Map <AllocAndContext, Integer> allocAndContextNaming = new HashMap <AllocAndContext, Integer>();
 
-	static private int counter = 1;
+	private int counter = 1;
 	
 	/**
 	 * Table mapping Soot internal ids for nodes in the pointsto analysis graph 
@@ -70,6 +70,21 @@ public class NodeTable {
 
 	private ArrayAnalysis arrayAnalysis;
 
+	private boolean frozen = false;
+
+	/**
+	 * Freezes or thaws the table. A frozen table can be shared by several
+	 * threads but no node can be added to it.
+	 * @param frozen true to freeze the table.
+	 */
+	public void setFrozen(boolean frozen) {
+		this.frozen = frozen;
+	}
+
+	private void checkMutable() {
+		if (frozen) throw new IllegalStateException("The node table is frozen");
+	}
+
 	private void registerType(int id, AllocNode  node) {
 		if (! nodeTable.containsKey(id)) {
 			Object rawexpr = node.getNewExpr();
@@ -109,6 +124,7 @@ public class NodeTable {
 	 * @param r
 	 */
 	public void addWitness(AllocAndContext ac, ArrayList<AbsValue> r) {
+		checkMutable();
 		AllocNode an = ac.alloc;
 		Integer id = allocAndContextNaming.get(ac);
 		if (id == null) {
@@ -132,6 +148,7 @@ public class NodeTable {
 	 * @param baa 
 	 */
 	public void init(ArrayAnalysis baa) {
+		checkMutable();
 		nodeTable.put(-1,new SootClass("*"));
 		arrayAnalysis = baa;
 	}
@@ -141,6 +158,7 @@ public class NodeTable {
 	 * @return
 	 */
 	public int add(AllocNode node) {
+		checkMutable();
 		int id = node.getNumber();
 		registerType(id, node);
 		return id;
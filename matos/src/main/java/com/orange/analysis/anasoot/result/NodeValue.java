@@ -21,6 +21,7 @@ package com.orange.analysis.anasoot.result;
  */
 
 import java.io.PrintStream;
+import java.util.BitSet;
 import java.util.HashMap;
 import java.util.Set;
 
@@ -54,8 +55,8 @@ public class NodeValue extends AbsValue {
 	 */
 	public NodeValue(int n, NodeTable nt) {ref = n; this.nt = nt; }
 	@Override
-	public AbsValue normalize(boolean b, Set <Integer> seen) {
-		if (b) return new StringValue("\\*");
+	public AbsValue normalize(Normalizer norm) {
+		if (norm.full) return norm.factory.string("\\*");
 		return this;
 	}
 	
@@ -76,7 +77,7 @@ public class NodeValue extends AbsValue {
 	}
 	
 	@Override
-	public void explore(ValueVisitor visitor, Set <Integer> seen) {
+	public void explore(ValueVisitor visitor, BitSet seen) {
 		visitor.visit(this);
 	}
 	@Override
@@ -0,0 +1,187 @@
+package com.orange.analysis.anasoot.result;
+
+
+/*
+ * #%L
+ * Matos
+ * %%
+ * Copyright (C) 2004 - 2014 Orange SA
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import java.util.BitSet;
+import java.util.IdentityHashMap;
+
+/**
+ * State of a normalization. It memoizes the normalized form of each node visited,
+ * so that values shared in the graph built by the analysis are normalized once, and
+ * it keeps the marks currently unfolded as a set of mark identifiers. Results are built
+ * through a hash-consing factory.
+ * <p>
+ * The budget of a normalization is consumed as if memoized nodes were normalized again:
+ * each entry records the steps its computation consumed and a hit charges them. Results
+ * truncated because the budget was exhausted depend on the remaining budget and are 
+ * never memoized. The names of application properties have their own budget, as when
+ * they were normalized by a separate normalization (see {@link #normalizeApart(AbsValue)}).
+ * @author Pierre Cregut
+ */
+public class Normalizer {
+	private static final int MAX_COUNT = 100;
+	
+	/**
+	 * Project to complete string values.
+	 */
+	final boolean full;
+	/**
+	 * Factory for the normalized values.
+	 */
+	final ValueFactory factory;
+	private final BitSet unfolding = new BitSet();
+	private final IdentityHashMap <AbsValue, Entry> memo = new IdentityHashMap <AbsValue, Entry>();
+	private int count;
+	private int exhausted;
+	private int generation;
+
+	/**
+	 * A memoized result and the budget consumed to compute it.
+	 */
+	private static class Entry {
+		final AbsValue result;
+		final int cost;
+		Entry(AbsValue result, int cost) { this.result = result; this.cost = cost; }
+	}
+
+	/**
+	 * Normalizer with its own factory.
+	 * @param full if set to true, try to project to a complete string value.
+	 */
+	public Normalizer(boolean full) {
+		this(full, new ValueFactory());
+	}
+
+	/**
+	 * Normalizer sharing an existing factory.
+	 * @param full if set to true, try to project to a complete string value.
+	 * @param factory the factory used to build results.
+	 */
+	public Normalizer(boolean full, ValueFactory factory) {
+		this.full = full;
+		this.factory = factory;
+	}
+
+	/**
+	 * Normalize a value from the top. The budget is reset but the values already 
+	 * normalized are kept.
+	 * @param v the value to normalize
+	 * @return the normalized value
+	 */
+	public AbsValue start(AbsValue v) {
+		try {
+			count = MAX_COUNT;
+			unfolding.clear();
+			return normalize(v);
+		} catch (OutOfMemoryError e) { 
+			memo.clear();
+			return new UnknownValue("*[TOO BIG]*"); 
+		}
+	}
+
+	/**
+	 * Normalize a sub-term. The result only depends on the node when no recursive 
+	 * mark is unfolded and the budget was not exhausted, it is then memoized. A 
+	 * memoized result is only reused if the remaining budget covers its cost.
+	 * @param v the value to normalize
+	 * @return the normalized value
+	 */
+	AbsValue normalize(AbsValue v) {
+		boolean cacheable = MarkValue.blockRecursive || unfolding.isEmpty();
+		if (cacheable) {
+			Entry e = memo.get(v);
+			if (e != null && e.cost <= count) {
+				count -= e.cost;
+				return e.result;
+			}
+		}
+		int before = count;
+		int exhaustedBefore = exhausted;
+		int generationBefore = generation;
+		AbsValue r = v.normalize(this);
+		if (cacheable && exhausted == exhaustedBefore && generation == generationBefore) {
+			memo.put(v, new Entry(r, before - count));
+		}
+		return r;
+	}
+
+	/**
+	 * Normalize a sub-term with a fresh budget, as if it were normalized from the top,
+	 * without charging the budget of the enclosing normalization. The memoized values
+	 * are shared.
+	 * @param v the value to normalize
+	 * @return the normalized value
+	 */
+	AbsValue normalizeApart(AbsValue v) {
+		int saved = count;
+		count = MAX_COUNT;
+		try {
+			return normalize(v);
+		} finally {
+			count = saved;
+		}
+	}
+
+	/**
+	 * Forget the values memoized. Used when the status of a mark already normalized 
+	 * changes. Values being normalized at that point are not memoized either.
+	 */
+	void invalidate() {
+		generation++;
+		memo.clear();
+	}
+
+	/**
+	 * Consume one step of the budget of the normalization.
+	 * @return true if the budget is exhausted.
+	 */
+	boolean countDown() {
+		if (count <= 0) {
+			exhausted++;
+			return true;
+		}
+		count --;
+		return false;
+	}
+
+	/**
+	 * Check if a mark is currently unfolded.
+	 * @param ref identifier of the mark
+	 * @return true if it is on the unfolding stack.
+	 */
+	boolean isUnfolding(int ref) { return unfolding.get(ref); }
+
+	/**
+	 * Normalize the contents of a recursive mark.
+	 * @param ref the identifier of the mark
+	 * @param v its contents
+	 * @return the normalized contents
+	 */
+	AbsValue unfold(int ref, AbsValue v) {
+		unfolding.set(ref);
+		try {
+			return normalize(v);
+		} finally {
+			unfolding.clear(ref);
+		}
+	}
+}
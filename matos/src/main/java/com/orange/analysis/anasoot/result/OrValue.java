@@ -22,6 +22,7 @@ package com.orange.analysis.anasoot.result;
 
 import java.io.PrintStream;
 import java.util.ArrayList;
+import java.util.BitSet;
 import java.util.Collection;
 import java.util.List;
 import java.util.Set;
@@ -98,12 +99,12 @@ public class OrValue extends AbsValue {
 	}
 
 	@Override
-	public AbsValue normalize(boolean b, Set <Integer> seen) {
+	public AbsValue normalize(Normalizer norm) {
 		OrValue r = new OrValue();
-		for(AbsValue e: vals) r.add(e.normalize(b,seen));
+		for(AbsValue e: vals) r.add(norm.normalize(e));
 		if (r.vals.size() == 1) return r.vals.get(0);
 
-		return r;
+		return norm.factory.or(r);
 	}
 
 	@Override
@@ -119,7 +120,7 @@ public class OrValue extends AbsValue {
 	}
 
 	@Override
-	public void explore(ValueVisitor visitor, Set <Integer> seen) {
+	public void explore(ValueVisitor visitor, BitSet seen) {
 		visitor.visit(this);
 		for(AbsValue e: vals) e.explore(visitor,seen);
 	}
@@ -21,6 +21,7 @@ package com.orange.analysis.anasoot.result;
  */
 
 import java.io.PrintStream;
+import java.util.BitSet;
 import java.util.Set;
 
 import javax.xml.bind.annotation.XmlElementRef;
@@ -53,7 +54,7 @@ public class PropertyValue extends AbsValue {
 	
 	@Override
 	public
-	void explore(ValueVisitor visitor, Set <Integer> seen) {
+	void explore(ValueVisitor visitor, BitSet seen) {
 		visitor.visit(this);
 		name.explore(visitor, seen);
 	}
@@ -65,14 +66,14 @@ public class PropertyValue extends AbsValue {
 	
 	@Override
 	// Warning : this is not able to handle the case getProperty(v1 | v2);
-	public AbsValue normalize(boolean b, Set <Integer> seen) {
-		if (b) {
-			AbsValue normalized_name = name.normalize(b,seen);
+	public AbsValue normalize(Normalizer norm) {
+		if (norm.full) {
+			AbsValue normalized_name = norm.normalizeApart(name);
 			if (normalized_name instanceof StringValue) {
-				return new StringValue("\\{" + ((StringValue) normalized_name).value + "\\}");
+				return norm.factory.string("\\{" + ((StringValue) normalized_name).value + "\\}");
 			} else return UnknownValue.normalized;
 		} else {
-			return new PropertyValue(name.normalize(b));
+			return norm.factory.property(norm.normalizeApart(name));
 		}
 	}
 
@@ -21,6 +21,7 @@ package com.orange.analysis.anasoot.result;
  */
 
 import java.io.PrintStream;
+import java.util.BitSet;
 import java.util.Set;
 
 import javax.xml.bind.annotation.XmlAttribute;
@@ -60,12 +61,14 @@ public class StringValue extends AbsValue {
 	public StringValue() { }
 	
 	@Override
-	public AbsValue normalize(boolean b, Set <Integer> seen) {
-		if (b) return new StringValue(value.replaceAll("\\\\","\\\\\\\\"));
+	public AbsValue normalize(Normalizer norm) {
+		if (norm.full) {
+			return norm.factory.string((value.indexOf('\\') < 0) ? value : value.replace("\\","\\\\"));
+		}
 		return this;
 	}
 	@Override
-	public void explore(ValueVisitor visitor, Set <Integer> seen) {
+	public void explore(ValueVisitor visitor, BitSet seen) {
 		visitor.visit(this);
 	}
 	
@@ -21,6 +21,7 @@ package com.orange.analysis.anasoot.result;
  */
 
 import java.io.PrintStream;
+import java.util.BitSet;
 import java.util.Set;
 
 import javax.xml.bind.annotation.XmlAttribute;
@@ -58,8 +59,8 @@ public class UnknownValue extends AbsValue {
 	public UnknownValue(String info) {this.info=info;}
 	
 	@Override
-	public AbsValue normalize(boolean b, Set <Integer> seen) {
-		if (b) return normalized;
+	public AbsValue normalize(Normalizer norm) {
+		if (norm.full) return normalized;
 		return this;
 	}
 
@@ -67,7 +68,7 @@ public class UnknownValue extends AbsValue {
 	public String toString() { return HtmlOutput.escape(debug ? ("<" + info + ">") : "*"); };
 	
 	@Override
-	public void explore(ValueVisitor visitor, Set <Integer> seen) {
+	public void explore(ValueVisitor visitor, BitSet seen) {
 		visitor.visit(this);
 	}
 
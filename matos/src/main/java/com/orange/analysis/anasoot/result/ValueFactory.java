@@ -0,0 +1,179 @@
+package com.orange.analysis.anasoot.result;
+
+
+/*
+ * #%L
+ * Matos
+ * %%
+ * Copyright (C) 2004 - 2014 Orange SA
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+
+/**
+ * Hash-consing of normalized abstract values. Structurally equal values built
+ * through the same factory are represented by a single instance, so that the
+ * combinatorial expansions of normalization share their sub-terms instead of
+ * copying them. Sub-terms are compared by identity: they are expected to come
+ * from the same factory. Values given back are shared and must not be modified.
+ * @author Pierre Cregut
+ */
+public class ValueFactory {
+
+	private static final int STRING = 0;
+	private static final int CONCAT = 1;
+	private static final int OR = 2;
+	private static final int AND = 3;
+	private static final int METH = 4;
+	private static final int BINOP = 5;
+	private static final int PROPERTY = 6;
+
+	private static final AbsValue [] NO_VALUES = new AbsValue [0];
+
+	/**
+	 * Key of the table. The label is compared by value and the sub-terms by identity.
+	 */
+	private static final class Key {
+		final int kind;
+		final String label;
+		final AbsValue [] children;
+		final int hash;
+
+		Key(int kind, String label, AbsValue [] children) {
+			this.kind = kind;
+			this.label = label;
+			this.children = children;
+			int h = kind * 31 + ((label == null) ? 0 : label.hashCode());
+			for(AbsValue c : children) h = h * 31 + System.identityHashCode(c);
+			hash = h;
+		}
+
+		@Override
+		public int hashCode() { return hash; }
+
+		@Override
+		public boolean equals(Object o) {
+			if (!(o instanceof Key)) return false;
+			Key k = (Key) o;
+			if (k.hash != hash || k.kind != kind || k.children.length != children.length) return false;
+			if (label == null ? k.label != null : !label.equals(k.label)) return false;
+			for(int i = 0; i < children.length; i++) {
+				if (children[i] != k.children[i]) return false;
+			}
+			return true;
+		}
+	}
+
+	private final HashMap <Key, AbsValue> table = new HashMap <Key, AbsValue>();
+
+	private AbsValue register(Key key, AbsValue v) {
+		table.put(key, v);
+		return v;
+	}
+
+	private static AbsValue [] array(List <AbsValue> l) {
+		return l.isEmpty() ? NO_VALUES : l.toArray(new AbsValue[l.size()]);
+	}
+
+	/**
+	 * Shared constant string.
+	 * @param s the contents
+	 * @return a string value
+	 */
+	public StringValue string(String s) {
+		Key key = new Key(STRING, s, NO_VALUES);
+		AbsValue shared = table.get(key);
+		if (shared != null) return (StringValue) shared;
+		return (StringValue) register(key, new StringValue(s));
+	}
+
+	/**
+	 * Shared concatenation. The list is kept if no equivalent value exists.
+	 * @param l the normalized elements
+	 * @return a concatenation
+	 */
+	public AbsValue concat(ArrayList <AbsValue> l) {
+		Key key = new Key(CONCAT, null, array(l));
+		AbsValue shared = table.get(key);
+		return (shared != null) ? shared : register(key, new ConcatValue(l));
+	}
+
+	/**
+	 * Shared disjunction.
+	 * @param v a disjunction of normalized elements
+	 * @return v or an equivalent disjunction already built
+	 */
+	public AbsValue or(OrValue v) {
+		Key key = new Key(OR, null, array(v.vals));
+		AbsValue shared = table.get(key);
+		return (shared != null) ? shared : register(key, v);
+	}
+
+	/**
+	 * Shared tuple.
+	 * @param l the normalized elements
+	 * @return a tuple
+	 */
+	public AbsValue and(ArrayList <AbsValue> l) {
+		Key key = new Key(AND, null, array(l));
+		AbsValue shared = table.get(key);
+		return (shared != null) ? shared : register(key, new AndValue(l));
+	}
+
+	/**
+	 * Shared method call.
+	 * @param name name of the method
+	 * @param l the normalized arguments
+	 * @return a method value
+	 */
+	public AbsValue meth(String name, ArrayList <AbsValue> l) {
+		Key key = new Key(METH, name, array(l));
+		AbsValue shared = table.get(key);
+		return (shared != null) ? shared : register(key, new MethValue(name, l));
+	}
+
+	/**
+	 * Shared binary operation.
+	 * @param opname the operator
+	 * @param v1 first normalized argument
+	 * @param v2 second normalized argument
+	 * @return a binary operation value
+	 */
+	public AbsValue binop(String opname, AbsValue v1, AbsValue v2) {
+		Key key = new Key(BINOP, opname, new AbsValue [] {v1, v2});
+		AbsValue shared = table.get(key);
+		return (shared != null) ? shared : register(key, new BinopValue(opname, v1, v2));
+	}
+
+	/**
+	 * Shared property access.
+	 * @param name the normalized name
+	 * @return a property value
+	 */
+	public AbsValue property(AbsValue name) {
+		Key key = new Key(PROPERTY, null, new AbsValue [] {name});
+		AbsValue shared = table.get(key);
+		return (shared != null) ? shared : register(key, new PropertyValue(name));
+	}
+
+	/**
+	 * Number of distinct values built.
+	 * @return the size of the table
+	 */
+	public int size() { return table.size(); }
+}
@@ -0,0 +1,121 @@
+package com.orange.analysis.anasoot.spy;
+
+
+/*
+ * #%L
+ * Matos
+ * %%
+ * Copyright (C) 2004 - 2014 Orange SA
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import java.util.HashMap;
+import java.util.Map;
+
+import com.orange.analysis.anasoot.result.NodeTable;
+
+/**
+ * State owned by a single analysis: the tables and counters that used to be
+ * kept in static fields of the spy analysis and of the reports. Consecutive
+ * analyses in the same process (campaign, daemon) do not share them, so that
+ * they print the same identifiers as a fresh process and the state is released
+ * with the analysis.
+ * 
+ * Soot itself is a process wide singleton, so analyses in a process are still
+ * sequential. The caches tied to the Soot run (LocalAnalysisCache, the call
+ * graph index of the analysis) are dropped with the scene.
+ * @author Pierre Cregut
+ */
+public class AnalysisSession {
+	
+	/**
+	 * Abstractions of the dynamic objects found by the analysis.
+	 */
+	public final NodeTable nodeTable = new NodeTable();
+	
+	/**
+	 * The callgraph of the Soot run, restricted to the code analysed.
+	 */
+	public final CallGraphIndex callGraph;
+	
+	/**
+	 * Counters used by the %n directive of reports (one per code letter).
+	 */
+	private final Map <Character, Integer> counters = new HashMap <Character, Integer>();
+	
+	/**
+	 * Last message printed for each category of unique messages (see ReportMessage).
+	 */
+	private final Map <String, String> lastOfKind = new HashMap <String, String>();
+	
+	private int marks = 0;
+	private int refs = 0;
+	
+	/**
+	 * Creates the state of an analysis.
+	 * @param callGraph the callgraph of the Soot run
+	 */
+	public AnalysisSession(CallGraphIndex callGraph) {
+		this.callGraph = callGraph;
+	}
+	
+	/**
+	 * Gives back the next value of a report counter. Counters start at 1.
+	 * @param code the letter identifying the counter
+	 * @return the current value (the counter is incremented).
+	 */
+	public synchronized int nextCount(char code) {
+		Integer current = counters.get(code);
+		int value = (current == null) ? 1 : current;
+		counters.put(code, value + 1);
+		return value;
+	}
+	
+	/**
+	 * Gives back a new identifier for a mark on an abstract value. Identifiers
+	 * are small consecutive integers so that they can index bit sets.
+	 * @return the identifier
+	 */
+	public synchronized int nextMark() {
+		return marks++;
+	}
+	
+	/**
+	 * Gives back a new unique reference for a result printed in XML.
+	 * @return the reference
+	 */
+	public synchronized String nextRef() {
+		return "" + refs++;
+	}
+	
+	/**
+	 * Records the message printed for a category of unique messages.
+	 * @param kind the category
+	 * @param name the name of the message
+	 * @return true if the message was not the last one printed for this category.
+	 */
+	public synchronized boolean changeLast(String kind, String name) {
+		if (name.equals(lastOfKind.get(kind))) return false;
+		lastOfKind.put(kind, name);
+		return true;
+	}
+	
+	/**
+	 * Forgets the last messages printed. Used at the beginning of tables.
+	 */
+	public synchronized void resetLast() {
+		lastOfKind.clear();
+	}
+}
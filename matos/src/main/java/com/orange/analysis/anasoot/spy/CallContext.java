@@ -38,10 +38,15 @@ import soot.SootMethod;
  */
 public class CallContext {
 	
+	/**
+	 * The analysis this context belongs to.
+	 */
+	public final AnalysisSession session;
+	
 	/**
 	 * tables to register the entries for next iteration.
 	 */
-	public NodeTable nodeTable = new NodeTable();
+	public NodeTable nodeTable;
 	
 	/**
 	 * Work queue for the next iteration of argument analysis rules 
@@ -74,6 +79,22 @@ public class CallContext {
 	 */
 	public int count = 0;
 
+	/**
+	 * Context of a new analysis.
+	 */
+	public CallContext() {
+		this(new AnalysisSession(new CallGraphIndex()));
+	}
+	
+	/**
+	 * Context of an analysis with its session.
+	 * @param session the state of the analysis
+	 */
+	public CallContext(AnalysisSession session) {
+		this.session = session;
+		this.nodeTable = session.nodeTable;
+	}
+
 
 	/**
 	 * Regiter an argument analysis rule for the next iteration
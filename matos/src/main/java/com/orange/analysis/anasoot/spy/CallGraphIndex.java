@@ -0,0 +1,89 @@
+package com.orange.analysis.anasoot.spy;
+
+/*
+ * #%L
+ * Matos
+ * %%
+ * Copyright (C) 2004 - 2014 Orange SA
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import java.util.Set;
+
+import soot.Scene;
+import soot.SootMethod;
+import soot.jimple.toolkits.callgraph.CallGraph;
+
+/**
+ * The snapshots of the callgraph of a Soot run. It is owned by the analysis
+ * that installs the Soot phases and is dropped with it, so it never outlives
+ * the scene it was computed from. When the scene is shared between the 
+ * components of an Android application, the snapshot seen by the clients can
+ * be restricted to the methods of the component analysed.
+ * @author Pierre Cregut
+ *
+ */
+public class CallGraphIndex {
+
+	/**
+	 * Snapshot of the whole callgraph.
+	 */
+	private CallGraphSnapshot snapshot = null;
+
+	/**
+	 * Snapshot of the callgraph restricted to the scope.
+	 */
+	private CallGraphSnapshot restricted = null;
+
+	/**
+	 * Methods the analysis is restricted to or null for the whole callgraph.
+	 */
+	private Set<SootMethod> scope = null;
+
+	/**
+	 * Gives back the frozen copy of the callgraph of the current scene. It is 
+	 * computed on first use and shared by all the clients until the 
+	 * callgraph changes. When the analysis is restricted to a set of methods,
+	 * only the edges between those methods are kept.
+	 * @return the snapshot
+	 */
+	public synchronized CallGraphSnapshot snapshot() {
+		CallGraph cg = Scene.v().getCallGraph();
+		if (scope != null) {
+			if (restricted == null || !restricted.isSnapshotOf(cg)) restricted = new CallGraphSnapshot(cg, scope);
+			return restricted;
+		}
+		if (snapshot == null || !snapshot.isSnapshotOf(cg)) snapshot = new CallGraphSnapshot(cg);
+		return snapshot;
+	}
+
+	/**
+	 * Restricts the callgraph seen through snapshot to a set of methods.
+	 * @param methods the methods kept or null for the whole callgraph.
+	 */
+	public synchronized void restrictTo(Set<SootMethod> methods) {
+		scope = methods;
+		restricted = null;
+	}
+
+	/**
+	 * Checks if a method belongs to the code analysed.
+	 * @param m the method
+	 * @return true if the analysis is not restricted or the method is in its scope.
+	 */
+	public synchronized boolean inScope(SootMethod m) {
+		return scope == null || scope.contains(m);
+	}
+}
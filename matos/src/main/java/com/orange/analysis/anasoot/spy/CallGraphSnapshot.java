@@ -0,0 +1,262 @@
+package com.orange.analysis.anasoot.spy;
+
+
+/*
+ * #%L
+ * Matos
+ * %%
+ * Copyright (C) 2004 - 2014 Orange SA
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+
+import soot.SootMethod;
+import soot.jimple.toolkits.callgraph.CallGraph;
+import soot.jimple.toolkits.callgraph.Edge;
+
+/**
+ * Frozen index of the callgraph computed by Soot, in compressed sparse row
+ * form. It does not replace the Soot callgraph, which stays in the scene, but
+ * gives fast traversals with int identifiers. Methods are numbered from 0 to
+ * size() - 1. Edges out of method i are at positions firstOut(i) to 
+ * endOut(i) - 1 of the forward arrays and edges into method i at positions 
+ * firstIn(i) to endIn(i) - 1 of the reverse arrays. The Soot edges are only
+ * stored once, in forward order: the reverse arrays give the forward position
+ * of each edge. Edges of a method are kept in the order given by the callgraph.
+ * Identifiers are found from the Soot number of the method.
+ * Visited sets are bitsets indexed by method identifiers or positions.
+ * A snapshot may be restricted to a set of methods: only the edges between
+ * two methods of the set are kept.
+ * @author Pierre Cregut
+ *
+ */
+public class CallGraphSnapshot {
+
+	private final CallGraph cg;
+	private final int cgSize;
+	private final int [] idOfNumber;
+	private final SootMethod [] methods;
+	private final int [] outStart;
+	private final int [] outTarget;
+	private final Edge [] edges;
+	private final int [] inStart;
+	private final int [] inSource;
+	private final int [] inForward;
+
+	/**
+	 * Builds the snapshot of a callgraph. The callgraph should not be 
+	 * modified afterwards.
+	 * @param cg the callgraph
+	 */
+	public CallGraphSnapshot(CallGraph cg) {
+		this(cg, null);
+	}
+
+	/**
+	 * Builds the snapshot of the part of a callgraph between a set of methods.
+	 * The callgraph should not be modified afterwards.
+	 * @param cg the callgraph
+	 * @param scope the methods kept or null for the whole callgraph.
+	 */
+	public CallGraphSnapshot(CallGraph cg, Set<SootMethod> scope) {
+		this.cg = cg;
+		cgSize = cg.size();
+		Map<SootMethod,Integer> ids = new HashMap<SootMethod,Integer>();
+		ArrayList<SootMethod> list = new ArrayList<SootMethod>();
+		int count = 0;
+		int maxNumber = 0;
+		for(Iterator<Edge> it = cg.iterator(); it.hasNext(); ) {
+			Edge e = it.next();
+			if (!keep(scope, e)) continue;
+			maxNumber = Math.max(maxNumber, register(ids, list, e.src()));
+			maxNumber = Math.max(maxNumber, register(ids, list, e.tgt()));
+			count++;
+		}
+		int n = list.size();
+		methods = list.toArray(new SootMethod[n]);
+		idOfNumber = new int[maxNumber + 1];
+		Arrays.fill(idOfNumber, -1);
+		for(int i = 0; i < n; i++) idOfNumber[methods[i].getNumber()] = i;
+		outStart = new int[n + 1];
+		outTarget = new int[count];
+		edges = new Edge[count];
+		inStart = new int[n + 1];
+		inSource = new int[count];
+		inForward = new int[count];
+		// Forward positions of the edges, only needed to build the reverse arrays.
+		Map<Edge,Integer> forward = new IdentityHashMap<Edge,Integer>(count);
+		int pos = 0;
+		for(int i = 0; i < n; i++) {
+			outStart[i] = pos;
+			for(Iterator<Edge> it = cg.edgesOutOf(methods[i]); it.hasNext(); ) {
+				Edge e = it.next();
+				if (!keep(scope, e)) continue;
+				outTarget[pos] = ids.get(e.tgt());
+				forward.put(e, pos);
+				edges[pos++] = e;
+			}
+		}
+		outStart[n] = pos;
+		pos = 0;
+		for(int i = 0; i < n; i++) {
+			inStart[i] = pos;
+			for(Iterator<Edge> it = cg.edgesInto(methods[i]); it.hasNext(); ) {
+				Edge e = it.next();
+				if (!keep(scope, e)) continue;
+				inSource[pos] = ids.get(e.src());
+				inForward[pos++] = forward.get(e);
+			}
+		}
+		inStart[n] = pos;
+	}
+
+	private static boolean keep(Set<SootMethod> scope, Edge e) {
+		return scope == null || (scope.contains(e.src()) && scope.contains(e.tgt()));
+	}
+
+	/**
+	 * Gives an identifier to a method.
+	 * @return the Soot number of the method.
+	 */
+	private static int register(Map<SootMethod,Integer> ids, ArrayList<SootMethod> list, SootMethod m) {
+		if (!ids.containsKey(m)) {
+			if (m.getNumber() <= 0) throw new IllegalStateException("Method not numbered by Soot: " + m);
+			ids.put(m, list.size());
+			list.add(m);
+		}
+		return m.getNumber();
+	}
+
+	/**
+	 * Checks that the snapshot is still a faithful copy of a callgraph.
+	 * @param graph the callgraph
+	 * @return true if it is the callgraph copied and no edge was added or removed.
+	 */
+	public boolean isSnapshotOf(CallGraph graph) {
+		return graph == cg && graph.size() == cgSize;
+	}
+
+	/**
+	 * Number of methods in the graph
+	 * @return the number of methods.
+	 */
+	public int size() { return methods.length; }
+
+	/**
+	 * Number of edges in the graph
+	 * @return the number of edges.
+	 */
+	public int edgeCount() { return edges.length; }
+
+	/**
+	 * Identifier of a method
+	 * @param m the method
+	 * @return the identifier or -1 if the method is not in the callgraph.
+	 */
+	public int id(SootMethod m) {
+		int number = m.getNumber();
+		if (number <= 0 || number >= idOfNumber.length) return -1;
+		int i = idOfNumber[number];
+		return (i >= 0 && methods[i] == m) ? i : -1;
+	}
+
+	/**
+	 * Method associated to an identifier
+	 * @param id the identifier
+	 * @return the method
+	 */
+	public SootMethod method(int id) { return methods[id]; }
+
+	/**
+	 * First position of the edges out of a method
+	 * @param id identifier of the method
+	 * @return a position in the forward arrays
+	 */
+	public int firstOut(int id) { return outStart[id]; }
+
+	/**
+	 * Position following the last edge out of a method
+	 * @param id identifier of the method
+	 * @return a position in the forward arrays
+	 */
+	public int endOut(int id) { return outStart[id + 1]; }
+
+	/**
+	 * Target of a forward edge
+	 * @param pos position in the forward arrays
+	 * @return identifier of the called method
+	 */
+	public int target(int pos) { return outTarget[pos]; }
+
+	/**
+	 * Soot edge at a forward position
+	 * @param pos position in the forward arrays
+	 * @return the edge
+	 */
+	public Edge outEdge(int pos) { return edges[pos]; }
+
+	/**
+	 * First position of the edges into a method
+	 * @param id identifier of the method
+	 * @return a position in the reverse arrays
+	 */
+	public int firstIn(int id) { return inStart[id]; }
+
+	/**
+	 * Position following the last edge into a method
+	 * @param id identifier of the method
+	 * @return a position in the reverse arrays
+	 */
+	public int endIn(int id) { return inStart[id + 1]; }
+
+	/**
+	 * Source of a reverse edge
+	 * @param pos position in the reverse arrays
+	 * @return identifier of the calling method
+	 */
+	public int source(int pos) { return inSource[pos]; }
+
+	/**
+	 * Soot edge at a reverse position
+	 * @param pos position in the reverse arrays
+	 * @return the edge
+	 */
+	public Edge inEdge(int pos) { return edges[inForward[pos]]; }
+
+	/**
+	 * Creates an empty set of methods
+	 * @return a bitset indexed by method identifiers.
+	 */
+	public BitSet newMethodSet() { return new BitSet(methods.length); }
+
+	/**
+	 * Creates an empty set of edge positions
+	 * @return a bitset indexed by positions (forward or reverse).
+	 */
+	public BitSet newEdgeSet() { return new BitSet(edges.length); }
+
+	@Override
+	public String toString() {
+		return "callgraph snapshot (" + methods.length + " methods, " + edges.length + " edges)";
+	}
+}
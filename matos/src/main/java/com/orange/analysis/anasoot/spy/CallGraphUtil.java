@@ -21,14 +21,15 @@ package com.orange.analysis.anasoot.spy;
  */
 
 import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
 import java.util.Deque;
 import java.util.HashSet;
-import java.util.Iterator;
 import java.util.Set;
 
-import soot.Scene;
+import soot.SootClass;
 import soot.SootMethod;
-import soot.jimple.toolkits.callgraph.CallGraph;
 import soot.jimple.toolkits.callgraph.Edge;
 
 /**
@@ -51,27 +52,84 @@ public class CallGraphUtil {
 		public void visit(Edge e, Deque<SootMethod> callers);
 	}
 	
-	private static void visitAncestors(CallGraph cg, Set<Edge> seen, Deque<SootMethod> stack, Visitor visitor, SootMethod m) {
-		Iterator <Edge> it = cg.edgesInto(m);
+	private static void visitAncestors(CallGraphSnapshot cg, BitSet seen, Deque<SootMethod> stack, Visitor visitor, SootMethod m) {
+		int id = cg.id(m);
+		if (id < 0) return;
+		// Current and last positions of the edges into the methods of stack.
+		// Explicit so that long chains of callers do not exhaust the Java stack.
+		int [] current = new int [16];
+		int [] end = new int [16];
+		int depth = 0;
+		current[depth] = cg.firstIn(id);
+		end[depth++] = cg.endIn(id);
 		stack.push(m);
-		while(it.hasNext()) {
-			Edge e = it.next();
-			if (seen.contains(e)) continue;
-			seen.add(e);
-			visitor.visit(e,stack);
-			visitAncestors(cg, seen, stack, visitor, e.src());
+		while(depth > 0) {
+			int pos = current[depth - 1];
+			if (pos == end[depth - 1]) {
+				depth--;
+				stack.pop();
+				continue;
+			}
+			current[depth - 1] = pos + 1;
+			if (seen.get(pos)) continue;
+			seen.set(pos);
+			visitor.visit(cg.inEdge(pos),stack);
+			int src = cg.source(pos);
+			if (depth == current.length) {
+				current = Arrays.copyOf(current, 2 * depth);
+				end = Arrays.copyOf(end, 2 * depth);
+			}
+			current[depth] = cg.firstIn(src);
+			end[depth++] = cg.endIn(src);
+			stack.push(cg.method(src));
 		}
-		stack.pop();
 	}
 	
 	/**
 	 * Visits all callers of a method. Does not loop if recursive and visit only once an edge.
+	 * @param cg the callgraph
 	 * @param m
 	 * @param visitor
 	 */
-	public static void visitAncestors(SootMethod m, Visitor visitor) {
+	public static void visitAncestors(CallGraphSnapshot cg, SootMethod m, Visitor visitor) {
 		Deque<SootMethod> stack = new ArrayDeque<SootMethod> ();
-		visitAncestors(Scene.v().getCallGraph(), new HashSet<Edge>(), stack, visitor, m);
+		visitAncestors(cg, cg.newEdgeSet(), stack, visitor, m);
+	}
+
+	/**
+	 * Computes the methods reachable from a set of roots in the callgraph.
+	 * @param cg the callgraph
+	 * @param roots the methods we start from
+	 * @param barrier classes whose methods are never entered
+	 * @return the set of reachable methods (roots included)
+	 */
+	public static Set<SootMethod> reachableFrom(CallGraphSnapshot cg, Collection<SootMethod> roots, Set<SootClass> barrier) {
+		Set<SootMethod> reached = new HashSet<SootMethod>();
+		BitSet visited = cg.newMethodSet();
+		int [] todo = new int [16];
+		int top = 0;
+		for(SootMethod m : roots) {
+			if (!reached.add(m)) continue;
+			int id = cg.id(m);
+			if (id < 0) continue;
+			visited.set(id);
+			if (top == todo.length) todo = Arrays.copyOf(todo, 2 * top);
+			todo[top++] = id;
+		}
+		while(top > 0) {
+			int id = todo[--top];
+			for(int pos = cg.firstOut(id); pos < cg.endOut(id); pos++) {
+				int tgt = cg.target(pos);
+				if (visited.get(tgt)) continue;
+				SootMethod tgtMethod = cg.method(tgt);
+				if (barrier.contains(tgtMethod.getDeclaringClass())) continue;
+				visited.set(tgt);
+				reached.add(tgtMethod);
+				if (top == todo.length) todo = Arrays.copyOf(todo, 2 * top);
+				todo[top++] = tgt;
+			}
+		}
+		return reached;
 	}
 
 }
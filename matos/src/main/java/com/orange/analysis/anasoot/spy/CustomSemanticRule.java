@@ -24,7 +24,9 @@ import com.orange.matos.core.AppDescription;
 
 /**
  * @author Pierre Cregut
- * Interface that custom rules must implement.
+ * Interface that custom rules must implement. When anasoot.customRuleThreads
+ * is greater than one, rules run in parallel: they must only read the Soot 
+ * scene and must not share mutable state with other rules.
  */
 public interface CustomSemanticRule {
 	/**
@@ -0,0 +1,134 @@
+package com.orange.analysis.anasoot.spy;
+
+/*
+ * #%L
+ * Matos
+ * %%
+ * Copyright (C) 2004 - 2014 Orange SA
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import soot.SootMethod;
+import soot.jimple.JimpleBody;
+
+/**
+ * Cache of the local analyses (control flow graph, defs and uses) of method
+ * bodies for a run of Soot. The analyses are shared by the rounds of the spy
+ * analysis and by the loop analysis. The cache is bounded by the total number
+ * of units of the cached bodies and evicts the least recently used analyses.
+ * It must be reset each time the Soot scene is reset.
+ * 
+ * The cache may be used by custom rules running in parallel. Accesses are
+ * synchronized, including the retrieval of the body that Soot may have to
+ * build.
+ * @author Pierre Cregut
+ *
+ */
+public class LocalAnalysisCache {
+
+	private static volatile LocalAnalysisCache instance = new LocalAnalysisCache(0);
+
+	private final int maxUnits;
+	private final LinkedHashMap<SootMethod, Entry> cache = 
+		new LinkedHashMap<SootMethod, Entry>(64, 0.75f, true);
+	private int units = 0;
+	private int hits = 0;
+	private int misses = 0;
+	private int evictions = 0;
+
+	private static class Entry {
+		final LocalAnalysis analysis;
+		final int size;
+		Entry(LocalAnalysis analysis, int size) {
+			this.analysis = analysis;
+			this.size = size;
+		}
+	}
+
+	/**
+	 * Constructor
+	 * @param maxUnits maximum number of units of the cached bodies (0 disables the cache).
+	 */
+	public LocalAnalysisCache(int maxUnits) {
+		this.maxUnits = maxUnits;
+	}
+
+	/**
+	 * Get the cache for the current Soot run.
+	 * @return the cache
+	 */
+	public static LocalAnalysisCache v() {
+		return instance;
+	}
+
+	/**
+	 * Drops the current cache and creates a new empty one. To call after
+	 * a reset of Soot.
+	 * @param maxUnits maximum number of units of the cached bodies (0 disables the cache).
+	 */
+	public static void reset(int maxUnits) {
+		instance = new LocalAnalysisCache(maxUnits);
+	}
+
+	/**
+	 * Gives back the local analysis of the active body of a method.
+	 * @param m the method (it must have an active body)
+	 * @return the analysis
+	 */
+	public synchronized LocalAnalysis get(SootMethod m) {
+		Entry entry = cache.get(m);
+		if (entry != null) {
+			hits++;
+			return entry.analysis;
+		}
+		misses++;
+		JimpleBody jb = (JimpleBody) m.retrieveActiveBody();
+		LocalAnalysis analysis = new LocalAnalysis(jb);
+		int size = jb.getUnits().size();
+		if (size <= maxUnits) {
+			cache.put(m, new Entry(analysis, size));
+			units += size;
+			Iterator<Map.Entry<SootMethod, Entry>> it = cache.entrySet().iterator();
+			while (units > maxUnits && it.hasNext()) {
+				units -= it.next().getValue().size;
+				it.remove();
+				evictions++;
+			}
+		}
+		return analysis;
+	}
+
+	/**
+	 * Number of analyses found in the cache.
+	 * @return a count
+	 */
+	public synchronized int getHits() { return hits; }
+
+	/**
+	 * Number of analyses computed.
+	 * @return a count
+	 */
+	public synchronized int getMisses() { return misses; }
+
+	@Override
+	public synchronized String toString() {
+		return hits + " hits, " + misses + " misses, " + evictions + " evictions, " 
+			+ cache.size() + " methods cached (" + units + "/" + maxUnits + " units)";
+	}
+}
@@ -361,10 +361,10 @@ public class MethodSpyAnalysis {
 			SpyReturn spy = new SpyReturn(name,m, null);
 			cc.doublon_return.put(tailname,spy);
 			cc.registerReturn (m, spy);
-			return new MarkValue(tailname, spy.getAbsValue());
+			return new MarkValue(tailname, spy.getAbsValue(), cc.session.nextMark());
 		} else {
 			AbsValue av = ((SpyReturn) cc.doublon_return.get(tailname)).getAbsValue();
-			return new MarkValue(tailname, av);
+			return new MarkValue(tailname, av, cc.session.nextMark());
 		}
 	}
 	/**
@@ -498,10 +498,10 @@ public class MethodSpyAnalysis {
 				SpyMethodArgs spy = new SpyMethodArgs(name,method,args,null);
 				cc.doublon.put(tailname,spy);
 				cc.register (name, spy);
-				return new MarkValue(tailname, spy.getAbsValue());
+				return new MarkValue(tailname, spy.getAbsValue(), cc.session.nextMark());
 			} else {
 				AbsValue av = ((SpyMethodArgs) cc.doublon.get(tailname)).getAbsValue();
-				return new MarkValue(tailname, av);
+				return new MarkValue(tailname, av, cc.session.nextMark());
 			}
 		} else {
 			return new UnknownValue(r.toString());
@@ -529,10 +529,10 @@ public class MethodSpyAnalysis {
 					SpyField spy = new SpyField(name,fr.getField(),null);
 					cc.doublon_field.put(tailname,spy);
 					cc.registerField (fr.getField(), spy);
-					return  new MarkValue(tailname, spy.getAbsValue());
+					return  new MarkValue(tailname, spy.getAbsValue(), cc.session.nextMark());
 				} else {
 					AbsValue av = ((SpyField) cc.doublon_field.get(tailname)).getAbsValue();
-					return  new MarkValue(tailname, av);
+					return  new MarkValue(tailname, av, cc.session.nextMark());
 				}
 			} else {
 				return sb; 
@@ -588,10 +588,10 @@ public class MethodSpyAnalysis {
 						SpyField spy = new SpyField(name,fr.getField(),null);
 						cc.doublon_field.put(tailname,spy);
 						cc.registerField (fr.getField(), spy);
-						return  new MarkValue(tailname, spy.getAbsValue());
+						return  new MarkValue(tailname, spy.getAbsValue(), cc.session.nextMark());
 					} else {
 						AbsValue av = ((SpyField) cc.doublon_field.get(tailname)).getAbsValue();
-						return  new MarkValue(tailname, av);
+						return  new MarkValue(tailname, av, cc.session.nextMark());
 					}
 				} else if (P2SAux.is_very_simple(field.getType())) { 
 					return pot;
@@ -29,6 +29,7 @@ import java.util.Set;
 
 import soot.PointsToSet;
 import soot.PrimType;
+import soot.RefType;
 import soot.Scene;
 import soot.SootMethod;
 import soot.Type;
@@ -63,7 +64,10 @@ public class P2SAux {
 	 * Placeholder 
 	 */
 	final public static NodeValue dummy_node_index = new NodeValue(-1, null);
-	static Type stringType, stringBufferType, stringBuilderType;
+	
+	private static final String STRING_CLASS = "java.lang.String";
+	private static final String STRING_BUFFER_CLASS = "java.lang.StringBuffer";
+	private static final String STRING_BUILDER_CLASS = "java.lang.StringBuilder";
 
 
 	/**
@@ -72,12 +76,19 @@ public class P2SAux {
 	 * @param baa 
 	 */
 	public static void init (CallContext cc, ArrayAnalysis baa) { 	
-		Scene s = Scene.v(); 
-		stringType = s.getRefType("java.lang.String");
-		stringBufferType = s.getRefType("java.lang.StringBuffer");
-		stringBuilderType = s.getRefType("java.lang.StringBuilder");
 		cc.nodeTable.init(baa); 
 	}
+	
+	/**
+	 * Check the class of a reference type by name. Types are not kept because
+	 * they belong to the scene of a given analysis.
+	 * @param t the type to check
+	 * @param className the expected class
+	 * @return true if t is the reference type of className
+	 */
+	private static boolean isClass(Type t, String className) {
+		return (t instanceof RefType) && className.equals(((RefType) t).getClassName());
+	}
 
 	static class SpecialVisitor extends P2SetVisitor {
 		final NodeTable cc;
@@ -185,9 +196,9 @@ public class P2SAux {
 	 */
 	public static boolean is_simple (Type t) {
 		return (t instanceof PrimType) 
-		|| (t==stringType) 
-		|| (t==stringBufferType)
-		|| (t==stringBuilderType);
+		|| isClass(t, STRING_CLASS) 
+		|| isClass(t, STRING_BUFFER_CLASS)
+		|| isClass(t, STRING_BUILDER_CLASS);
 		// || ((t instanceof ArrayType) && is_simple(((ArrayType) t).getElementType()));
 	}
 
@@ -198,7 +209,7 @@ public class P2SAux {
 	 * @return
 	 */
 	public static boolean is_very_simple (Type t) {
-		return (t instanceof PrimType) || (t==stringType);
+		return (t instanceof PrimType) || isClass(t, STRING_CLASS);
 	}
 
 	/**
@@ -31,6 +31,11 @@ import java.util.Hashtable;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
 
 import soot.Hierarchy;
 import soot.Scene;
@@ -62,6 +67,7 @@ import com.orange.analysis.anasoot.profile.rules.UseRule;
 import com.orange.matos.core.Alert;
 import com.orange.matos.core.AppDescription;
 import com.orange.matos.core.Out;
+import com.orange.matos.utils.PhaseProfiler;
 
 /**
  * The core of the analysis. It contains live tables representing the rules and calls the identified checker
@@ -125,6 +131,8 @@ public class ProgramSpy {
 	CallGraph callgraph;
 
     private AnasootConfig acf;
+    
+    private final AnalysisSession session;
 	
 	
 	/**
@@ -132,9 +140,11 @@ public class ProgramSpy {
 	 * @param scene
 	 * @param rulefile
 	 * @param acf 
+	 * @param session the state of the analysis, used by the reports.
 	 */
-	public ProgramSpy(Scene scene, AnajavaRule rulefile, AnasootConfig acf) {
+	public ProgramSpy(Scene scene, AnajavaRule rulefile, AnasootConfig acf, AnalysisSession session) {
 	    this.acf = acf;
+	    this.session = session;
 		spytable = new Hashtable<Integer, List<SpyMethod>> ();
 		
 		every_calls = new Hashtable<String, SpyMethod> ();
@@ -152,9 +162,9 @@ public class ProgramSpy {
 		this.hierarchy = scene.getActiveHierarchy();
 		this.rulefile = rulefile;
 		callgraph = scene.getCallGraph();
-		JavaReport.resetAll();
 		for(JavaReport jr: rulefile.getReports()) {
 		    jr.reset();
+		    jr.setSession(session);
 		}
 		activateRules(rulefile);
 		finish_registration();
@@ -276,6 +286,14 @@ public class ProgramSpy {
 				return_tables.size() == 0);
 	}
 	
+	/**
+	 * The numbers of the methods whose calls are spied by the current rules.
+	 * @return a set of method numbers
+	 */
+	public Set<Integer> spiedMethods() {
+		return spytable.keySet();
+	}
+
 	/**
 	 * Finds a class with a given name and a given method subsignature.
 	 * @param className the name of the class.
@@ -443,7 +461,7 @@ public class ProgramSpy {
 	 * @throws Alert
 	 */
 	public void dump (AnasootConfig acf, PrintStream out) throws Alert {
-		StructureReport.dump(acf, rulefile.getGlobal(), result, out);
+		StructureReport.dump(acf, rulefile.getGlobal(), result, session, out);
 	}
 
 	/**
@@ -459,7 +477,7 @@ public class ProgramSpy {
 	 * @param baa
 	 */
 	public void buildResult(CallContext cc, ArrayAnalysis baa) {
-		result = new SpyResult(cc.nodeTable, baa);
+		result = new SpyResult(cc.nodeTable, baa, session.callGraph);
 		for (SpyMethod r : init_calls.values()) result.add(r);
 		for (SpyReturn r: init_returns.values()) result.add(r);
 		for (SpyField r: init_fields.values()) result.add(r);	
@@ -472,6 +490,15 @@ public class ProgramSpy {
 	 */
 	public void customRules(AnajavaRule ruleFile, AppDescription app) throws Alert {
 		result.customResults.putAll(app.getFacts());
+		int threads = acf.customRuleThreads();
+		if (threads > 1 && ruleFile.customCheckers.size() > 1) {
+			List <CustomSemanticRule> rules = new ArrayList<CustomSemanticRule>();
+			for(String classname : ruleFile.customCheckers) {
+				if (classname != null) rules.add(acf.getCustomClass(classname));
+			}
+			parallelCustomRules(rules, app, threads);
+			return;
+		}
 		for(String classname : ruleFile.customCheckers) {
 			if (classname != null) {
 				CustomSemanticRule rule = acf.getCustomClass(classname);
@@ -480,4 +507,67 @@ public class ProgramSpy {
 		}
 	}
 
+	/**
+	 * Runs independent custom rules in parallel. The node table is frozen and 
+	 * each rule works on its own read-only view of the result. The custom 
+	 * results of the views are merged back in the order of the rules, so 
+	 * the outcome does not depend on the scheduling.
+	 * @param rules the custom rules
+	 * @param app the application analysed
+	 * @param threads the maximum number of threads to use.
+	 * @throws Alert
+	 */
+	private void parallelCustomRules(List <CustomSemanticRule> rules, final AppDescription app, int threads) throws Alert {
+		// The snapshot and the hierarchy are built once before the rules share them.
+		session.callGraph.snapshot();
+		scene.getActiveHierarchy();
+		result.nodeTable.setFrozen(true);
+		final PhaseProfiler profiler = acf.profiler();
+		ExecutorService pool = Executors.newFixedThreadPool(Math.min(threads, rules.size()), new ThreadFactory() {
+			int count = 0;
+			@Override
+			public synchronized Thread newThread(Runnable r) {
+				Thread t = new Thread(r, "custom-rule-" + (++count));
+				t.setDaemon(true);
+				return t;
+			}
+		});
+		try {
+			List <SpyResult> views = new ArrayList<SpyResult>();
+			List <Future<?>> runs = new ArrayList<Future<?>>();
+			for(final CustomSemanticRule rule : rules) {
+				final SpyResult view = result.fork();
+				views.add(view);
+				runs.add(pool.submit(new Runnable() {
+					@Override
+					public void run() {
+						PhaseProfiler.Helper helper = profiler.helper();
+						try {
+							rule.run(view, app);
+						} finally {
+							helper.end();
+						}
+					}
+				}));
+			}
+			for(int i = 0; i < runs.size(); i++) {
+				try {
+					runs.get(i).get();
+				} catch (ExecutionException e) {
+					Throwable cause = e.getCause();
+					if (cause instanceof RuntimeException) throw (RuntimeException) cause;
+					if (cause instanceof Error) throw (Error) cause;
+					throw Alert.raised(e, "custom rule " + rules.get(i).getClass().getName() + " failed");
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					throw Alert.raised(e, "interrupted while running custom rules");
+				}
+				result.customResults.putAll(views.get(i).customResults);
+			}
+		} finally {
+			pool.shutdownNow();
+			result.nodeTable.setFrozen(false);
+		}
+	}
+
 }
@@ -20,6 +20,7 @@ package com.orange.analysis.anasoot.spy;
  * #L%
  */
 
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.Properties;
@@ -36,15 +37,15 @@ public class SpyResult {
 	/**
 	 * All the return rules used
 	 */
-	public final Map<String,SpyReturn> returns = new HashMap<String,SpyReturn>();
+	public final Map<String,SpyReturn> returns;
 	/**
 	 * all the call or use rules used 
 	 */
-	public final Map<String,SpyMethod> callUses = new HashMap<String, SpyMethod>();
+	public final Map<String,SpyMethod> callUses;
 	/**
 	 * all the field use rules
 	 */
-	public final Map<String,SpyField> fields = new HashMap<String, SpyField>();
+	public final Map<String,SpyField> fields;
 	/**
 	 * All the java reports
 	 */
@@ -54,6 +55,11 @@ public class SpyResult {
 	 * All the nodes in use
 	 */
 	public final NodeTable nodeTable;
+	
+	/**
+	 * The callgraph of the code analysed.
+	 */
+	public final CallGraphIndex callGraph;
 	/**
 	 * Array analysis
 	 */
@@ -72,13 +78,43 @@ public class SpyResult {
 	 * @param reports result of probe method arguments
 	 * @param nodeTable abstractions of data (nodes).
 	 * @param baa Byte array analysis 
+	 * @param callGraph the callgraph of the code analysed
 	 */
-	public SpyResult(NodeTable nodeTable, ArrayAnalysis baa) {
+	public SpyResult(NodeTable nodeTable, ArrayAnalysis baa, CallGraphIndex callGraph) {
+		this.returns = new HashMap<String,SpyReturn>();
+		this.callUses = new HashMap<String, SpyMethod>();
+		this.fields = new HashMap<String, SpyField>();
 		this.nodeTable = nodeTable;
 		this.arrayAnalysis = baa;
+		this.callGraph = callGraph;
 		this.customResults = new Properties();
 	}
 
+	/**
+	 * Constructor for a read-only view of a result.
+	 * @param parent the result viewed.
+	 */
+	private SpyResult(SpyResult parent) {
+		this.returns = Collections.unmodifiableMap(parent.returns);
+		this.callUses = Collections.unmodifiableMap(parent.callUses);
+		this.fields = Collections.unmodifiableMap(parent.fields);
+		this.nodeTable = parent.nodeTable;
+		this.arrayAnalysis = parent.arrayAnalysis;
+		this.callGraph = parent.callGraph;
+		this.customResults = new Properties(parent.customResults);
+	}
+
+	/**
+	 * Gives back a read-only view of the result for a custom rule run in
+	 * parallel with others. The rules used cannot be modified. Custom results 
+	 * already defined are visible through getProperty but new custom results
+	 * are only stored in the customResults of the view.
+	 * @return a new view.
+	 */
+	public SpyResult fork() {
+		return new SpyResult(this);
+	}
+
 	/**
 	 * Add a checker on method calls if used
 	 * @param call
@@ -22,7 +22,6 @@ package com.orange.analysis.custom.generic.android;
 
 import java.util.Collection;
 import java.util.HashSet;
-import java.util.Iterator;
 import java.util.Set;
 
 import soot.Local;
@@ -37,9 +36,9 @@ import soot.Type;
 import soot.Value;
 import soot.jimple.InstanceInvokeExpr;
 import soot.jimple.InvokeExpr;
-import soot.jimple.toolkits.callgraph.CallGraph;
 import soot.jimple.toolkits.callgraph.Edge;
 
+import com.orange.analysis.anasoot.spy.CallGraphSnapshot;
 import com.orange.analysis.anasoot.spy.CustomSemanticRule;
 import com.orange.analysis.anasoot.spy.SpyResult;
 import com.orange.matos.core.AppDescription;
@@ -72,7 +71,7 @@ public class AbortedBroadcastReceiver implements CustomSemanticRule {
 
     final private Scene scene;
     final private PointsToAnalysis pag;
-    final private CallGraph cg;
+    private CallGraphSnapshot cg;
     
     
     /**
@@ -81,11 +80,11 @@ public class AbortedBroadcastReceiver implements CustomSemanticRule {
     public AbortedBroadcastReceiver() {
         scene = Scene.v();
         pag = scene.getPointsToAnalysis();
-        cg = scene.getCallGraph(); 
     }
     
     @Override
     public void run(SpyResult result, AppDescription app) {
+        cg = result.callGraph.snapshot();
         Set <String> aborted = abortedBroadcastsTypes();
         System.out.println("ABORTED BROADCAST : " + aborted);
         if (aborted.size() == 0) return;
@@ -119,9 +118,10 @@ public class AbortedBroadcastReceiver implements CustomSemanticRule {
         try {
             SootClass receiverClass = scene.getSootClass(ANDROID_CONTENT_BROADCASTRECEIVER);
             SootMethod abortMethod = receiverClass.getMethod(BROADCAST_ABORT_SIGNATURE);
-            Iterator<Edge> edges = cg.edgesInto(abortMethod);
-            while(edges.hasNext()) {
-                Edge edge = edges.next();
+            int id = cg.id(abortMethod);
+            int end = (id < 0) ? 0 : cg.endIn(id);
+            for(int pos = (id < 0) ? 0 : cg.firstIn(id); pos < end; pos++) {
+                Edge edge = cg.inEdge(pos);
                 InvokeExpr ie = edge.srcStmt().getInvokeExpr();
                 if (ie == null || ! (ie instanceof InstanceInvokeExpr)) continue;
                 Value base = ((InstanceInvokeExpr) ie).getBase();
@@ -150,9 +150,10 @@ public class AbortedBroadcastReceiver implements CustomSemanticRule {
             SootField actionField = intentFilterClass.getField(ACTION_FIELD_SIGNATURE);
             for(String registerSig : REGISTER_SIGNATURES) {
                 SootMethod regMethod = contextClass.getMethod(registerSig);
-                Iterator<Edge> edges = cg.edgesInto(regMethod);
-                while(edges.hasNext()) {
-                    Edge edge = edges.next();
+                int id = cg.id(regMethod);
+                int end = (id < 0) ? 0 : cg.endIn(id);
+                for(int pos = (id < 0) ? 0 : cg.firstIn(id); pos < end; pos++) {
+                    Edge edge = cg.inEdge(pos);
                     InvokeExpr ie = edge.srcStmt().getInvokeExpr();
                     if (ie.getArgCount() < 2) continue;
                     Value filter = ie.getArg(1);
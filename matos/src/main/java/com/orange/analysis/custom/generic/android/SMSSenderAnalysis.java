@@ -63,7 +63,7 @@ public class SMSSenderAnalysis implements CustomSemanticRule, CallGraphUtil.Visi
 		for(String signature : sources) {
 			try {
 				SootMethod m = scene.getMethod(signature);
-				CallGraphUtil.visitAncestors(m, this);
+				CallGraphUtil.visitAncestors(result.callGraph.snapshot(), m, this);
 			} catch (RuntimeException e) { }
 		}
 		if (countTiming > 0) {
@@ -20,9 +20,6 @@ package com.orange.analysis.custom.generic.manifest;
  * #L%
  */
 
-import java.io.ByteArrayInputStream;
-import java.io.ByteArrayOutputStream;
-import java.io.FileInputStream;
 import java.io.IOException;
 import java.util.Arrays;
 import java.util.HashSet;
@@ -32,6 +29,7 @@ import java.util.zip.ZipInputStream;
 
 import com.orange.analysis.android.CustomManifestRule;
 import com.orange.matos.android.APKDescr;
+import com.orange.matos.utils.MappedZip;
 
 /**
  * Scan magic header to identify potential elf files or apks at weird places.
@@ -52,46 +50,19 @@ public class FileMagic implements CustomManifestRule {
 	public void run(APKDescr manifest, Properties props) {
 		HashSet<String> suspiciousElf = new HashSet<String>();
 		HashSet<String> suspiciousApk = new HashSet<String>();
-		String name = manifest.getName();
-		FileInputStream fis = null;
 		try {
-			fis = new FileInputStream(name);
-			try {
-				ZipInputStream zis = new ZipInputStream(fis);
-				try {
-				ZipEntry e;
-				byte header[] = new byte[4];
-				while ((e = zis.getNextEntry()) != null) {
-					if (zis.read(header) != 4)
-						continue;
-					if (Arrays.equals(header, ELF_HEADER)) {
-						if (!e.getName().startsWith("lib/")) {
-							suspiciousElf.add(e.getName());
-						}
-					} else if (Arrays.equals(header, ZIP_HEADER)) {
-						ByteArrayOutputStream bos = new ByteArrayOutputStream();
-						bos.write(header);
-						byte buf[] = new byte[4096];
-						int l;
-						while ((l = zis.read(buf)) != -1) {
-							bos.write(buf, 0, l);
-						}
-						ByteArrayInputStream bis = new ByteArrayInputStream(
-								bos.toByteArray());
-						ZipInputStream eis = new ZipInputStream(bis);
-						ZipEntry ee;
-						while ((ee = eis.getNextEntry()) != null) {
-							if (ee.getName().equals("classes.dex")) {
-								suspiciousApk.add(e.getName());
-							}
-						}
+			MappedZip archive = manifest.getArchive();
+			for (MappedZip.Entry e : archive.entries()) {
+				byte header[] = archive.header(e, 4);
+				if (Arrays.equals(header, ELF_HEADER)) {
+					if (!e.getName().startsWith("lib/")) {
+						suspiciousElf.add(e.getName());
+					}
+				} else if (Arrays.equals(header, ZIP_HEADER)) {
+					if (containsDex(archive, e)) {
+						suspiciousApk.add(e.getName());
 					}
 				}
-				} finally {
-					zis.close();
-				}
-			} finally {
-				fis.close();
 			}
 		} catch (IOException e) {
 			System.out.println("Bad things happen");
@@ -107,4 +78,27 @@ public class FileMagic implements CustomManifestRule {
 
 	}
 
+	/**
+	 * Checks if an archive nested in the APK contains code. Stored archives
+	 * are read in place, compressed ones are scanned as a stream.
+	 */
+	private boolean containsDex(MappedZip archive, MappedZip.Entry e) throws IOException {
+		try {
+			MappedZip nested = archive.nested(e);
+			if (nested != null) return nested.getEntry("classes.dex") != null;
+		} catch (IOException ex) {
+			// Central directory not found: fall back to the local headers.
+		}
+		ZipInputStream eis = new ZipInputStream(archive.open(e));
+		try {
+			ZipEntry ee;
+			while ((ee = eis.getNextEntry()) != null) {
+				if (ee.getName().equals("classes.dex")) return true;
+			}
+		} finally {
+			eis.close();
+		}
+		return false;
+	}
+
 }
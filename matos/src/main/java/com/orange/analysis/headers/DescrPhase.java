@@ -21,6 +21,7 @@ package com.orange.analysis.headers;
  * #L%
  */
 
+import java.io.ByteArrayInputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
@@ -36,8 +37,6 @@ import java.util.Set;
 import java.util.jar.Attributes;
 import java.util.jar.Attributes.Name;
 import java.util.jar.Manifest;
-import java.util.zip.ZipEntry;
-import java.util.zip.ZipFile;
 
 import com.orange.matos.core.Alert;
 import com.orange.matos.core.AppDescription;
@@ -89,7 +88,9 @@ public class DescrPhase implements MatosPhase {
         this.config = config;
     }
 
-    private void initForEachRun(PrintStream outStream, boolean xmlFormat, File jadFile, File jarFile) {
+    private void initForEachRun(PrintStream outStream, boolean xmlFormat, MidletSuite ms) {
+        File jadFile = ms.jadFile;
+        File jarFile = ms.jarFile;
         verdict = true;
         this.outStream = outStream;
         if (!xmlFormat)
@@ -113,7 +114,7 @@ public class DescrPhase implements MatosPhase {
         attrMap.put("MIDlet-Jar-URL", new MandJadAttrChecker("MIDlet-Jar-URL", jadFile));
         attrMap.put("MIDlet-Jar-Size", new JarSizeAttrChecker(jadFile, jarFile));
         attrMap.put("MIDlet-Description", new SimpleAttrChecker("MIDlet-Description"));
-        attrMap.put("MIDlet-Icon", new IconChecker(config, jarFile));
+        attrMap.put("MIDlet-Icon", new IconChecker(config, ms));
         attrMap.put("MIDlet-Info-URL", new SimpleAttrChecker("MIDlet-Info-URL"));
         attrMap.put("MIDlet-Data-Size", new SimpleAttrChecker("MIDlet-Data-Size", "[0-9]*"));
         attrMap.put("MIDlet-Permissions", new SimpleAttrChecker("MIDlet-Permissions"));
@@ -124,7 +125,7 @@ public class DescrPhase implements MatosPhase {
         regexpList = new ArrayList<RegexpAttributeChecker>();
         certificateChecker = new CertificateChecker();
         regexpList.add(certificateChecker);
-        regexpList.add(new MidletAttrChecker(config, jarFile));
+        regexpList.add(new MidletAttrChecker(config, ms));
         ChapiIdChecker chapiIdChecker = new ChapiIdChecker(config);
         regexpList.add(chapiIdChecker);
         regexpList.add(new ChapiChecker(config, chapiIdChecker));
@@ -151,60 +152,36 @@ public class DescrPhase implements MatosPhase {
         outStream.println(HtmlOutput.paragraph(HtmlOutput.color("green", msg)));
     }
 
-    private void manifestConsistency(ZipFile zf, ZipEntry manifest, boolean xmlFormat)
-            throws Alert, IOException {
+    private void manifestConsistency(byte[] manifest, boolean xmlFormat) throws Alert {
+        // The manifest is read once from the JAR and each checker reads its
+        // own stream on the cached content.
         // verify that attributes do not appear more than once in the jar
         // manifest
-        InputStream jarInputStream = zf.getInputStream(manifest);
-        long jarManifestSize = manifest.getSize();
-        if (jarInputStream != null) {
-            try {
-                NoDoublePropertiesChecker checker = new NoDoublePropertiesChecker(jarInputStream);
-                checkerTreatment(checker, xmlFormat);
-            } finally {
-                jarInputStream.close();
-            }
-        }
+        Checker checker = new NoDoublePropertiesChecker(new ByteArrayInputStream(manifest));
+        checkerTreatment(checker, xmlFormat);
 
         // verify the separator character for the jar manifest which must be a
         // ":" character
         // At the moment, an I/O exception occured before this phase if the jar
         // manifest is invalid.
-        jarInputStream = zf.getInputStream(manifest);
-        if (jarInputStream != null) {
-            try {
-                Checker checker = new SeparatorChecker(jarInputStream);
-                checkerTreatment(checker, xmlFormat);
-            } finally {
-                jarInputStream.close();
-            }
-        }
+        checker = new SeparatorChecker(new ByteArrayInputStream(manifest));
+        checkerTreatment(checker, xmlFormat);
 
         // verify the end line character for the jar manifest if it is specified
         // in the profile
-        jarInputStream = zf.getInputStream(manifest);
         String jarEndLine = config.string("descriptor.jar.endline");
-        if (jarInputStream != null && jarEndLine != null && jarEndLine.length() != 0) {
-            try {
-                Checker checker = new EndLineChecker(jarInputStream, jarEndLine, jarManifestSize);
-                checkerTreatment(checker, xmlFormat);
-            } finally {
-                jarInputStream.close();
-            }
+        if (jarEndLine != null && jarEndLine.length() != 0) {
+            checker = new EndLineChecker(new ByteArrayInputStream(manifest), jarEndLine,
+                    manifest.length);
+            checkerTreatment(checker, xmlFormat);
         }
         // verify order of attributes in the jar manifest file with the
         // specified option in the profile
-        jarInputStream = zf.getInputStream(manifest);
-        try {
-            String jarAttributes = config.string("descriptor.jar.attributesorder");
-            if (jarInputStream != null && jarAttributes != null && jarAttributes.length() != 0) {
-                Checker checker = new AttributesOrderChecker(jarInputStream, jarAttributes);
-                checkerTreatment(checker, xmlFormat);
-            }
-        } finally {
-            jarInputStream.close();
+        String jarAttributes = config.string("descriptor.jar.attributesorder");
+        if (jarAttributes != null && jarAttributes.length() != 0) {
+            checker = new AttributesOrderChecker(new ByteArrayInputStream(manifest), jarAttributes);
+            checkerTreatment(checker, xmlFormat);
         }
-
     }
 
     private void jadConsistency(File jadFile, boolean xmlFormat) throws Alert,
@@ -363,21 +340,15 @@ public class DescrPhase implements MatosPhase {
     /**
      * Extract the properties from a Jar file (real manifest).
      * 
-     * @param zf
-     * @param manifest
+     * @param manifest the content of the manifest
      * @return
      * @throws Alert
      */
-    public Properties jarProperties(ZipFile zf, ZipEntry manifest) throws Alert {
+    public Properties jarProperties(byte[] manifest) throws Alert {
         Properties jarProperties = new Properties();
         Manifest mf = null;
         try {
-            InputStream jarInputStream = zf.getInputStream(manifest);
-            try {
-                mf = new Manifest(jarInputStream);
-            } finally {
-                jarInputStream.close();
-            }
+            mf = new Manifest(new ByteArrayInputStream(manifest));
         } catch (IOException e) {
             throw Alert.raised(e, "Failed to read from the JAR Manifest");
         }
@@ -410,44 +381,39 @@ public class DescrPhase implements MatosPhase {
         File jarFile = ms.jarFile;
         File jadFile = ms.jadFile;
         boolean xmlFormat = config.xmlFormat();
-        initForEachRun(outStream, xmlFormat, jadFile, jarFile);
-        // get the manifest as an input stream
+        initForEachRun(outStream, xmlFormat, ms);
+        // get the manifest shared by the phases
         try {
-            ZipFile zf = new ZipFile(jarFile);
-            try {
-                ZipEntry manifest = zf.getEntry("META-INF/MANIFEST.MF");
-                if (manifest == null) {
-                    throw Alert.raised(new IOException(), "Manifest not found");
-                }
-
-                manifestConsistency(zf, manifest, xmlFormat);
-                if (jadFile != null) {
-                    jadConsistency(jadFile, xmlFormat);
-                }
+            byte[] manifest = ms.getManifest();
+            if (manifest == null) {
+                throw Alert.raised(new IOException(), "Manifest not found");
+            }
 
-                // creates jarProperties and jadProperties objects
-                Properties jadProperties = jadProperties(jadFile);
-                Properties jarProperties = jarProperties(zf, manifest);
+            manifestConsistency(manifest, xmlFormat);
+            if (jadFile != null) {
+                jadConsistency(jadFile, xmlFormat);
+            }
 
-                // verify if the "MIDlet-Jar-RSA-SHA1" is forbidden by a
-                // profile's option
-                // if yes, consider the MIDlet suite as an untrusted MIDlet
-                // suite
+            // creates jarProperties and jadProperties objects
+            Properties jadProperties = jadProperties(jadFile);
+            Properties jarProperties = jarProperties(manifest);
 
-                boolean trustedMidlet;
-                if (forbiddenTrustedMidlet(jadFile)) {
-                    trustedMidlet = false;
-                } else {
-                    trustedMidlet = isTrustedMidlet(jadProperties, xmlFormat);
-                }
+            // verify if the "MIDlet-Jar-RSA-SHA1" is forbidden by a
+            // profile's option
+            // if yes, consider the MIDlet suite as an untrusted MIDlet
+            // suite
 
-                buildAttrMap(jarFile, jadFile);
-                setupJarAttr(jarProperties);
-                setupJadAttr(jadProperties);
-                performCheck(trustedMidlet, xmlFormat);
-            } finally {
-                zf.close();
+            boolean trustedMidlet;
+            if (forbiddenTrustedMidlet(jadFile)) {
+                trustedMidlet = false;
+            } else {
+                trustedMidlet = isTrustedMidlet(jadProperties, xmlFormat);
             }
+
+            buildAttrMap(jarFile, jadFile);
+            setupJarAttr(jarProperties);
+            setupJadAttr(jadProperties);
+            performCheck(trustedMidlet, xmlFormat);
         } catch (IOException e) {
             throw Alert.raised(e, "Problem while looking for Manifest.");
         }
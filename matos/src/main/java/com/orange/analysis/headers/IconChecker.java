@@ -21,20 +21,19 @@ package com.orange.analysis.headers;
  */
 
 import java.awt.image.BufferedImage;
-import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
-import java.util.zip.ZipEntry;
-import java.util.zip.ZipFile;
 
 import javax.imageio.ImageIO;
 
 import com.orange.matos.core.Alert;
 import com.orange.matos.core.Configuration;
 import com.orange.matos.core.Out;
+import com.orange.matos.java.MidletSuite;
+import com.orange.matos.utils.MappedZip;
 
 /**
  * We verify mainly two things on an icon, that it is a correct PNG image and, if a set of
@@ -47,18 +46,18 @@ import com.orange.matos.core.Out;
  */
 public class IconChecker extends SimpleAttrChecker {
 	final private Configuration config;
-	final private File jarFile;
-	IconChecker(Configuration config, File jarFile) {
+	final private MidletSuite ms;
+	IconChecker(Configuration config, MidletSuite ms) {
 		super("MIDlet-Icon");
 		this.config = config;
-		this.jarFile = jarFile;
+		this.ms = ms;
 	}
 
 	@Override
 	public void check() throws Alert {
-		ZipFile zf = null;
+		MappedZip zf = null;
 		try { 
-			zf = new ZipFile(jarFile); 
+			zf = ms.getArchive(); 
 		} catch (Exception e){ 
 			zf=null; 
 		}	
@@ -80,7 +79,6 @@ public class IconChecker extends SimpleAttrChecker {
 				}
 			}
 		}		
-		if (zf != null) { try { zf.close(); } catch (IOException ie) {} }
 	}
 
 	/**
@@ -89,14 +87,14 @@ public class IconChecker extends SimpleAttrChecker {
 	 * @param entry_name
 	 * @return
 	 */
-	public static String sizeImage(ZipFile zf, String entry_name) {
+	public static String sizeImage(MappedZip zf, String entry_name) {
 		String size = null;
 		if (zf!=null &&entry_name != null && entry_name.length() > 1) {
 			if (entry_name.charAt(0) == '/') entry_name = entry_name.substring(1);
-			ZipEntry ze = zf.getEntry(entry_name);
+			MappedZip.Entry ze = zf.getEntry(entry_name);
 			if (ze == null) return "?";
 			try {
-				InputStream is = zf.getInputStream(ze);
+				InputStream is = zf.open(ze);
 				try {
 					BufferedImage image = ImageIO.read(is);
 					size = image==null ? "?" : image.getWidth() + "x" + image.getHeight();
@@ -110,34 +108,28 @@ public class IconChecker extends SimpleAttrChecker {
 
 	/**
 	 * Check if the given zip entry is a PNG file, according to the PNG W3C specification version 1.0 (http://www.w3.org/TR/PNG/) 
-	 * @param ze the zip entry to check
+	 * @param zf the archive containing the entry
+	 * @param entry_name the path of the entry to check
 	 * @return true if the file is a PNG, false otherwise.
 	 */
-	public static boolean isPNG(ZipFile zf, String entry_name) {
+	public static boolean isPNG(MappedZip zf, String entry_name) {
 		boolean isPNG = false;
 
 		if (zf!=null &&entry_name != null && entry_name.length() > 1) {
 			if (entry_name.charAt(0) == '/') entry_name = entry_name.substring(1);
-			ZipEntry ze = zf.getEntry(entry_name);
+			MappedZip.Entry ze = zf.getEntry(entry_name);
 			if (zf != null && ze != null) {
-				InputStream is = null;
 				try {
-					is = zf.getInputStream(ze);
-					try {
-						// reading the first 8 bytes
-						byte[] sig = new byte[8];
-						int r = is.read(sig);
-						if (r == 8 && sig[0] == -119 && sig[1] == 80
-								&& sig[2] == 78 && sig[3] == 71 && sig[4] == 13
-								&& sig[5] == 10 && sig[6] == 26 && sig[7] == 10)
-							isPNG = true;
-						// 137 80 78 71 13 10 26 10 is the PNG file's signature
-						// according to W3C spec at
-						// http://www.w3.org/TR/PNG/#5PNG-file-signature
-						// aka -119 80 78 71 13 10 26 10 (8 bit signed, like what is read)
-					} finally {
-						is.close();
-					}
+					// reading the first 8 bytes
+					byte[] sig = zf.header(ze, 8);
+					if (sig.length == 8 && sig[0] == -119 && sig[1] == 80
+							&& sig[2] == 78 && sig[3] == 71 && sig[4] == 13
+							&& sig[5] == 10 && sig[6] == 26 && sig[7] == 10)
+						isPNG = true;
+					// 137 80 78 71 13 10 26 10 is the PNG file's signature
+					// according to W3C spec at
+					// http://www.w3.org/TR/PNG/#5PNG-file-signature
+					// aka -119 80 78 71 13 10 26 10 (8 bit signed, like what is read)
 				} catch (IOException e) {
 					e.printStackTrace(Out.getLog());
 				} 
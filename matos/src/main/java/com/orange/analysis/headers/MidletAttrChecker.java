@@ -20,17 +20,16 @@ package com.orange.analysis.headers;
  * #L%
  */
 
-import java.io.File;
-import java.io.IOException;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
 import java.util.regex.Pattern;
-import java.util.zip.ZipFile;
 
 import com.orange.matos.core.Alert;
 import com.orange.matos.core.Configuration;
 import com.orange.matos.java.MidletKind;
+import com.orange.matos.java.MidletSuite;
+import com.orange.matos.utils.MappedZip;
 
 /**
  * The MIDlet descriptor is a complex attribute and many checks are done by this
@@ -60,7 +59,7 @@ import com.orange.matos.java.MidletKind;
  */
 public class MidletAttrChecker extends RegexpAttributeChecker {
 
-	final private File jarFile;
+	final private MidletSuite ms;
 	final private Configuration config;
 	private int maxMidlets = 0;
 	private Set<String> checkPNGsize = null;
@@ -69,11 +68,11 @@ public class MidletAttrChecker extends RegexpAttributeChecker {
 	 * Constructor.
 	 * 
 	 * @param config
-	 * @param jarFile
+	 * @param ms the midlet suite giving access to the JAR
 	 */
-	public MidletAttrChecker(Configuration config, File jarFile) {
+	public MidletAttrChecker(Configuration config, MidletSuite ms) {
 		super("MIDlet-([0-9][0-9]?)");
-		this.jarFile = jarFile;
+		this.ms = ms;
 		this.config = config;
 	}
 
@@ -96,91 +95,81 @@ public class MidletAttrChecker extends RegexpAttributeChecker {
 
 		int i = 1;
 		String key = String.valueOf(i);
-		ZipFile zf;
+		MappedZip zf;
 		try {
-			try {
-				zf = new ZipFile(jarFile);
-			} catch (Exception e) {
-				zf = null;
-			}
-			try {
-				while (jadMap.containsKey(key) || jarMap.containsKey(key)) {
-					MidletDescr jadValue = parse(i, "JAD descriptor", zf,
-							(String) jadMap.get(key));
-					MidletDescr jarValue = parse(i, "JAR manifest", zf,
-							(String) jarMap.get(key));
-					if (jarValue != null && jadValue != null) {
-						if (!jarValue.name.equals(jadValue.name)) {
-							addProblem(
-									"Names for midlet "
-											+ i
-											+ " differ from the JAR Manifest to the JAD file.",
-									"");
-						}
-
-						if (!jarValue.icon.equals(jadValue.icon)) {
-							addProblem(
-									"Icons for midlet "
-											+ i
-											+ " differ from the JAR Manifest to the JAD file.",
-									"");
-						}
-						if (!jarValue.classname.equals(jadValue.classname)) {
-							addProblem(
-									"Class identifier for midlet "
-											+ i
-											+ " differs from the JAR Manifest to the JAD file.",
-									"");
-						}
-					}
-					MidletDescr value = (jarValue == null) ? jadValue
-							: jarValue;
-					if (value != null) {
-						if (midletNameRegexp != null
-								&& !midletNameRegexp.matcher(value.name)
-										.matches()) {
-							addProblem(
-									"Name for midlet "
-											+ i
-											+ " does not respect the imposed constaints.",
-									"");
-						}
-						MidletKind.addKind(config, value.classname,
-								"user service", i);
-					}
-
-					jadMap.remove(key);
-					jarMap.remove(key);
-					key = String.valueOf(++i);
-				}
-				if ((maxMidlets != 0) && (i - 1) > maxMidlets) {
-					addProblem("More than " + maxMidlets
-							+ " midlet declared in midlet suite: " + (i - 1),
+			zf = ms.getArchive();
+		} catch (Exception e) {
+			zf = null;
+		}
+		while (jadMap.containsKey(key) || jarMap.containsKey(key)) {
+			MidletDescr jadValue = parse(i, "JAD descriptor", zf,
+					(String) jadMap.get(key));
+			MidletDescr jarValue = parse(i, "JAR manifest", zf,
+					(String) jarMap.get(key));
+			if (jarValue != null && jadValue != null) {
+				if (!jarValue.name.equals(jadValue.name)) {
+					addProblem(
+							"Names for midlet "
+									+ i
+									+ " differ from the JAR Manifest to the JAD file.",
 							"");
 				}
 
-				if (jarMap.size() != 0) {
+				if (!jarValue.icon.equals(jadValue.icon)) {
 					addProblem(
-							"There are gaps in the numbering of midlets in the JAR manifest. The following values are incorrect indices: "
-									+ jarMap.keySet(), "");
+							"Icons for midlet "
+									+ i
+									+ " differ from the JAR Manifest to the JAD file.",
+							"");
 				}
-
-				if (jadMap.size() != 0) {
+				if (!jarValue.classname.equals(jadValue.classname)) {
 					addProblem(
-							"There are gaps in the numbering of midlets in the JAD descriptor. The following values are incorrect indices: "
-									+ jarMap.keySet(), "");
+							"Class identifier for midlet "
+									+ i
+									+ " differs from the JAR Manifest to the JAD file.",
+							"");
 				}
-			} finally {
-				zf.close();
 			}
-		} catch (IOException e) {
+			MidletDescr value = (jarValue == null) ? jadValue
+					: jarValue;
+			if (value != null) {
+				if (midletNameRegexp != null
+						&& !midletNameRegexp.matcher(value.name)
+								.matches()) {
+					addProblem(
+							"Name for midlet "
+									+ i
+									+ " does not respect the imposed constaints.",
+							"");
+				}
+				MidletKind.addKind(config, value.classname,
+						"user service", i);
+			}
+
+			jadMap.remove(key);
+			jarMap.remove(key);
+			key = String.valueOf(++i);
+		}
+		if ((maxMidlets != 0) && (i - 1) > maxMidlets) {
+			addProblem("More than " + maxMidlets
+					+ " midlet declared in midlet suite: " + (i - 1),
+					"");
+		}
+
+		if (jarMap.size() != 0) {
+			addProblem(
+					"There are gaps in the numbering of midlets in the JAR manifest. The following values are incorrect indices: "
+							+ jarMap.keySet(), "");
+		}
+
+		if (jadMap.size() != 0) {
 			addProblem(
-					"IO Error while reading midlet attributes: "
-							+ e.getMessage(), "");
+					"There are gaps in the numbering of midlets in the JAD descriptor. The following values are incorrect indices: "
+							+ jarMap.keySet(), "");
 		}
 	}
 
-	private MidletDescr parse(int i, String from, ZipFile zf, String line) {
+	private MidletDescr parse(int i, String from, MappedZip zf, String line) {
 		if (line == null)
 			return null;
 		int i1 = line.indexOf(',');
@@ -242,7 +231,7 @@ public class MidletAttrChecker extends RegexpAttributeChecker {
 		}
 	}
 
-	private boolean checkNotExists(ZipFile zf, String entry) {
+	private boolean checkNotExists(MappedZip zf, String entry) {
 		if (entry != null && entry.length() > 1 && entry.charAt(0) == '/')
 			entry = entry.substring(1);
 		return (zf != null && zf.getEntry(entry) == null);
@@ -21,20 +21,23 @@ package com.orange.analysis.implemchecker;
  * #L%
  */
 
-import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.PrintStream;
 import java.util.ArrayList;
-import java.util.Enumeration;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Set;
-import java.util.jar.JarEntry;
-import java.util.jar.JarFile;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
 
+import org.apache.bcel.classfile.ClassFormatException;
+import org.apache.bcel.classfile.ClassParser;
 import org.apache.bcel.classfile.JavaClass;
-import org.apache.bcel.util.ClassPath;
-import org.apache.bcel.util.Repository;
-import org.apache.bcel.util.SyntheticRepository;
 
 import com.orange.matos.core.Alert;
 import com.orange.matos.core.AppDescription;
@@ -45,6 +48,8 @@ import com.orange.matos.core.RuleFile;
 import com.orange.matos.core.XMLStream;
 import com.orange.matos.java.MidletSuite;
 import com.orange.matos.utils.HtmlOutput;
+import com.orange.matos.utils.MappedZip;
+import com.orange.matos.utils.PhaseProfiler;
 
 /**
  * This class implements a phase preliminary to soot analysis which serves two
@@ -88,6 +93,11 @@ public class ImplemCheckerPhase implements MatosPhase {
      */
     private static final String MESSAGE_BAD_ARGS = "midlet suite expected.";
 
+    /**
+     * Number of class files from which they are parsed in parallel.
+     */
+    private static final int PARALLEL_PARSING = 256;
+
     @Override
     public String getName() {
         return "classesChecking";
@@ -109,12 +119,10 @@ public class ImplemCheckerPhase implements MatosPhase {
         if (!(descr instanceof MidletSuite))
             throw Alert.raised(null, MESSAGE_BAD_ARGS);
         MidletSuite ms = (MidletSuite) descr;
-        File jarFile = ms.jarFile;
         boolean verdict = true;
-        String cp = jarFile.getAbsolutePath() + File.pathSeparator + config.midpClasspath();
-        System.setProperty("java.class.path", cp);
-        ClassPath classpath = new ClassPath(cp);
-        Repository repository = SyntheticRepository.getInstance(classpath);
+        // Classes of the midlet are parsed from the shared view on the JAR,
+        // the platform classes are shared by all the analyses.
+        LayeredRepository repository = new LayeredRepository(PlatformClasses.get(config.midpClasspath()));
 
         String forbiddenImplems = config.string(FORBIDDEN_ITF_KEY);
         Set<String> toMonitor = new HashSet<String>();
@@ -127,13 +135,20 @@ public class ImplemCheckerPhase implements MatosPhase {
         Set<String> seen = new HashSet<String>();
         Set<String> allMidlets = new HashSet<String>();
         boolean first = true;
-        JarFile jf = null;
         try {
-            jf = new JarFile(jarFile);
-
-            for (Enumeration<JarEntry> ents = jf.entries(); ents.hasMoreElements();) {
+            MappedZip jar = ms.getArchive();
+            List<MappedZip.Entry> classFiles = new ArrayList<MappedZip.Entry>();
+            for (MappedZip.Entry entry : jar.entries()) {
+                if (entry.getName().endsWith(".class")) {
+                    classFiles.add(entry);
+                }
+            }
+            for (JavaClass clazz : parseAll(jar, classFiles)) {
+                if (clazz != null)
+                    repository.storeClass(clazz);
+            }
 
-                JarEntry entry = ents.nextElement();
+            for (MappedZip.Entry entry : jar.entries()) {
                 String name = entry.getName();
                 if (name.endsWith(".class")) {
 
@@ -146,9 +161,9 @@ public class ImplemCheckerPhase implements MatosPhase {
                         implem = null;
                     }
                     if (implem != null && !implem.isInterface() && !implem.isAbstract()) {
-                        ArrayList<String> superClasses;
+                        List<String> superClasses;
                         try {
-                            superClasses = getSuperClasses(repository, implem);
+                            superClasses = repository.getSuperClasses(implem);
                             for (String spClass : superClasses) {
                                 if (spClass.equals(MIDLET_CLASSNAME)) {
                                     allMidlets.add(implem.getClassName());
@@ -188,12 +203,6 @@ public class ImplemCheckerPhase implements MatosPhase {
             }
         } catch (Exception e) {
             e.printStackTrace();
-        } finally {
-            try {
-                if (jf != null)
-                    jf.close();
-            } catch (IOException e) {
-            }
         }
         for (String midlet : allMidlets) {
             config.setAppInfo("*", midlet);
@@ -202,22 +211,113 @@ public class ImplemCheckerPhase implements MatosPhase {
         return verdict;
     }
 
-    private ArrayList<String> getSuperClasses(Repository repository, JavaClass implem) {
-        ArrayList<String> result = new ArrayList<String>();
-        String superName = null;
-        while ((superName = implem.getSuperclassName()) != null) {
-            if (result.contains(superName))
-                break;
-            result.add(superName);
-            try {
-                implem = repository.loadClass(superName);
-            } catch (ClassNotFoundException e) {
-                implem = null;
+    /**
+     * Parses the class files of the midlet suite. Large suites are parsed in
+     * parallel on the shared view of the JAR.
+     * 
+     * @param jar the view on the JAR
+     * @param classFiles the entries to parse
+     * @return the parsed classes in the order of the entries, null for the
+     *         entries that cannot be read or are malformed.
+     * @throws InterruptedException if interrupted while waiting for the parsers.
+     */
+    private List<JavaClass> parseAll(final MappedZip jar, List<MappedZip.Entry> classFiles)
+            throws InterruptedException {
+        List<JavaClass> result = new ArrayList<JavaClass>(classFiles.size());
+        int threads = Math.min(Runtime.getRuntime().availableProcessors(), classFiles.size()
+                / PARALLEL_PARSING);
+        if (threads <= 1) {
+            for (MappedZip.Entry entry : classFiles) {
+                result.add(parseOrSkip(jar, entry));
+            }
+            return result;
+        }
+        final PhaseProfiler profiler = config.getProfiler();
+        ExecutorService pool = Executors.newFixedThreadPool(threads, new ThreadFactory() {
+            int count = 0;
+
+            @Override
+            public synchronized Thread newThread(Runnable r) {
+                Thread t = new Thread(r, "class-parser-" + (++count));
+                t.setDaemon(true);
+                return t;
+            }
+        });
+        try {
+            List<Future<JavaClass>> parsed = new ArrayList<Future<JavaClass>>();
+            for (final MappedZip.Entry entry : classFiles) {
+                parsed.add(pool.submit(new Callable<JavaClass>() {
+                    @Override
+                    public JavaClass call() {
+                        PhaseProfiler.Helper helper = profiler.helper();
+                        try {
+                            return parseOrSkip(jar, entry);
+                        } finally {
+                            helper.end();
+                        }
+                    }
+                }));
             }
+            for (Future<JavaClass> future : parsed) {
+                try {
+                    result.add(future.get());
+                } catch (ExecutionException e) {
+                    // a bad entry gives a null result, only bugs get here.
+                    Throwable cause = e.getCause();
+                    if (cause instanceof RuntimeException) {
+                        throw (RuntimeException) cause;
+                    } else if (cause instanceof Error) {
+                        throw (Error) cause;
+                    } else {
+                        throw new RuntimeException(cause);
+                    }
+                }
+            }
+        } finally {
+            pool.shutdownNow();
         }
         return result;
     }
 
+    /**
+     * Parses a class file of the midlet suite, as for the repository an
+     * unreadable class is not found.
+     * 
+     * @param jar the view on the JAR
+     * @param entry the class file
+     * @return the parsed class or null if it cannot be read or is malformed.
+     */
+    private static JavaClass parseOrSkip(MappedZip jar, MappedZip.Entry entry) {
+        try {
+            return parse(jar, entry);
+        } catch (IOException e) {
+            Out.getLog().println("Cannot read class file " + entry.getName() + ": " + e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Parses a class file of the midlet suite. A malformed class file is
+     * logged and skipped so that it does not stop the check of the other
+     * classes.
+     * 
+     * @param jar the view on the JAR
+     * @param entry the class file
+     * @return the parsed class or null if the class file is malformed.
+     * @throws IOException if the entry cannot be read.
+     */
+    private static JavaClass parse(MappedZip jar, MappedZip.Entry entry) throws IOException {
+        InputStream is = jar.open(entry);
+        try {
+            return new ClassParser(is, entry.getName()).parse();
+        } catch (ClassFormatException e) {
+            Out.getLog().println("Malformed class file " + entry.getName() + ": " + e.getMessage());
+            return null;
+        } finally {
+            is.close();
+        }
+    }
+
     @Override
     public String getMessage() {
         return null;
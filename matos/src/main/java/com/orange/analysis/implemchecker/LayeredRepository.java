@@ -0,0 +1,164 @@
+package com.orange.analysis.implemchecker;
+
+/*
+ * #%L
+ * Matos
+ * %%
+ * Copyright (C) 2004 - 2014 Orange SA
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.bcel.classfile.JavaClass;
+import org.apache.bcel.util.ClassPath;
+import org.apache.bcel.util.Repository;
+
+/**
+ * A BCEL repository for the analysis of one midlet suite. The classes of the
+ * suite are stored in the repository, other classes are searched in the
+ * shared platform classes. Superclass chains are memoized.
+ * 
+ * @author Pierre Cregut
+ */
+class LayeredRepository implements Repository {
+
+    private static final long serialVersionUID = 1L;
+
+    private final PlatformClasses platform;
+
+    private final Map<String, JavaClass> local = new HashMap<String, JavaClass>();
+
+    private final Map<String, List<String>> chains = new HashMap<String, List<String>>();
+
+    /**
+     * @param platform the classes of the platform libraries
+     */
+    LayeredRepository(PlatformClasses platform) {
+        this.platform = platform;
+    }
+
+    @Override
+    public void storeClass(JavaClass clazz) {
+        local.put(clazz.getClassName(), clazz);
+        clazz.setRepository(this);
+        chains.clear();
+    }
+
+    @Override
+    public void removeClass(JavaClass clazz) {
+        local.remove(clazz.getClassName());
+        chains.clear();
+    }
+
+    @Override
+    public JavaClass findClass(String className) {
+        JavaClass result = local.get(className);
+        return (result != null) ? result : platform.lookup(className);
+    }
+
+    @Override
+    public JavaClass loadClass(String className) throws ClassNotFoundException {
+        if (className == null || className.equals(""))
+            throw new IllegalArgumentException("Invalid class name " + className);
+        className = className.replace('/', '.');
+        JavaClass result = findClass(className);
+        if (result == null)
+            throw new ClassNotFoundException("Exception while looking for class " + className);
+        return result;
+    }
+
+    @Override
+    @SuppressWarnings("rawtypes")
+    public JavaClass loadClass(Class clazz) throws ClassNotFoundException {
+        return loadClass(clazz.getName());
+    }
+
+    @Override
+    public void clear() {
+        local.clear();
+        chains.clear();
+    }
+
+    @Override
+    public ClassPath getClassPath() {
+        return platform.getClassPath();
+    }
+
+    /**
+     * Gives back the names of the superclasses of a class, closest first. The
+     * walk stops on the first name seen twice.
+     * 
+     * @param clazz the class
+     * @return the superclass names
+     * @throws ClassNotFoundException if a superclass cannot be found.
+     */
+    List<String> getSuperClasses(JavaClass clazz) throws ClassNotFoundException {
+        String className = clazz.getClassName();
+        List<String> known = knownChain(className);
+        if (known != null)
+            return known;
+        ArrayList<String> result = new ArrayList<String>();
+        JavaClass current = clazz;
+        String superName;
+        while ((superName = current.getSuperclassName()) != null) {
+            if (result.contains(superName))
+                break;
+            result.add(superName);
+            // The chain of the superclass is the end of the walk.
+            List<String> rest = knownChain(superName);
+            if (rest != null) {
+                for (String name : rest) {
+                    if (result.contains(name))
+                        break;
+                    result.add(name);
+                }
+                break;
+            }
+            current = loadClass(superName);
+        }
+        List<String> chain = Collections.unmodifiableList(result);
+        chains.put(className, chain);
+        if (!local.containsKey(className) && !shadows(result))
+            platform.putChain(className, result);
+        return chain;
+    }
+
+    /**
+     * The memoized superclass chain of a class. Chains of the platform are
+     * valid only if the suite does not redefine one of their classes.
+     */
+    private List<String> knownChain(String className) {
+        List<String> result = chains.get(className);
+        if (result == null && !local.containsKey(className)) {
+            result = platform.chain(className);
+            if (result != null && shadows(result))
+                result = null;
+        }
+        return result;
+    }
+
+    private boolean shadows(List<String> names) {
+        for (String name : names) {
+            if (local.containsKey(name))
+                return true;
+        }
+        return false;
+    }
+}
@@ -0,0 +1,143 @@
+package com.orange.analysis.implemchecker;
+
+/*
+ * #%L
+ * Matos
+ * %%
+ * Copyright (C) 2004 - 2014 Orange SA
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.bcel.classfile.ClassParser;
+import org.apache.bcel.classfile.JavaClass;
+import org.apache.bcel.util.ClassPath;
+
+/**
+ * The classes of the platform libraries (the MIDP classpath) shared by all the
+ * analyses of the process. A class is parsed on first use and never changes
+ * afterwards; absent classes are also remembered. The superclass chains
+ * computed on platform classes are kept with them. Only the platforms of the
+ * last classpaths used are kept.
+ * 
+ * @author Pierre Cregut
+ */
+final class PlatformClasses {
+
+    /**
+     * Maximal number of platforms kept.
+     */
+    static final int MAX_PLATFORMS = 4;
+
+    private static final Map<String, PlatformClasses> instances = new LinkedHashMap<String, PlatformClasses>(8, 0.75f, true) {
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, PlatformClasses> eldest) {
+            return size() > MAX_PLATFORMS;
+        }
+    };
+
+    private final ClassPath classPath;
+
+    private final Map<String, JavaClass> classes = new HashMap<String, JavaClass>();
+
+    private final Set<String> missing = new HashSet<String>();
+
+    private final Map<String, List<String>> chains = new HashMap<String, List<String>>();
+
+    private PlatformClasses(String classpath) {
+        classPath = new ClassPath(classpath);
+    }
+
+    /**
+     * Gives back the platform classes for a classpath. The least recently used
+     * platform is dropped when there are too many; analyses still using it
+     * keep it.
+     * 
+     * @param classpath the classpath of the platform libraries
+     * @return the shared instance
+     */
+    static synchronized PlatformClasses get(String classpath) {
+        PlatformClasses result = instances.get(classpath);
+        if (result == null) {
+            result = new PlatformClasses(classpath);
+            instances.put(classpath, result);
+        }
+        return result;
+    }
+
+    /**
+     * The classpath searched.
+     * 
+     * @return
+     */
+    ClassPath getClassPath() {
+        return classPath;
+    }
+
+    /**
+     * Finds a class of the platform.
+     * 
+     * @param className the name of the class (dot separated)
+     * @return null if the class is not in the platform or cannot be parsed.
+     */
+    synchronized JavaClass lookup(String className) {
+        JavaClass result = classes.get(className);
+        if (result != null || missing.contains(className))
+            return result;
+        try {
+            InputStream is = classPath.getInputStream(className);
+            try {
+                result = new ClassParser(is, className).parse();
+            } finally {
+                is.close();
+            }
+            classes.put(className, result);
+        } catch (IOException e) {
+            missing.add(className);
+        }
+        return result;
+    }
+
+    /**
+     * The superclass chain of a platform class if already computed.
+     * 
+     * @param className
+     * @return null if not known.
+     */
+    synchronized List<String> chain(String className) {
+        return chains.get(className);
+    }
+
+    /**
+     * Records the superclass chain of a platform class.
+     * 
+     * @param className
+     * @param chain the names of the superclasses, closest first.
+     */
+    synchronized void putChain(String className, List<String> chain) {
+        chains.put(className, Collections.unmodifiableList(chain));
+    }
+}
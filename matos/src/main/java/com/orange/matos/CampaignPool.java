@@ -0,0 +1,542 @@
+package com.orange.matos;
+
+/*
+ * #%L
+ * Matos
+ * %%
+ * Copyright (C) 2004 - 2014 Orange SA
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+
+import com.orange.matos.android.AndroidStep;
+import com.orange.matos.core.Alert;
+import com.orange.matos.core.Configuration;
+import com.orange.matos.core.DownloadParameters;
+import com.orange.matos.core.MatosPhase;
+import com.orange.matos.core.Out;
+import com.orange.matos.core.Step;
+import com.orange.matos.java.JavaStep;
+
+/**
+ * Runs the steps of a campaign in a pool of worker JVMs. Soot keeps its state
+ * in singletons, so analyses cannot share a process: each worker is a separate
+ * {@link CampaignWorker} process with its own temporary directory and log. The
+ * description of the campaign is sent first on the standard input of the
+ * workers, so that download credentials are never written to disk. Steps are
+ * then handed out one at a time so that a big application does not delay the
+ * steps queued behind it. The heap of this process is shared between the
+ * workers unless the heap of a worker is given by the
+ * <code>matos.workerHeap</code> property (in megabytes).
+ * 
+ * @author Pierre Cregut
+ */
+public class CampaignPool {
+
+    /** Prefix of the lines of the worker output that belong to the protocol. */
+    static final String PROTOCOL_MARKER = "@@matos ";
+
+    /** Message sent back by a worker when a step is finished. */
+    static final String DONE = "done";
+
+    /** Line sent to a worker after the description of the campaign. */
+    static final String END_OF_JOB = PROTOCOL_MARKER + "job";
+
+    /** Property giving the maximal heap of a worker in megabytes. */
+    static final String WORKER_HEAP_KEY = "matos.workerHeap";
+
+    /** Smallest heap given to a worker when the heap of this process is shared (in megabytes). */
+    static final long MIN_WORKER_HEAP = 256;
+
+    /** Kinds of steps (and of phases) known by the workers. */
+    private static final String[] KINDS = { "java", "android" };
+
+    private final Configuration configuration;
+
+    private final int size;
+
+    private final File destDir;
+
+    private final File workDir;
+
+    private List<Step> steps;
+
+    private String job;
+
+    private String[] causes;
+
+    private long workerHeap;
+
+    private int next;
+
+    /**
+     * Instantiates a new pool.
+     * 
+     * @param configuration the configuration of the parent process
+     * @param size the number of worker processes
+     * @param destDir the directory where reports and worker logs are written
+     */
+    public CampaignPool(Configuration configuration, int size, File destDir) {
+        this.configuration = configuration;
+        this.size = size;
+        this.destDir = destDir;
+        this.workDir = new File(configuration.getTempDir(), "workers");
+    }
+
+    /**
+     * Maximal heap of a worker.
+     * 
+     * @param configured the heap given in the configuration in megabytes or
+     *        a negative value
+     * @param parentMax the maximal heap of this process in bytes
+     *        (Long.MAX_VALUE if unbounded)
+     * @param count the number of workers
+     * @return the heap in megabytes or -1 to keep the default of the JVM.
+     */
+    static long workerHeap(long configured, long parentMax, int count) {
+        if (configured > 0) return configured;
+        if (parentMax == Long.MAX_VALUE) return -1;
+        return Math.max(MIN_WORKER_HEAP, (parentMax >> 20) / Math.max(1, count));
+    }
+
+    /**
+     * Analyses all the steps. Each step must already have its absolute output
+     * file name. On return the verdict, score, time and message of each step
+     * are the ones computed by the worker.
+     * 
+     * @param campaign the steps to analyse
+     * @return for each step, null if it was analysed or the cause of the
+     *         problem if it was skipped.
+     * @throws Alert if the pool cannot be started.
+     */
+    public String[] run(List<Step> campaign) throws Alert {
+        steps = campaign;
+        causes = new String[campaign.size()];
+        next = 0;
+        if (!workDir.isDirectory() && !workDir.mkdirs()) {
+            throw Alert.raised(null, "Cannot create the directory for campaign workers " + workDir);
+        }
+        job = saveJob(configuration, campaign);
+
+        int count = Math.min(size, campaign.size());
+        long configured = -1;
+        try {
+            configured = configuration.integer(WORKER_HEAP_KEY, -1);
+        } catch (NumberFormatException e) {
+            Out.getLog().println("bad format for " + WORKER_HEAP_KEY);
+        }
+        workerHeap = workerHeap(configured, Runtime.getRuntime().maxMemory(), count);
+        Thread[] threads = new Thread[count];
+        for (int i = 0; i < count; i++) {
+            threads[i] = new Thread(new WorkerHandler(i), "matos-worker-" + i);
+            threads[i].start();
+        }
+        for (Thread thread : threads) {
+            try {
+                thread.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw Alert.raised(e, "Campaign interrupted");
+            }
+        }
+        return causes;
+    }
+
+    /**
+     * Gives back the index of the next step to analyse.
+     * 
+     * @return an index or -1 if all the steps are dispatched.
+     */
+    synchronized int nextStep() {
+        return (next < steps.size()) ? next++ : -1;
+    }
+
+    /**
+     * Record the outcome of a step computed by a worker.
+     * 
+     * @param index the position of the step in the campaign
+     * @param result the properties written by the worker
+     */
+    synchronized void merge(int index, Properties result) {
+        Step step = steps.get(index);
+        step.setVerdict(Integer.parseInt(result.getProperty("verdict", String.valueOf(Step.SKIPPED))));
+        step.setScore(Integer.parseInt(result.getProperty("score", "-1")));
+        step.setTime(Long.parseLong(result.getProperty("time", "-1")));
+        step.setMessage(result.getProperty("message"));
+        causes[index] = result.getProperty("cause");
+    }
+
+    /**
+     * Record a step whose worker died before giving back a result.
+     * 
+     * @param index the position of the step in the campaign
+     * @param cause the explanation
+     */
+    synchronized void fail(int index, String cause) {
+        Step step = steps.get(index);
+        step.setVerdict(Step.SKIPPED);
+        step.setMessage(cause);
+        causes[index] = cause;
+    }
+
+    /**
+     * Drives a single worker process. If the process dies, the current step is
+     * marked as skipped and a fresh process is started for the remaining ones.
+     */
+    private class WorkerHandler implements Runnable {
+        private final int id;
+
+        private final File dir;
+
+        private final File log;
+
+        private Process process;
+
+        private BufferedReader fromWorker;
+
+        private PrintStream toWorker;
+
+        WorkerHandler(int id) {
+            this.id = id;
+            this.dir = new File(workDir, "worker" + id);
+            this.log = new File(destDir, "worker" + id + ".log");
+        }
+
+        @Override
+        public void run() {
+            int index;
+            while ((index = nextStep()) >= 0) {
+                try {
+                    if (process == null) start();
+                    toWorker.println(index);
+                    toWorker.flush();
+                    if (!waitFor(index)) {
+                        stop();
+                        fail(index, "The analysis process stopped unexpectedly (see " + log.getName() + ")");
+                        continue;
+                    }
+                    merge(index, loadResult(index));
+                } catch (IOException e) {
+                    e.printStackTrace(Out.getLog());
+                    stop();
+                    fail(index, "Problem with campaign worker " + id + ": " + e.getMessage());
+                }
+            }
+            if (process != null) {
+                toWorker.close();
+                try {
+                    waitFor(-1);
+                    process.waitFor();
+                } catch (Exception e) {
+                    e.printStackTrace(Out.getLog());
+                }
+            }
+        }
+
+        private void start() throws IOException {
+            if (!dir.isDirectory() && !dir.mkdirs()) {
+                throw new IOException("Cannot create directory " + dir);
+            }
+            List<String> command = new ArrayList<String>();
+            command.add(new File(new File(System.getProperty("java.home"), "bin"), "java").getAbsolutePath());
+            if (workerHeap > 0) command.add("-Xmx" + workerHeap + "m");
+            command.add("-cp");
+            command.add(System.getProperty("java.class.path"));
+            command.add("-D" + Configuration.MATOS_HOME_KEY + "=" + configuration.getLibDir());
+            command.add("-D" + Configuration.MATOS_TEMP_KEY + "=" + dir.getAbsolutePath());
+            command.add(CampaignWorker.class.getName());
+            command.add(log.getAbsolutePath());
+            ProcessBuilder builder = new ProcessBuilder(command);
+            builder.redirectErrorStream(true);
+            process = builder.start();
+            fromWorker = new BufferedReader(new InputStreamReader(process.getInputStream(), "UTF-8"));
+            toWorker = new PrintStream(process.getOutputStream(), true, "UTF-8");
+            toWorker.print(job);
+            toWorker.println(END_OF_JOB);
+            toWorker.flush();
+        }
+
+        /**
+         * Reads the output of the worker until the given step is done. Lines
+         * outside of the protocol are copied to the log.
+         * 
+         * @param index the step expected or -1 to drain the output.
+         * @return false if the worker terminated before.
+         */
+        private boolean waitFor(int index) throws IOException {
+            String expected = PROTOCOL_MARKER + DONE + " " + index;
+            String line;
+            while ((line = fromWorker.readLine()) != null) {
+                if (line.equals(expected)) return true;
+                if (!line.startsWith(PROTOCOL_MARKER)) Out.getLog().println("[worker " + id + "] " + line);
+            }
+            return false;
+        }
+
+        private void stop() {
+            if (process != null) {
+                process.destroy();
+                process = null;
+            }
+        }
+
+        private Properties loadResult(int index) throws IOException {
+            Properties result = new Properties();
+            File file = resultFile(dir, index);
+            InputStream is = new FileInputStream(file);
+            try {
+                result.load(is);
+            } finally {
+                is.close();
+            }
+            if (!file.delete()) Out.getLog().println("Cannot remove " + file);
+            return result;
+        }
+    }
+
+    /**
+     * The file where a worker stores the outcome of a step.
+     * 
+     * @param dir the temporary directory of the worker
+     * @param index the position of the step in the campaign
+     * @return a file in the worker directory
+     */
+    static File resultFile(File dir, int index) {
+        return new File(dir, "step" + index + ".properties");
+    }
+
+    /**
+     * Write the outcome of a step so that the parent can merge it.
+     * 
+     * @param step the analysed step
+     * @param cause null if the analysis completed or the reason why it was
+     *            skipped.
+     * @param file the result file
+     * @throws IOException
+     */
+    static void saveResult(Step step, String cause, File file) throws IOException {
+        Properties result = new Properties();
+        result.setProperty("verdict", String.valueOf(step.getVerdict()));
+        result.setProperty("score", String.valueOf(step.getScore()));
+        result.setProperty("time", String.valueOf(step.getTime()));
+        if (step.getMessage() != null) result.setProperty("message", step.getMessage());
+        if (cause != null) result.setProperty("cause", cause);
+        store(result, file);
+    }
+
+    /**
+     * Serializes the description of the campaign for the workers: the steps
+     * and the settings of the parent process (output format, phases and
+     * properties of the tool) that a worker would not find by itself.
+     * 
+     * @param configuration the configuration of the parent process
+     * @param steps the steps
+     * @return the description in the format of a property file
+     * @throws Alert
+     */
+    static String saveJob(Configuration configuration, List<Step> steps) throws Alert {
+        Properties job = new Properties();
+        job.setProperty("xml", String.valueOf(configuration.xmlFormat()));
+        for (String kind : KINDS) {
+            MatosPhase[] phases = configuration.phases(kind);
+            if (phases == null) continue;
+            for (int p = 0; p < phases.length; p++) {
+                job.setProperty("phase." + kind + "." + p, phases[p].getClass().getName());
+            }
+        }
+        Properties tool = configuration.getToolProperties();
+        for (String key : tool.stringPropertyNames()) {
+            job.setProperty("config." + key, tool.getProperty(key));
+        }
+        job.setProperty("steps", String.valueOf(steps.size()));
+        for (int i = 0; i < steps.size(); i++) {
+            Step step = steps.get(i);
+            String prefix = "step." + i + ".";
+            if (step instanceof JavaStep) {
+                JavaStep javaStep = (JavaStep) step;
+                job.setProperty(prefix + "kind", "java");
+                set(job, prefix + "jad", javaStep.getJad());
+                for (int m = 0; m < javaStep.midletCount(); m++) {
+                    job.setProperty(prefix + "midlet." + m, javaStep.midletList.get(m));
+                }
+            } else if (step instanceof AndroidStep) {
+                job.setProperty(prefix + "kind", "android");
+            } else {
+                throw new Alert("Unknowned kind of step: " + step);
+            }
+            set(job, prefix + "code", step.getCode());
+            set(job, prefix + "out", step.getOutFileName());
+            set(job, prefix + "profile", step.getProfileName());
+            if (step.getCssUrl() != null) job.setProperty(prefix + "css", step.getCssUrl().toExternalForm());
+            DownloadParameters dp = step.getParameters();
+            set(job, prefix + "login", dp.getLogin());
+            set(job, prefix + "password", dp.getPassword());
+            set(job, prefix + "useragent", dp.getUserAgent());
+        }
+        StringWriter text = new StringWriter();
+        try {
+            job.store(text, null);
+        } catch (IOException e) {
+            throw Alert.raised(e, "Cannot write the campaign description");
+        }
+        return text.toString();
+    }
+
+    /**
+     * Reads the description written by {@link #saveJob(Configuration, List)}
+     * up to the {@link #END_OF_JOB} line.
+     * 
+     * @param in the standard input of the worker
+     * @return the description
+     * @throws IOException if the input ends before the description.
+     */
+    static Properties loadJob(BufferedReader in) throws IOException {
+        StringBuilder text = new StringBuilder();
+        String line;
+        while ((line = in.readLine()) != null && !line.equals(END_OF_JOB)) {
+            text.append(line).append('\n');
+        }
+        if (line == null) throw new IOException("Incomplete campaign description");
+        Properties job = new Properties();
+        job.load(new StringReader(text.toString()));
+        return job;
+    }
+
+    /**
+     * Rebuilds the phases of the parent process. A phase of the same class as
+     * a default one is taken from the defaults (they may share state), the
+     * others are created with their constructor without argument.
+     * 
+     * @param job the description of the campaign
+     * @param defaults the default phases
+     * @return the phases for each kind of step
+     * @throws Alert if a phase cannot be created.
+     */
+    static Map<String, MatosPhase[]> loadPhases(Properties job, Map<String, MatosPhase[]> defaults)
+            throws Alert {
+        for (String kind : KINDS) {
+            List<MatosPhase> phases = new ArrayList<MatosPhase>();
+            String name;
+            for (int p = 0; (name = job.getProperty("phase." + kind + "." + p)) != null; p++) {
+                phases.add(findPhase(name, defaults.get(kind)));
+            }
+            if (phases.isEmpty()) defaults.remove(kind);
+            else defaults.put(kind, phases.toArray(new MatosPhase[phases.size()]));
+        }
+        return defaults;
+    }
+
+    private static MatosPhase findPhase(String name, MatosPhase[] defaults) throws Alert {
+        if (defaults != null) {
+            for (MatosPhase phase : defaults) {
+                if (phase.getClass().getName().equals(name)) return phase;
+            }
+        }
+        try {
+            return (MatosPhase) Class.forName(name).newInstance();
+        } catch (Exception e) {
+            throw Alert.raised(e, "Cannot create the phase " + name + " in a campaign worker");
+        }
+    }
+
+    /**
+     * Gives back the properties of the tool of the parent process.
+     * 
+     * @param job the description of the campaign
+     * @return the properties of the tool
+     */
+    static Properties loadToolProperties(Properties job) {
+        Properties tool = new Properties();
+        String prefix = "config.";
+        for (String key : job.stringPropertyNames()) {
+            if (key.startsWith(prefix)) tool.setProperty(key.substring(prefix.length()), job.getProperty(key));
+        }
+        return tool;
+    }
+
+    /**
+     * Rebuilds the steps written by {@link #saveJob(Configuration, List)}.
+     * 
+     * @param job the description of the campaign
+     * @return the list of steps in campaign order
+     * @throws Alert
+     */
+    static List<Step> loadSteps(Properties job) throws Alert {
+        int count = Integer.parseInt(job.getProperty("steps", "0"));
+        List<Step> steps = new ArrayList<Step>(count);
+        for (int i = 0; i < count; i++) {
+            String prefix = "step." + i + ".";
+            Step step;
+            if ("java".equals(job.getProperty(prefix + "kind"))) {
+                JavaStep javaStep = new JavaStep();
+                javaStep.setJad(job.getProperty(prefix + "jad"));
+                String midlet;
+                for (int m = 0; (midlet = job.getProperty(prefix + "midlet." + m)) != null; m++) {
+                    javaStep.midletList.add(midlet);
+                }
+                step = javaStep;
+            } else {
+                step = new AndroidStep();
+            }
+            step.setCode(job.getProperty(prefix + "code"));
+            step.setOutFileName(job.getProperty(prefix + "out"));
+            step.setProfileName(job.getProperty(prefix + "profile"));
+            String css = job.getProperty(prefix + "css");
+            if (css != null) {
+                try {
+                    step.setCssUrl(new URL(css));
+                } catch (MalformedURLException e) {
+                    throw Alert.raised(e, "Bad CSS URL " + css);
+                }
+            }
+            DownloadParameters dp = step.getParameters();
+            dp.setLogin(job.getProperty(prefix + "login"));
+            dp.setPassword(job.getProperty(prefix + "password"));
+            dp.setUser_agent(job.getProperty(prefix + "useragent"));
+            steps.add(step);
+        }
+        return steps;
+    }
+
+    private static void set(Properties props, String key, String value) {
+        if (value != null) props.setProperty(key, value);
+    }
+
+    private static void store(Properties props, File file) throws IOException {
+        OutputStream os = new FileOutputStream(file);
+        try {
+            props.store(os, null);
+        } finally {
+            os.close();
+        }
+    }
+}
@@ -0,0 +1,143 @@
+package com.orange.matos;
+
+/*
+ * #%L
+ * Matos
+ * %%
+ * Copyright (C) 2004 - 2014 Orange SA
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+import com.orange.matos.android.AndroidStep;
+import com.orange.matos.core.Alert;
+import com.orange.matos.core.Configuration;
+import com.orange.matos.core.Out;
+import com.orange.matos.core.Step;
+import com.orange.matos.java.JavaStep;
+import com.orange.matos.utils.Downloader;
+
+/**
+ * Downloads the remote files of the next steps of a campaign while the
+ * current step is analysed. The files are put in the download cache and
+ * are found there when the step is analysed. Failures are only logged: the
+ * download is done again (and the error reported) during the analysis.
+ * The files of the step analysed are pinned in the cache so that the
+ * downloads of the next steps cannot evict them.
+ * 
+ * @author Pierre Cregut
+ */
+class CampaignPrefetcher {
+
+    private final Configuration configuration;
+
+    private final ExecutorService executor;
+
+    /**
+     * Instantiates a new prefetcher.
+     * 
+     * @param configuration the configuration
+     * @param threads the number of downloads done at the same time
+     */
+    CampaignPrefetcher(Configuration configuration, int threads) {
+        this.configuration = configuration;
+        this.executor = Executors.newFixedThreadPool(threads, new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread t = new Thread(r, "matos-prefetch");
+                t.setDaemon(true);
+                return t;
+            }
+        });
+    }
+
+    /**
+     * Schedules the download of the remote files of a step.
+     * 
+     * @param step the step
+     */
+    void prefetch(Step step) {
+        if (step instanceof AndroidStep) {
+            schedule(step, step.getCode(), "tmpAndroid", "apk");
+        } else if (step instanceof JavaStep) {
+            schedule(step, step.getCode(), "tmpjar", "jar");
+            schedule(step, ((JavaStep) step).getJad(), "tmpjad", "jad");
+        }
+    }
+
+    /**
+     * Protects the remote files of the step being analysed from eviction.
+     * Must be followed by {@link #release(Step)} when the step ends.
+     * 
+     * @param step the step
+     */
+    void pin(Step step) {
+        for (String location : remoteLocations(step)) {
+            Downloader.pin(configuration, location);
+        }
+    }
+
+    /**
+     * Releases the files pinned by {@link #pin(Step)}.
+     * 
+     * @param step the step
+     */
+    void release(Step step) {
+        for (String location : remoteLocations(step)) {
+            Downloader.release(configuration, location);
+        }
+    }
+
+    private static List<String> remoteLocations(Step step) {
+        List<String> result = new ArrayList<String>();
+        if (step instanceof AndroidStep || step instanceof JavaStep) {
+            addRemote(result, step.getCode());
+        }
+        if (step instanceof JavaStep) {
+            addRemote(result, ((JavaStep) step).getJad());
+        }
+        return result;
+    }
+
+    private static void addRemote(List<String> result, String uri) {
+        if (uri != null && uri.startsWith("http:")) result.add(uri);
+    }
+
+    private void schedule(final Step step, final String uri, final String base, final String ext) {
+        if (uri == null || !uri.startsWith("http:")) return;
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    Downloader.httpDownload(configuration, uri, base, ext, step.getParameters());
+                } catch (Alert a) {
+                    Out.getLog().println("Prefetch of " + uri + " failed: " + a.getMessage());
+                }
+            }
+        });
+    }
+
+    /**
+     * Stops the prefetcher. Downloads in progress are completed.
+     */
+    void shutdown() {
+        executor.shutdown();
+    }
+}
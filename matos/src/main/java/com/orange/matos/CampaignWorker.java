@@ -0,0 +1,98 @@
+package com.orange.matos;
+
+/*
+ * #%L
+ * Matos
+ * %%
+ * Copyright (C) 2004 - 2014 Orange SA
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintStream;
+import java.util.List;
+import java.util.Properties;
+
+import com.orange.matos.core.Alert;
+import com.orange.matos.core.Configuration;
+import com.orange.matos.core.Out;
+import com.orange.matos.core.Step;
+
+/**
+ * Entry point of the worker processes started by {@link CampaignPool}. A
+ * worker reads the campaign description on its standard input and sets up its
+ * phases and configuration as in the parent process, then analyses the steps
+ * whose index it receives on the same input. Each result is written in the
+ * temporary directory of the worker and acknowledged on the standard output.
+ * Everything else the analysis prints goes to the worker log.
+ * 
+ * Usage: CampaignWorker logFile
+ * 
+ * @author Pierre Cregut
+ */
+public class CampaignWorker {
+
+    /**
+     * The main entry point.
+     * 
+     * @param args the log file
+     */
+    public static void main(String[] args) {
+        PrintStream protocol = System.out;
+        if (args.length < 1) {
+            System.err.println("Usage: CampaignWorker logFile");
+            Configuration.exit(1);
+        }
+        try {
+            PrintStream log = CoreCLI.getPrintStream(args[0]);
+            Out.setLog(log);
+            Out.setMain(Out.getLog());
+            System.setOut(Out.getLog());
+
+            BufferedReader in = new BufferedReader(new InputStreamReader(System.in, "UTF-8"));
+            Properties job = CampaignPool.loadJob(in);
+            CoreCLI cli = new CoreCLI(CampaignPool.loadPhases(job, CoreCLI.defaultPhases()));
+            if (Boolean.parseBoolean(job.getProperty("xml"))) cli.getConfiguration().setXmlOutput();
+            // Also initializes the phases again, after the output format is set.
+            cli.setToolProperties(CampaignPool.loadToolProperties(job));
+            List<Step> steps = CampaignPool.loadSteps(job);
+            File dir = new File(System.getProperty(Configuration.MATOS_TEMP_KEY));
+
+            String line;
+            while ((line = in.readLine()) != null) {
+                line = line.trim();
+                if (line.length() == 0) continue;
+                int index = Integer.parseInt(line);
+                Step step = steps.get(index);
+                Out.getLog().println("=== Campaign step " + (index + 1) + " : " + step.getCode());
+                String cause = cli.analyseCampaignStep(step, step.getOutFileName());
+                CampaignPool.saveResult(step, cause, CampaignPool.resultFile(dir, index));
+                protocol.println(CampaignPool.PROTOCOL_MARKER + CampaignPool.DONE + " " + index);
+                protocol.flush();
+            }
+        } catch (Alert e) {
+            Out.getLog().println("Error in campaign worker: " + e.getMessage());
+            Configuration.exit(1);
+        } catch (IOException e) {
+            e.printStackTrace(Out.getLog());
+            Configuration.exit(1);
+        }
+        // Downloads may leave threads behind.
+        Configuration.exit(0);
+    }
+}
@@ -25,6 +25,7 @@ package com.orange.matos;
  */
 
 import java.awt.Desktop;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
@@ -37,6 +38,7 @@ import java.io.UnsupportedEncodingException;
 import java.net.URL;
 import java.text.DateFormat;
 import java.text.NumberFormat;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.GregorianCalendar;
 import java.util.HashMap;
@@ -57,13 +59,18 @@ import com.orange.matos.android.AndroidStep;
 import com.orange.matos.core.Alert;
 import com.orange.matos.core.CmdLine;
 import com.orange.matos.core.Configuration;
+import com.orange.matos.core.Digest;
 import com.orange.matos.core.MatosPhase;
 import com.orange.matos.core.Out;
+import com.orange.matos.core.ResultCache;
+import com.orange.matos.core.RuleFile;
 import com.orange.matos.core.Step;
 import com.orange.matos.java.JavaCoreCLI;
 import com.orange.matos.java.JavaStep;
 import com.orange.matos.utils.FileUtilities;
 import com.orange.matos.utils.HtmlOutput;
+import com.orange.matos.utils.PhaseProfiler;
+import com.orange.matos.utils.ReportSink;
 
 /**
  * The generic entry point to the command line version of the program
@@ -104,6 +111,21 @@ public class CoreCLI {
      */
     private Configuration configuration;
 
+    /**
+     * Default bound on the size of the result cache (in megabytes).
+     */
+    private static final int DEFAULT_RESULT_CACHE_SIZE = 500;
+
+    /**
+     * Number of worker processes used for campaigns.
+     */
+    private int parallel = 1;
+
+    /**
+     * Result cache used by all the steps of the run, created on first use.
+     */
+    private ResultCache resultCache = null;
+
     /**
      * Initialization phase before execute command lines.
      * 
@@ -166,6 +188,18 @@ public class CoreCLI {
         }        
     }
 
+    /**
+     * Replaces the properties of the tool by the ones of another process and
+     * updates the proxy and network settings accordingly.
+     * 
+     * @param properties the properties of the tool
+     */
+    void setToolProperties(Properties properties) {
+        configuration.setToolProperties(properties);
+        setupProxy();
+        configuration.setHttpTimeout();
+    }
+
     /**
      * Initialization with a default set of phases.
      * @throws Alert
@@ -182,7 +216,7 @@ public class CoreCLI {
         this(defaultPhases(), libDirSpec, tempSpec);
     }
     
-    private static Map<String, MatosPhase[]> defaultPhases() {
+    static Map<String, MatosPhase[]> defaultPhases() {
         Map<String, MatosPhase[]> phases = new HashMap<String, MatosPhase[]>();
 
         PackageSolver packageSolver = new PackageSolver();
@@ -277,6 +311,8 @@ public class CoreCLI {
      */
     public void executeStep(Step step) throws Alert {
         boolean xmlFormat = configuration.xmlFormat();
+        boolean timing = configuration.timingEnabled();
+        configuration.setProfiler(timing ? new PhaseProfiler() : null);
 
         // Init outstream if needed
         PrintStream outStream = getOutStream(step);
@@ -297,17 +333,20 @@ public class CoreCLI {
             outStream.println("</head>\n <body>\n");
         }
         try {
-            analyseStep(step, outStream);
+            analyseOrReplayStep(step, outStream);
         } catch (Alert a) {
             step.setMessage(a.getMessage());
             step.setVerdict(Step.SKIPPED);
             Out.getLog().println(a.getMessage());
         } finally {
+            PhaseProfiler.Phase closing = configuration.getProfiler().begin("report.close");
             if (xmlFormat)
                 outStream.println("</root>");
             else
                 outStream.println("</body>\n</html>");
             outStream.close();
+            closing.end();
+            if (timing) writeProfile(step.getOutFileName());
         }
         configuration.setInAnalysisMode(false);
 
@@ -327,7 +366,7 @@ public class CoreCLI {
         PrintStream outStream = null;
         String suffix = configuration.xmlFormat() ? ".xml" : ".html";
         if (step.hasOut()) {
-            outStream = getPrintStream(step.getOutFileName());
+            outStream = getReportStream(step.getOutFileName());
         } else {
             // verify if the "output.html" file exist
             File file = new File(OUTPUT_FILE + suffix);
@@ -345,7 +384,7 @@ public class CoreCLI {
                 }
             }
             fileName.append(suffix);
-            outStream = getPrintStream(fileName.toString());
+            outStream = getReportStream(fileName.toString());
             step.setOutFileName(file.getAbsolutePath());
             Out.getMain().println("  To view the report, open " + step.getOutFileName());
         }
@@ -392,6 +431,112 @@ public class CoreCLI {
         }
     }
 
+    /**
+     * Analyses a step or replays its result when the result cache is enabled
+     * (<code>matos.resultCache</code> property) and the same binary was
+     * already analysed with the same profile and analyser version.
+     * 
+     * @param step the step to analyse
+     * @param outStream the report
+     * @throws Alert
+     */
+    void analyseOrReplayStep(Step step, PrintStream outStream) throws Alert {
+        String cacheDir = configuration.string("matos.resultCache", "");
+        if (cacheDir == null || cacheDir.trim().length() == 0) {
+            analyseStep(step, outStream);
+            return;
+        }
+        if (resultCache == null) {
+            long cacheSize = DEFAULT_RESULT_CACHE_SIZE;
+            try {
+                cacheSize = configuration.integer("matos.resultCacheSize", DEFAULT_RESULT_CACHE_SIZE);
+            } catch (NumberFormatException e) {
+                Out.getLog().println("bad format for matos.resultCacheSize");
+            }
+            resultCache = new ResultCache(new File(configuration.substituteVars(cacheDir.trim())),
+                    cacheSize * 1024L * 1024L);
+        }
+        ResultCache cache = resultCache;
+        String key = resultKey(step);
+        if (key == null) {
+            analyseStep(step, outStream);
+            return;
+        }
+        long time = System.currentTimeMillis();
+        if (cache.replay(key, step, outStream)) {
+            step.setTime(System.currentTimeMillis() - time);
+            Out.getLog().println("Result of " + step.getCode() + " replayed from cache (" + key + ")");
+            return;
+        }
+        ByteArrayOutputStream copy = new ByteArrayOutputStream();
+        PrintStream recorder = ResultCache.record(outStream, copy);
+        try {
+            analyseStep(step, recorder);
+        } finally {
+            recorder.flush();
+        }
+        int verdict = step.getVerdict();
+        if (verdict == Step.PASSED || verdict == Step.FAILED) {
+            cache.store(key, step, copy.toByteArray());
+        }
+    }
+
+    /**
+     * Computes the key of a step in the result cache: the digests of the
+     * analysed files, the profile and the version of the analyser. Steps
+     * with remote files are not cached: their digest would require a download
+     * before knowing whether the analysis is needed.
+     * 
+     * @param step the step
+     * @return the key or null if the step cannot be cached.
+     */
+    private String resultKey(Step step) {
+        List<String> parts = new ArrayList<String>();
+        try {
+            if (step instanceof AndroidStep) {
+                AndroidStep androidStep = (AndroidStep) step;
+                if (!androidStep.hasAndroidFile() || isRemote(androidStep.getCode())) return null;
+                File apk = AndroidCoreCLI.initializeAndroidFile(configuration,
+                        androidStep.getCode(), androidStep.getParameters());
+                parts.add("android");
+                parts.add(apk == null ? null : step.digestOf(apk));
+            } else if (step instanceof JavaStep) {
+                // Only steps giving the JAR explicitly: otherwise it is found by the analysis.
+                JavaStep javaStep = (JavaStep) step;
+                if (!javaStep.hasJar() || isRemote(javaStep.getCode())) return null;
+                if (javaStep.hasJad() && isRemote(javaStep.getJad())) return null;
+                File jar = JavaCoreCLI.initializeJARFile(configuration, javaStep.getCode(), null,
+                        javaStep.getParameters());
+                parts.add("java");
+                parts.add(jar == null ? null : step.digestOf(jar));
+                if (javaStep.hasJad()) {
+                    File jad = JavaCoreCLI.initializeJADFile(configuration, javaStep.getJad(),
+                            javaStep.getParameters());
+                    parts.add(jad == null ? null : Digest.runSHA1(jad));
+                } else {
+                    parts.add("");
+                }
+                parts.add(javaStep.midletList.toString());
+            } else {
+                return null;
+            }
+            RuleFile rules = configuration.getProfileManager().getRuleFile(step.getProfileName());
+            parts.add(rules.name);
+            parts.add(rules.getProfileName());
+            parts.add(rules.getProfileVersion());
+        } catch (Alert e) {
+            // The analysis will report the problem.
+            return null;
+        }
+        parts.add(configuration.string("version"));
+        parts.add(configuration.xmlFormat() ? "xml" : "html");
+        return ResultCache.key(parts);
+    }
+
+    private static boolean isRemote(String uri) {
+        return uri.startsWith("http:");
+    }
+
     /**
      * Return a print stream to the file absolute path provided. Exit if the
      * given file can't be found.
@@ -413,6 +558,22 @@ public class CoreCLI {
         return out;
     }
 
+    /**
+     * Return a print stream for a report. The report is buffered and written
+     * in the background: it must be closed to be complete.
+     * 
+     * @param outFilePath The absolute path to a file to print to.
+     * @return A print stream to write to the file.
+     * @throws Alert if the file cannot be created.
+     */
+    public static PrintStream getReportStream(String outFilePath) throws Alert {
+        try {
+            return new ReportSink(new File(outFilePath));
+        } catch (FileNotFoundException e) {
+            throw Alert.raised(e, "Can't open output file: " + outFilePath);
+        }
+    }
+
     // -------------------------------------------------------------------------------
     /**
      * The main entry point.
@@ -424,6 +585,11 @@ public class CoreCLI {
         // Why an init again ?
         // initialize(phases);
 
+        if (argv.length > 0 && argv[0].trim().equals("-daemon")) {
+            MatosDaemon.run(this, argv);
+            return;
+        }
+
         // interpret command line
         CmdLine cmdLine = parse(configuration, argv);
 
@@ -490,6 +656,7 @@ public class CoreCLI {
      */
     public void executeCmdLineCampaign(CmdLine cmdLine, int mode) throws Alert {
         File destDir = initDestDir(cmdLine);
+        setParallel(cmdLine.getParallel());
         cmdLine.setOutFileName(null);
 
         File indexFile = new File(destDir, "index.html");
@@ -759,137 +926,311 @@ public class CoreCLI {
      * @param campaign the campaign to analyse
      * @param destDir the destination directory for reports
      * @param index output stream for index
-     * @param mon a monitor to inform about analysis status
      * @return global analysis success (true) or failure (false)
      * @throws Alert
      */
     private boolean analyseCampaign(Campaign campaign, File destDir,
 			PrintStream index) throws Alert {
-		boolean success = true;
+		boolean success = (parallel > 1 && campaign.size() > 1)
+			? analyseCampaignInParallel(campaign, destDir, index)
+			: analyseCampaignInSequence(campaign, destDir, index);
+		if (configuration.timingEnabled()) summarizePhases(campaign, destDir, index);
+		return success;
+	}
 
-		PrintStream report = null;
-		String outFilePath = null;
-		String stepName = null;
-		String itemName = null;
-		String profile = null;
-		String inputFiles = null;
+    /**
+     * Executes a campaign analysis step after step in this process.
+     * 
+     * @param campaign the campaign to analyse
+     * @param destDir the destination directory for reports
+     * @param index output stream for index
+     * @return global analysis success (true) or failure (false)
+     * @throws Alert
+     */
+	private boolean analyseCampaignInSequence(Campaign campaign, File destDir,
+			PrintStream index) throws Alert {
+		boolean success = true;
 		int counter = 1;
-		for (Step step : campaign) {
-			if (step instanceof JavaStep) {
-				JavaStep javaStep = (JavaStep) step;
-
-				// preparation of Java Analysis output
-				String jarName = "";
-				if (javaStep.getCode().startsWith("http")) {
-					jarName = javaStep.getCode()
-							.substring(javaStep.getCode().lastIndexOf("/") + 1);
-				} else {
-					jarName = javaStep.getCode()
-							.substring(javaStep.getCode()
-									.lastIndexOf(File.separator) + 1);
-				}
-				if (jarName.lastIndexOf(".") == -1) {
-					javaStep.setOutFileName(counter + "-" + jarName + ".html");
-				} else {
-					javaStep.setOutFileName(counter + "-"
-							+ jarName.substring(0, jarName.lastIndexOf("."))
-							+ ".html");
+		int ahead = configuration.integer("httpPrefetch", 2);
+		CampaignPrefetcher prefetcher = (ahead > 0) ? new CampaignPrefetcher(configuration, 1) : null;
+		try {
+			int prefetched = 1;
+			for (Step step : campaign) {
+				// Keep the downloads of the next steps running during the analysis.
+				while (prefetcher != null && prefetched < Math.min(counter + ahead, campaign.size())) {
+					prefetcher.prefetch(campaign.get(prefetched++));
 				}
-				// replace '?' by '-'
-				javaStep.setOutFileName(javaStep.getOutFileName().replaceAll("\\?",
-						"-"));
-				// '/' is not valid in path
-				if (javaStep.getOutFileName().indexOf(File.separator) != -1) {
-					javaStep.setOutFileName(counter + "-UNKNOWN.html");
+				CampaignRow row = prepareCampaignStep(step, counter, destDir);
+				if (prefetcher != null) prefetcher.pin(step);
+				String cause;
+				try {
+					cause = analyseCampaignStep(step, row.outFilePath);
+				} finally {
+					if (prefetcher != null) prefetcher.release(step);
 				}
+				if (cause != null) success = false;
+				index.println(row.format(step, cause));
+				counter++;
+			}
+		} finally {
+			if (prefetcher != null) prefetcher.shutdown();
+		}
+		return success;
+	}
+
+    /**
+     * Executes a campaign analysis with a pool of worker processes. Reports
+     * are written by the workers and the index is filled in campaign order
+     * once all the steps are done.
+     * 
+     * @param campaign the campaign to analyse
+     * @param destDir the destination directory for reports
+     * @param index output stream for index
+     * @return global analysis success (true) or failure (false)
+     * @throws Alert
+     */
+	private boolean analyseCampaignInParallel(Campaign campaign, File destDir,
+			PrintStream index) throws Alert {
+		List<CampaignRow> rows = new ArrayList<CampaignRow>();
+		int counter = 1;
+		for (Step step : campaign) {
+			CampaignRow row = prepareCampaignStep(step, counter, destDir);
+			step.setVerdict(Step.PROCESSING);
+			step.setOutFileName(row.outFilePath);
+			rows.add(row);
+			counter++;
+		}
+		Out.getMain().println("\n* Dispatching " + campaign.size() + " steps to " + parallel + " worker processes...");
+		CampaignPool pool = new CampaignPool(configuration, parallel, destDir);
+		String[] causes = pool.run(campaign);
+		boolean success = true;
+		for (int i = 0; i < rows.size(); i++) {
+			if (causes[i] != null) {
+				success = false;
+				Out.getMain().println("No analysis done on step " + (i + 1) + "... : " + causes[i]);
+			}
+			index.println(rows.get(i).format(campaign.get(i), causes[i]));
+		}
+		return success;
+	}
+
+	/**
+	 * Analyses one step of a campaign in its own report file. An alert stops
+	 * the analysis of the step and the step is marked as skipped.
+	 * 
+	 * @param step the step
+	 * @param outFilePath the absolute path of the report
+	 * @return null if the analysis was done, the cause of the problem otherwise.
+	 * @throws Alert if the report cannot be created.
+	 */
+	String analyseCampaignStep(Step step, String outFilePath) throws Alert {
+		boolean timing = configuration.timingEnabled();
+		configuration.setProfiler(timing ? new PhaseProfiler() : null);
+		PrintStream report = getReportStream(outFilePath);
+		printHeaders(report, step.getCssUrl());
+		String cause = null;
+		try {
+			step.setVerdict(Step.PROCESSING);
+			step.setOutFileName(outFilePath); // put the full path to the report
+			analyseOrReplayStep(step, report);
+		} catch (Alert e) {
+			e.printStackTrace(Out.getMain());
+			cause = e.getMessage();
+			step.setMessage(cause);
+			step.setVerdict(Step.SKIPPED);
+			Out.getMain().println("No analysis done... : " + cause);
+		} finally {
+			// post analysis output
+			PhaseProfiler.Phase closing = configuration.getProfiler().begin("report.close");
+			report.print("</body>\n</html>");
+			report.close();
+			closing.end();
+			if (timing) writeProfile(outFilePath);
+		}
+
+		configuration.setInAnalysisMode(false);
+		return cause;
+	}
+
+	/**
+	 * Writes the profile of the phases of the step next to its report.
+	 * 
+	 * @param reportPath the path of the report
+	 */
+	private void writeProfile(String reportPath) {
+		PhaseProfiler profile = configuration.getProfiler();
+		configuration.setProfiler(null);
+		profile.stop();
+		if (reportPath == null) return;
+		File file = PhaseProfiler.sidecarFile(reportPath);
+		try {
+			profile.write(file);
+		} catch (IOException e) {
+			Out.getLog().println("Cannot write the profile " + file + ": " + e.getMessage());
+		}
+	}
 
-				Out.getMain().println(
-						"\n* Processing step " + counter + " -> "
-								+ javaStep.getOutFileName() + "...");
-				outFilePath = destDir.getAbsolutePath() + File.separator
-						+ javaStep.getOutFileName();
-
-				// step
-				stepName = HtmlOutput.cell(String.valueOf(counter));
-				// name of the step
-				int indexOfExtension = javaStep.getOutFileName().lastIndexOf(".");
-				itemName = javaStep.getOutFileName().substring(0, indexOfExtension);
-				itemName = HtmlOutput.cell(HtmlOutput.link(itemName,
-						javaStep.getOutFileName()));
-				profile = HtmlOutput.cell(javaStep.getProfileName());
-
-				// input file(s)
-				Vector<String> vect = initializeJavaCell(javaStep);
-				String jadCell = (String) vect.get(0);
-				String jarCell = (String) vect.get(1);
-				inputFiles = HtmlOutput.cell(jadCell + HtmlOutput.br()
-						+ jarCell);
-				report = getPrintStream(outFilePath);
-				printHeaders(report, javaStep.getCssUrl());
-				
-
-				step = javaStep;
-			} else if (step instanceof AndroidStep) {
-				AndroidStep androidstep = (AndroidStep) step;
-
-				// preparation of Android Analysis output
-				String androidFileName = androidstep.getCode()
-						.substring(androidstep.getCode()
+	/**
+	 * Sums the profiles of the steps of a campaign. The summary is added
+	 * after the table of the steps in the index and written next to it.
+	 * 
+	 * @param campaign the campaign analysed
+	 * @param destDir the destination directory for reports
+	 * @param index output stream for index (the table of steps is open).
+	 */
+	private static void summarizePhases(Campaign campaign, File destDir, PrintStream index) {
+		PhaseProfiler.Summary summary = new PhaseProfiler.Summary();
+		for (Step step : campaign) {
+			if (step.getOutFileName() != null) summary.addReport(step.getOutFileName());
+		}
+		if (summary.isEmpty()) return;
+		index.println("</table>");
+		summary.printHtml(index);
+		// Reopened for the closing tag written by finishCampaignReport.
+		index.println("<table>");
+		File file = new File(destDir, "index" + PhaseProfiler.SIDECAR_SUFFIX);
+		try {
+			summary.write(file);
+		} catch (IOException e) {
+			Out.getLog().println("Cannot write the profile " + file + ": " + e.getMessage());
+		}
+	}
+
+	/**
+	 * Computes the name of the report of a campaign step and the cells
+	 * describing it in the campaign index.
+	 * 
+	 * @param step the step
+	 * @param counter the position of the step (starting at 1)
+	 * @param destDir the destination directory for reports
+	 * @return the description of the row
+	 * @throws Alert
+	 */
+	private CampaignRow prepareCampaignStep(Step step, int counter, File destDir) throws Alert {
+		CampaignRow row = new CampaignRow();
+		if (step instanceof JavaStep) {
+			JavaStep javaStep = (JavaStep) step;
+
+			// preparation of Java Analysis output
+			String jarName = "";
+			if (javaStep.getCode().startsWith("http")) {
+				jarName = javaStep.getCode()
+						.substring(javaStep.getCode().lastIndexOf("/") + 1);
+			} else {
+				jarName = javaStep.getCode()
+						.substring(javaStep.getCode()
 								.lastIndexOf(File.separator) + 1);
-				if (androidFileName.lastIndexOf(".") == -1) {
-					androidstep.setOutFileName(counter + "-" + androidFileName
-							+ ".html");
-				} else {
-					androidstep.setOutFileName(counter
-							+ "-"
-							+ androidFileName.substring(0,
-									androidFileName.lastIndexOf(".")) + ".html");
-				}
-				// replace '?' by '-'
-				androidstep.setOutFileName(androidstep.getOutFileName().replaceAll(
-						"\\?", "-"));
-				// '/' is not valid in path
-				if (androidstep.getOutFileName().indexOf(File.separator) != -1) {
-					androidstep.setOutFileName(counter + "-UNKNOWN.html");
-				}
+			}
+			if (jarName.lastIndexOf(".") == -1) {
+				javaStep.setOutFileName(counter + "-" + jarName + ".html");
+			} else {
+				javaStep.setOutFileName(counter + "-"
+						+ jarName.substring(0, jarName.lastIndexOf("."))
+						+ ".html");
+			}
+			// replace '?' by '-'
+			javaStep.setOutFileName(javaStep.getOutFileName().replaceAll("\\?",
+					"-"));
+			// '/' is not valid in path
+			if (javaStep.getOutFileName().indexOf(File.separator) != -1) {
+				javaStep.setOutFileName(counter + "-UNKNOWN.html");
+			}
 
-				Out.getMain().println(
-						"\n* Processing step " + counter + " -> "
-								+ androidstep.getOutFileName() + "...");
-				outFilePath = destDir.getAbsolutePath()
-						+ Configuration.fileSeparator + androidstep.getOutFileName();
-
-				// step
-				stepName = HtmlOutput.cell(String.valueOf(counter));
-				// name of the step
-				int indexOfExtension = androidstep.getOutFileName().lastIndexOf(".");
-				itemName = androidstep.getOutFileName().substring(0,
-						indexOfExtension);
-				itemName = HtmlOutput.cell(HtmlOutput.link(itemName,
-						androidstep.getOutFileName()));
-				// sec profile
-				profile = HtmlOutput.cell(androidstep.getProfileName());
-
-				// input file(s)
-				Vector<String> vect = initializeAndroidCell(androidstep);
-				String androidCell = (String) vect.get(0);
-				inputFiles = HtmlOutput.cell(androidCell);
-				report = getPrintStream(outFilePath);
-				printHeaders(report, androidstep.getCssUrl());
-				step = androidstep;
+			Out.getMain().println(
+					"\n* Processing step " + counter + " -> "
+							+ javaStep.getOutFileName() + "...");
+			row.outFilePath = destDir.getAbsolutePath() + File.separator
+					+ javaStep.getOutFileName();
+
+			// step
+			row.stepName = HtmlOutput.cell(String.valueOf(counter));
+			// name of the step
+			int indexOfExtension = javaStep.getOutFileName().lastIndexOf(".");
+			String itemName = javaStep.getOutFileName().substring(0, indexOfExtension);
+			row.itemName = HtmlOutput.cell(HtmlOutput.link(itemName,
+					javaStep.getOutFileName()));
+			row.profile = HtmlOutput.cell(javaStep.getProfileName());
+
+			// input file(s)
+			Vector<String> vect = initializeJavaCell(javaStep);
+			String jadCell = (String) vect.get(0);
+			String jarCell = (String) vect.get(1);
+			row.inputFiles = HtmlOutput.cell(jadCell + HtmlOutput.br()
+					+ jarCell);
+		} else if (step instanceof AndroidStep) {
+			AndroidStep androidstep = (AndroidStep) step;
+
+			// preparation of Android Analysis output
+			String androidFileName = androidstep.getCode()
+					.substring(androidstep.getCode()
+							.lastIndexOf(File.separator) + 1);
+			if (androidFileName.lastIndexOf(".") == -1) {
+				androidstep.setOutFileName(counter + "-" + androidFileName
+						+ ".html");
 			} else {
-				throw new Alert("Unknowned kind of step: " + step);
+				androidstep.setOutFileName(counter
+						+ "-"
+						+ androidFileName.substring(0,
+								androidFileName.lastIndexOf(".")) + ".html");
+			}
+			// replace '?' by '-'
+			androidstep.setOutFileName(androidstep.getOutFileName().replaceAll(
+					"\\?", "-"));
+			// '/' is not valid in path
+			if (androidstep.getOutFileName().indexOf(File.separator) != -1) {
+				androidstep.setOutFileName(counter + "-UNKNOWN.html");
 			}
 
-			String anaVerdict = "";
-			String reportURL = "";
-			// Notify processing.
-			try {
-				step.setVerdict(Step.PROCESSING);
-				reportURL = step.getOutFileName();
-				step.setOutFileName(outFilePath); // put the full path to the
-												// report
-				analyseStep(step, report);
+			Out.getMain().println(
+					"\n* Processing step " + counter + " -> "
+							+ androidstep.getOutFileName() + "...");
+			row.outFilePath = destDir.getAbsolutePath()
+					+ Configuration.fileSeparator + androidstep.getOutFileName();
+
+			// step
+			row.stepName = HtmlOutput.cell(String.valueOf(counter));
+			// name of the step
+			int indexOfExtension = androidstep.getOutFileName().lastIndexOf(".");
+			String itemName = androidstep.getOutFileName().substring(0,
+					indexOfExtension);
+			row.itemName = HtmlOutput.cell(HtmlOutput.link(itemName,
+					androidstep.getOutFileName()));
+			// sec profile
+			row.profile = HtmlOutput.cell(androidstep.getProfileName());
+
+			// input file(s)
+			Vector<String> vect = initializeAndroidCell(androidstep);
+			String androidCell = (String) vect.get(0);
+			row.inputFiles = HtmlOutput.cell(androidCell);
+		} else {
+			throw new Alert("Unknowned kind of step: " + step);
+		}
+		row.reportURL = step.getOutFileName();
+		return row;
+	}
+
+	/**
+	 * The cells describing a step in the campaign index.
+	 */
+	private static class CampaignRow {
+		String stepName;
+		String itemName;
+		String profile;
+		String inputFiles;
+		/** Link to the report relative to the index */
+		String reportURL;
+		/** Absolute path of the report */
+		String outFilePath;
+
+		/**
+		 * Builds the row of the index once the step is analysed.
+		 * @param step the analysed step
+		 * @param cause null or the reason why the step was skipped
+		 * @return the HTML row
+		 */
+		String format(Step step, String cause) {
+			String anaVerdict;
+			if (cause == null) {
 				String verdict = Step.stringOfVerdict(step.getVerdict());
 				String color;
 				switch (step.getVerdict()) {
@@ -902,47 +1243,18 @@ public class CoreCLI {
 				default:
 					color = "black";
 				}
-				// anaStatus =
-				// HtmlOutput.cell(HtmlOutput.bold(HtmlOutput.color("black","Done")));
 				anaVerdict = HtmlOutput.bold(HtmlOutput.color(color, verdict));
 				anaVerdict = HtmlOutput.cell(HtmlOutput.link(anaVerdict,
 						reportURL));
-				index.println(HtmlOutput.row(stepName + itemName + profile
-						+ inputFiles + /* anaStatus */anaVerdict));
-				// step.message = "";
-			} catch (Alert e) {
-				e.printStackTrace(Out.getMain());
-				String cause = e.getMessage();
-				// anaStatus =
-				// HtmlOutput.cell(HtmlOutput.bold(HtmlOutput.color("red","Skipped"))+HtmlOutput.br()+cause);
-				// anaVerdict =
-				// HtmlOutput.cell(HtmlOutput.bold(HtmlOutput.color("orange","Skipped"))+HtmlOutput.br()+cause);
+			} else {
 				anaVerdict = HtmlOutput.bold(HtmlOutput.color("orange",
 						"Skipped"));
 				anaVerdict = HtmlOutput.cell(HtmlOutput.link(anaVerdict,
 						reportURL) + HtmlOutput.br() + cause);
-
-				step.setMessage(cause);
-				step.setVerdict(Step.SKIPPED);
-				success = false;
-				index.println(HtmlOutput.row(stepName + itemName + profile
-						+ inputFiles + /* anaStatus */anaVerdict));
-				Out.getMain()
-						.println("No analysis done... : " + e.getMessage());
 			}
-
-			// 3. post analysis output
-			report.print("</body>\n</html>");
-			report.close();
-
-			configuration.setInAnalysisMode(false);
-
-			// 4. update monitor
-			counter++;
-		} // end of while
-
-
-		return success;
+			return HtmlOutput.row(stepName + itemName + profile
+					+ inputFiles + anaVerdict);
+		}
 	}
     
     private void printCss(PrintStream outStream, URL cssUrl) {
@@ -1220,6 +1532,26 @@ public class CoreCLI {
         }
     }
 
+    /**
+     * Sets the number of worker processes used to analyse campaigns. Each
+     * worker is a separate JVM as Soot cannot run two analyses in the same
+     * process.
+     *
+     * @param parallel the number of workers (1 for a sequential campaign)
+     */
+    public void setParallel(int parallel) {
+        this.parallel = parallel;
+    }
+
+    /**
+     * Gets the configuration of the tool.
+     *
+     * @return the configuration
+     */
+    Configuration getConfiguration() {
+        return configuration;
+    }
+
     /**
      * Gets the Android profiles.
      *
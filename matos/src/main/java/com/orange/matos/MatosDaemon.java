@@ -0,0 +1,233 @@
+package com.orange.matos;
+
+/*
+ * #%L
+ * Matos
+ * %%
+ * Copyright (C) 2004 - 2014 Orange SA
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.List;
+
+import com.orange.matos.core.Alert;
+import com.orange.matos.core.CmdLine;
+import com.orange.matos.core.Out;
+import com.orange.matos.core.Step;
+
+/**
+ * A persistent analysis JVM. Instead of paying the start-up of the JVM,
+ * of the configuration and of the parsing of profiles for each application, the
+ * daemon keeps them between requests. The Soot scene is not kept: each analysis
+ * starts with a global reset of Soot, so the library classes are loaded and
+ * resolved again for every request. A request is a single line containing the
+ * arguments of a single step command line (eg. <code>-apk app.apk -o app.html
+ * -d Android</code>). Requests are read on the standard input or on a socket
+ * bound to the loopback interface and are handled one at a time as Soot cannot
+ * run two analyses in the same process. Each request gets a single line answer:
+ * <ul>
+ * <li><code>@@matos done &lt;verdict&gt; &lt;score&gt; &lt;time&gt; &lt;report&gt;</code></li>
+ * <li><code>@@matos error &lt;message&gt;</code></li>
+ * </ul>
+ * 
+ * @author Pierre Cregut
+ */
+public class MatosDaemon {
+
+    /** Answer for a completed analysis. */
+    static final String DONE = CampaignPool.PROTOCOL_MARKER + CampaignPool.DONE;
+
+    /** Answer for a request that could not be handled. */
+    static final String ERROR = CampaignPool.PROTOCOL_MARKER + "error";
+
+    /** Request asking the daemon to stop. */
+    static final String QUIT = "quit";
+
+    private final CoreCLI cli;
+
+    private boolean stopped = false;
+
+    /**
+     * Creates a daemon on top of an initialized command line interface.
+     * 
+     * @param cli the interface holding the configuration.
+     */
+    public MatosDaemon(CoreCLI cli) {
+        this.cli = cli;
+    }
+
+    /**
+     * Handles the requests of a single client until it closes the stream or
+     * asks the daemon to quit.
+     * 
+     * @param in the stream of requests
+     * @param out the stream of answers
+     * @throws IOException
+     */
+    public void serve(BufferedReader in, PrintStream out) throws IOException {
+        String line;
+        while (!stopped && (line = in.readLine()) != null) {
+            line = line.trim();
+            if (line.length() == 0) continue;
+            if (line.equals(QUIT)) {
+                stopped = true;
+                break;
+            }
+            out.println(handle(line));
+            out.flush();
+        }
+    }
+
+    /**
+     * Accepts clients on a local port until one of them asks the daemon to
+     * quit.
+     * 
+     * @param port the port on the loopback interface
+     * @throws IOException
+     */
+    public void listen(int port) throws IOException {
+        ServerSocket server = new ServerSocket(port, 50, InetAddress.getByName(null));
+        try {
+            Out.getMain().println("Matos daemon listening on port " + server.getLocalPort());
+            while (!stopped) {
+                Socket client = server.accept();
+                try {
+                    BufferedReader in = new BufferedReader(new InputStreamReader(
+                            client.getInputStream(), "UTF-8"));
+                    PrintStream out = new PrintStream(client.getOutputStream(), true, "UTF-8");
+                    serve(in, out);
+                } catch (IOException e) {
+                    e.printStackTrace(Out.getLog());
+                } finally {
+                    client.close();
+                }
+            }
+        } finally {
+            server.close();
+        }
+    }
+
+    /**
+     * Executes a single request.
+     * 
+     * @param request the arguments of the step on a single line
+     * @return the answer line
+     */
+    String handle(String request) {
+        try {
+            CmdLine cmdLine = CoreCLI.parse(cli.getConfiguration(), tokenize(request));
+            if (cmdLine == null || cmdLine.isHelp()) return ERROR + " no analysis requested";
+            if (!cmdLine.hasStep()) return ERROR + " only single analysis steps are accepted";
+            Step step = cmdLine.getStep();
+            cli.executeStep(step);
+            return DONE + " " + Step.stringOfVerdict(step.getVerdict()) + " " + step.getScore()
+                    + " " + step.getTime() + " " + step.getOutFileName();
+        } catch (Alert e) {
+            return ERROR + " " + e.getMessage();
+        } catch (RuntimeException e) {
+            e.printStackTrace(Out.getLog());
+            return ERROR + " " + e;
+        }
+    }
+
+    /**
+     * Splits a request in arguments. Double quotes protect spaces. A backslash
+     * followed by a double quote or a backslash stands for that character;
+     * other backslashes are kept as is (Windows paths).
+     * 
+     * @param line the request
+     * @return the arguments
+     */
+    static String[] tokenize(String line) {
+        List<String> args = new ArrayList<String>();
+        StringBuilder current = new StringBuilder();
+        boolean quoted = false;
+        boolean pending = false;
+        for (int i = 0; i < line.length(); i++) {
+            char c = line.charAt(i);
+            if (c == '\\' && i + 1 < line.length()
+                    && (line.charAt(i + 1) == '"' || line.charAt(i + 1) == '\\')) {
+                current.append(line.charAt(++i));
+                pending = true;
+            } else if (c == '"') {
+                quoted = !quoted;
+                pending = true;
+            } else if (Character.isWhitespace(c) && !quoted) {
+                if (pending) {
+                    args.add(current.toString());
+                    current.setLength(0);
+                    pending = false;
+                }
+            } else {
+                current.append(c);
+                pending = true;
+            }
+        }
+        if (pending) args.add(current.toString());
+        return args.toArray(new String[args.size()]);
+    }
+
+    /**
+     * Entry point used by {@link CoreCLI} for the <code>-daemon</code> option.
+     * The arguments following <code>-daemon</code> are an optional port
+     * (<code>-port n</code>) and log file (<code>-log file</code>). Without a
+     * port, requests are read on the standard input.
+     * 
+     * @param cli the command line interface
+     * @param argv the command line
+     * @throws Alert
+     */
+    static void run(CoreCLI cli, String[] argv) throws Alert {
+        int port = -1;
+        try {
+            for (int i = 0; i < argv.length; i++) {
+                String arg = argv[i].trim();
+                if (arg.equals("-port")) {
+                    port = Integer.parseInt(argv[++i].trim());
+                } else if (arg.equals("-log")) {
+                    Out.setLog(CoreCLI.getPrintStream(argv[++i].trim()));
+                } else if (!arg.equals("-daemon")) {
+                    throw Alert.raised(null, "Unrecognized daemon option : " + arg);
+                }
+            }
+        } catch (ArrayIndexOutOfBoundsException e) {
+            throw Alert.raised(e, "Argument are missing...");
+        } catch (NumberFormatException e) {
+            throw Alert.raised(e, "Bad port number");
+        }
+        MatosDaemon daemon = new MatosDaemon(cli);
+        try {
+            if (port < 0) {
+                // Answers are the only thing written on the standard output.
+                PrintStream answers = System.out;
+                Out.setMain(Out.getLog());
+                System.setOut(Out.getLog());
+                daemon.serve(new BufferedReader(new InputStreamReader(System.in, "UTF-8")), answers);
+            } else {
+                daemon.listen(port);
+            }
+        } catch (IOException e) {
+            throw Alert.raised(e, "Daemon stopped on I/O error");
+        }
+    }
+}
@@ -20,6 +20,7 @@ package com.orange.matos.android;
  * #L%
  */
 
+import java.io.File;
 import java.io.IOException;
 import java.io.PrintStream;
 import java.util.ArrayList;
@@ -27,6 +28,7 @@ import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
 
+import soot.G;
 import soot.RefType;
 import soot.SootFieldRef;
 import soot.SootMethodRef;
@@ -46,6 +48,7 @@ import com.orange.d2j.manifest.Service;
 import com.orange.matos.core.AppDescription;
 import com.orange.matos.core.XMLStream;
 import com.orange.matos.utils.HtmlOutput;
+import com.orange.matos.utils.MappedZip;
 
 /**
  * @author Pierre Cregut
@@ -57,6 +60,9 @@ public class APKDescr extends AppDescription {
 	final private Hierarchy hierarchy;
 	// This is a hack. Keeps results between phases.
 	final APKFile apkFile;
+	// Soot instance that holds the classes of the last translation of the code.
+	private G codeOwner;
+	private MappedZip archive;
 	
 	/**
 	 * Constructor
@@ -167,12 +173,32 @@ public class APKDescr extends AppDescription {
 	public Set<String> getBroadcastReceivers () { return manifest.getReceivers(); }
 	
 	/**
-	 * Get the representation of the code.
+	 * Get the representation of the code. The dex file is translated again
+	 * only if Soot has been reset since the last translation. The dex is read
+	 * by d2j from the APK file itself: APKFile has no entry point taking the
+	 * bytes of classes.dex, so it does not go through {@link #getArchive()}.
 	 * @return
 	 */
 	public DexFile getCode() { 
-		try { apkFile.resetCode(); return apkFile.code(); } 
-		catch (IOException e) { return null; }
+		try {
+			if (codeOwner != G.v()) {
+				apkFile.resetCode();
+				codeOwner = G.v();
+			}
+			return apkFile.code();
+		} catch (IOException e) { codeOwner = null; return null; }
+	}
+
+	/**
+	 * View on the content of the APK shared by the Matos phases and the custom
+	 * manifest rules (the dex translation excepted, see {@link #getCode()}).
+	 * The central directory is decoded on first use.
+	 * @return
+	 * @throws IOException
+	 */
+	public synchronized MappedZip getArchive() throws IOException {
+		if (archive == null) archive = MappedZip.open(new File(apkFile.getName()));
+		return archive;
 	}
 	
 	/**
@@ -30,6 +30,7 @@ import java.util.Collection;
 import java.util.GregorianCalendar;
 import java.util.Locale;
 
+import com.orange.analysis.anasoot.main.AndroidPhase;
 import com.orange.d2j.APKFile;
 import com.orange.matos.core.Alert;
 import com.orange.matos.core.Configuration;
@@ -51,6 +52,7 @@ public class AndroidBase {
     private String message = "";
     private int score = -1;
     private long elapsedTime = -1;
+    private String digest = null;
 	
 	/**
 	 * Constructor
@@ -79,7 +81,9 @@ public class AndroidBase {
 
 		configuration.printHeader(outStream,xmlFormat,"Android file analyzed", (androidFileUrl==null ? androidFile : androidFileUrl));
 
-		try {
+		if (digest != null) {
+			configuration.printHeader(outStream,xmlFormat,"SHA1 of Android file analyzed", digest);
+		} else try {
 			fis = new FileInputStream(androidFile);
 			configuration.printHeader(outStream,xmlFormat,"SHA1 of Android file analyzed", Digest.runSHA1(fis));
 			fis.close();
@@ -98,6 +102,14 @@ public class AndroidBase {
 		outStream.flush();
 	}
 
+	/**
+	 * Gives the SHA1 of the file analysed when it is already known.
+	 * @param digest the SHA1 or null to compute it.
+	 */
+	public void setDigest(String digest) {
+		this.digest = digest;
+	}
+
 	/**
 	 * @param androidFile
 	 * @param androidFileUrl
@@ -173,6 +185,10 @@ public class AndroidBase {
 			outStream.println("");
 		} catch (IOException e) {
 			throw Alert.raised(e, "Cannot parse APK");
+		} finally {
+			for(MatosPhase phase : androidPhases) {
+				if (phase instanceof AndroidPhase) ((AndroidPhase) phase).endApplication();
+			}
 		}
 		configuration.setInAnalysisMode(false);
 		if (timingEnabled) {
@@ -50,12 +50,13 @@ public class AndroidCoreCLI {
 		} else {
 			androidFile = initializeAndroidFile(configuration, step.getCode(), step.getParameters());
 
-			RuleFile rules = new RuleFile(step.getProfileName(), configuration.getProfileManager());
+			RuleFile rules = configuration.getProfileManager().getRuleFile(step.getProfileName());
 
 			if (androidFile == null){ throw Alert.raised(null,"Did not find an android file."); }
 			else if (!androidFile.exists()) { throw Alert.raised(null,"The Android file specified can't be found: "+androidFile.getAbsolutePath()); }
 			else {
 				AndroidBase androidBase = new AndroidBase(configuration);
+				androidBase.setDigest(step.digestOf(androidFile));
 				// launch android analysis
 				boolean success = androidBase.runAndroidAnalysis(androidFile, step.getCode(), rules, outStream);
 	            step.setScore(androidBase.getScore());
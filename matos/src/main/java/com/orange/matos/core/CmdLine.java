@@ -59,6 +59,9 @@ public class CmdLine implements Cloneable {
     /** Definition of temp dir. */
     private String temporaryDir = null;
 
+    /** Number of worker processes for a campaign. */
+    private int parallel = 1;
+
     /* (non-Javadoc)
      * @see java.lang.Object#clone()
      */
@@ -96,6 +99,10 @@ public class CmdLine implements Cloneable {
                 + "\n";
         help += "  -tmp <directory>  Use <directory> as a temporary directory." + "\n";
         help += "  -log <file>       Set <file> as log file." + "\n";
+        help += "  -parallel <n>     Run the steps of a campaign (-c or -all) in <n> worker processes."
+                + "\n";
+        help += "  -daemon [-port <n>] Keep the JVM running and read single analysis command lines on the standard input (or on local port <n>)."
+                + "\n";
         help += "  -h                Display this help.\n";
 
         return help;
@@ -113,7 +120,8 @@ public class CmdLine implements Cloneable {
                 + step.getClass().getName() + "] " + /* step.toString() */"..." + "\n"
                 + " profileName: " + profileName + "\n" + " outFileName: " + outFileName + "\n"
                 + " cssFileName: " + cssFileName + "\n" + " logFileName: " + logFileName + "\n"
-                + " isHelp: " + isHelp + "\n" + " temporaryDir: " + temporaryDir;
+                + " isHelp: " + isHelp + "\n" + " temporaryDir: " + temporaryDir + "\n"
+                + " parallel: " + parallel;
     }
 
     /**
@@ -239,7 +247,16 @@ public class CmdLine implements Cloneable {
                     cmdLine.temporaryDir = argv[++i].trim();
                 else if (arg.equals("-log"))
                     cmdLine.logFileName = argv[++i].trim();
-                else if (arg.equals("-all")) {
+                else if (arg.equals("-parallel")) {
+                    String count = argv[++i].trim();
+                    try {
+                        cmdLine.parallel = Integer.parseInt(count);
+                    } catch (NumberFormatException e) {
+                        throw Alert.raised(e, "Bad number of worker processes : " + count);
+                    }
+                    if (cmdLine.parallel < 1)
+                        throw Alert.raised(null, "Bad number of worker processes : " + count);
+                } else if (arg.equals("-all")) {
                     // campaign on all elements of a directory
                     cmdLine.campaignDirName = argv[++i].trim();
                 } else if (arg.length() > 0 && arg.charAt(0) == '-') {
@@ -371,4 +388,13 @@ public class CmdLine implements Cloneable {
     public String getTemporaryDir() {
         return temporaryDir;
     }
+
+    /**
+     * Gets the number of worker processes requested for a campaign.
+     *
+     * @return the number of workers (1 means sequential execution)
+     */
+    public int getParallel() {
+        return parallel;
+    }
 }
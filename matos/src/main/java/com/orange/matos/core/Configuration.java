@@ -39,6 +39,7 @@ import java.util.Properties;
 
 import com.orange.matos.utils.FileUtilities;
 import com.orange.matos.utils.HtmlOutput;
+import com.orange.matos.utils.PhaseProfiler;
 
 /**
  * This class contains the generic part of the context of MATOS during the
@@ -166,6 +167,11 @@ public class Configuration {
      */
     private boolean inAnalysisMode = false;
 
+    /**
+     * Profiler of the step analysed
+     */
+    private PhaseProfiler profiler = PhaseProfiler.DISABLED;
+
     private Map<String, ArrayList<Object>> appInfo;
 
     /**
@@ -200,7 +206,16 @@ public class Configuration {
         configFile = (new File(libDir, CONFIG_FILE_NAME)).getAbsolutePath();
         // dtdDir = new File(libDir,"dtd").getAbsolutePath();
         reset();
+        initFromProperties();
+
+        System.setErr(Out.getLog()); // redirect err to log
+    }
 
+    /**
+     * Computes the values derived from the properties of the tool and
+     * initializes the phases with them.
+     */
+    private void initFromProperties() {
         File ruleDirFile = new File(libDir, string("anasoot.rules"));
         profileManager = new ProfileManager(ruleDirFile);
         timing = bool(TIMING_ENABLED_KEY);
@@ -215,8 +230,6 @@ public class Configuration {
             for (MatosPhase p : pArray)
                 p.init(this);
         }
-
-        System.setErr(Out.getLog()); // redirect err to log
     }
 
     /**
@@ -408,6 +421,29 @@ public class Configuration {
         transientProp.setProperty(key, value);
     }
 
+    /**
+     * Gives back a copy of the properties of the tool, including the changes
+     * not saved in the config.prp file.
+     * 
+     * @return the properties
+     */
+    public Properties getToolProperties() {
+        return (Properties) prop.clone();
+    }
+
+    /**
+     * Replaces the properties of the tool (without saving them) and
+     * initializes the phases again. Campaign workers use it to run with the
+     * settings of the process that started them.
+     * 
+     * @param properties the new properties
+     */
+    public void setToolProperties(Properties properties) {
+        prop = new SortedProperties();
+        prop.putAll(properties);
+        initFromProperties();
+    }
+
     /**
      * Reset the tool properties to the one defined in the initial configuration
      * file
@@ -871,4 +907,22 @@ public class Configuration {
         this.inAnalysisMode = inAnalysisMode;
     }
 
+    /**
+     * Profiler of the phases of the step analysed.
+     * 
+     * @return the profiler, disabled if the timing is not enabled.
+     */
+    public PhaseProfiler getProfiler() {
+        return profiler;
+    }
+
+    /**
+     * Sets the profiler of the step analysed.
+     * 
+     * @param profiler the profiler or null to disable profiling.
+     */
+    public void setProfiler(PhaseProfiler profiler) {
+        this.profiler = (profiler == null) ? PhaseProfiler.DISABLED : profiler;
+    }
+
 }
@@ -23,6 +23,7 @@ import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.IOException;
+import java.io.InputStream;
 import java.security.MessageDigest;
 import java.util.HashMap;
 
@@ -109,11 +110,29 @@ public class Digest {
 	}
 	
 	/**
-	 * Compute the md5 of a file from a FileInputStream 
-	 * @param fis a FileInputStream  
-	 * @return md5 as a String
+	 * Compute the sha1 of a file
+	 * @param file the file
+	 * @return sha1 as a String or null if the file cannot be read
+	 */
+	public static String runSHA1(File file) {
+		try {
+			FileInputStream fis = new FileInputStream(file);
+			try {
+				return runSHA1(fis);
+			} finally {
+				fis.close();
+			}
+		} catch (IOException e) {
+			return null;
+		}
+	}
+
+	/**
+	 * Compute the sha1 of the contents of a stream
+	 * @param fis an InputStream  
+	 * @return sha1 as a String
 	 */
-	public static String runSHA1(FileInputStream fis) {
+	public static String runSHA1(InputStream fis) {
 		try {
 			MessageDigest sha1 = MessageDigest.getInstance("SHA-1");
 			byte buffer[] = new byte[SIZE];
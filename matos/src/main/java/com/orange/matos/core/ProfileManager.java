@@ -28,7 +28,9 @@ import java.net.URL;
 import java.net.URLClassLoader;
 import java.util.ArrayList;
 import java.util.Enumeration;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 import java.util.zip.ZipEntry;
@@ -47,6 +49,12 @@ public class ProfileManager {
     
     private URLClassLoader classLoader;
 
+    /** Parsed rule files indexed by profile name. */
+    final private Map<String, RuleFile> ruleFiles = new HashMap<String, RuleFile>();
+
+    /** Stamp of the profile jars when the parsed rule files were cached. */
+    private long ruleFilesStamp;
+
     /**
      * Instantiates a new profile manager.
      *
@@ -124,4 +132,38 @@ public class ProfileManager {
         return getCustomClassLoader().findResource("rules/" + rule + ".xml");
     }
 
+    /**
+     * Gets the parsed rule file of a profile. Parsed profiles are kept for the
+     * life of the manager so that a process running several analyses (campaign,
+     * daemon, web engine) parses each of them once. The cache is dropped if a
+     * jar of the definition folder is modified. The rule file is shared by the
+     * analyses: they only read it and build their own reports and rules from
+     * the immutable compiled forms it holds.
+     *
+     * @param rule the name of the profile
+     * @return the parsed rule file
+     * @throws Alert if the profile cannot be parsed
+     */
+    public synchronized RuleFile getRuleFile(String rule) throws Alert {
+        long stamp = jarsStamp();
+        if (stamp != ruleFilesStamp) {
+            ruleFiles.clear();
+            ruleFilesStamp = stamp;
+        }
+        RuleFile result = ruleFiles.get(rule);
+        if (result == null) {
+            result = new RuleFile(rule, this);
+            ruleFiles.put(rule, result);
+        }
+        return result;
+    }
+
+    private long jarsStamp() {
+        long stamp = 1;
+        if (jars != null) {
+            for (File jar : jars) stamp = 31 * stamp + jar.lastModified();
+        }
+        return stamp;
+    }
+
 }
@@ -0,0 +1,277 @@
+package com.orange.matos.core;
+
+/*
+ * #%L
+ * Matos
+ * %%
+ * Copyright (C) 2004 - 2014 Orange SA
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileFilter;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.io.UnsupportedEncodingException;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Properties;
+
+/**
+ * Persistent cache of analysis results. Results are indexed by a key built
+ * from the digest of the analysed files, the profile and the version of the
+ * analyser, so that a binary already analysed with the same profile is not
+ * analysed again. For each key, the cache stores the text printed by the
+ * analysis in the report and the verdict, score and message of the step.
+ * Entries are written in a temporary file and renamed so that several
+ * processes can share the same cache directory. The total size of the
+ * entries is bounded: when it is exceeded, the least recently used entries
+ * are deleted.
+ * 
+ * @author Pierre Cregut
+ */
+public class ResultCache {
+
+    private static final String REPORT_SUFFIX = ".report";
+    private static final String RESULT_SUFFIX = ".properties";
+    private static final int SIZE = 16384;
+
+    private final File dir;
+
+    private final long maxBytes;
+
+    /**
+     * Creates a cache stored in the given directory.
+     * 
+     * @param dir the directory (created if needed)
+     * @param maxBytes bound on the total size of the entries kept.
+     */
+    public ResultCache(File dir, long maxBytes) {
+        this.dir = dir;
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * Builds the key of an analysis.
+     * 
+     * @param parts the elements identifying the analysis (digests of the
+     *        files, profile name and version, analyser version, options).
+     * @return the key or null if one of the elements is unknown.
+     */
+    public static String key(List<String> parts) {
+        StringBuilder buf = new StringBuilder();
+        for (String part : parts) {
+            if (part == null) return null;
+            buf.append(part.length()).append(':').append(part).append('\n');
+        }
+        try {
+            return Digest.runSHA1(new ByteArrayInputStream(buf.toString().getBytes("UTF-8")));
+        } catch (UnsupportedEncodingException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Replays a result stored in the cache.
+     * 
+     * @param key the key of the analysis
+     * @param step the step updated with the stored verdict, score and message
+     * @param out the stream receiving the stored report
+     * @return true if the result was in the cache.
+     */
+    public boolean replay(String key, Step step, PrintStream out) {
+        File resultFile = new File(dir, key + RESULT_SUFFIX);
+        File reportFile = new File(dir, key + REPORT_SUFFIX);
+        if (!resultFile.exists() || !reportFile.exists()) return false;
+        Properties result = new Properties();
+        try {
+            InputStream is = new FileInputStream(resultFile);
+            try {
+                result.load(is);
+            } finally {
+                is.close();
+            }
+            int verdict = Integer.parseInt(result.getProperty("verdict"));
+            int score = Integer.parseInt(result.getProperty("score"));
+            is = new FileInputStream(reportFile);
+            try {
+                copy(is, out);
+            } finally {
+                is.close();
+            }
+            step.setVerdict(verdict);
+            step.setScore(score);
+            step.setMessage(result.getProperty("message", ""));
+            // The date of the result file gives the last use of the entry.
+            resultFile.setLastModified(System.currentTimeMillis());
+            return true;
+        } catch (IOException e) {
+            Out.getLog().println("Cannot read cached result " + key + " : " + e.getMessage());
+        } catch (NumberFormatException e) {
+            Out.getLog().println("Corrupted cached result " + key);
+        }
+        return false;
+    }
+
+    /**
+     * Stores the result of an analysis. Failures are logged but do not stop
+     * the analysis.
+     * 
+     * @param key the key of the analysis
+     * @param step the analysed step
+     * @param report the text printed in the report by the analysis
+     */
+    public void store(String key, Step step, byte[] report) {
+        if (!dir.isDirectory() && !dir.mkdirs()) {
+            Out.getLog().println("Cannot create the result cache " + dir);
+            return;
+        }
+        Properties result = new Properties();
+        result.setProperty("verdict", Integer.toString(step.getVerdict()));
+        result.setProperty("score", Integer.toString(step.getScore()));
+        if (step.getMessage() != null) result.setProperty("message", step.getMessage());
+        try {
+            // The report is stored first: an entry is valid once its result file exists.
+            File tmp = File.createTempFile(key, REPORT_SUFFIX, dir);
+            OutputStream os = new FileOutputStream(tmp);
+            try {
+                os.write(report);
+            } finally {
+                os.close();
+            }
+            rename(tmp, new File(dir, key + REPORT_SUFFIX));
+            tmp = File.createTempFile(key, RESULT_SUFFIX, dir);
+            os = new FileOutputStream(tmp);
+            try {
+                result.store(os, "Matos result cache");
+            } finally {
+                os.close();
+            }
+            rename(tmp, new File(dir, key + RESULT_SUFFIX));
+        } catch (IOException e) {
+            Out.getLog().println("Cannot store result " + key + " in cache : " + e.getMessage());
+        }
+        evict(key);
+    }
+
+    /**
+     * Deletes the least recently used entries until the size of the cache is
+     * below the bound. The result file of an entry is deleted first so that
+     * another process never replays an entry without its report.
+     * 
+     * @param keep the key of the entry that must not be evicted
+     */
+    private void evict(String keep) {
+        File[] results = dir.listFiles(new FileFilter() {
+            @Override
+            public boolean accept(File f) {
+                return f.getName().endsWith(RESULT_SUFFIX);
+            }
+        });
+        if (results == null) return;
+        final long[] dates = new long[results.length];
+        long total = 0;
+        for (int i = 0; i < results.length; i++) {
+            dates[i] = results[i].lastModified();
+            total += results[i].length() + reportOf(results[i]).length();
+        }
+        if (total <= maxBytes) return;
+        Integer[] order = new Integer[results.length];
+        for (int i = 0; i < order.length; i++) order[i] = i;
+        Arrays.sort(order, new Comparator<Integer>() {
+            @Override
+            public int compare(Integer a, Integer b) {
+                return dates[a] < dates[b] ? -1 : (dates[a] == dates[b] ? 0 : 1);
+            }
+        });
+        String kept = keep + RESULT_SUFFIX;
+        for (int i = 0; i < order.length && total > maxBytes; i++) {
+            File result = results[order[i]];
+            if (result.getName().equals(kept)) continue;
+            File report = reportOf(result);
+            long length = result.length() + report.length();
+            if (!result.delete() || (report.exists() && !report.delete())) {
+                Out.getLog().println("Cannot remove cached result " + result);
+                continue;
+            }
+            total -= length;
+        }
+    }
+
+    private File reportOf(File result) {
+        String name = result.getName();
+        return new File(dir, name.substring(0, name.length() - RESULT_SUFFIX.length()) + REPORT_SUFFIX);
+    }
+
+    /**
+     * Builds a stream printing to a report while keeping a copy of what is
+     * printed, so that it can be stored in the cache.
+     * 
+     * @param out the report
+     * @param copy the buffer receiving the copy
+     * @return a stream writing to both
+     */
+    public static PrintStream record(final PrintStream out, final ByteArrayOutputStream copy) {
+        OutputStream tee = new OutputStream() {
+            @Override
+            public void write(int b) {
+                out.write(b);
+                copy.write(b);
+            }
+
+            @Override
+            public void write(byte[] b, int off, int len) {
+                out.write(b, off, len);
+                copy.write(b, off, len);
+            }
+
+            @Override
+            public void flush() {
+                out.flush();
+            }
+        };
+        try {
+            return new PrintStream(tee, false, "UTF-8");
+        } catch (UnsupportedEncodingException e) {
+            throw new RuntimeException("UTF-8 not supported", e);
+        }
+    }
+
+    private static void rename(File from, File to) throws IOException {
+        if (!from.renameTo(to)) {
+            // Windows does not replace an existing file.
+            if (!to.delete() || !from.renameTo(to)) {
+                if (!from.delete()) from.deleteOnExit();
+                throw new IOException("Cannot rename " + from + " to " + to);
+            }
+        }
+    }
+
+    private static void copy(InputStream is, OutputStream os) throws IOException {
+        byte buffer[] = new byte[SIZE];
+        int l;
+        while ((l = is.read(buffer)) != -1) {
+            os.write(buffer, 0, l);
+        }
+        os.flush();
+    }
+}
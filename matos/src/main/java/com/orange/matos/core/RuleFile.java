@@ -25,6 +25,8 @@ package com.orange.matos.core;
 
 import java.net.URL;
 import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.Map;
 import java.util.Properties;
 
 import org.w3c.dom.Element;
@@ -45,6 +47,13 @@ public class RuleFile {
 	public String name;
 	Properties properties;
 	private XMLParser parser;
+	/**
+	 * Compiled forms of the profile built by the phases, indexed by a key
+	 * chosen by the phase. They are kept as long as the rule file and shared
+	 * by all the analyses using it, so they must not be modified once built:
+	 * the state of an analysis is never kept here.
+	 */
+	private final Map<String, Object> compiled = new HashMap<String, Object>();
 	
 	/**
 	 * Creates an XML representation for the rule file and
@@ -103,4 +112,22 @@ public class RuleFile {
 		return parser;
 	}
 
+	/**
+	 * Gets a compiled form of the profile.
+	 * @param key the key chosen by the phase that built it
+	 * @return null if not compiled yet
+	 */
+	public synchronized Object getCompiled(String key) {
+		return compiled.get(key);
+	}
+
+	/**
+	 * Keeps a compiled form of the profile for the next analyses.
+	 * @param key the key chosen by the phase that built it
+	 * @param value the compiled form
+	 */
+	public synchronized void putCompiled(String key, Object value) {
+		compiled.put(key, value);
+	}
+
 }
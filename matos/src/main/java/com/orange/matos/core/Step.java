@@ -23,6 +23,7 @@ package com.orange.matos.core;
  * #L%
  */
 
+import java.io.File;
 import java.net.URL;
 
 
@@ -102,6 +103,10 @@ public abstract class Step implements Cloneable {
 
 	/** The parameters. */
 	private final DownloadParameters parameters = new DownloadParameters();
+
+	/** File whose SHA1 was computed and its SHA1. */
+	private File digestFile = null;
+	private String digest = null;
 		
 	/* (non-Javadoc)
 	 * @see java.lang.Object#toString()
@@ -331,6 +336,21 @@ public abstract class Step implements Cloneable {
         this.code = androidFileName;
     }
 
+    /**
+     * SHA1 of a file analysed by the step. It is computed once and shared by
+     * the key of the result cache and the header of the report.
+     * 
+     * @param file the file analysed
+     * @return the SHA1 or null if the file cannot be read.
+     */
+    public synchronized String digestOf(File file) {
+        if (digest == null || !file.equals(digestFile)) {
+            digest = Digest.runSHA1(file);
+            digestFile = file;
+        }
+        return digest;
+    }
+
 
     /**
      * Gets the score.
@@ -20,10 +20,9 @@ package com.orange.matos.java;
  * #L%
  */
 
-import java.io.File;
+import java.io.ByteArrayInputStream;
 import java.io.FileInputStream;
 import java.io.IOException;
-import java.io.InputStream;
 import java.io.PrintStream;
 import java.text.DateFormat;
 import java.util.Arrays;
@@ -36,9 +35,7 @@ import java.util.Set;
 import java.util.jar.Attributes;
 import java.util.jar.Attributes.Name;
 import java.util.jar.Manifest;
-import java.util.zip.ZipEntry;
 import java.util.zip.ZipException;
-import java.util.zip.ZipFile;
 
 import soot.util.StringTools;
 
@@ -61,6 +58,7 @@ public class JavaBase {
 	final Configuration configuration;
     private int score = -1;
     private long elapsedTime = -1;
+    private String digest = null;
 
 	/**
 	 * Constructor
@@ -70,73 +68,67 @@ public class JavaBase {
 		this.configuration = configuration;
 	}
 
+	/**
+	 * Gives the SHA1 of the JAR analysed when it is already known.
+	 * @param digest the SHA1 or null to compute it.
+	 */
+	public void setDigest(String digest) {
+		this.digest = digest;
+	}
+
 	/** 
 	 * Utility function that loads the properties defined in the manifest of
 	 * a midletsuite in another set of properties that usually contains the
 	 * properties defined in the JAD file. If the JAR is signed priority
 	 * is given to the JAR manifest otherwise priority is to the JAD
-	 * @param jarFile the hook to the JAR file
+	 * @param ms the midlet suite giving access to the JAR file
 	 * @param jadProperties the properties defined in the JAD if available
 	 * @return the augmented set of properties 
 	 */	
-	static public Properties loadManifest(File jarFile, Properties jadProperties)
+	static public Properties loadManifest(MidletSuite ms, Properties jadProperties)
 			throws Alert {
 		Properties jarProperties = new ExtendedProperties("Manifest");
 
 		try {
-			ZipFile zf = new ZipFile(jarFile);
-
-			ZipEntry manifest = zf.getEntry("META-INF/MANIFEST.MF");
-			try {
-				if (manifest == null) {
-					zf.close();
-					return jadProperties;
+			byte [] manifest = ms.getManifest();
+			if (manifest == null) return jadProperties;
+			/*
+			 * Old version (Problem with property that exceeds 70
+			 * characters): jarProperties.load(is); is.close();
+			 */
+			Manifest mf = new Manifest(new ByteArrayInputStream(manifest));
+			Map<String, Attributes> map = mf.getEntries();
+			Attributes mainAttributes = mf.getMainAttributes();
+			Set<Object> mainSetAttributes = mainAttributes.keySet();
+			for (Object raw : mainSetAttributes) {
+				Name attributeName = (Name) raw;
+				String attributeValue = mainAttributes
+						.getValue(attributeName);
+				jarProperties.put(attributeName.toString(),
+						attributeValue);
+			}
+			Set<String> set = map.keySet();
+			for (String propertyName : set) {
+				Attributes attributes = (Attributes) map
+						.get(propertyName);
+				Set<Object> setAttributes = attributes.keySet();
+				for (Object raw : setAttributes) {
+					Name attributeName = (Name) raw;
+					String attributeValue = attributes
+							.getValue(attributeName);
+					jarProperties.put(attributeName.toString(),
+							attributeValue);
 				}
-				InputStream is = zf.getInputStream(manifest);
-				try {
-					/*
-					 * Old version (Problem with property that exceeds 70
-					 * characters): jarProperties.load(is); is.close();
-					 */
-					Manifest mf = new Manifest(is);
-					Map<String, Attributes> map = mf.getEntries();
-					Attributes mainAttributes = mf.getMainAttributes();
-					Set<Object> mainSetAttributes = mainAttributes.keySet();
-					for (Object raw : mainSetAttributes) {
-						Name attributeName = (Name) raw;
-						String attributeValue = mainAttributes
-								.getValue(attributeName);
-						jarProperties.put(attributeName.toString(),
-								attributeValue);
-					}
-					Set<String> set = map.keySet();
-					for (String propertyName : set) {
-						Attributes attributes = (Attributes) map
-								.get(propertyName);
-						Set<Object> setAttributes = attributes.keySet();
-						for (Object raw : setAttributes) {
-							Name attributeName = (Name) raw;
-							String attributeValue = attributes
-									.getValue(attributeName);
-							jarProperties.put(attributeName.toString(),
-									attributeValue);
-						}
-					}
+			}
 
-					// Priority of Jar over Jad if the midlet is signed.
-					// No consistency checking : let to header checking phase.
-					if (jadProperties.containsKey("MIDlet-Jar-RSA-SHA1")) {
-						jadProperties.putAll(jarProperties);
-						return jadProperties;
-					} else {
-						jarProperties.putAll(jadProperties);
-						return jarProperties;
-					}
-				} finally {
-					is.close();
-				}
-			} finally {
-				zf.close();
+			// Priority of Jar over Jad if the midlet is signed.
+			// No consistency checking : let to header checking phase.
+			if (jadProperties.containsKey("MIDlet-Jar-RSA-SHA1")) {
+				jadProperties.putAll(jarProperties);
+				return jadProperties;
+			} else {
+				jarProperties.putAll(jadProperties);
+				return jarProperties;
 			}
 		} catch (ZipException ze) {
 			Out.getLog().println(ze.getMessage());
@@ -186,7 +178,10 @@ public class JavaBase {
 					(ms.jarURL == null ? ms.jarFile.getAbsolutePath()
 							: ms.jarURL));
 		
-		try {
+		if (digest != null) {
+			configuration.printHeader(outStream, xmlFormat,
+						"SHA1 of JAR file analyzed", digest);
+		} else try {
 			FileInputStream fis = new FileInputStream(ms.jarFile);
 			try {
 				configuration.printHeader(outStream, xmlFormat,
@@ -57,7 +57,6 @@ public class JavaCoreCLI {
 	 */
 	public static void analyseJavaStep(Configuration configuration, JavaStep step, PrintStream outStream) throws Alert {	
 		MidletSuite ms = new MidletSuite();
-		Properties midletProperties = null; // jar manifest
 
 		// if JAR is not provided, look for it into the JAD. Exit if
 		// JAD is not provided either...
@@ -74,58 +73,71 @@ public class JavaCoreCLI {
 			initializeWithJad(configuration, step,ms);
 		}
 		
-		RuleFile rules = new RuleFile(step.getProfileName(), configuration.getProfileManager());
+		RuleFile rules = configuration.getProfileManager().getRuleFile(step.getProfileName());
 
 		if (ms.jarFile==null) { 
 			throw Alert.raised(null,"Can't get any JAR file to analyse!"); 
 		} else if (!ms.jarFile.exists()) { throw Alert.raised(null,"The JAR file specified can't be found: "+ms.jarFile.getAbsolutePath()); }
 		else {
-			JavaBase javaBase = new JavaBase(configuration);
 			try {
-				// Load JAR MANIFEST
-				midletProperties = JavaBase.loadManifest(ms.jarFile,ms.properties);
-			} catch (Alert a ) {
-				// print java header
-				javaBase.printJavaHeader(rules,ms, outStream);
-				// print error message in report
-				outStream.println(HtmlOutput.bold(HtmlOutput.color("red","Skipped"))+" : "+a.getMessage());
-				// and go away by re-throwing the Alert
-				throw a;
+				analyseSuite(configuration, step, ms, rules, outStream);
+			} finally {
+				ms.releaseArchive();
 			}
-			// If no midlet specified in command line, find all of them
-			// in the JAD or in the manifest (if none is defined, it will not guess them).
-			if (step.midletCount() == 0) {
-				String def;
-				for(int i=1; (def = midletProperties.getProperty("MIDlet-"+i)) != null; i++) {
-					try {
+		}
+	} 
 
-						List <String> l = Configuration.parseCommaList(def);
-						step.midletList.add(l.get(2)); 
-					} catch (Exception e) {
-						// print java header
-						javaBase.printJavaHeader(rules,ms, outStream);
-						// print error message in report
-						String message = "MIDlet-"+ i + " attribute is not well-formed";
-						outStream.println(HtmlOutput.bold(HtmlOutput.color("red","Skipped"))+" : "+message);
-						// and go away by throwing the Alert
-						throw Alert.raised(e, message);
-					}
-				}
-			}
+	/**
+	 * Analyses a suite whose JAR is available.
+	 */
+	private static void analyseSuite(Configuration configuration, JavaStep step, MidletSuite ms, RuleFile rules, PrintStream outStream) throws Alert {
+		Properties midletProperties = null; // jar manifest
+		JavaBase javaBase = new JavaBase(configuration);
+		javaBase.setDigest(step.digestOf(ms.jarFile));
+		try {
+			// Load JAR MANIFEST
+			midletProperties = JavaBase.loadManifest(ms,ms.properties);
+		} catch (Alert a ) {
+			// print java header
+			javaBase.printJavaHeader(rules,ms, outStream);
+			// print error message in report
+			outStream.println(HtmlOutput.bold(HtmlOutput.color("red","Skipped"))+" : "+a.getMessage());
+			// and go away by re-throwing the Alert
+			throw a;
+		}
+		// If no midlet specified in command line, find all of them
+		// in the JAD or in the manifest (if none is defined, it will not guess them).
+		if (step.midletCount() == 0) {
+			String def;
+			for(int i=1; (def = midletProperties.getProperty("MIDlet-"+i)) != null; i++) {
+				try {
 
-			// launch analysis
-			Object midletNames [] = step.midletList.toArray();
-			boolean success = javaBase.runJavaAnalysis(
-						midletNames,ms, rules, outStream);
-			step.setScore(javaBase.getScore());
-			step.setTime(javaBase.getTime());
-			if ((step.getCode()==null)||(step.getCode().equals(""))) {
-				step.setCode(ms.jarFile.getAbsolutePath()); 
+					List <String> l = Configuration.parseCommaList(def);
+					step.midletList.add(l.get(2)); 
+				} catch (Exception e) {
+					// print java header
+					javaBase.printJavaHeader(rules,ms, outStream);
+					// print error message in report
+					String message = "MIDlet-"+ i + " attribute is not well-formed";
+					outStream.println(HtmlOutput.bold(HtmlOutput.color("red","Skipped"))+" : "+message);
+					// and go away by throwing the Alert
+					throw Alert.raised(e, message);
+				}
 			}
-			
-			step.setVerdict(success ? Step.PASSED : Step.FAILED);
+		}
 
+		// launch analysis
+		Object midletNames [] = step.midletList.toArray();
+		boolean success = javaBase.runJavaAnalysis(
+					midletNames,ms, rules, outStream);
+		step.setScore(javaBase.getScore());
+		step.setTime(javaBase.getTime());
+		if ((step.getCode()==null)||(step.getCode().equals(""))) {
+			step.setCode(ms.jarFile.getAbsolutePath()); 
 		}
+		
+		step.setVerdict(success ? Step.PASSED : Step.FAILED);
+
 	} 
 
 	private static void initializeWithJad(Configuration configuration, JavaStep step, MidletSuite ms) throws Alert {
@@ -21,9 +21,11 @@ package com.orange.matos.java;
  */
 
 import java.io.File;
+import java.io.IOException;
 import java.util.Properties;
 
 import com.orange.matos.core.AppDescription;
+import com.orange.matos.utils.MappedZip;
 
 /**
  * @author Pierre Cregut
@@ -50,4 +52,47 @@ public class MidletSuite extends AppDescription {
 	 * Properties defined in the JAD.
 	 */
 	public Properties properties = new Properties();
+
+	/**
+	 * Path of the manifest in the JAR.
+	 */
+	public static final String MANIFEST = "META-INF/MANIFEST.MF";
+
+	private MappedZip archive;
+	private byte [] manifest;
+
+	/**
+	 * View on the content of the JAR shared by all the phases. The central
+	 * directory is decoded on first use.
+	 * @return
+	 * @throws IOException if the JAR cannot be read or is not an archive.
+	 */
+	public synchronized MappedZip getArchive() throws IOException {
+		if (archive == null) archive = MappedZip.open(jarFile);
+		return archive;
+	}
+
+	/**
+	 * Content of the manifest of the JAR, read once.
+	 * @return null if the JAR has no manifest.
+	 * @throws IOException
+	 */
+	public synchronized byte [] getManifest() throws IOException {
+		if (manifest == null) {
+			MappedZip jar = getArchive();
+			MappedZip.Entry entry = jar.getEntry(MANIFEST);
+			if (entry == null) return null;
+			manifest = jar.read(entry);
+		}
+		return manifest;
+	}
+
+	/**
+	 * Drops the view on the JAR at the end of the analysis of the suite. The
+	 * file is unmapped when the view is collected; the manifest already read
+	 * is kept.
+	 */
+	public synchronized void releaseArchive() {
+		archive = null;
+	}
 }
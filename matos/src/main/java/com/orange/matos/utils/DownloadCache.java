@@ -0,0 +1,178 @@
+package com.orange.matos.utils;
+
+/*
+ * #%L
+ * Matos
+ * %%
+ * Copyright (C) 2004 - 2014 Orange SA
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import java.io.File;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+
+import com.orange.matos.core.Alert;
+import com.orange.matos.core.Out;
+
+/**
+ * Cache of the files downloaded during an execution of Matos, indexed by
+ * their URL. The total size of the files kept is bounded: when it is
+ * exceeded, the least recently used files are deleted. A file requested
+ * while it is being downloaded by another thread (prefetch) is not
+ * downloaded twice: the second thread waits for the first download.
+ * Files in use (the ones of the step being analysed) can be pinned: they
+ * are never evicted until they are released.
+ */
+public class DownloadCache {
+
+    private final long maxBytes;
+
+    private final LinkedHashMap<String, FutureTask<File>> entries = 
+        new LinkedHashMap<String, FutureTask<File>>(16, 0.75f, true);
+
+    /** Number of users of each pinned location. */
+    private final Map<String, Integer> pins = new HashMap<String, Integer>();
+
+    /**
+     * Creates a cache.
+     * 
+     * @param maxBytes bound on the total size of the files kept.
+     */
+    public DownloadCache(long maxBytes) {
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * Gives back the file downloaded from a location, fetching it if
+     * necessary.
+     * 
+     * @param location the URL of the file
+     * @param fetch the download of the file, used if the file is not
+     *            available.
+     * @return the local file
+     * @throws Alert if the download fails
+     */
+    public File get(String location, Callable<File> fetch) throws Alert {
+        FutureTask<File> task;
+        boolean owner = false;
+        synchronized (this) {
+            task = entries.get(location);
+            if (task != null && task.isDone()) {
+                File f = result(task);
+                if (f == null || !f.exists()) {
+                    entries.remove(location);
+                    task = null;
+                }
+            }
+            if (task == null) {
+                task = new FutureTask<File>(fetch);
+                entries.put(location, task);
+                owner = true;
+            }
+        }
+        if (owner) task.run();
+        try {
+            File f = task.get();
+            if (owner) evict(location);
+            return f;
+        } catch (ExecutionException e) {
+            synchronized (this) {
+                if (entries.get(location) == task) entries.remove(location);
+            }
+            Throwable cause = e.getCause();
+            if (cause instanceof Alert) throw (Alert) cause;
+            throw Alert.raised((cause instanceof Exception) ? (Exception) cause : e,
+                    "Download of " + location + " failed");
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw Alert.raised(e, "Download of " + location + " interrupted");
+        }
+    }
+
+    /**
+     * Protects the file of a location from eviction until it is released.
+     * Pins are counted: the file can be evicted again once every pin has been
+     * released. A location may be pinned before it is downloaded.
+     * 
+     * @param location the URL of the file
+     */
+    public synchronized void pin(String location) {
+        Integer count = pins.get(location);
+        pins.put(location, (count == null) ? 1 : count + 1);
+    }
+
+    /**
+     * Releases a pin taken with {@link #pin(String)}.
+     * 
+     * @param location the URL of the file
+     */
+    public synchronized void release(String location) {
+        Integer count = pins.get(location);
+        if (count == null) return;
+        if (count > 1) pins.put(location, count - 1);
+        else pins.remove(location);
+    }
+
+    /**
+     * Deletes the least recently used files until the size of the cache is
+     * below the bound. Files still downloading, pinned files and the file
+     * just obtained are kept.
+     * 
+     * @param keep the location that must not be evicted
+     */
+    private synchronized void evict(String keep) {
+        long total = 0;
+        for (FutureTask<File> task : entries.values()) {
+            File f = result(task);
+            if (f != null) total += f.length();
+        }
+        Iterator<Map.Entry<String, FutureTask<File>>> it = entries.entrySet().iterator();
+        while (total > maxBytes && it.hasNext()) {
+            Map.Entry<String, FutureTask<File>> entry = it.next();
+            if (entry.getKey().equals(keep) || pins.containsKey(entry.getKey())) continue;
+            File f = result(entry.getValue());
+            if (f == null) continue;
+            total -= f.length();
+            it.remove();
+            if (f.exists() && !f.delete()) {
+                Out.getLog().println("Cannot remove the downloaded file " + f);
+            }
+        }
+    }
+
+    /**
+     * The file of a completed download.
+     * 
+     * @param task the download
+     * @return the file or null if the download is not finished or failed.
+     */
+    private static File result(FutureTask<File> task) {
+        if (!task.isDone()) return null;
+        try {
+            return task.get();
+        } catch (ExecutionException e) {
+            return null;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return null;
+        }
+    }
+}
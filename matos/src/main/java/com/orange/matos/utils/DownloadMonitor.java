@@ -61,14 +61,17 @@ public class DownloadMonitor  {
 	 *
 	 * @return the download status
 	 */
-	public int getDownloadStatus() { return status; };
+	public synchronized int getDownloadStatus() { return status; };
 	
 	/**
 	 * Sets the download status.
 	 *
 	 * @param status the new download status
 	 */
-	public void setDownloadStatus(int status) { this.status = status; }
+	public synchronized void setDownloadStatus(int status) { 
+		this.status = status; 
+		notifyAll();
+	}
 	
 	/**
 	 * Reset the session status to DLOAD_ONGOING.
@@ -80,10 +83,14 @@ public class DownloadMonitor  {
 	/** 
 	 * Allows to wait for the end (successful of or not) of the
 	 * download session. The method returns only when the session is
-	 * over (Active wait). 
+	 * over. 
 	 */ 
-	public void waitForEnd() { 
-		while (getDownloadStatus() == DLOAD_ONGOING) {}
+	public synchronized void waitForEnd() { 
+		boolean interrupted = false;
+		while (status == DLOAD_ONGOING) {
+			try { wait(); } catch (InterruptedException e) { interrupted = true; }
+		}
+		if (interrupted) Thread.currentThread().interrupt();
 	};
 	
 	
@@ -24,19 +24,21 @@ package com.orange.matos.utils;
  * #L%
  */
 
-import java.io.BufferedInputStream;
 import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.PrintStream;
 import java.net.Authenticator;
 import java.net.HttpURLConnection;
 import java.net.MalformedURLException;
 import java.net.PasswordAuthentication;
 import java.net.URL;
-import java.util.HashMap;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.util.concurrent.Callable;
 
 import com.orange.matos.core.Alert;
 import com.orange.matos.core.Configuration;
@@ -80,7 +82,7 @@ public class Downloader extends Thread implements TimerMonitor {
     private String user_agent;
 
     /** stop condition for this thread */
-    private boolean shouldStop = false;
+    private volatile boolean shouldStop = false;
 
     /**
      * Error message
@@ -88,10 +90,19 @@ public class Downloader extends Thread implements TimerMonitor {
     private String errorMessage;
 
     /**
-     * Map used to prevent downloading several time the same file (same URI)
+     * Cache used to prevent downloading several time the same file (same URI)
      * during an execution of matos
      */
-    public static HashMap<String, File> dowloadedFiles = new HashMap<String, File>();
+    private static DownloadCache cache;
+
+    /** Default bound on the size of the download cache (in megabytes). */
+    private static final int DEFAULT_CACHE_SIZE = 200;
+
+    /** Size of the buffer used to copy the body of answers. */
+    private static final int BUFFER_SIZE = 65536;
+
+    /** HTTP code of an answer to a request for a range outside the file. */
+    private static final int HTTP_RANGE_NOT_SATISFIABLE = 416;
 
     /**
      * Construct a Downloader to download the file located at the given URL, and
@@ -172,7 +183,9 @@ public class Downloader extends Thread implements TimerMonitor {
     }
 
     /**
-     * Main entry point of the thread, when started.
+     * Main entry point of the thread, when started. If the target already
+     * contains the beginning of the file (previous attempt), only the rest
+     * of the file is requested.
      */
     @Override
     public void run() {
@@ -186,70 +199,62 @@ public class Downloader extends Thread implements TimerMonitor {
                 System.err.println("target null");
                 return;
             }
-            PrintStream outstream = new PrintStream(new FileOutputStream(target),false, "UTF-8");
-            try {
-                URL urlObj = new URL(url);
-
-                if ((user_agent != null) && (user_agent.trim().length() > 0)) {
-                    if (user_agent.indexOf('\n') > 0) {
-                        Out.getLog()
-                                .println(
-                                        "INVALID user_agent: '"
-                                                + user_agent
-                                                + "' : contains a newline character --> No user agent used");
-                    } else {
-
-                        System.getProperties().put("http.agent", user_agent);
-                    }
+            URL urlObj = new URL(url);
+            HttpURLConnection huc = (HttpURLConnection) urlObj.openConnection();
+            huc.setConnectTimeout(httpMaxConTime);
+            huc.setReadTimeout(httpMaxDwnTime);
+
+            if ((user_agent != null) && (user_agent.trim().length() > 0)) {
+                if (user_agent.indexOf('\n') > 0) {
+                    Out.getLog()
+                            .println(
+                                    "INVALID user_agent: '"
+                                            + user_agent
+                                            + "' : contains a newline character --> No user agent used");
+                } else {
+                    huc.setRequestProperty("User-Agent", user_agent);
                 }
+            }
+            long offset = target.length();
+            if (offset > 0) {
+                huc.setRequestProperty("Range", "bytes=" + offset + "-");
+            }
 
-                HttpURLConnection huc = (HttpURLConnection) urlObj.openConnection();
-                connectionTimer.start();
-                huc.connect();
-                InputStream in = null;
-                if (!shouldStop) { // no timeout occurs during connection
-                    connectionTimer.stopAsap();
-                    int code = huc.getResponseCode();
-                    if (code != 200) {
-                        // huc.disconnect();
-                        if (code == 404 || code == 401 || code == 502) {
-                            terminate("Connection failed. Server returned HTTP code " + code + ".",
-                                    DownloadMonitor.DLOAD_FAILED_NO_NEW_ATTEMPT);
-                        } else {
-                            terminate("Connection failed. Server returned HTTP code " + code + ".",
-                                    DownloadMonitor.DLOAD_FAILED);
-                        }
+            connectionTimer.start();
+            huc.connect();
+            InputStream in = null;
+            boolean append = false;
+            if (!shouldStop) { // no timeout occurs during connection
+                connectionTimer.stopAsap();
+                int code = huc.getResponseCode();
+                if (code == HttpURLConnection.HTTP_OK) {
+                    in = huc.getInputStream();
+                } else if (code == HttpURLConnection.HTTP_PARTIAL && offset > 0) {
+                    append = true;
+                    in = huc.getInputStream();
+                } else {
+                    // huc.disconnect();
+                    if (code == HTTP_RANGE_NOT_SATISFIABLE) {
+                        // The partial file is not usable: start again from scratch.
+                        if (!target.delete()) Out.getLog().println("Cannot reset " + target);
+                    }
+                    if (code == 404 || code == 401 || code == 502) {
+                        terminate("Connection failed. Server returned HTTP code " + code + ".",
+                                DownloadMonitor.DLOAD_FAILED_NO_NEW_ATTEMPT);
                     } else {
-                        // Get an input stream for reading
-                        in = huc.getInputStream();
+                        terminate("Connection failed. Server returned HTTP code " + code + ".",
+                                DownloadMonitor.DLOAD_FAILED);
                     }
                 }
-                if (in != null) {
-                    try {
-
-                        BufferedInputStream bufIn = new BufferedInputStream(in);
-
-                        // Read bytes until end of stream, and write them to
-                        // local file
-                        downloadTimer.start();
-                        int data = bufIn.read();
-                        while ((!shouldStop) && (data != -1)) {
-                            outstream.write(data);
-                            data = bufIn.read();
-                        }
-                        if (!shouldStop) { // no timeout occurs during download
-                            downloadTimer.stopAsap();
-                            terminate("Completed.", DownloadMonitor.DLOAD_SUCCESS);
-                        }
-
-                    } finally {
-                        in.close();
-                    }
+            }
+            if (in != null) {
+                try {
+                    transfer(in, append);
+                } finally {
+                    in.close();
                 }
-                huc.disconnect();
-            } finally {
-                outstream.close();
             }
+            huc.disconnect();
         } catch (MalformedURLException e) {
             terminate("Malformed URL", DownloadMonitor.DLOAD_FAILED);
         } catch (FileNotFoundException e) {
@@ -260,8 +265,36 @@ public class Downloader extends Thread implements TimerMonitor {
         } catch (SecurityException e) {
             terminate("Can't create file (security issue):" + target.getAbsolutePath(),
                     DownloadMonitor.DLOAD_FAILED);
-        } finally { // do it what ever exception occurs or not
-            System.getProperties().remove("http.agent");
+        }
+    }
+
+    /**
+     * Copies the body of the answer in the target file.
+     * 
+     * @param in the body of the answer
+     * @param append whether the body is the end of the file already started
+     * @throws IOException
+     */
+    private void transfer(InputStream in, boolean append) throws IOException {
+        FileOutputStream out = new FileOutputStream(target, append);
+        try {
+            FileChannel channel = out.getChannel();
+            ReadableByteChannel source = Channels.newChannel(in);
+            ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+            downloadTimer.start();
+            while (!shouldStop && source.read(buffer) != -1) {
+                buffer.flip();
+                while (buffer.hasRemaining()) {
+                    channel.write(buffer);
+                }
+                buffer.clear();
+            }
+            if (!shouldStop) { // no timeout occurs during download
+                downloadTimer.stopAsap();
+                terminate("Completed.", DownloadMonitor.DLOAD_SUCCESS);
+            }
+        } finally {
+            out.close();
         }
     }
 
@@ -328,7 +361,9 @@ public class Downloader extends Thread implements TimerMonitor {
     /**
      * Download the file located at the given URL, and write it to the given
      * target local directory. Return a File object on that file. Exit if there
-     * is any problem while downloading, or to store the downloaded file.
+     * is any problem while downloading, or to store the downloaded file. The
+     * file is kept in the download cache so that it is downloaded only once
+     * (see {@link #getCache(Configuration)}).
      * 
      * @param location the URL of the file to fetch.
      * @param targetDir the directory where to save the downloaded file.
@@ -340,86 +375,149 @@ public class Downloader extends Thread implements TimerMonitor {
      * @return the downloaded file.
      * @throws Alert
      */
-    static public File httpDownload(Configuration config, String location, String baseName,
+    static public File httpDownload(final Configuration config, final String location,
+            final String baseName, final String ext, final DownloadParameters dp) throws Alert {
+        return getCache(config).get(location, new Callable<File>() {
+            @Override
+            public File call() throws Alert {
+                return fetch(config, location, baseName, ext, dp);
+            }
+        });
+    }
+
+    /**
+     * Keeps the file downloaded from a location in the cache until
+     * {@link #release(Configuration, String)} is called, even if other
+     * downloads exceed the size of the cache.
+     * 
+     * @param config the configuration
+     * @param location the URL of the file
+     */
+    public static void pin(Configuration config, String location) {
+        getCache(config).pin(location);
+    }
+
+    /**
+     * Releases the file of a location pinned with
+     * {@link #pin(Configuration, String)}.
+     * 
+     * @param config the configuration
+     * @param location the URL of the file
+     */
+    public static void release(Configuration config, String location) {
+        getCache(config).release(location);
+    }
+
+    /**
+     * The cache of downloaded files. Its size is bounded by the
+     * <code>httpCacheSize</code> property (in megabytes).
+     * 
+     * @param config the configuration
+     * @return the cache
+     */
+    static synchronized DownloadCache getCache(Configuration config) {
+        if (cache == null) {
+            int size = DEFAULT_CACHE_SIZE;
+            try {
+                size = config.integer("httpCacheSize", DEFAULT_CACHE_SIZE);
+            } catch (NumberFormatException e) {
+                Out.getLog().println("bad format for httpCacheSize");
+            }
+            cache = new DownloadCache(size * 1024L * 1024L);
+        }
+        return cache;
+    }
+
+    /**
+     * Performs the download with retries. A retry after a failure during the
+     * transfer resumes the download where it stopped.
+     */
+    private static File fetch(Configuration config, String location, String baseName,
             String ext, DownloadParameters dp) throws Alert {
         String login = dp.getLogin();
         String password = dp.getPassword();
         String userAgent = dp.getUserAgent();
-        File f = (File) dowloadedFiles.get(location);
         File targetDir = config.getRootTempDir();
-        if (f == null) {
-
-            Downloader downloader = null;
-            DownloadMonitor downloadMonitor;
-            int attemptsDone = 0;
-            File target = getTarget(baseName, targetDir, ext);
-            // launch a download thread for that file, providing it with
-            // a monitor to keep an eye on the status of the operation.
-            boolean done = false;
-            int maxAttempts = 3;
-
-            // used to implement a strategy a la windows : in case of failure,
-            // timeout is double for each retry (until maxAttempts reached).
-            int httpConTimeOut = config.getHttpMaxConTime();
-            int httpDwnTime = config.getHttpMaxDwnTime();
-            while (!done && (attemptsDone < maxAttempts)) {
-                downloadMonitor = new DownloadMonitor();
-                downloader = new Downloader(location, target, httpConTimeOut/* httpMaxConTime */,
-                        httpDwnTime/* httpMaxDwnTime */, downloadMonitor);
-                if (login != null && password != null && login.length() != 0) {
-                    downloader.setLogin(login);
-                    downloader.setPassword(password);
-                }
-                if ((userAgent != null) && (userAgent.trim().length() > 0)) {
-                    downloader.setUser_agent(userAgent);
-                }
-                downloader.start();
-                downloadMonitor.waitForEnd();
-                int status = downloadMonitor.getDownloadStatus();
-                if (status == DownloadMonitor.DLOAD_SUCCESS) {
-                    done = true;
-                    attemptsDone++;
-                } else {
-                    if (status == DownloadMonitor.DLOAD_TIMEOUT_C) {
-                        httpConTimeOut = httpConTimeOut * 2;
-                        Out.getLog().println("Connexion timeout increased");
-                        attemptsDone++;
-                    } else if (status == DownloadMonitor.DLOAD_TIMEOUT_T) {
-                        httpDwnTime = httpDwnTime * 2;
-                        Out.getLog().println("Download timeout increased");
-                        attemptsDone++;
-                    } else if (status == DownloadMonitor.DLOAD_FAILED) {
-                        attemptsDone++;
-                    } else if (status == DownloadMonitor.DLOAD_FAILED_NO_NEW_ATTEMPT) {
-                        attemptsDone = maxAttempts;
-                    }
-                    // in all cases:
-                    downloader.stopAsap();
-                }
+
+        Downloader downloader = null;
+        DownloadMonitor downloadMonitor;
+        int attemptsDone = 0;
+        File target = getTarget(baseName, targetDir, ext);
+        // launch a download thread for that file, providing it with
+        // a monitor to keep an eye on the status of the operation.
+        boolean done = false;
+        int maxAttempts = 3;
+
+        // used to implement a strategy a la windows : in case of failure,
+        // timeout is double for each retry (until maxAttempts reached).
+        int httpConTimeOut = config.getHttpMaxConTime();
+        int httpDwnTime = config.getHttpMaxDwnTime();
+        while (!done && (attemptsDone < maxAttempts)) {
+            downloadMonitor = new DownloadMonitor();
+            downloader = new Downloader(location, target, httpConTimeOut/* httpMaxConTime */,
+                    httpDwnTime/* httpMaxDwnTime */, downloadMonitor);
+            if (login != null && password != null && login.length() != 0) {
+                downloader.setLogin(login);
+                downloader.setPassword(password);
             }
-            if (done) {
-                f = target;
-                dowloadedFiles.put(location, f);
+            if ((userAgent != null) && (userAgent.trim().length() > 0)) {
+                downloader.setUser_agent(userAgent);
+            }
+            downloader.start();
+            downloadMonitor.waitForEnd();
+            int status = downloadMonitor.getDownloadStatus();
+            if (status == DownloadMonitor.DLOAD_SUCCESS) {
+                done = true;
+                attemptsDone++;
             } else {
-                f = null;
-                throw Alert.raised(null, downloader.getErrorMessage());
+                if (status == DownloadMonitor.DLOAD_TIMEOUT_C) {
+                    httpConTimeOut = httpConTimeOut * 2;
+                    Out.getLog().println("Connexion timeout increased");
+                    attemptsDone++;
+                } else if (status == DownloadMonitor.DLOAD_TIMEOUT_T) {
+                    httpDwnTime = httpDwnTime * 2;
+                    Out.getLog().println("Download timeout increased");
+                    attemptsDone++;
+                } else if (status == DownloadMonitor.DLOAD_FAILED) {
+                    attemptsDone++;
+                } else if (status == DownloadMonitor.DLOAD_FAILED_NO_NEW_ATTEMPT) {
+                    attemptsDone = maxAttempts;
+                }
+                // in all cases:
+                downloader.stopAsap();
+                // The next attempt appends to the target: wait for the
+                // end of this one (bounded by the read timeout).
+                try {
+                    downloader.join();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    break;
+                }
             }
         }
-        return f;
-
+        if (!done) {
+            if (target.exists() && !target.delete()) target.deleteOnExit();
+            throw Alert.raised(null, downloader.getErrorMessage());
+        }
+        return target;
     }
 
-    private static File getTarget(String baseName, File targetDir, String ext) {
+    private static File getTarget(String baseName, File targetDir, String ext) throws Alert {
         String tempFileName = baseName;
         String targetFileName = "" + tempFileName;
         targetFileName += "." + ext;
         File target = new File(targetDir, targetFileName);
         int i = 1;
-        while (target.exists()) {
-            targetFileName = "" + i + tempFileName;
-            targetFileName += "." + ext;
-            target = new File(targetDir, targetFileName);
-            i++;
+        try {
+            // Files are created here as several downloads may run in parallel.
+            while (!target.createNewFile()) {
+                targetFileName = "" + i + tempFileName;
+                targetFileName += "." + ext;
+                target = new File(targetDir, targetFileName);
+                i++;
+            }
+        } catch (IOException e) {
+            throw Alert.raised(e, "Can't create file:" + target.getAbsolutePath());
         }
         target.deleteOnExit();
         return target;
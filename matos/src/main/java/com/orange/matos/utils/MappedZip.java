@@ -0,0 +1,309 @@
+package com.orange.matos.utils;
+
+/*
+ * #%L
+ * Matos
+ * %%
+ * Copyright (C) 2004 - 2014 Orange SA
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipException;
+
+/**
+ * Read-only view of a zip archive (APK, JAR) mapped in memory. The central
+ * directory is decoded once when the view is built. The content of an entry
+ * is read directly from the mapped file; stored entries that are themselves
+ * archives can be viewed without copying them.
+ * 
+ * @author Pierre Cregut
+ */
+public class MappedZip {
+
+	private static final int END_SIGNATURE = 0x06054b50;
+	private static final int CENTRAL_SIGNATURE = 0x02014b50;
+	private static final int LOCAL_SIGNATURE = 0x04034b50;
+	private static final int END_SIZE = 22;
+	private static final int CENTRAL_SIZE = 46;
+	private static final int LOCAL_SIZE = 30;
+	private static final int MAX_COMMENT = 0xffff;
+
+	/**
+	 * Header of an entry as found in the central directory.
+	 */
+	public static class Entry {
+		final String name;
+		final int method;
+		final long compressedSize;
+		final long size;
+		final long localOffset;
+
+		Entry(String name, int method, long compressedSize, long size, long localOffset) {
+			this.name = name;
+			this.method = method;
+			this.compressedSize = compressedSize;
+			this.size = size;
+			this.localOffset = localOffset;
+		}
+
+		/**
+		 * Name of the entry (path in the archive).
+		 * @return
+		 */
+		public String getName() { return name; }
+
+		/**
+		 * Uncompressed size of the entry.
+		 * @return
+		 */
+		public long getSize() { return size; }
+
+		/**
+		 * True if the entry is not compressed.
+		 * @return
+		 */
+		public boolean isStored() { return method == ZipEntry.STORED; }
+	}
+
+	private final ByteBuffer buffer;
+	private final Map<String, Entry> entries = new LinkedHashMap<String, Entry>();
+
+	/**
+	 * Maps a file in memory and decodes its central directory.
+	 * @param file the archive
+	 * @return the view on the archive
+	 * @throws IOException if the file cannot be read or is not a zip archive.
+	 */
+	public static MappedZip open(File file) throws IOException {
+		RandomAccessFile raf = new RandomAccessFile(file, "r");
+		try {
+			FileChannel channel = raf.getChannel();
+			// The mapping stays valid once the channel is closed.
+			return new MappedZip(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+		} finally {
+			raf.close();
+		}
+	}
+
+	/**
+	 * Decodes the central directory of an archive held in a buffer.
+	 * @param buffer the content of the archive
+	 * @throws IOException if the content is not a zip archive.
+	 */
+	MappedZip(ByteBuffer buffer) throws IOException {
+		this.buffer = buffer.slice().order(ByteOrder.LITTLE_ENDIAN);
+		readCentralDirectory();
+	}
+
+	private void readCentralDirectory() throws IOException {
+		int limit = buffer.limit();
+		int end = -1;
+		for (int p = limit - END_SIZE; p >= 0 && p >= limit - END_SIZE - MAX_COMMENT; p--) {
+			if (buffer.getInt(p) == END_SIGNATURE) { end = p; break; }
+		}
+		if (end < 0) throw new ZipException("Not a zip archive");
+		int count = buffer.getShort(end + 10) & 0xffff;
+		long position = buffer.getInt(end + 16) & 0xffffffffL;
+		for (int i = 0; i < count; i++) {
+			if (position + CENTRAL_SIZE > limit) throw new ZipException("Truncated central directory");
+			int p = (int) position;
+			if (buffer.getInt(p) != CENTRAL_SIGNATURE) throw new ZipException("Bad central directory");
+			int method = buffer.getShort(p + 10) & 0xffff;
+			long csize = buffer.getInt(p + 20) & 0xffffffffL;
+			long size = buffer.getInt(p + 24) & 0xffffffffL;
+			int nameLength = buffer.getShort(p + 28) & 0xffff;
+			int extraLength = buffer.getShort(p + 30) & 0xffff;
+			int commentLength = buffer.getShort(p + 32) & 0xffff;
+			long offset = buffer.getInt(p + 42) & 0xffffffffL;
+			byte[] name = new byte[nameLength];
+			ByteBuffer view = buffer.duplicate();
+			view.position(p + CENTRAL_SIZE);
+			view.get(name);
+			String entryName = new String(name, "UTF-8");
+			entries.put(entryName, new Entry(entryName, method, csize, size, offset));
+			position += CENTRAL_SIZE + nameLength + extraLength + commentLength;
+		}
+	}
+
+	/**
+	 * All the entries of the archive in the order of the central directory.
+	 * @return
+	 */
+	public List<Entry> entries() {
+		return Collections.unmodifiableList(new ArrayList<Entry>(entries.values()));
+	}
+
+	/**
+	 * Gives back an entry.
+	 * @param name path in the archive
+	 * @return null if there is no such entry.
+	 */
+	public Entry getEntry(String name) { return entries.get(name); }
+
+	/**
+	 * The raw (possibly compressed) content of an entry.
+	 */
+	private ByteBuffer rawData(Entry e) throws IOException {
+		long p = e.localOffset;
+		if (p + LOCAL_SIZE > buffer.limit() || buffer.getInt((int) p) != LOCAL_SIGNATURE)
+			throw new ZipException("Bad local header for " + e.name);
+		int nameLength = buffer.getShort((int) p + 26) & 0xffff;
+		int extraLength = buffer.getShort((int) p + 28) & 0xffff;
+		long start = p + LOCAL_SIZE + nameLength + extraLength;
+		if (start + e.compressedSize > buffer.limit())
+			throw new ZipException("Truncated entry " + e.name);
+		ByteBuffer data = buffer.duplicate();
+		data.position((int) start);
+		data.limit((int) (start + e.compressedSize));
+		return data.slice();
+	}
+
+	/**
+	 * Reads the content of an entry.
+	 * @param e the entry
+	 * @return a stream on the uncompressed content
+	 * @throws IOException if the entry is corrupted or uses an unknown method.
+	 */
+	public InputStream open(Entry e) throws IOException {
+		InputStream raw = new BufferInputStream(rawData(e));
+		switch (e.method) {
+		case ZipEntry.STORED:
+			return raw;
+		case ZipEntry.DEFLATED:
+			return new DeflatedInputStream(raw);
+		default:
+			throw new ZipException("Unsupported compression for " + e.name);
+		}
+	}
+
+	/**
+	 * Reads the first bytes of an entry.
+	 * @param e the entry
+	 * @param length the number of bytes requested
+	 * @return the bytes read (may be shorter than length).
+	 * @throws IOException
+	 */
+	public byte[] header(Entry e, int length) throws IOException {
+		byte[] result = new byte[length];
+		InputStream is = open(e);
+		int read = 0;
+		try {
+			int l;
+			while (read < length && (l = is.read(result, read, length - read)) > 0) read += l;
+		} finally {
+			is.close();
+		}
+		if (read == length) return result;
+		byte[] shorter = new byte[read];
+		System.arraycopy(result, 0, shorter, 0, read);
+		return shorter;
+	}
+
+	/**
+	 * Reads the full content of an entry.
+	 * @param e the entry
+	 * @return the uncompressed content
+	 * @throws IOException if the entry is corrupted or uses an unknown method.
+	 */
+	public byte[] read(Entry e) throws IOException {
+		if (e.size > Integer.MAX_VALUE) throw new ZipException("Entry too large " + e.name);
+		byte[] result = header(e, (int) e.size);
+		if (result.length != e.size) throw new ZipException("Truncated entry " + e.name);
+		return result;
+	}
+
+	/**
+	 * View on an archive stored (not compressed) in this archive. The content
+	 * is not copied.
+	 * @param e the entry containing the archive.
+	 * @return null if the entry is compressed.
+	 * @throws IOException if the entry is not an archive.
+	 */
+	public MappedZip nested(Entry e) throws IOException {
+		if (e.method != ZipEntry.STORED) return null;
+		return new MappedZip(rawData(e));
+	}
+
+	/**
+	 * Inflates a raw deflated entry. As for ZipFile, a dummy byte is given to
+	 * the inflater at the end of the input and the inflater is released on
+	 * close.
+	 */
+	private static class DeflatedInputStream extends InflaterInputStream {
+		private boolean eof;
+
+		DeflatedInputStream(InputStream in) { super(in, new Inflater(true)); }
+
+		@Override
+		protected void fill() throws IOException {
+			if (eof) throw new EOFException("Unexpected end of entry");
+			len = in.read(buf, 0, buf.length);
+			if (len == -1) {
+				buf[0] = 0;
+				len = 1;
+				eof = true;
+			}
+			inf.setInput(buf, 0, len);
+		}
+
+		@Override
+		public void close() throws IOException {
+			inf.end();
+			super.close();
+		}
+	}
+
+	/**
+	 * Input stream reading a byte buffer.
+	 */
+	private static class BufferInputStream extends InputStream {
+		private final ByteBuffer data;
+
+		BufferInputStream(ByteBuffer data) { this.data = data; }
+
+		@Override
+		public int read() {
+			return data.hasRemaining() ? (data.get() & 0xff) : -1;
+		}
+
+		@Override
+		public int read(byte[] b, int off, int len) {
+			if (len == 0) return 0;
+			if (!data.hasRemaining()) return -1;
+			int l = Math.min(len, data.remaining());
+			data.get(b, off, l);
+			return l;
+		}
+
+		@Override
+		public int available() { return data.remaining(); }
+	}
+}
@@ -0,0 +1,482 @@
+package com.orange.matos.utils;
+
+
+/*
+ * #%L
+ * Matos
+ * %%
+ * Copyright (C) 2004 - 2014 Orange SA
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.lang.management.ThreadMXBean;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.orange.matos.core.Out;
+
+/**
+ * Measures the phases of the analysis of a step: wall time, CPU time and
+ * bytes allocated, peak of the heap. Phases may be nested. The profile of a
+ * step is written in a tab separated file next to the report and the profiles
+ * of the steps of a campaign are summed in the campaign index.
+ * 
+ * A profiler belongs to the analysis of one step and is found through the
+ * configuration. Phases are opened and ended by the thread analysing the
+ * step. Threads helping it (parallel custom rules, parallel parsing of class
+ * files) report their CPU time and allocations with a {@link Helper}: they
+ * are added to the phases open while the helper ends.
+ * 
+ * The peak of the heap is sampled while phases are open. The peaks of the
+ * memory pools are never reset; when they grow during a phase, their sum is
+ * taken as the peak of the phase.
+ */
+public class PhaseProfiler {
+
+    /**
+     * Suffix of the file containing the profile of a report.
+     */
+    public static final String SIDECAR_SUFFIX = ".phases.tsv";
+
+    private static final String HEADER =
+        "# phase\tdepth\twall_ms\tcpu_ms\tallocated_bytes\tpeak_heap_bytes";
+
+    /**
+     * Period of the sampling of the heap in milliseconds.
+     */
+    private static final long SAMPLE_PERIOD = 50;
+
+    private static final ThreadMXBean THREADS = ManagementFactory.getThreadMXBean();
+
+    /** getThreadAllocatedBytes(long) of the Sun management extension if available */
+    private static final Method ALLOCATED = allocatedBytesMethod();
+
+    /**
+     * Profiler measuring nothing, used when the timing is not enabled.
+     */
+    public static final PhaseProfiler DISABLED = new PhaseProfiler(false);
+
+    /**
+     * A measured phase. Times are in milliseconds, memory in bytes and -1
+     * when the JVM cannot measure it.
+     */
+    public static class Phase {
+        final String name;
+        final int depth;
+        final PhaseProfiler profiler;
+        private final long wallStart;
+        private final long cpuStart;
+        private final long allocatedStart;
+        private final long helperCpuStart;
+        private final long helperAllocatedStart;
+        private final long poolPeakStart;
+        long wall = -1;
+        long cpu = -1;
+        long allocated = -1;
+        long peak = -1;
+
+        Phase(PhaseProfiler profiler, String name, int depth) {
+            this.profiler = profiler;
+            this.name = name;
+            this.depth = depth;
+            wallStart = System.nanoTime();
+            if (profiler == null) {
+                cpuStart = allocatedStart = helperCpuStart = helperAllocatedStart = poolPeakStart = -1;
+                return;
+            }
+            cpuStart = cpuTime();
+            allocatedStart = allocatedBytes();
+            helperCpuStart = profiler.helperCpu;
+            helperAllocatedStart = profiler.helperAllocated;
+            poolPeakStart = poolPeaks();
+            peak = heapUsed();
+        }
+
+        /**
+         * Ends the phase. Does nothing if the phase is already ended.
+         */
+        public void end() {
+            if (profiler != null) profiler.close(this);
+        }
+
+        void measure() {
+            wall = (System.nanoTime() - wallStart) / 1000000;
+            long cpuEnd = cpuTime();
+            if (cpuStart >= 0 && cpuEnd >= 0 && profiler.helperCpu >= 0)
+                cpu = (cpuEnd - cpuStart + profiler.helperCpu - helperCpuStart) / 1000000;
+            long allocatedEnd = allocatedBytes();
+            if (allocatedStart >= 0 && allocatedEnd >= 0 && profiler.helperAllocated >= 0)
+                allocated = allocatedEnd - allocatedStart + profiler.helperAllocated - helperAllocatedStart;
+        }
+    }
+
+    /**
+     * Work done for the step by another thread. The helper is created and
+     * ended by the thread doing the work.
+     */
+    public static class Helper {
+        private final PhaseProfiler profiler;
+        private final long cpuStart;
+        private final long allocatedStart;
+
+        Helper(PhaseProfiler profiler) {
+            this.profiler = profiler;
+            cpuStart = (profiler == null) ? -1 : cpuTime();
+            allocatedStart = (profiler == null) ? -1 : allocatedBytes();
+        }
+
+        /**
+         * Reports the work done since the helper was created.
+         */
+        public void end() {
+            if (profiler == null) return;
+            long cpuEnd = cpuTime();
+            long allocatedEnd = allocatedBytes();
+            profiler.addHelper((cpuStart >= 0 && cpuEnd >= 0) ? cpuEnd - cpuStart : -1,
+                    (allocatedStart >= 0 && allocatedEnd >= 0) ? allocatedEnd - allocatedStart : -1);
+        }
+    }
+
+    /** Phase returned when the profiler is disabled. */
+    private static final Phase NONE = new Phase(null, "", 0);
+
+    /** Helper returned when the profiler is disabled. */
+    private static final Helper NO_HELPER = new Helper(null);
+
+    private final boolean enabled;
+
+    private final List<Phase> phases = new ArrayList<Phase>();
+
+    private final List<Phase> open = new ArrayList<Phase>();
+
+    /**
+     * CPU time in nanoseconds and bytes allocated reported by the helpers,
+     * -1 if one of them could not measure it.
+     */
+    private long helperCpu = 0;
+    private long helperAllocated = 0;
+
+    private Thread sampler;
+
+    /**
+     * Profiler of a new step.
+     */
+    public PhaseProfiler() {
+        this(true);
+    }
+
+    private PhaseProfiler(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    /**
+     * Ends the phases still open.
+     */
+    public synchronized void stop() {
+        while (!open.isEmpty()) close(open.get(open.size() - 1));
+    }
+
+    /**
+     * Begins a phase. The phase must be ended by the same thread, usually in
+     * a finally block.
+     * @param name name of the phase
+     * @return the phase (a phase measuring nothing if the profiler is disabled).
+     */
+    public synchronized Phase begin(String name) {
+        if (!enabled) return NONE;
+        updatePeaks();
+        Phase phase = new Phase(this, name, open.size());
+        phases.add(phase);
+        open.add(phase);
+        if (sampler == null) startSampler();
+        return phase;
+    }
+
+    /**
+     * Starts measuring the work of a thread helping the analysis.
+     * @return the helper to end when the work is done.
+     */
+    public Helper helper() {
+        return enabled ? new Helper(this) : NO_HELPER;
+    }
+
+    private synchronized void addHelper(long cpu, long allocated) {
+        helperCpu = (cpu < 0 || helperCpu < 0) ? -1 : helperCpu + cpu;
+        helperAllocated = (allocated < 0 || helperAllocated < 0) ? -1 : helperAllocated + allocated;
+    }
+
+    private synchronized void close(Phase phase) {
+        int i = open.indexOf(phase);
+        if (i < 0) return;
+        updatePeaks();
+        // Phases not ended inside this one are ended with it.
+        for (int j = open.size() - 1; j >= i; j--) open.remove(j).measure();
+        if (open.isEmpty() && sampler != null) {
+            sampler.interrupt();
+            sampler = null;
+        }
+    }
+
+    private void startSampler() {
+        sampler = new Thread("phase-profiler") {
+            @Override
+            public void run() {
+                try {
+                    while (!isInterrupted()) {
+                        Thread.sleep(SAMPLE_PERIOD);
+                        synchronized (PhaseProfiler.this) {
+                            if (sampler != this) return;
+                            updatePeaks();
+                        }
+                    }
+                } catch (InterruptedException e) {
+                    // the last phase was ended.
+                }
+            }
+        };
+        sampler.setDaemon(true);
+        sampler.start();
+    }
+
+    private void updatePeaks() {
+        if (open.isEmpty()) return;
+        long used = heapUsed();
+        long poolPeaks = poolPeaks();
+        for (Phase phase : open) {
+            if (used > phase.peak) phase.peak = used;
+            if (poolPeaks > phase.poolPeakStart && poolPeaks > phase.peak) phase.peak = poolPeaks;
+        }
+    }
+
+    /**
+     * Current use of the heap.
+     * @return a number of bytes
+     */
+    private static long heapUsed() {
+        long used = 0;
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP) used += pool.getUsage().getUsed();
+        }
+        return used;
+    }
+
+    /**
+     * Sum of the peak usage of the heap pools since the start of the JVM.
+     * @return a number of bytes
+     */
+    private static long poolPeaks() {
+        long peak = 0;
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP) peak += pool.getPeakUsage().getUsed();
+        }
+        return peak;
+    }
+
+    private static long cpuTime() {
+        try {
+            return THREADS.isCurrentThreadCpuTimeSupported() ? THREADS.getCurrentThreadCpuTime() : -1;
+        } catch (UnsupportedOperationException e) {
+            return -1;
+        }
+    }
+
+    private static Method allocatedBytesMethod() {
+        try {
+            Class<?> clazz = Class.forName("com.sun.management.ThreadMXBean");
+            if (!clazz.isInstance(THREADS)) return null;
+            return clazz.getMethod("getThreadAllocatedBytes", long.class);
+        } catch (Exception e) {
+            return null;
+        }
+    }
+
+    private static long allocatedBytes() {
+        if (ALLOCATED == null) return -1;
+        try {
+            return ((Long) ALLOCATED.invoke(THREADS, Thread.currentThread().getId())).longValue();
+        } catch (Exception e) {
+            return -1;
+        }
+    }
+
+    /**
+     * File containing the profile of a report: the name of the report with
+     * its extension replaced by the sidecar suffix.
+     * @param reportPath path of the report
+     * @return the profile file
+     */
+    public static File sidecarFile(String reportPath) {
+        File report = new File(reportPath);
+        String name = report.getName();
+        int dot = name.lastIndexOf('.');
+        if (dot > 0) name = name.substring(0, dot);
+        return new File(report.getParentFile(), name + SIDECAR_SUFFIX);
+    }
+
+    /**
+     * Writes the profile, one phase per line in the order they began.
+     * @param file the file to write
+     * @throws IOException
+     */
+    public void write(File file) throws IOException {
+        PrintStream out = new PrintStream(new FileOutputStream(file), false, "UTF-8");
+        try {
+            out.println(HEADER);
+            for (Phase phase : phases) {
+                out.println(phase.name + "\t" + phase.depth + "\t" + phase.wall + "\t" + phase.cpu
+                        + "\t" + phase.allocated + "\t" + phase.peak);
+            }
+        } finally {
+            out.close();
+        }
+        if (out.checkError()) throw new IOException("Cannot write " + file);
+    }
+
+    /**
+     * Sum of the profiles of several steps. Times and allocations are 
+     * added, the peak of the heap is the maximum over the steps.
+     */
+    public static class Summary {
+
+        private static class Total {
+            int depth;
+            int count;
+            long wall;
+            long cpu;
+            long allocated;
+            long peak = -1;
+        }
+
+        private final Map<String, Total> totals = new LinkedHashMap<String, Total>();
+
+        private int steps = 0;
+
+        /**
+         * Adds the profile written next to a report if there is one.
+         * @param reportPath path of the report
+         */
+        public void addReport(String reportPath) {
+            File file = sidecarFile(reportPath);
+            if (!file.exists()) return;
+            try {
+                BufferedReader in = new BufferedReader(new InputStreamReader(new FileInputStream(file), "UTF-8"));
+                try {
+                    String line;
+                    while ((line = in.readLine()) != null) {
+                        if (line.length() == 0 || line.startsWith("#")) continue;
+                        String [] fields = line.split("\t");
+                        if (fields.length < 6) continue;
+                        Total total = totals.get(fields[0]);
+                        if (total == null) {
+                            total = new Total();
+                            total.depth = Integer.parseInt(fields[1]);
+                            totals.put(fields[0], total);
+                        }
+                        total.count++;
+                        total.wall += Math.max(0, Long.parseLong(fields[2]));
+                        total.cpu += Math.max(0, Long.parseLong(fields[3]));
+                        total.allocated += Math.max(0, Long.parseLong(fields[4]));
+                        total.peak = Math.max(total.peak, Long.parseLong(fields[5]));
+                    }
+                } finally {
+                    in.close();
+                }
+                steps++;
+            } catch (IOException e) {
+                Out.getLog().println("Cannot read the profile " + file + ": " + e.getMessage());
+            } catch (NumberFormatException e) {
+                Out.getLog().println("Bad profile " + file + ": " + e.getMessage());
+            }
+        }
+
+        /**
+         * Is there something to report.
+         * @return true if no profile was added.
+         */
+        public boolean isEmpty() {
+            return steps == 0;
+        }
+
+        /**
+         * Writes the summary in the same format as the profile of a step 
+         * with the number of occurrences of each phase as last column.
+         * @param file the file to write
+         * @throws IOException
+         */
+        public void write(File file) throws IOException {
+            PrintStream out = new PrintStream(new FileOutputStream(file), false, "UTF-8");
+            try {
+                out.println(HEADER + "\tcount");
+                for (Map.Entry<String, Total> entry : totals.entrySet()) {
+                    Total total = entry.getValue();
+                    out.println(entry.getKey() + "\t" + total.depth + "\t" + total.wall + "\t" + total.cpu
+                            + "\t" + total.allocated + "\t" + total.peak + "\t" + total.count);
+                }
+            } finally {
+                out.close();
+            }
+            if (out.checkError()) throw new IOException("Cannot write " + file);
+        }
+
+        /**
+         * Prints the summary as an HTML table.
+         * @param out the HTML stream.
+         */
+        public void printHtml(PrintStream out) {
+            out.println(HtmlOutput.header(2, "Time spent per phase (" + steps + " steps)"));
+            out.println("<table border=\"1\">");
+            out.println(HtmlOutput.row(HtmlOutput.cell(HtmlOutput.bold("Phase"))
+                    + HtmlOutput.cell(HtmlOutput.bold("Count"))
+                    + HtmlOutput.cell(HtmlOutput.bold("Wall time (s)"))
+                    + HtmlOutput.cell(HtmlOutput.bold("CPU time (s)"))
+                    + HtmlOutput.cell(HtmlOutput.bold("Allocated (MB)"))
+                    + HtmlOutput.cell(HtmlOutput.bold("Peak heap (MB)"))));
+            for (Map.Entry<String, Total> entry : totals.entrySet()) {
+                Total total = entry.getValue();
+                StringBuilder name = new StringBuilder();
+                for (int i = 0; i < total.depth; i++) name.append("&nbsp;&nbsp;");
+                name.append(HtmlOutput.escape(entry.getKey()));
+                out.println(HtmlOutput.row(HtmlOutput.cell(name.toString())
+                        + HtmlOutput.cell(String.valueOf(total.count))
+                        + HtmlOutput.cell(seconds(total.wall))
+                        + HtmlOutput.cell(seconds(total.cpu))
+                        + HtmlOutput.cell(megabytes(total.allocated))
+                        + HtmlOutput.cell(megabytes(total.peak))));
+            }
+            out.println("</table>");
+        }
+
+        private static String seconds(long ms) {
+            return String.valueOf(ms / 1000.);
+        }
+
+        private static String megabytes(long bytes) {
+            return (bytes < 0) ? "-" : String.valueOf(bytes / (1024 * 1024));
+        }
+    }
+}
@@ -0,0 +1,407 @@
+package com.orange.matos.utils;
+
+
+/*
+ * #%L
+ * Matos
+ * %%
+ * Copyright (C) 2004 - 2014 Orange SA
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.PrintStream;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * A print stream for reports. The text printed is gathered in large blocks
+ * that are encoded in UTF-8 and written to the file by a background thread,
+ * so that the analysis does not wait for the disk on each of the many small
+ * prints done by reports. Listeners receive the strings printed as they are
+ * (score matching). Like the stream wrapped by the score, they only receive
+ * the strings given to print(String), println(String) and append, and the
+ * bytes given to write, decoded in UTF-8. Objects, characters and numbers
+ * printed are not seen by listeners.
+ * 
+ * Errors on the file are reported by checkError like for any print stream.
+ */
+public class ReportSink extends PrintStream {
+
+    /**
+     * Receives the text printed on the sink.
+     */
+    public interface Listener {
+        /**
+         * Called for each string printed or block of bytes written, in the
+         * thread printing it.
+         * @param s the string printed.
+         */
+        void text(String s);
+    }
+
+    private static final int BLOCK_SIZE = 1 << 16;
+
+    private static final int QUEUE_SIZE = 16;
+
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    private static final Object FLUSH = new Object();
+
+    private static final Object END = new Object();
+
+    private static final String LINE_SEPARATOR = System.getProperty("line.separator");
+
+    /**
+     * Bytes written directly on the stream. They are kept in order with the
+     * text.
+     */
+    private static class Relay extends OutputStream {
+        ReportSink sink;
+
+        @Override
+        public void write(int b) {
+            sink.bytes(new byte[] { (byte) b }, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+            sink.bytes(b, off, len);
+        }
+    }
+
+    private final BlockingQueue<Object> queue = new ArrayBlockingQueue<Object>(QUEUE_SIZE);
+
+    private final StringBuilder textBlock = new StringBuilder(BLOCK_SIZE);
+
+    private byte[] byteBlock = new byte[0];
+
+    private int byteCount = 0;
+
+    private final ArrayList<Listener> listeners = new ArrayList<Listener>();
+
+    private final Thread writer;
+
+    private volatile IOException failure;
+
+    private boolean closed = false;
+
+    /**
+     * Opens a report file.
+     * @param file the file to create
+     * @throws FileNotFoundException if the file cannot be created.
+     */
+    public ReportSink(File file) throws FileNotFoundException {
+        this(new FileOutputStream(file), file.getName());
+    }
+
+    /**
+     * Prints to an arbitrary stream. The stream is closed with the sink.
+     * @param target the stream receiving the encoded report
+     * @param name name used for the writer thread
+     */
+    public ReportSink(OutputStream target, String name) {
+        super(new Relay(), false);
+        ((Relay) out).sink = this;
+        writer = new Thread(new Writing(new BufferedOutputStream(target, BLOCK_SIZE)), "report " + name);
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    /**
+     * Registers a listener for the text printed.
+     * @param listener
+     */
+    public synchronized void addListener(Listener listener) {
+        listeners.add(listener);
+    }
+
+    /**
+     * Unregisters a listener.
+     * @param listener
+     */
+    public synchronized void removeListener(Listener listener) {
+        listeners.remove(listener);
+    }
+
+    private synchronized void text(String s) {
+        notifyListeners(s);
+        store(s);
+    }
+
+    private synchronized void notifyListeners(String s) {
+        for (Listener listener : listeners) listener.text(s);
+    }
+
+    private synchronized void store(String s) {
+        if (closed) {
+            setError();
+            return;
+        }
+        if (byteCount > 0) pushBytes();
+        textBlock.append(s);
+        if (textBlock.length() >= BLOCK_SIZE) pushText();
+    }
+
+    private synchronized void bytes(byte[] b, int off, int len) {
+        if (closed) {
+            setError();
+            return;
+        }
+        if (textBlock.length() > 0) pushText();
+        if (byteCount + len > byteBlock.length) {
+            byteBlock = Arrays.copyOf(byteBlock, Math.max(byteCount + len, Math.min(2 * byteBlock.length + 64, BLOCK_SIZE)));
+        }
+        System.arraycopy(b, off, byteBlock, byteCount, len);
+        byteCount += len;
+        if (byteCount >= BLOCK_SIZE) pushBytes();
+    }
+
+    private void pushText() {
+        enqueue(textBlock.toString());
+        textBlock.setLength(0);
+    }
+
+    private void pushBytes() {
+        enqueue(Arrays.copyOf(byteBlock, byteCount));
+        byteCount = 0;
+    }
+
+    private void enqueue(Object item) {
+        try {
+            queue.put(item);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            setError();
+        }
+    }
+
+    /**
+     * The background writer. After a failure, it keeps on consuming the
+     * blocks so that the printing thread is never blocked.
+     */
+    private class Writing implements Runnable {
+        private final OutputStream raw;
+
+        private final Writer encoder;
+
+        Writing(OutputStream raw) {
+            this.raw = raw;
+            this.encoder = new OutputStreamWriter(raw, UTF8);
+        }
+
+        public void run() {
+            try {
+                while (true) {
+                    Object item = queue.take();
+                    if (item == END) break;
+                    if (failure != null) continue;
+                    try {
+                        if (item instanceof String) {
+                            encoder.write((String) item);
+                        } else if (item == FLUSH) {
+                            encoder.flush();
+                        } else {
+                            encoder.flush();
+                            raw.write((byte[]) item);
+                        }
+                    } catch (IOException e) {
+                        failure = e;
+                    }
+                }
+            } catch (InterruptedException e) {
+                failure = new IOException("Report writer interrupted");
+            } finally {
+                try {
+                    encoder.close();
+                } catch (IOException e) {
+                    if (failure == null) failure = e;
+                }
+            }
+        }
+    }
+
+    @Override
+    public synchronized void flush() {
+        if (closed) return;
+        if (textBlock.length() > 0) pushText();
+        if (byteCount > 0) pushBytes();
+        enqueue(FLUSH);
+    }
+
+    /**
+     * Writes the remaining blocks and waits for the file to be closed.
+     */
+    @Override
+    public synchronized void close() {
+        if (closed) return;
+        if (textBlock.length() > 0) pushText();
+        if (byteCount > 0) pushBytes();
+        enqueue(END);
+        closed = true;
+        try {
+            writer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            setError();
+        }
+    }
+
+    @Override
+    public boolean checkError() {
+        return super.checkError() || failure != null;
+    }
+
+    @Override
+    public void print(String s) {
+        text(String.valueOf(s));
+    }
+
+    @Override
+    public void print(Object obj) {
+        store(String.valueOf(obj));
+    }
+
+    @Override
+    public void print(char c) {
+        store(String.valueOf(c));
+    }
+
+    @Override
+    public void print(char[] s) {
+        store(new String(s));
+    }
+
+    @Override
+    public void print(boolean b) {
+        store(String.valueOf(b));
+    }
+
+    @Override
+    public void print(int i) {
+        store(String.valueOf(i));
+    }
+
+    @Override
+    public void print(long l) {
+        store(String.valueOf(l));
+    }
+
+    @Override
+    public void print(float f) {
+        store(String.valueOf(f));
+    }
+
+    @Override
+    public void print(double d) {
+        store(String.valueOf(d));
+    }
+
+    /**
+     * Only explicit writes get here: everything printed is stored as text.
+     */
+    @Override
+    public void write(byte[] buf, int off, int len) {
+        if (len > 0) notifyListeners(new String(buf, off, len, UTF8));
+        super.write(buf, off, len);
+    }
+
+    @Override
+    public void println() {
+        store(LINE_SEPARATOR);
+    }
+
+    @Override
+    public synchronized void println(String x) {
+        print(x);
+        println();
+    }
+
+    @Override
+    public synchronized void println(Object x) {
+        print(x);
+        println();
+    }
+
+    @Override
+    public synchronized void println(char x) {
+        print(x);
+        println();
+    }
+
+    @Override
+    public synchronized void println(char[] x) {
+        print(x);
+        println();
+    }
+
+    @Override
+    public synchronized void println(boolean x) {
+        print(x);
+        println();
+    }
+
+    @Override
+    public synchronized void println(int x) {
+        print(x);
+        println();
+    }
+
+    @Override
+    public synchronized void println(long x) {
+        print(x);
+        println();
+    }
+
+    @Override
+    public synchronized void println(float x) {
+        print(x);
+        println();
+    }
+
+    @Override
+    public synchronized void println(double x) {
+        print(x);
+        println();
+    }
+
+    @Override
+    public ReportSink append(CharSequence csq) {
+        text(String.valueOf(csq));
+        return this;
+    }
+
+    @Override
+    public ReportSink append(CharSequence csq, int start, int end) {
+        text(String.valueOf(csq == null ? "null" : csq.subSequence(start, end)));
+        return this;
+    }
+
+    @Override
+    public ReportSink append(char c) {
+        store(String.valueOf(c));
+        return this;
+    }
+}
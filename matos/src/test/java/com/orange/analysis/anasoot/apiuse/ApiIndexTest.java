@@ -0,0 +1,220 @@
+package com.orange.analysis.anasoot.apiuse;
+
+/*
+ * #%L
+ * Matos
+ * %%
+ * Copyright (C) 2004 - 2014 Orange SA
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.BeforeClass;
+import org.junit.ClassRule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Compares the compiled version database ({@link MappedApiIndex}) with the
+ * index read from the SQLite database it was compiled from
+ * ({@link DatabaseApiIndex}).
+ * @author Pierre Cregut
+ */
+public class ApiIndexTest {
+
+	/** More versions than the bits of a word so that bit sets span two words. */
+	private static final int VERSIONS = 70;
+
+	private static final String [] PACKAGES = { "android.app", "android.widget", "java.lang", "\u00e9t\u00e9" };
+	private static final String [] TYPES = { "int", "void", "java.lang.String", "(int, java.lang.String)void", "()\u00e9t\u00e9.Caf\u00e9" };
+
+	/** The database. */
+	@ClassRule
+	public static final TemporaryFolder folder = new TemporaryFolder();
+
+	private static final List<String[]> classes = new ArrayList<String[]>();
+	private static final List<String[]> elements = new ArrayList<String[]>();
+	private static DatabaseApiIndex database;
+	private static MappedApiIndex compiled;
+
+	/**
+	 * Builds a random database and its compiled form.
+	 * @throws Exception
+	 */
+	@BeforeClass
+	public static void build() throws Exception {
+		File db = new File(folder.getRoot(), "versions.db");
+		File bin = new File(folder.getRoot(), "versions.bin");
+		Random random = new Random(42);
+		Class.forName("org.sqlite.JDBC");
+		Connection con = DriverManager.getConnection("jdbc:sqlite:" + db.getAbsolutePath());
+		try {
+			Statement st = con.createStatement();
+			st.executeUpdate("CREATE TABLE version (version_id INTEGER, version_name TEXT);");
+			st.executeUpdate("CREATE TABLE package (package_id INTEGER, package_name TEXT);");
+			st.executeUpdate("CREATE TABLE class (class_id INTEGER, class_name TEXT, package_id INTEGER);");
+			st.executeUpdate("CREATE TABLE type (type_id INTEGER, type TEXT);");
+			st.executeUpdate("CREATE TABLE element (element_id INTEGER, element_name TEXT, class_id INTEGER, type_id INTEGER);");
+			st.executeUpdate("CREATE TABLE class_version (class_id INTEGER, version_id INTEGER);");
+			st.executeUpdate("CREATE TABLE element_version (element_id INTEGER, version_id INTEGER);");
+			st.close();
+			con.setAutoCommit(false);
+			PreparedStatement version = con.prepareStatement("INSERT INTO version VALUES (?, ?);");
+			for(int i = 0; i < VERSIONS; i++) {
+				String name = (i < 9 ? "0" : "") + (i + 1);
+				insert(version, 2 * i, "v" + name);
+				insert(version, 2 * i + 1, "h" + name);
+			}
+			PreparedStatement pack = con.prepareStatement("INSERT INTO package VALUES (?, ?);");
+			for(int i = 0; i < PACKAGES.length; i++) insert(pack, i, PACKAGES[i]);
+			PreparedStatement type = con.prepareStatement("INSERT INTO type VALUES (?, ?);");
+			for(int i = 0; i < TYPES.length; i++) insert(type, i, TYPES[i]);
+			PreparedStatement clazz = con.prepareStatement("INSERT INTO class VALUES (?, ?, ?);");
+			PreparedStatement element = con.prepareStatement("INSERT INTO element VALUES (?, ?, ?, ?);");
+			PreparedStatement classVersion = con.prepareStatement("INSERT INTO class_version VALUES (?, ?);");
+			PreparedStatement elementVersion = con.prepareStatement("INSERT INTO element_version VALUES (?, ?);");
+			int elementId = 0;
+			for(int c = 0; c < 40; c++) {
+				int p = random.nextInt(PACKAGES.length);
+				String name = "C" + c + (c % 7 == 0 ? ".Inner" : "");
+				clazz.setInt(1, c);
+				clazz.setString(2, name);
+				clazz.setInt(3, p);
+				clazz.executeUpdate();
+				classes.add(new String [] { PACKAGES[p], name });
+				versions(classVersion, c, random);
+				for(int e = random.nextInt(8); e > 0; e--) {
+					int t = random.nextInt(TYPES.length);
+					String elementName = "m" + random.nextInt(5);
+					element.setInt(1, elementId);
+					element.setString(2, elementName);
+					element.setInt(3, c);
+					element.setInt(4, t);
+					element.executeUpdate();
+					elements.add(new String [] { PACKAGES[p], name, TYPES[t], elementName });
+					versions(elementVersion, elementId++, random);
+				}
+			}
+			con.commit();
+		} finally {
+			con.close();
+		}
+		ApiDatabaseCompiler.compile(db.getAbsolutePath(), bin);
+		database = DatabaseApiIndex.load(db.getAbsolutePath());
+		compiled = MappedApiIndex.open(bin);
+	}
+
+	private static void insert(PreparedStatement st, int id, String name) throws Exception {
+		st.setInt(1, id);
+		st.setString(2, name);
+		st.executeUpdate();
+	}
+
+	/**
+	 * Random visible and hidden versions. Some entries are never visible.
+	 */
+	private static void versions(PreparedStatement st, int id, Random random) throws Exception {
+		boolean neverVisible = random.nextInt(5) == 0;
+		for(int v = 0; v < 2 * VERSIONS; v++) {
+			if (neverVisible && v % 2 == 0) continue;
+			if (random.nextInt(3) != 0) continue;
+			st.setInt(1, id);
+			st.setInt(2, v);
+			st.executeUpdate();
+		}
+	}
+
+	private static void assertSameBits(int visible, int hidden, int dbId, int binId) {
+		for(int w = 0; w < database.words; w++) {
+			assertEquals(database.word(visible, dbId, w), compiled.word(visible, binId, w));
+			assertEquals(database.word(hidden, dbId, w), compiled.word(hidden, binId, w));
+		}
+	}
+
+	/**
+	 * Versions and the size of the bit sets.
+	 */
+	@Test
+	public void versions() {
+		assertEquals(VERSIONS, database.getVersions().size());
+		assertEquals(database.getVersions(), compiled.getVersions());
+		assertEquals(2, database.words);
+		assertEquals(database.words, compiled.words);
+	}
+
+	/**
+	 * Every class has the same versions in both indexes.
+	 */
+	@Test
+	public void classes() {
+		for(String [] c : classes) {
+			String key = ApiVersionIndex.classKey(c[0], c[1]);
+			int dbId = database.findClass(key);
+			int binId = compiled.findClass(key);
+			assertTrue(key, dbId >= 0 && binId >= 0);
+			assertSameBits(ApiVersionIndex.CLASS_VISIBLE, ApiVersionIndex.CLASS_HIDDEN, dbId, binId);
+		}
+	}
+
+	/**
+	 * Every field and method has the same versions in both indexes.
+	 */
+	@Test
+	public void elements() {
+		for(String [] e : elements) {
+			String classKey = ApiVersionIndex.classKey(e[0], e[1]);
+			int dbId = database.findElement(classKey, e[2], e[3]);
+			int binId = compiled.findElement(classKey, e[2], e[3]);
+			assertTrue(classKey + " " + e[3], dbId >= 0 && binId >= 0);
+			assertSameBits(ApiVersionIndex.ELEMENT_VISIBLE, ApiVersionIndex.ELEMENT_HIDDEN, dbId, binId);
+		}
+	}
+
+	/**
+	 * Unknown classes and elements are not found, including prefixes of
+	 * existing keys and keys before or after every key.
+	 */
+	@Test
+	public void missing() {
+		String [] classKeys = { 
+			ApiVersionIndex.classKey("android.app", "C"),
+			ApiVersionIndex.classKey("android.ap", "C1"),
+			ApiVersionIndex.classKey("", ""),
+			ApiVersionIndex.classKey("\uffff", "Z"),
+			ApiVersionIndex.classKey("java.lang", "C1000")
+		};
+		for(String key : classKeys) {
+			assertEquals(key, database.findClass(key), compiled.findClass(key));
+			assertEquals(key, -1, compiled.findClass(key));
+		}
+		String [] c = classes.get(0);
+		String classKey = ApiVersionIndex.classKey(c[0], c[1]);
+		assertEquals(-1, compiled.findElement(classKey, "int", "unknown"));
+		assertEquals(-1, database.findElement(classKey, "int", "unknown"));
+		assertEquals(-1, compiled.findElement(classKey, "in", "m1"));
+		assertEquals(-1, database.findElement(classKey, "in", "m1"));
+	}
+}
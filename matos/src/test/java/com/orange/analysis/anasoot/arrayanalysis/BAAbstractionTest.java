@@ -0,0 +1,158 @@
+package com.orange.analysis.anasoot.arrayanalysis;
+
+/*
+ * #%L
+ * Matos
+ * %%
+ * Copyright (C) 2004 - 2014 Orange SA
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.BitSet;
+import java.util.Random;
+import java.util.TreeMap;
+
+import org.junit.Test;
+
+/**
+ * Rendering of the abstraction of byte arrays, compared with the former
+ * representation of the contents as a sorted map.
+ * @author Pierre Cregut
+ */
+public class BAAbstractionTest {
+
+	/**
+	 * The abstraction as it was before the dense storage.
+	 */
+	private static class Reference {
+		boolean isSpoiled;
+		BitSet spoiled = new BitSet();
+		TreeMap <Integer,Integer> contents = new TreeMap <Integer,Integer>();
+		int size = -1;
+
+		void set(int key, byte v) {
+			if (isSpoiled) return;
+			if(contents.containsKey(key)) spoil(key);
+			else contents.put(key, (int) v);
+		}
+
+		void spoil() {
+			isSpoiled = true;
+			contents = null;
+			spoiled = null;
+		}
+
+		void spoil(int index) {
+			if (isSpoiled) return;
+			spoiled.set(index);
+		}
+
+		@Override
+		public String toString() {
+			if (isSpoiled) return "*";
+			StringBuilder result = new StringBuilder();
+			result.append("[");
+			int last = size == -1 ? (contents.size() > 0 ? contents.lastKey() : 0) : size;
+			for(int i=0; i < last; i++) {
+				if (i>0) result.append(",");
+				if (spoiled.get(i)) result.append("*");
+				else {
+					Integer v = contents.get(i);
+					if(v==null) result.append("_");
+					else result.append(Integer.toHexString( v & 0xFF ));
+				}
+			}
+			if (size == -1) result.append("...");
+			result.append("]");
+			return result.toString();
+		}
+	}
+
+	/**
+	 * Without a known size, the contents are printed up to the largest
+	 * index written, excluded, even when it is written first.
+	 */
+	@Test
+	public void lastKey() {
+		ArrayAnalysis.BAAbstraction abs = new ArrayAnalysis.BAAbstraction();
+		assertEquals("[...]", abs.toString());
+		abs.set(3, (byte) 0x7f);
+		abs.set(1, (byte) -1);
+		assertEquals("[_,ff,_...]", abs.toString());
+		abs.set(-2, (byte) 1);
+		assertEquals("[_,ff,_...]", abs.toString());
+		abs.setSize(5);
+		assertEquals("[_,ff,_,7f,_]", abs.toString());
+	}
+
+	/**
+	 * A second write to an index spoils it, in dense and in sparse storage,
+	 * and spoiling the whole array ignores the later writes.
+	 */
+	@Test
+	public void spoil() {
+		ArrayAnalysis.BAAbstraction abs = new ArrayAnalysis.BAAbstraction();
+		abs.setSize(3);
+		abs.set(0, (byte) 1);
+		abs.set(0, (byte) 2);
+		abs.set(5, (byte) 1);
+		abs.set(5, (byte) 2);
+		abs.set(1, (byte) 4);
+		assertEquals("[*,4,_]", abs.toString());
+		abs.setSize(7);
+		assertEquals("[*,4,_,_,_,*,_]", abs.toString());
+		abs.spoil();
+		abs.set(2, (byte) 3);
+		abs.spoil(2);
+		assertEquals("*", abs.toString());
+	}
+
+	/**
+	 * Random sequences of writes, size changes and spoils render as with
+	 * the former representation.
+	 */
+	@Test
+	public void sameRendering() {
+		Random random = new Random(21);
+		int [] sizes = { -1, 0, 4, 16, 40, 70000 };
+		for (int run = 0; run < 300; run++) {
+			ArrayAnalysis.BAAbstraction abs = new ArrayAnalysis.BAAbstraction();
+			Reference ref = new Reference();
+			for (int step = 0; step < 60; step++) {
+				int op = random.nextInt(100);
+				if (op < 5) {
+					int size = sizes[random.nextInt(sizes.length)];
+					abs.setSize(size);
+					ref.size = size;
+				} else if (op < 12) {
+					int index = random.nextInt(50);
+					abs.spoil(index);
+					ref.spoil(index);
+				} else if (op < 13) {
+					abs.spoil();
+					ref.spoil();
+				} else {
+					int key = random.nextInt(50);
+					byte v = (byte) random.nextInt(256);
+					abs.set(key, v);
+					ref.set(key, v);
+				}
+				if (ref.size != 70000 || step == 59) assertEquals(ref.toString(), abs.toString());
+			}
+		}
+	}
+}
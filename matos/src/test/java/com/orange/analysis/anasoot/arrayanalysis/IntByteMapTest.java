@@ -0,0 +1,132 @@
+package com.orange.analysis.anasoot.arrayanalysis;
+
+/*
+ * #%L
+ * Matos
+ * %%
+ * Copyright (C) 2004 - 2014 Orange SA
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * Open addressing map from int to bytes.
+ * @author Pierre Cregut
+ */
+public class IntByteMapTest {
+
+	private static final int ABSENT = Integer.MIN_VALUE;
+
+	/**
+	 * Keys that share the same initial slot in a table of the given capacity.
+	 */
+	private static int [] colliding(int capacity, int n) {
+		int [] result = new int [n];
+		int slot = IntObjectMap.hash(0) & (capacity - 1);
+		int found = 0;
+		for (int k = 0; found < n; k++) {
+			if ((IntObjectMap.hash(k) & (capacity - 1)) == slot) result[found++] = k;
+		}
+		return result;
+	}
+
+	/**
+	 * Checks the map against the reference and that enumerating the slots
+	 * gives back every key once.
+	 */
+	private static void check(Map<Integer,Byte> reference, IntByteMap map) {
+		assertEquals(reference.size(), map.size());
+		int enumerated = 0;
+		for (int i = 0; i < map.capacity(); i++) {
+			if (!map.isUsed(i)) continue;
+			enumerated++;
+			assertEquals(reference.get(map.keyAt(i)).byteValue(), map.valueAt(i));
+		}
+		assertEquals(reference.size(), enumerated);
+		for (Map.Entry<Integer,Byte> e : reference.entrySet()) {
+			assertTrue(map.containsKey(e.getKey()));
+			assertEquals(e.getValue().intValue(), map.get(e.getKey(), ABSENT));
+		}
+	}
+
+	/**
+	 * An empty map has no key, not even 0.
+	 */
+	@Test
+	public void empty() {
+		IntByteMap map = new IntByteMap();
+		assertEquals(0, map.size());
+		assertFalse(map.containsKey(0));
+		assertEquals(ABSENT, map.get(0, ABSENT));
+	}
+
+	/**
+	 * Keys with the same hash are stored in the following slots and all
+	 * found again, before and after the table grows.
+	 */
+	@Test
+	public void collisions() {
+		IntByteMap map = new IntByteMap();
+		Map<Integer,Byte> reference = new HashMap<Integer,Byte>();
+		int [] keys = colliding(map.capacity(), 3);
+		for (int i = 0; i < keys.length; i++) {
+			map.put(keys[i], (byte) i);
+			reference.put(keys[i], (byte) i);
+		}
+		assertEquals(8, map.capacity());
+		check(reference, map);
+		assertFalse(map.containsKey(colliding(8, 4)[3]));
+		map.put(keys[1], (byte) -1);
+		reference.put(keys[1], (byte) -1);
+		check(reference, map);
+		for (int k : colliding(8, 20)) {
+			map.put(k, (byte) k);
+			reference.put(k, (byte) k);
+		}
+		check(reference, map);
+	}
+
+	/**
+	 * The table grows and keeps at most half of its slots used.
+	 */
+	@Test
+	public void growth() {
+		IntByteMap map = new IntByteMap();
+		Map<Integer,Byte> reference = new HashMap<Integer,Byte>();
+		Random random = new Random(21);
+		int [] extremes = { 0, -1, 1, Integer.MIN_VALUE, Integer.MAX_VALUE, 65535, 65536 };
+		for (int k : extremes) {
+			map.put(k, (byte) k);
+			reference.put(k, (byte) k);
+		}
+		for (int i = 0; i < 5000; i++) {
+			int k = (i % 2 == 0) ? random.nextInt(10000) - 5000 : random.nextInt();
+			byte v = (byte) random.nextInt(256);
+			map.put(k, v);
+			reference.put(k, v);
+			assertTrue(2 * map.size() <= map.capacity());
+		}
+		check(reference, map);
+	}
+}
@@ -0,0 +1,107 @@
+package com.orange.analysis.anasoot.arrayanalysis;
+
+/*
+ * #%L
+ * Matos
+ * %%
+ * Copyright (C) 2004 - 2014 Orange SA
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * Open addressing map from int to objects.
+ * @author Pierre Cregut
+ */
+public class IntObjectMapTest {
+
+	/**
+	 * Keys that share the same initial slot in a table of the given capacity.
+	 */
+	private static int [] colliding(int capacity, int n) {
+		int [] result = new int [n];
+		int slot = IntObjectMap.hash(0) & (capacity - 1);
+		int found = 0;
+		for (int k = 0; found < n; k++) {
+			if ((IntObjectMap.hash(k) & (capacity - 1)) == slot) result[found++] = k;
+		}
+		return result;
+	}
+
+	/**
+	 * Keys with the same hash are all found again, before and after the
+	 * table grows, and a missing key colliding with them is not.
+	 */
+	@Test
+	public void collisions() {
+		IntObjectMap<String> map = new IntObjectMap<String>();
+		int [] keys = colliding(16, 40);
+		for (int i = 0; i < 5; i++) map.put(keys[i], "v" + i);
+		for (int i = 0; i < 5; i++) assertEquals("v" + i, map.get(keys[i]));
+		assertNull(map.get(keys[5]));
+		for (int i = 5; i < keys.length; i++) map.put(keys[i], "v" + i);
+		assertEquals(keys.length, map.size());
+		for (int i = 0; i < keys.length; i++) assertEquals("v" + i, map.get(keys[i]));
+	}
+
+	/**
+	 * Putting an existing key replaces the value without adding a key.
+	 */
+	@Test
+	public void replace() {
+		IntObjectMap<Object> map = new IntObjectMap<Object>();
+		Object first = new Object();
+		Object second = new Object();
+		map.put(-7, first);
+		map.put(-7, second);
+		assertEquals(1, map.size());
+		assertSame(second, map.get(-7));
+		assertNull(map.get(7));
+	}
+
+	/**
+	 * The map stays equivalent to a hash map while it grows.
+	 */
+	@Test
+	public void growth() {
+		IntObjectMap<Integer> map = new IntObjectMap<Integer>();
+		Map<Integer,Integer> reference = new HashMap<Integer,Integer>();
+		Random random = new Random(21);
+		for (int i = 0; i < 20000; i++) {
+			int k = (i % 2 == 0) ? random.nextInt(20000) - 10000 : random.nextInt();
+			map.put(k, i);
+			reference.put(k, i);
+		}
+		map.put(Integer.MIN_VALUE, -1);
+		reference.put(Integer.MIN_VALUE, -1);
+		assertEquals(reference.size(), map.size());
+		for (Map.Entry<Integer,Integer> e : reference.entrySet()) {
+			assertEquals(e.getValue(), map.get(e.getKey()));
+		}
+		for (int i = 0; i < 1000; i++) {
+			int k = random.nextInt();
+			if (!reference.containsKey(k)) assertNull(map.get(k));
+		}
+	}
+}
@@ -0,0 +1,221 @@
+package com.orange.analysis.anasoot.printing;
+
+/*
+ * #%L
+ * Matos
+ * %%
+ * Copyright (C) 2004 - 2014 Orange SA
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.StringReader;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.regex.Pattern;
+
+import javax.xml.parsers.DocumentBuilder;
+import javax.xml.parsers.DocumentBuilderFactory;
+
+import org.junit.Test;
+import org.w3c.dom.Element;
+import org.xml.sax.EntityResolver;
+import org.xml.sax.InputSource;
+
+import com.orange.matos.core.XMLParser;
+
+/**
+ * The automaton must find exactly what the regular expressions it replaces find.
+ * @author Pierre Cregut
+ */
+public class PatternAutomatonTest {
+
+    private static final String [] PROFILES = { "/rules/MIDP.xml", "/rules/android/score.xml" };
+
+    /**
+     * Score patterns of the shipped profiles. The external entities are
+     * ignored: the rule files they point to are generated at build time
+     * and the score patterns are not in them.
+     */
+    private static List<String> shippedPatterns() throws Exception {
+        DocumentBuilder builder = DocumentBuilderFactory.newInstance().newDocumentBuilder();
+        builder.setEntityResolver(new EntityResolver() {
+            @Override
+            public InputSource resolveEntity(String publicId, String systemId) {
+                return new InputSource(new StringReader(""));
+            }
+        });
+        List<String> result = new ArrayList<String>();
+        for (String profile : PROFILES) {
+            URL url = PatternAutomatonTest.class.getResource(profile);
+            assertNotNull(profile, url);
+            Element root = builder.parse(url.toString()).getDocumentElement();
+            for (Element elt : XMLParser.getElements(root, "stringmatch")) {
+                result.add(elt.getAttribute("pattern"));
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Checks that scanning each text finds the same patterns as
+     * Matcher.find on the patterns handled by the automaton.
+     */
+    private static void compare(List<String> patterns, List<String> texts) {
+        PatternAutomaton automaton = new PatternAutomaton();
+        List<Integer> ids = new ArrayList<Integer>();
+        for (int i = 0; i < patterns.size(); i++) {
+            List<String> words = PatternAutomaton.literals(patterns.get(i));
+            if (words == null) continue;
+            for (String word : words) automaton.add(word, i);
+            ids.add(i);
+        }
+        automaton.compile();
+        for (String text : texts) {
+            BitSet found = new BitSet();
+            automaton.scan(text, found);
+            for (int i : ids) {
+                String pattern = patterns.get(i);
+                assertEquals("/" + pattern + "/ on \"" + text + "\"",
+                        Pattern.compile(pattern).matcher(text).find(), found.get(i));
+            }
+            for (int i = found.nextSetBit(0); i >= 0; i = found.nextSetBit(i + 1)) {
+                assertTrue("not a literal pattern: " + patterns.get(i), ids.contains(i));
+            }
+        }
+    }
+
+    /**
+     * Texts built around the literal strings of the patterns: the strings
+     * themselves, embedded, with a different case, cut at both ends and
+     * glued to the next pattern so that the strings overlap.
+     */
+    private static List<String> samples(List<String> patterns) {
+        List<String> words = new ArrayList<String>();
+        for (String pattern : patterns) {
+            List<String> literals = PatternAutomaton.literals(pattern);
+            if (literals != null) words.addAll(literals);
+        }
+        List<String> texts = new ArrayList<String>();
+        texts.add("");
+        texts.add("nothing interesting here");
+        for (int i = 0; i < words.size(); i++) {
+            String w = words.get(i);
+            String next = words.get((i + 1) % words.size());
+            texts.add(w);
+            texts.add("xx " + w + " yy");
+            texts.add(w.toUpperCase(Locale.ENGLISH));
+            texts.add(w.toLowerCase(Locale.ENGLISH));
+            texts.add(w.substring(1));
+            texts.add(w.substring(0, w.length() - 1));
+            texts.add(w.substring(0, w.length() - 1) + next);
+            texts.add(w + next.substring(1));
+            texts.add(w.substring(0, w.length() / 2) + w);
+        }
+        return texts;
+    }
+
+    /**
+     * The patterns of the shipped profiles, on texts built from them and
+     * on typical messages.
+     */
+    @Test
+    public void shippedProfiles() throws Exception {
+        List<String> patterns = shippedPatterns();
+        assertTrue(patterns.size() > 0);
+        List<String> texts = samples(patterns);
+        texts.add("Connection to http://www.facebook.com/ and twitter.com");
+        texts.add("[SMS INTERCEPTION] in onReceive, [DELAYED SMS] later");
+        texts.add("SMS INTERCEPTION without brackets");
+        texts.add("content://mms and content://sms/inbox");
+        texts.add("Use of BLUETOOTH, then Bluetooth and bluetooth");
+        compare(patterns, texts);
+    }
+
+    /**
+     * Character sets and escaped characters are literal, the case is significant.
+     */
+    @Test
+    public void caseAndEscapes() {
+        List<String> patterns = new ArrayList<String>();
+        patterns.add("[bB]luetooth");
+        patterns.add("\\[APK IN APK\\]");
+        patterns.add("facebook\\.com");
+        patterns.add("colou?r");
+        assertEquals(2, PatternAutomaton.literals("[bB]luetooth").size());
+        assertEquals(2, PatternAutomaton.literals("colou?r").size());
+        List<String> texts = new ArrayList<String>();
+        texts.add("Bluetooth");
+        texts.add("bluetooth");
+        texts.add("BLUETOOTH");
+        texts.add("bLuetooth");
+        texts.add("[APK IN APK]");
+        texts.add("APK IN APK");
+        texts.add("[APK IN APK");
+        texts.add("facebook.com");
+        texts.add("facebookxcom");
+        texts.add("color colour colouur");
+        texts.add("colr");
+        compare(patterns, texts);
+    }
+
+    /**
+     * Strings that are prefixes, suffixes or inner parts of other strings
+     * are all found, including when a partial match fails in the middle.
+     */
+    @Test
+    public void literalBoundaries() {
+        List<String> patterns = new ArrayList<String>();
+        patterns.add("he");
+        patterns.add("she");
+        patterns.add("his|hers");
+        patterns.add("abcd");
+        patterns.add("bc");
+        patterns.add("aab");
+        List<String> texts = new ArrayList<String>();
+        texts.add("ushers");
+        texts.add("shis");
+        texts.add("hershe");
+        texts.add("abcabcd");
+        texts.add("abd");
+        texts.add("aaab");
+        texts.add("aab");
+        texts.add("ab");
+        texts.add("h");
+        compare(patterns, texts);
+    }
+
+    /**
+     * Real regular expressions are left to the regular expression engine.
+     */
+    @Test
+    public void regularExpressionsAreNotLiterals() {
+        assertNull(PatternAutomaton.literals("bit.ly"));
+        assertNull(PatternAutomaton.literals("tel:[+0-9]"));
+        assertNull(PatternAutomaton.literals("a*b"));
+        assertNull(PatternAutomaton.literals("\\d+"));
+        assertNull(PatternAutomaton.literals("^admob"));
+        assertNull(PatternAutomaton.literals("a|"));
+        assertNull(PatternAutomaton.literals("[a-z]x"));
+        assertNotNull(PatternAutomaton.literals("content://[ms]ms"));
+    }
+}
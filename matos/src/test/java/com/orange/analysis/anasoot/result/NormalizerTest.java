@@ -0,0 +1,94 @@
+package com.orange.analysis.anasoot.result;
+
+/*
+ * #%L
+ * Matos
+ * %%
+ * Copyright (C) 2004 - 2014 Orange SA
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+
+import org.junit.Test;
+
+/**
+ * Budget of the normalization of abstract values.
+ * @author Pierre Cregut
+ */
+public class NormalizerTest {
+
+	private static final int MARKS = 150;
+
+	/**
+	 * A disjunction of marks that exhausts the budget of a normalization.
+	 */
+	private static ArrayList<AbsValue> costlyPrefix() {
+		ArrayList<AbsValue> values = new ArrayList<AbsValue>();
+		for(int i = 0; i < MARKS; i++) {
+			values.add(new MarkValue("m" + i, new StringValue("v" + i), i));
+		}
+		return values;
+	}
+
+	/**
+	 * The name of a property is normalized with its own budget, even if the
+	 * enclosing value has exhausted its budget.
+	 */
+	@Test
+	public void propertyNameHasItsOwnBudget() {
+		ArrayList<AbsValue> values = costlyPrefix();
+		values.add(new PropertyValue(new MarkValue("key", new StringValue("app.key"), MARKS)));
+		AbsValue result = new OrValue(values).normalize(true);
+		assertEquals(MARKS + 1, ((OrValue) result).vals.size());
+		assertEquals(new StringValue("\\{app.key\\}").toString(), 
+				((OrValue) result).vals.get(MARKS).toString());
+	}
+
+	/**
+	 * Other values share the budget of the enclosing normalization.
+	 */
+	@Test
+	public void marksShareTheBudget() {
+		ArrayList<AbsValue> values = costlyPrefix();
+		values.add(new MarkValue("key", new StringValue("app.key"), MARKS));
+		AbsValue result = new OrValue(values).normalize(true);
+		assertEquals(new UnknownValue("*").toString(), 
+				((OrValue) result).vals.get(((OrValue) result).vals.size() - 1).toString());
+	}
+
+	/**
+	 * The budget of the enclosing normalization is not charged by the name of
+	 * a property.
+	 */
+	@Test
+	public void propertyNameDoesNotChargeTheEnclosingBudget() {
+		ArrayList<AbsValue> values = new ArrayList<AbsValue>();
+		for(int i = 0; i < 3; i++) {
+			ArrayList<AbsValue> name = new ArrayList<AbsValue>();
+			for(int j = 0; j < 60; j++) {
+				name.add(new MarkValue("n", new StringValue("k"), 100 * i + j));
+			}
+			values.add(new PropertyValue(new ConcatValue(name)));
+		}
+		AbsValue result = new OrValue(values).normalize(true);
+		StringBuilder key = new StringBuilder();
+		for(int j = 0; j < 60; j++) key.append('k');
+		String expected = new StringValue("\\{" + key + "\\}").toString();
+		for(AbsValue v : ((OrValue) result).vals) assertEquals(expected, v.toString());
+	}
+}
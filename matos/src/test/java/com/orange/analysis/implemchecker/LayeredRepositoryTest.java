@@ -0,0 +1,171 @@
+package com.orange.analysis.implemchecker;
+
+/*
+ * #%L
+ * Matos
+ * %%
+ * Copyright (C) 2004 - 2014 Orange SA
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.List;
+
+import org.apache.bcel.Constants;
+import org.apache.bcel.classfile.JavaClass;
+import org.apache.bcel.generic.ClassGen;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Superclass chains computed on the classes of a suite layered over the
+ * shared platform classes.
+ * @author Pierre Cregut
+ */
+public class LayeredRepositoryTest {
+
+    private static final String OBJECT = "java.lang.Object";
+
+    @Rule
+    public final TemporaryFolder folder = new TemporaryFolder();
+
+    private PlatformClasses platform;
+
+    private static JavaClass define(String name, String superName) {
+        return new ClassGen(name, superName, name + ".java", Constants.ACC_PUBLIC, null).getJavaClass();
+    }
+
+    private void dump(File root, String name, String superName) throws Exception {
+        File file = new File(root, name.replace('.', File.separatorChar) + ".class");
+        file.getParentFile().mkdirs();
+        define(name, superName).dump(file);
+    }
+
+    /**
+     * A platform made of p.Child extends p.Base extends Object and p.Other
+     * extends Object.
+     */
+    @Before
+    public void createPlatform() throws Exception {
+        File root = folder.newFolder("platform");
+        dump(root, OBJECT, OBJECT);
+        dump(root, "p.Base", OBJECT);
+        dump(root, "p.Child", "p.Base");
+        dump(root, "p.Other", OBJECT);
+        platform = PlatformClasses.get(root.getPath());
+    }
+
+    /**
+     * The chain of a platform class is computed once and shared with the
+     * other repositories.
+     */
+    @Test
+    public void platformChain() throws Exception {
+        LayeredRepository repository = new LayeredRepository(platform);
+        JavaClass child = repository.loadClass("p/Child");
+        List<String> expected = Arrays.asList("p.Base", OBJECT);
+        assertEquals(expected, repository.getSuperClasses(child));
+        assertEquals(expected, platform.chain("p.Child"));
+        assertEquals(expected, new LayeredRepository(platform).getSuperClasses(child));
+        assertNull(platform.lookup("p.Missing"));
+    }
+
+    /**
+     * A suite class shadowing a platform class changes the chains that go
+     * through it, for this suite only.
+     */
+    @Test
+    public void shadowing() throws Exception {
+        JavaClass child = platform.lookup("p.Child");
+        List<String> original = Arrays.asList("p.Base", OBJECT);
+        assertEquals(original, new LayeredRepository(platform).getSuperClasses(child));
+        LayeredRepository suite = new LayeredRepository(platform);
+        suite.storeClass(define("p.Base", "p.Other"));
+        assertEquals(Arrays.asList("p.Base", "p.Other", OBJECT), suite.getSuperClasses(child));
+        assertEquals(original, platform.chain("p.Child"));
+        assertEquals(original, new LayeredRepository(platform).getSuperClasses(child));
+    }
+
+    /**
+     * Storing a class invalidates the chains already computed.
+     */
+    @Test
+    public void storeInvalidates() throws Exception {
+        LayeredRepository suite = new LayeredRepository(platform);
+        JavaClass app = define("a.App", "p.Base");
+        suite.storeClass(app);
+        assertEquals(Arrays.asList("p.Base", OBJECT), suite.getSuperClasses(app));
+        suite.storeClass(define("p.Base", "p.Other"));
+        assertEquals(Arrays.asList("p.Base", "p.Other", OBJECT), suite.getSuperClasses(app));
+        assertNull(platform.chain("a.App"));
+    }
+
+    /**
+     * A missing superclass is reported and nothing is memoized, so that the
+     * chain is complete once the class is provided.
+     */
+    @Test
+    public void missingSuperclass() throws Exception {
+        LayeredRepository suite = new LayeredRepository(platform);
+        JavaClass app = define("a.App", "a.Missing");
+        JavaClass sub = define("a.Sub", "a.App");
+        suite.storeClass(app);
+        suite.storeClass(sub);
+        try {
+            suite.getSuperClasses(sub);
+            fail("a.Missing found");
+        } catch (ClassNotFoundException e) {
+            // expected
+        }
+        suite.storeClass(define("a.Missing", "p.Base"));
+        assertEquals(Arrays.asList("a.App", "a.Missing", "p.Base", OBJECT), suite.getSuperClasses(sub));
+    }
+
+    /**
+     * A cyclic chain of superclasses stops on the first class seen twice.
+     */
+    @Test
+    public void cycle() throws Exception {
+        LayeredRepository suite = new LayeredRepository(platform);
+        JavaClass a = define("c.A", "c.B");
+        suite.storeClass(a);
+        suite.storeClass(define("c.B", "c.C"));
+        suite.storeClass(define("c.C", "c.B"));
+        assertEquals(Arrays.asList("c.B", "c.C"), suite.getSuperClasses(a));
+        assertEquals(Arrays.asList("c.C", "c.B"), suite.getSuperClasses(suite.loadClass("c.B")));
+    }
+
+    /**
+     * Only the platforms of the last classpaths are kept.
+     */
+    @Test
+    public void boundedPlatforms() throws Exception {
+        String path = folder.getRoot().getPath() + File.separator + "platform";
+        assertSame(platform, PlatformClasses.get(path));
+        for (int i = 0; i < PlatformClasses.MAX_PLATFORMS; i++) {
+            PlatformClasses.get(folder.newFolder("other" + i).getPath());
+        }
+        assertNotSame(platform, PlatformClasses.get(path));
+    }
+}
@@ -0,0 +1,54 @@
+package com.orange.matos;
+
+/*
+ * #%L
+ * Matos
+ * %%
+ * Copyright (C) 2004 - 2014 Orange SA
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+/**
+ * Heap given to the worker processes of a campaign.
+ * @author Pierre Cregut
+ */
+public class CampaignPoolTest {
+
+    private static final long MB = 1024 * 1024;
+
+    /**
+     * The heap of the parent is shared between the workers.
+     */
+    @Test
+    public void sharedHeap() {
+        assertEquals(1024, CampaignPool.workerHeap(-1, 4096 * MB, 4));
+        assertEquals(4096, CampaignPool.workerHeap(-1, 4096 * MB, 1));
+        assertEquals(CampaignPool.MIN_WORKER_HEAP, CampaignPool.workerHeap(-1, 1024 * MB, 16));
+    }
+
+    /**
+     * The configured heap is used as is, an unbounded parent gives no bound.
+     */
+    @Test
+    public void configuredHeap() {
+        assertEquals(1500, CampaignPool.workerHeap(1500, 4096 * MB, 4));
+        assertEquals(-1, CampaignPool.workerHeap(-1, Long.MAX_VALUE, 4));
+        assertEquals(800, CampaignPool.workerHeap(800, Long.MAX_VALUE, 4));
+    }
+}
@@ -0,0 +1,134 @@
+package com.orange.matos.core;
+
+/*
+ * #%L
+ * Matos
+ * %%
+ * Copyright (C) 2004 - 2014 Orange SA
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.PrintStream;
+import java.util.Arrays;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.orange.matos.android.AndroidStep;
+
+/**
+ * Storage, replay and eviction of cached results.
+ * @author Pierre Cregut
+ */
+public class ResultCacheTest {
+
+    @Rule
+    public final TemporaryFolder folder = new TemporaryFolder();
+
+    private static final int REPORT = 1000;
+
+    private static Step step(int verdict, int score) {
+        Step step = new AndroidStep();
+        step.setVerdict(verdict);
+        step.setScore(score);
+        step.setMessage("message " + score);
+        return step;
+    }
+
+    private static String replay(ResultCache cache, String key, Step step) throws Exception {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        PrintStream out = new PrintStream(bytes, true, "UTF-8");
+        if (!cache.replay(key, step, out)) return null;
+        out.flush();
+        return bytes.toString("UTF-8");
+    }
+
+    private static byte [] report(char c) {
+        byte [] result = new byte [REPORT];
+        Arrays.fill(result, (byte) c);
+        return result;
+    }
+
+    /**
+     * A stored result is replayed with its verdict, score and message, also
+     * by another cache on the same directory.
+     */
+    @Test
+    public void storeAndReplay() throws Exception {
+        File dir = new File(folder.getRoot(), "cache");
+        ResultCache cache = new ResultCache(dir, 1L << 20);
+        String key = ResultCache.key(Arrays.asList("android", "0123", "profile"));
+        cache.store(key, step(Step.FAILED, 42), "<p>report</p>".getBytes("UTF-8"));
+        Step step = step(Step.NONE, -1);
+        assertEquals("<p>report</p>", replay(new ResultCache(dir, 1L << 20), key, step));
+        assertEquals(Step.FAILED, step.getVerdict());
+        assertEquals(42, step.getScore());
+        assertEquals("message 42", step.getMessage());
+        assertEquals(null, replay(cache, ResultCache.key(Arrays.asList("other")), step));
+        assertEquals(null, ResultCache.key(Arrays.asList("android", null)));
+    }
+
+    /**
+     * The least recently used entries are evicted when the bound is
+     * exceeded, including the entries stored by another cache.
+     */
+    @Test
+    public void eviction() throws Exception {
+        File dir = folder.getRoot();
+        long bound = 3 * REPORT + 2 * REPORT / 2;
+        ResultCache cache = new ResultCache(dir, bound);
+        ResultCache other = new ResultCache(dir, bound);
+        cache.store("aaa", step(Step.PASSED, 1), report('a'));
+        other.store("bbb", step(Step.PASSED, 2), report('b'));
+        cache.store("ccc", step(Step.PASSED, 3), report('c'));
+        long now = System.currentTimeMillis();
+        new File(dir, "aaa.properties").setLastModified(now - 30000);
+        new File(dir, "bbb.properties").setLastModified(now - 20000);
+        new File(dir, "ccc.properties").setLastModified(now - 10000);
+        assertTrue(new File(dir, "aaa.report").exists());
+        // Replaying aaa refreshes it: bbb becomes the least recently used.
+        assertEquals(new String(report('a'), "UTF-8"), replay(cache, "aaa", step(Step.NONE, -1)));
+        cache.store("ddd", step(Step.PASSED, 4), report('d'));
+        assertFalse(new File(dir, "bbb.properties").exists());
+        assertFalse(new File(dir, "bbb.report").exists());
+        assertTrue(new File(dir, "aaa.properties").exists());
+        assertTrue(new File(dir, "ddd.report").exists());
+    }
+
+    /**
+     * The digest of a file is computed once per step.
+     */
+    @Test
+    public void digestOfStep() throws Exception {
+        File apk = folder.newFile("a.apk");
+        File other = folder.newFile("b.apk");
+        Step step = new AndroidStep();
+        String digest = step.digestOf(apk);
+        assertEquals(Digest.runSHA1(apk), digest);
+        PrintStream out = new PrintStream(apk);
+        out.print("changed");
+        out.close();
+        assertEquals(digest, step.digestOf(apk));
+        assertEquals(Digest.runSHA1(other), step.digestOf(other));
+        assertEquals(Digest.runSHA1(apk), step.digestOf(apk));
+    }
+}
@@ -0,0 +1,102 @@
+package com.orange.matos.java;
+
+/*
+ * #%L
+ * Matos
+ * %%
+ * Copyright (C) 2004 - 2014 Orange SA
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.orange.matos.utils.MappedZip;
+
+/**
+ * Access to the JAR of a midlet suite shared by the phases.
+ * @author Pierre Cregut
+ */
+public class MidletSuiteTest {
+
+	@Rule
+	public final TemporaryFolder folder = new TemporaryFolder();
+
+	private static final byte [] MANIFEST = "Manifest-Version: 1.0\nMIDlet-1: Demo, , demo.Demo\n".getBytes();
+
+	private MidletSuite suite(String manifestName) throws IOException {
+		File jar = folder.newFile();
+		ZipOutputStream zos = new ZipOutputStream(new FileOutputStream(jar));
+		try {
+			zos.putNextEntry(new ZipEntry(manifestName));
+			zos.write(MANIFEST);
+			zos.closeEntry();
+			zos.putNextEntry(new ZipEntry("demo/Demo.class"));
+			zos.write(new byte [] { (byte) 0xca, (byte) 0xfe, (byte) 0xba, (byte) 0xbe });
+			zos.closeEntry();
+		} finally {
+			zos.close();
+		}
+		MidletSuite ms = new MidletSuite();
+		ms.jarFile = jar;
+		return ms;
+	}
+
+	/**
+	 * The manifest is read once and kept when the archive is released.
+	 */
+	@Test
+	public void manifest() throws IOException {
+		MidletSuite ms = suite(MidletSuite.MANIFEST);
+		byte [] manifest = ms.getManifest();
+		assertArrayEquals(MANIFEST, manifest);
+		assertSame(manifest, ms.getManifest());
+		ms.releaseArchive();
+		assertSame(manifest, ms.getManifest());
+	}
+
+	/**
+	 * A JAR without manifest.
+	 */
+	@Test
+	public void noManifest() throws IOException {
+		MidletSuite ms = suite("META-INF/manifest.mf");
+		assertNull(ms.getManifest());
+	}
+
+	/**
+	 * The view on the JAR is shared until it is released.
+	 */
+	@Test
+	public void archive() throws IOException {
+		MidletSuite ms = suite(MidletSuite.MANIFEST);
+		MappedZip archive = ms.getArchive();
+		assertSame(archive, ms.getArchive());
+		ms.releaseArchive();
+		assertNotSame(archive, ms.getArchive());
+	}
+}
@@ -0,0 +1,248 @@
+package com.orange.matos.utils;
+
+/*
+ * #%L
+ * Matos
+ * %%
+ * Copyright (C) 2004 - 2014 Orange SA
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Random;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipException;
+import java.util.zip.ZipOutputStream;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Decoding of zip archives mapped in memory.
+ * @author Pierre Cregut
+ */
+public class MappedZipTest {
+
+	@Rule
+	public final TemporaryFolder folder = new TemporaryFolder();
+
+	private static final byte [] TEXT = "Manifest-Version: 1.0\nMIDlet-1: Demo, , demo.Demo\n".getBytes();
+
+	private static byte [] random(int length) {
+		byte [] result = new byte [length];
+		new Random(22).nextBytes(result);
+		return result;
+	}
+
+	/**
+	 * Builds an archive. Entries are given as name, content pairs; names
+	 * starting with "stored:" are not compressed.
+	 */
+	private static byte [] zip(Object... entries) throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		ZipOutputStream zos = new ZipOutputStream(bytes);
+		for (int i = 0; i < entries.length; i += 2) {
+			String name = (String) entries[i];
+			byte [] content = (byte []) entries[i + 1];
+			ZipEntry entry;
+			if (name.startsWith("stored:")) {
+				entry = new ZipEntry(name.substring(7));
+				CRC32 crc = new CRC32();
+				crc.update(content);
+				entry.setMethod(ZipEntry.STORED);
+				entry.setSize(content.length);
+				entry.setCompressedSize(content.length);
+				entry.setCrc(crc.getValue());
+			} else {
+				entry = new ZipEntry(name);
+			}
+			zos.putNextEntry(entry);
+			zos.write(content);
+			zos.closeEntry();
+		}
+		zos.close();
+		return bytes.toByteArray();
+	}
+
+	private static MappedZip view(byte [] archive) throws IOException {
+		return new MappedZip(ByteBuffer.wrap(archive));
+	}
+
+	/**
+	 * Offset of the central directory header of the first entry.
+	 */
+	private static int centralDirectory(byte [] archive) {
+		ByteBuffer buffer = ByteBuffer.wrap(archive).order(ByteOrder.LITTLE_ENDIAN);
+		return buffer.getInt(archive.length - 22 + 16);
+	}
+
+	/**
+	 * The central directory gives the entries in order with their sizes,
+	 * stored and deflated contents are read back.
+	 */
+	@Test
+	public void storedAndDeflated() throws IOException {
+		byte [] data = random(70000);
+		MappedZip zip = view(zip("META-INF/MANIFEST.MF", TEXT, "stored:icon.png", data,
+				"deflated.bin", data, "empty", new byte [0]));
+		assertEquals(4, zip.entries().size());
+		assertEquals("META-INF/MANIFEST.MF", zip.entries().get(0).getName());
+		assertEquals("empty", zip.entries().get(3).getName());
+		MappedZip.Entry stored = zip.getEntry("icon.png");
+		MappedZip.Entry deflated = zip.getEntry("deflated.bin");
+		assertTrue(stored.isStored());
+		assertFalse(deflated.isStored());
+		assertEquals(data.length, stored.getSize());
+		assertEquals(data.length, deflated.getSize());
+		assertArrayEquals(TEXT, zip.read(zip.getEntry("META-INF/MANIFEST.MF")));
+		assertArrayEquals(data, zip.read(stored));
+		assertArrayEquals(data, zip.read(deflated));
+		assertEquals(0, zip.read(zip.getEntry("empty")).length);
+		assertArrayEquals(new byte [] { data[0], data[1], data[2], data[3] }, zip.header(deflated, 4));
+		assertEquals(0, zip.header(zip.getEntry("empty"), 4).length);
+		assertNull(zip.getEntry("missing"));
+	}
+
+	/**
+	 * A stored archive in an archive is viewed in place, a deflated one is not.
+	 */
+	@Test
+	public void nested() throws IOException {
+		byte [] inner = zip("classes.dex", TEXT);
+		MappedZip zip = view(zip("stored:inner.apk", inner, "packed.apk", inner));
+		MappedZip nested = zip.nested(zip.getEntry("inner.apk"));
+		assertArrayEquals(TEXT, nested.read(nested.getEntry("classes.dex")));
+		assertNull(zip.nested(zip.getEntry("packed.apk")));
+	}
+
+	/**
+	 * A comment after the central directory does not hide it.
+	 */
+	@Test
+	public void comment() throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		ZipOutputStream zos = new ZipOutputStream(bytes);
+		zos.setComment("a comment with PK\u0005\u0006 inside");
+		zos.putNextEntry(new ZipEntry("a"));
+		zos.write(TEXT);
+		zos.close();
+		MappedZip zip = view(bytes.toByteArray());
+		assertArrayEquals(TEXT, zip.read(zip.getEntry("a")));
+	}
+
+	/**
+	 * A file that is not an archive or whose end was cut is rejected.
+	 */
+	@Test
+	public void notAnArchive() throws IOException {
+		byte [] archive = zip("a", TEXT);
+		byte [] cut = new byte [archive.length - 10];
+		System.arraycopy(archive, 0, cut, 0, cut.length);
+		for (byte [] bad : new byte [][] { new byte [0], TEXT, cut }) {
+			try {
+				view(bad);
+				fail("accepted " + bad.length + " bytes");
+			} catch (ZipException e) {
+				// expected
+			}
+		}
+	}
+
+	/**
+	 * An entry whose sizes go beyond the archive is reported as truncated
+	 * instead of being read past its end.
+	 */
+	@Test
+	public void truncatedEntries() throws IOException {
+		byte [] archive = zip("stored:a", TEXT);
+		ByteBuffer buffer = ByteBuffer.wrap(archive).order(ByteOrder.LITTLE_ENDIAN);
+		int central = centralDirectory(archive);
+		buffer.putInt(central + 20, archive.length);
+		MappedZip zip = view(archive);
+		try {
+			zip.read(zip.getEntry("a"));
+			fail("read past the end");
+		} catch (ZipException e) {
+			// expected
+		}
+		archive = zip("stored:a", TEXT);
+		buffer = ByteBuffer.wrap(archive).order(ByteOrder.LITTLE_ENDIAN);
+		buffer.putInt(central + 24, TEXT.length + 1);
+		zip = view(archive);
+		try {
+			zip.read(zip.getEntry("a"));
+			fail("short entry accepted");
+		} catch (ZipException e) {
+			// expected
+		}
+		archive = zip("a", random(1000));
+		buffer = ByteBuffer.wrap(archive).order(ByteOrder.LITTLE_ENDIAN);
+		central = centralDirectory(archive);
+		buffer.putInt(central + 20, buffer.getInt(central + 20) / 2);
+		zip = view(archive);
+		try {
+			zip.read(zip.getEntry("a"));
+			fail("truncated deflated entry accepted");
+		} catch (IOException e) {
+			// expected
+		}
+	}
+
+	/**
+	 * A central directory announcing more entries than it contains is rejected.
+	 */
+	@Test
+	public void truncatedCentralDirectory() throws IOException {
+		byte [] archive = zip("a", TEXT);
+		ByteBuffer buffer = ByteBuffer.wrap(archive).order(ByteOrder.LITTLE_ENDIAN);
+		buffer.putShort(archive.length - 22 + 10, (short) 2);
+		try {
+			view(archive);
+			fail("missing entry accepted");
+		} catch (ZipException e) {
+			// expected
+		}
+	}
+
+	/**
+	 * The file is mapped and stays readable once opened.
+	 */
+	@Test
+	public void openFile() throws IOException {
+		File file = folder.newFile("suite.jar");
+		FileOutputStream fos = new FileOutputStream(file);
+		try {
+			fos.write(zip("META-INF/MANIFEST.MF", TEXT));
+		} finally {
+			fos.close();
+		}
+		MappedZip zip = MappedZip.open(file);
+		assertArrayEquals(TEXT, zip.read(zip.getEntry("META-INF/MANIFEST.MF")));
+	}
+}
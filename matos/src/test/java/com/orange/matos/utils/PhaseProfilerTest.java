@@ -0,0 +1,165 @@
+package com.orange.matos.utils;
+
+/*
+ * #%L
+ * Matos
+ * %%
+ * Copyright (C) 2004 - 2014 Orange SA
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Measure of the phases of a step.
+ * @author Pierre Cregut
+ */
+public class PhaseProfilerTest {
+
+    @Rule
+    public final TemporaryFolder folder = new TemporaryFolder();
+
+    private static volatile long sink;
+
+    /**
+     * Busy loop until the thread has used some CPU time (or wall time if the
+     * JVM does not measure the CPU time).
+     */
+    private static void work(long millis) {
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        boolean cpu = threads.isCurrentThreadCpuTimeSupported();
+        long end = (cpu ? threads.getCurrentThreadCpuTime() : System.nanoTime()) + millis * 1000000;
+        long x = 0;
+        while ((cpu ? threads.getCurrentThreadCpuTime() : System.nanoTime()) < end) x += x * 31 + 7;
+        sink = x;
+    }
+
+    private List<String[]> lines(PhaseProfiler profiler) throws Exception {
+        File file = folder.newFile();
+        profiler.write(file);
+        List<String[]> result = new ArrayList<String[]>();
+        BufferedReader in = new BufferedReader(new FileReader(file));
+        try {
+            String line;
+            while ((line = in.readLine()) != null) {
+                if (!line.startsWith("#")) result.add(line.split("\t"));
+            }
+        } finally {
+            in.close();
+        }
+        return result;
+    }
+
+    /**
+     * A disabled profiler records nothing.
+     */
+    @Test
+    public void disabled() throws Exception {
+        PhaseProfiler.Phase phase = PhaseProfiler.DISABLED.begin("a");
+        phase.end();
+        PhaseProfiler.DISABLED.helper().end();
+        PhaseProfiler.DISABLED.stop();
+        assertEquals(0, lines(PhaseProfiler.DISABLED).size());
+    }
+
+    /**
+     * Nested phases are written in the order they began with their depth,
+     * the phases left open are ended by stop.
+     */
+    @Test
+    public void nesting() throws Exception {
+        PhaseProfiler profiler = new PhaseProfiler();
+        PhaseProfiler.Phase outer = profiler.begin("outer");
+        PhaseProfiler.Phase inner = profiler.begin("inner");
+        work(20);
+        inner.end();
+        inner.end();
+        profiler.begin("open");
+        profiler.stop();
+        outer.end();
+        List<String[]> lines = lines(profiler);
+        assertEquals(3, lines.size());
+        assertEquals("outer", lines.get(0)[0]);
+        assertEquals("0", lines.get(0)[1]);
+        assertEquals("inner", lines.get(1)[0]);
+        assertEquals("1", lines.get(1)[1]);
+        assertEquals("open", lines.get(2)[0]);
+        assertEquals("1", lines.get(2)[1]);
+        assertTrue(outer.wall >= inner.wall && inner.wall >= 19);
+        assertTrue(outer.peak > 0);
+    }
+
+    /**
+     * The CPU time of the helpers is added to the phases open when they end.
+     */
+    @Test
+    public void helpers() throws Exception {
+        final PhaseProfiler profiler = new PhaseProfiler();
+        PhaseProfiler.Phase before = profiler.begin("before");
+        before.end();
+        PhaseProfiler.Phase phase = profiler.begin("parallel");
+        Thread [] threads = new Thread [2];
+        for (int i = 0; i < threads.length; i++) {
+            threads[i] = new Thread() {
+                @Override
+                public void run() {
+                    PhaseProfiler.Helper helper = profiler.helper();
+                    try {
+                        work(200);
+                    } finally {
+                        helper.end();
+                    }
+                }
+            };
+            threads[i].start();
+        }
+        for (Thread t : threads) t.join();
+        phase.end();
+        if (phase.cpu < 0) return; // no CPU time on this JVM
+        assertTrue("cpu " + phase.cpu + " wall " + phase.wall, phase.cpu >= 300);
+        assertTrue(before.cpu < 100);
+    }
+
+    /**
+     * A large allocation during a phase shows in its peak, not in the peak
+     * of an earlier phase, and the peaks of the pools are not reset.
+     */
+    @Test
+    public void peak() throws Exception {
+        PhaseProfiler profiler = new PhaseProfiler();
+        PhaseProfiler.Phase small = profiler.begin("small");
+        small.end();
+        PhaseProfiler.Phase large = profiler.begin("large");
+        long [] block = new long [16 * 1024 * 1024];
+        block[block.length - 1] = 1;
+        Thread.sleep(120);
+        sink = block[block.length - 1];
+        large.end();
+        assertTrue(large.peak - small.peak >= 100L * 1024 * 1024);
+    }
+}